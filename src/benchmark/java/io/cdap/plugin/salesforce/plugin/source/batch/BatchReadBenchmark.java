@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import com.google.common.base.Strings;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.csv.QuoteMode;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures batch source hot path over a Bulk API CSV result: parsing with {@link SalesforceRecordReader},
+ * adding sObject name with {@link SalesforceRecordReaderWrapper} and conversion with
+ * {@link RowToRecordTransformer}, each in isolation and all together.
+ * <p/>
+ * Parsing is compared with commons-csv parser used before {@link BulkCsvParser}, and with parsing a tenth
+ * of the columns, when the schema selects only some fields of the results.
+ * <p/>
+ * Every invocation processes {@link #RECORDS} records, so throughput is reported in records per second
+ * and {@code gc.alloc.rate.norm} of GC profiler is in bytes allocated per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchReadBenchmark {
+
+  private static final int RECORDS = 1000;
+  private static final int LONG_TEXT_AREAS = 2;
+  private static final int LONG_TEXT_AREA_LENGTH = 4000;
+  private static final String SOBJECT_NAME = "Opportunity";
+  private static final String SOBJECT_NAME_FIELD = "sObjectName";
+  private static final LocalDate DATE = LocalDate.of(2019, 1, 1);
+  private static final Instant DATETIME = Instant.parse("2019-01-01T00:00:00.000Z");
+
+  @Param({"20", "200", "800"})
+  private int columns;
+
+  private byte[] csv;
+  private Schema schema;
+  private Schema projectedSchema;
+  private List<SalesforceRow> records;
+  private final RowToRecordTransformer transformer = new RowToRecordTransformer();
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    List<Schema.Field> fields = new ArrayList<>();
+    fields.add(Schema.Field.of("Id", Schema.of(Schema.Type.STRING)));
+    for (int column = 1; column < columns; column++) {
+      fields.add(Schema.Field.of(getFieldName(column), Schema.nullableOf(getFieldSchema(column))));
+    }
+    fields.add(Schema.Field.of(SOBJECT_NAME_FIELD, Schema.of(Schema.Type.STRING)));
+    schema = Schema.recordOf("output", fields);
+    List<Schema.Field> projectedFields = new ArrayList<>();
+    for (int column = 0; column < fields.size(); column += 10) {
+      projectedFields.add(fields.get(column));
+    }
+    projectedSchema = Schema.recordOf("projected", projectedFields);
+
+    StringBuilder builder = new StringBuilder();
+    List<String> header = new ArrayList<>();
+    for (int column = 0; column < columns; column++) {
+      header.add(column == 0 ? "Id" : getFieldName(column));
+    }
+    appendRow(builder, header);
+    for (int record = 0; record < RECORDS; record++) {
+      List<String> values = new ArrayList<>();
+      for (int column = 0; column < columns; column++) {
+        values.add(getValue(record, column));
+      }
+      appendRow(builder, values);
+    }
+    csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+    records = new ArrayList<>(RECORDS);
+    SalesforceRecordReader reader = newReader();
+    while (reader.nextKeyValue()) {
+      // reader reuses the row for the next record
+      SalesforceRow row = reader.getCurrentValue();
+      records.add(new SalesforceRow(row.getHeader(), row.getValues().clone()));
+    }
+    reader.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void parse(Blackhole blackhole) throws IOException {
+    SalesforceRecordReader reader = newReader();
+    while (reader.nextKeyValue()) {
+      blackhole.consume(reader.getCurrentValue());
+    }
+    reader.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void parseProjected(Blackhole blackhole) throws IOException {
+    SalesforceRecordReader reader = new SalesforceRecordReader(projectedSchema);
+    reader.setupParser(new ByteArrayInputStream(csv));
+    while (reader.nextKeyValue()) {
+      blackhole.consume(reader.getCurrentValue());
+    }
+    reader.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void parseCommonsCsv(Blackhole blackhole) throws IOException {
+    CSVFormat csvFormat = CSVFormat.DEFAULT.withHeader().withQuoteMode(QuoteMode.ALL)
+      .withAllowMissingColumnNames(false);
+    try (CSVParser parser = CSVParser.parse(new ByteArrayInputStream(csv), StandardCharsets.UTF_8, csvFormat)) {
+      for (CSVRecord record : parser) {
+        blackhole.consume(record.toMap());
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void wrap(Blackhole blackhole) throws IOException, InterruptedException {
+    RecordReader<Schema, SalesforceRow> reader =
+      new SalesforceRecordReaderWrapper(SOBJECT_NAME, SOBJECT_NAME_FIELD, new ListRecordReader(schema, records));
+    while (reader.nextKeyValue()) {
+      blackhole.consume(reader.getCurrentValue());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void transform(Blackhole blackhole) {
+    for (SalesforceRow record : records) {
+      blackhole.consume(transformer.transform(schema, record));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void read(Blackhole blackhole) throws IOException, InterruptedException {
+    RecordReader<Schema, SalesforceRow> reader =
+      new SalesforceRecordReaderWrapper(SOBJECT_NAME, SOBJECT_NAME_FIELD, newReader());
+    while (reader.nextKeyValue()) {
+      blackhole.consume(transformer.transform(reader.getCurrentKey(), reader.getCurrentValue()));
+    }
+    reader.close();
+  }
+
+  private SalesforceRecordReader newReader() throws IOException {
+    SalesforceRecordReader reader = new SalesforceRecordReader(schema);
+    reader.setupParser(new ByteArrayInputStream(csv));
+    return reader;
+  }
+
+  private static String getFieldName(int column) {
+    return column <= LONG_TEXT_AREAS ? "Description" + column + "__c" : "Field" + column + "__c";
+  }
+
+  /**
+   * Columns after Id are long text areas, followed by repeating text, number, date, datetime
+   * and checkbox fields.
+   */
+  private static Schema getFieldSchema(int column) {
+    if (column <= LONG_TEXT_AREAS) {
+      return Schema.of(Schema.Type.STRING);
+    }
+    switch (column % 5) {
+      case 1:
+        return Schema.of(Schema.Type.DOUBLE);
+      case 2:
+        return Schema.of(Schema.LogicalType.DATE);
+      case 3:
+        return Schema.of(Schema.LogicalType.TIMESTAMP_MICROS);
+      case 4:
+        return Schema.of(Schema.Type.BOOLEAN);
+      default:
+        return Schema.of(Schema.Type.STRING);
+    }
+  }
+
+  private static String getValue(int record, int column) {
+    if (column == 0) {
+      return String.format("006%015d", record);
+    }
+    if (column <= LONG_TEXT_AREAS) {
+      // text areas contain separators, quotes and line breaks, which have to be unescaped
+      String line = String.format("Line of record %d, with \"quoted\" text.\n", record);
+      return Strings.repeat(line, LONG_TEXT_AREA_LENGTH / line.length());
+    }
+    // every tenth value is empty, which is null in Bulk API CSV
+    if ((record + column) % 10 == 0) {
+      return "";
+    }
+    switch (column % 5) {
+      case 1:
+        return String.valueOf(record * 1.25 + column);
+      case 2:
+        return DATE.plusDays(record).toString();
+      case 3:
+        return DATETIME.plus(record, ChronoUnit.MINUTES).plusMillis(column).toString();
+      case 4:
+        return String.valueOf(record % 2 == 0);
+      default:
+        return String.format("Value %d of %d", column, record);
+    }
+  }
+
+  private static void appendRow(StringBuilder builder, List<String> values) {
+    builder.append(values.stream()
+                     .map(value -> "\"" + value.replace("\"", "\"\"") + "\"")
+                     .collect(Collectors.joining(",")));
+    builder.append('\n');
+  }
+
+  /**
+   * Record reader over records which were already parsed.
+   */
+  private static final class ListRecordReader extends RecordReader<Schema, SalesforceRow> {
+    private final Schema schema;
+    private final List<SalesforceRow> records;
+    private int index = -1;
+
+    private ListRecordReader(Schema schema, List<SalesforceRow> records) {
+      this.schema = schema;
+      this.records = records;
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {
+      // records are provided in constructor
+    }
+
+    @Override
+    public boolean nextKeyValue() {
+      return ++index < records.size();
+    }
+
+    @Override
+    public Schema getCurrentKey() {
+      return schema;
+    }
+
+    @Override
+    public SalesforceRow getCurrentValue() {
+      return records.get(index);
+    }
+
+    @Override
+    public float getProgress() {
+      return (float) (index + 1) / records.size();
+    }
+
+    @Override
+    public void close() {
+      // nothing to close
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchStateEnum;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Polls states of all batches of a Bulk API job with a single {@code getBatchInfoList} call per interval,
+ * which is shared by all readers of the job waiting in the JVM. There is no polling thread, one of the
+ * waiting readers makes the call, while others wait for it to publish the states. The call is made with the
+ * session of the reader that makes it, so that it is charged to the API call budget of that reader.
+ * <p/>
+ * Polling interval is reset to the minimum while Salesforce makes progress processing records of the job,
+ * and is doubled up to the maximum otherwise, including when the call fails, so that readers waiting on the
+ * job do not retry a failing call one right after another. Intervals are randomized, so that readers of different JVMs
+ * do not poll at the same time.
+ */
+public final class BulkJobPoller {
+
+  private static final long MIN_POLL_INTERVAL_MS = 500;
+  private static final long MAX_POLL_INTERVAL_MS = 10000;
+  /**
+   * Polling interval is randomly changed by up to this fraction
+   */
+  private static final double JITTER = 0.2;
+  /**
+   * Pollers of jobs which have waiting readers, guarded by itself
+   */
+  private static final Map<String, BulkJobPoller> POLLERS = new HashMap<>();
+
+  private final String jobId;
+  private final Lock lock = new ReentrantLock();
+  private final Condition updated = lock.newCondition();
+  private final Map<String, BatchInfo> batches = new HashMap<>();
+  private int waiters;
+  private boolean polling;
+  private long nextPollTime;
+  private long interval = MIN_POLL_INTERVAL_MS;
+  private long recordsProcessed = -1;
+
+  private BulkJobPoller(String jobId) {
+    this.jobId = jobId;
+  }
+
+  /**
+   * Waits until a batch is completed or failed.
+   *
+   * @param session Salesforce session
+   * @param jobId a job id
+   * @param batchId a batch id
+   * @param timeoutMs maximum time to wait
+   * @param metrics metrics to record polls made by the calling thread to
+   * @return completed or failed batch
+   * @throws AsyncApiException if there is an issue reading batches
+   * @throws InterruptedException wait interrupted
+   */
+  public static BatchInfo awaitBatch(SalesforceSession session, String jobId, String batchId, long timeoutMs,
+                                     SalesforceReadMetrics metrics) throws AsyncApiException, InterruptedException {
+    return awaitBatches(session, jobId, Collections.singletonList(batchId), timeoutMs, metrics).get(0);
+  }
+
+  /**
+   * Waits until all given batches of a job are completed or failed.
+   *
+   * @param session Salesforce session
+   * @param jobId a job id
+   * @param batchIds batch ids
+   * @param timeoutMs maximum time to wait for all batches
+   * @param metrics metrics to record polls made by the calling thread to
+   * @return completed or failed batches in the order of batch ids
+   * @throws AsyncApiException if there is an issue reading batches
+   * @throws InterruptedException wait interrupted
+   */
+  public static List<BatchInfo> awaitBatches(SalesforceSession session, String jobId, List<String> batchIds,
+                                             long timeoutMs, SalesforceReadMetrics metrics)
+    throws AsyncApiException, InterruptedException {
+    BulkJobPoller poller;
+    synchronized (POLLERS) {
+      poller = POLLERS.computeIfAbsent(jobId, BulkJobPoller::new);
+      poller.waiters++;
+    }
+    try {
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      List<BatchInfo> batches = new ArrayList<>(batchIds.size());
+      for (String batchId : batchIds) {
+        batches.add(poller.await(session, batchId, deadline, metrics));
+      }
+      return batches;
+    } finally {
+      synchronized (POLLERS) {
+        if (--poller.waiters == 0) {
+          POLLERS.remove(jobId);
+        }
+      }
+    }
+  }
+
+  private BatchInfo await(SalesforceSession session, String batchId, long deadline, SalesforceReadMetrics metrics)
+    throws AsyncApiException, InterruptedException {
+    lock.lock();
+    try {
+      while (true) {
+        BatchInfo info = batches.get(batchId);
+        if (info != null && (info.getState() == BatchStateEnum.Completed
+          || info.getState() == BatchStateEnum.Failed)) {
+          return info;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= deadline) {
+          throw new BulkAPIBatchException("Timeout waiting for batch results",
+                                          info == null ? createBatchInfo(batchId) : info);
+        }
+        if (!polling && now >= nextPollTime) {
+          poll(session, metrics);
+        } else {
+          long until = polling ? deadline : Math.min(deadline, nextPollTime);
+          updated.await(Math.max(1, until - now), TimeUnit.MILLISECONDS);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reads states of all batches of the job without holding the lock and publishes them to waiting readers.
+   */
+  private void poll(SalesforceSession session, SalesforceReadMetrics metrics) throws AsyncApiException {
+    polling = true;
+    BatchInfo[] list = null;
+    lock.unlock();
+    try {
+      list = session.callBulk(bulkConnection -> bulkConnection.getBatchInfoList(jobId)).getBatchInfo();
+      metrics.increment(SalesforceReadMetrics.BATCH_POLLS, 1);
+    } finally {
+      lock.lock();
+      polling = false;
+      if (list != null) {
+        update(list);
+      } else {
+        scheduleNextPoll(false);
+      }
+      updated.signalAll();
+    }
+  }
+
+  private void update(BatchInfo[] list) {
+    long processed = 0;
+    for (BatchInfo info : list) {
+      batches.put(info.getId(), info);
+      processed += info.getNumberRecordsProcessed();
+    }
+    scheduleNextPoll(processed > recordsProcessed);
+    recordsProcessed = processed;
+  }
+
+  private void scheduleNextPoll(boolean progressed) {
+    interval = progressed ? MIN_POLL_INTERVAL_MS : Math.min(MAX_POLL_INTERVAL_MS, interval * 2);
+    double jitter = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    nextPollTime = System.currentTimeMillis() + (long) (interval * jitter);
+  }
+
+  private BatchInfo createBatchInfo(String batchId) {
+    BatchInfo info = new BatchInfo();
+    info.setId(batchId);
+    info.setJobId(jobId);
+    return info;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Concatenates CSV results of a query, which Salesforce returns in several files or pages. Results are
+ * opened one after another, once the previous one is fully read. Each of them starts with a header,
+ * headers of all results but the first are skipped, so that the stream is parsed as a single CSV document.
+ */
+final class CsvResultsInputStream extends InputStream {
+
+  private final ResultSource source;
+  private InputStream current;
+  private boolean first = true;
+  private boolean done;
+
+  /**
+   * @param source opens next result
+   */
+  CsvResultsInputStream(ResultSource source) {
+    this.source = source;
+  }
+
+  @Override
+  public int read() throws IOException {
+    while (nextResult()) {
+      int b = current.read();
+      if (b != -1) {
+        return b;
+      }
+      closeCurrent();
+    }
+    return -1;
+  }
+
+  @Override
+  public int read(byte[] bytes, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (nextResult()) {
+      int read = current.read(bytes, off, len);
+      if (read > 0) {
+        return read;
+      }
+      closeCurrent();
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    done = true;
+    try {
+      closeCurrent();
+    } finally {
+      source.close();
+    }
+  }
+
+  /**
+   * Opens next result if the current one is fully read.
+   *
+   * @return false if there are no more results
+   */
+  private boolean nextResult() throws IOException {
+    if (current != null) {
+      return true;
+    }
+    if (done) {
+      return false;
+    }
+    InputStream next = source.next();
+    if (next == null) {
+      done = true;
+      return false;
+    }
+    if (!first) {
+      skipLine(next);
+    }
+    first = false;
+    current = next;
+    return true;
+  }
+
+  private void closeCurrent() throws IOException {
+    if (current != null) {
+      InputStream closed = current;
+      current = null;
+      closed.close();
+    }
+  }
+
+  private static void skipLine(InputStream in) throws IOException {
+    int b;
+    do {
+      b = in.read();
+    } while (b != -1 && b != '\n');
+  }
+
+  /**
+   * Source of query results.
+   */
+  @FunctionalInterface
+  interface ResultSource extends Closeable {
+
+    /**
+     * @return next result, or {@code null} if there are no more results
+     * @throws IOException if result cannot be opened
+     */
+    @Nullable
+    InputStream next() throws IOException;
+
+    /**
+     * Releases resources of results, which are not going to be read.
+     *
+     * @throws IOException if resources cannot be released
+     */
+    @Override
+    default void close() throws IOException {
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import javax.annotation.Nullable;
+
+/**
+ * Primary key chunking settings of a Bulk API query job. With PK chunking enabled Salesforce splits
+ * the query into batches by record Id ranges of the given size, which can be read in parallel.
+ */
+public final class PKChunkingDescriptor {
+
+  public static final String HEADER = "Sforce-Enable-PKChunking";
+  public static final int DEFAULT_CHUNK_SIZE = 100000;
+  public static final int MAX_CHUNK_SIZE = 250000;
+
+  private final int chunkSize;
+  @Nullable
+  private final String parent;
+
+  /**
+   * @param chunkSize number of records in a chunk
+   * @param parent parent object, required when querying sharing objects, for example Account for AccountShare
+   */
+  public PKChunkingDescriptor(int chunkSize, @Nullable String parent) {
+    this.chunkSize = chunkSize;
+    this.parent = parent;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  @Nullable
+  public String getParent() {
+    return parent;
+  }
+
+  /**
+   * @return value of {@link #HEADER} header, for example {@code chunkSize=100000; parent=Account}
+   */
+  public String getHeaderValue() {
+    return parent == null ? "chunkSize=" + chunkSize : String.format("chunkSize=%d; parent=%s", chunkSize, parent);
+  }
+
+  @Override
+  public String toString() {
+    return "PKChunkingDescriptor{" +
+      "chunkSize=" + chunkSize +
+      ", parent='" + parent + '\'' +
+      '}';
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Client-side range splitting settings of a query. Query is split into disjoint sub-queries, each selecting
+ * records which field value falls into a range between boundaries. Boundaries are spread evenly between
+ * the smallest and the largest field value.
+ * <p/>
+ * Unlike PK chunking, range splitting works for any object and filter, though ranges are even only
+ * if records are evenly distributed by the field value.
+ */
+public final class RangeSplitDescriptor {
+
+  public static final String FIELD_ID = "Id";
+  public static final String FIELD_SYSTEM_MODSTAMP = "SystemModstamp";
+  public static final String FIELD_LAST_MODIFIED_DATE = "LastModifiedDate";
+  public static final List<String> FIELDS = Arrays.asList(FIELD_SYSTEM_MODSTAMP, FIELD_LAST_MODIFIED_DATE, FIELD_ID);
+
+  /**
+   * Digits of Salesforce record Ids in the ascending order
+   */
+  private static final String ID_DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+  /**
+   * Length of case-sensitive record Id, longer Ids have a case-insensitive checksum suffix
+   */
+  private static final int ID_LENGTH = 15;
+  private static final BigInteger ID_BASE = BigInteger.valueOf(ID_DIGITS.length());
+
+  private final String field;
+  private final int splits;
+
+  /**
+   * @param field field to split by, one of {@link #FIELDS}
+   * @param splits maximum number of sub-queries
+   */
+  public RangeSplitDescriptor(String field, int splits) {
+    this.field = field;
+    this.splits = splits;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public int getSplits() {
+    return splits;
+  }
+
+  /**
+   * Calculates boundaries of the ranges between the smallest and the largest field value.
+   *
+   * @param min smallest field value
+   * @param max largest field value
+   * @return ascending SOQL literals of inner boundaries, empty if values cannot be split
+   */
+  public List<String> getBoundaries(String min, String max) {
+    return FIELD_ID.equals(field) ? getIdBoundaries(min, max) : getDatetimeBoundaries(min, max);
+  }
+
+  private List<String> getIdBoundaries(String min, String max) {
+    int length = Math.min(ID_LENGTH, Math.min(min.length(), max.length()));
+    BigInteger from = decodeId(min.substring(0, length));
+    BigInteger range = decodeId(max.substring(0, length)).subtract(from);
+
+    List<String> boundaries = new ArrayList<>();
+    BigInteger previous = from;
+    for (int i = 1; i < splits; i++) {
+      BigInteger boundary = from.add(range.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(splits)));
+      if (boundary.compareTo(previous) > 0) {
+        boundaries.add("'" + encodeId(boundary, length) + "'");
+        previous = boundary;
+      }
+    }
+    return boundaries;
+  }
+
+  private List<String> getDatetimeBoundaries(String min, String max) {
+    long from = Instant.parse(min).toEpochMilli();
+    long range = Instant.parse(max).toEpochMilli() - from;
+
+    List<String> boundaries = new ArrayList<>();
+    long previous = from;
+    for (int i = 1; i < splits; i++) {
+      long boundary = from + range * i / splits;
+      if (boundary > previous) {
+        boundaries.add(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(boundary)));
+        previous = boundary;
+      }
+    }
+    return boundaries;
+  }
+
+  private static BigInteger decodeId(String id) {
+    BigInteger value = BigInteger.ZERO;
+    for (char digit : id.toCharArray()) {
+      value = value.multiply(ID_BASE).add(BigInteger.valueOf(Math.max(0, ID_DIGITS.indexOf(digit))));
+    }
+    return value;
+  }
+
+  private static String encodeId(BigInteger value, int length) {
+    char[] id = new char[length];
+    for (int i = length - 1; i >= 0; i--) {
+      BigInteger[] quotientAndRemainder = value.divideAndRemainder(ID_BASE);
+      id[i] = ID_DIGITS.charAt(quotientAndRemainder[1].intValue());
+      value = quotientAndRemainder[0];
+    }
+    return new String(id);
+  }
+
+  @Override
+  public String toString() {
+    return "RangeSplitDescriptor{" +
+      "field='" + field + '\'' +
+      ", splits=" + splits +
+      '}';
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffer of a downloaded result, which is written once and then read once. Bytes are kept in memory chunks
+ * taken from a pool shared within JVM, bytes exceeding the memory limit are spilled to a local temporary file.
+ * Chunks are returned to the pool and the file is deleted once the buffer is released.
+ */
+final class ResultBuffer extends OutputStream {
+
+  static final int CHUNK_SIZE = 64 * 1024;
+  /**
+   * Maximum number of free chunks kept in the pool, the rest is left to garbage collector
+   */
+  private static final int MAX_POOLED_CHUNKS = 1024;
+  private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger POOLED = new AtomicInteger();
+
+  private final long memoryLimit;
+  private final List<byte[]> chunks = new ArrayList<>();
+  /**
+   * Number of bytes written to the last chunk
+   */
+  private int position = CHUNK_SIZE;
+  private long spilled;
+  private File spillFile;
+  private OutputStream spill;
+  private boolean released;
+
+  /**
+   * @param memoryLimit maximum number of bytes kept in memory
+   */
+  ResultBuffer(long memoryLimit) {
+    this.memoryLimit = memoryLimit;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] bytes, int off, int len) throws IOException {
+    while (len > 0) {
+      if (spill != null) {
+        spill.write(bytes, off, len);
+        spilled += len;
+        return;
+      }
+      if (position == CHUNK_SIZE) {
+        if ((long) (chunks.size() + 1) * CHUNK_SIZE > memoryLimit) {
+          spillFile = File.createTempFile("salesforce-result", ".csv");
+          spill = new BufferedOutputStream(new FileOutputStream(spillFile), CHUNK_SIZE);
+          continue;
+        }
+        chunks.add(acquireChunk());
+        position = 0;
+      }
+      int length = Math.min(len, CHUNK_SIZE - position);
+      System.arraycopy(bytes, off, chunks.get(chunks.size() - 1), position, length);
+      position += length;
+      off += length;
+      len -= length;
+    }
+  }
+
+  /**
+   * @return number of bytes spilled to the file
+   */
+  long getSpilled() {
+    return spilled;
+  }
+
+  /**
+   * Returns stream of the buffered bytes. Closing the stream releases the buffer.
+   *
+   * @return stream of written bytes
+   * @throws IOException if spill file cannot be opened
+   */
+  InputStream getInputStream() throws IOException {
+    if (spill != null) {
+      spill.close();
+    }
+    InputStream spillStream = spillFile == null ? null
+      : new BufferedInputStream(new FileInputStream(spillFile), CHUNK_SIZE);
+    return new InputStream() {
+      private int chunk;
+      private int offset;
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        while (chunk < chunks.size()) {
+          int length = Math.min(len, getChunkLength(chunk) - offset);
+          if (length > 0) {
+            System.arraycopy(chunks.get(chunk), offset, bytes, off, length);
+            offset += length;
+            return length;
+          }
+          chunk++;
+          offset = 0;
+        }
+        return spillStream == null ? -1 : spillStream.read(bytes, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (spillStream != null) {
+          spillStream.close();
+        }
+        release();
+      }
+    };
+  }
+
+  /**
+   * Returns memory chunks to the pool and deletes the spill file.
+   */
+  void release() throws IOException {
+    if (released) {
+      return;
+    }
+    released = true;
+    for (byte[] chunk : chunks) {
+      if (POOLED.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+        POOL.offer(chunk);
+      } else {
+        POOLED.decrementAndGet();
+      }
+    }
+    chunks.clear();
+    if (spill != null) {
+      spill.close();
+    }
+    if (spillFile != null && !spillFile.delete()) {
+      spillFile.deleteOnExit();
+    }
+  }
+
+  private int getChunkLength(int index) {
+    return index == chunks.size() - 1 ? position : CHUNK_SIZE;
+  }
+
+  private static byte[] acquireChunk() {
+    byte[] chunk = POOL.poll();
+    if (chunk == null) {
+      return new byte[CHUNK_SIZE];
+    }
+    POOLED.decrementAndGet();
+    return chunk;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+
+/**
+ * Downloads the next result of a query in background, while the current one is being parsed, so that
+ * network transfer and parsing overlap. The first result is streamed directly, each following one is
+ * buffered into a {@link ResultBuffer} by a thread of {@link SalesforceExecutor}.
+ * <p/>
+ * Time the reader spends waiting for results to arrive is recorded as
+ * {@link SalesforceReadMetrics#NETWORK_WAIT_TIME_MS}.
+ */
+public final class ResultPrefetcher implements CsvResultsInputStream.ResultSource {
+
+  public static final int DEFAULT_BUFFER_SIZE_MB = 64;
+  private static final long BUFFER_SIZE = 1024L * 1024L * Math.max(
+    0, Integer.getInteger(SalesforceConstants.SYSTEM_PROPERTY_PREFETCH_BUFFER_SIZE, DEFAULT_BUFFER_SIZE_MB));
+
+  private final CsvResultsInputStream.ResultSource source;
+  private final long memoryLimit;
+  private final SalesforceReadMetrics metrics;
+  private Future<ResultBuffer> prefetched;
+  private boolean started;
+  private volatile boolean closed;
+  /**
+   * Sub-millisecond waits are summed up in nanoseconds and recorded once the source is closed
+   */
+  private long networkWaitNanos;
+
+  private ResultPrefetcher(CsvResultsInputStream.ResultSource source, long memoryLimit,
+                           SalesforceReadMetrics metrics) {
+    this.source = source;
+    this.memoryLimit = memoryLimit;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Wraps the source, so that its results are prefetched, unless prefetching is disabled.
+   *
+   * @param source source of results
+   * @param metrics metrics to record network wait time and spilled bytes to
+   * @return prefetching source
+   */
+  static CsvResultsInputStream.ResultSource wrap(CsvResultsInputStream.ResultSource source,
+                                                 SalesforceReadMetrics metrics) {
+    return wrap(source, BUFFER_SIZE, metrics);
+  }
+
+  /**
+   * Wraps the source, so that its results are prefetched, unless prefetching is disabled.
+   *
+   * @param source source of results
+   * @param memoryLimit memory limit of a prefetched result in bytes, 0 disables prefetching
+   * @param metrics metrics to record network wait time and spilled bytes to
+   * @return prefetching source
+   */
+  @VisibleForTesting
+  static CsvResultsInputStream.ResultSource wrap(CsvResultsInputStream.ResultSource source, long memoryLimit,
+                                                 SalesforceReadMetrics metrics) {
+    return memoryLimit <= 0 ? source : new ResultPrefetcher(source, memoryLimit, metrics);
+  }
+
+  @Nullable
+  @Override
+  public InputStream next() throws IOException {
+    if (closed) {
+      return null;
+    }
+    long start = System.nanoTime();
+    InputStream result;
+    if (!started) {
+      started = true;
+      InputStream first = source.next();
+      result = first == null ? null : timeReads(first);
+    } else if (prefetched == null) {
+      result = null;
+    } else {
+      ResultBuffer buffer = await(prefetched);
+      prefetched = null;
+      result = buffer == null ? null : buffer.getInputStream();
+    }
+    networkWaitNanos += System.nanoTime() - start;
+    if (result != null) {
+      prefetched = SalesforceExecutor.submit(this::download);
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    metrics.addTime(SalesforceReadMetrics.NETWORK_WAIT_TIME_MS, networkWaitNanos);
+    if (prefetched != null && !prefetched.cancel(true) && !prefetched.isCancelled()) {
+      try {
+        ResultBuffer buffer = await(prefetched);
+        if (buffer != null) {
+          buffer.release();
+        }
+      } catch (IOException e) {
+        // failed download of a result, which is not going to be read, is not an error
+      }
+    }
+    prefetched = null;
+    source.close();
+  }
+
+  /**
+   * Downloads the next result into a buffer.
+   *
+   * @return buffered result, or {@code null} if there are no more results
+   */
+  @Nullable
+  private ResultBuffer download() throws IOException {
+    InputStream in = source.next();
+    if (in == null) {
+      return null;
+    }
+    ResultBuffer buffer = new ResultBuffer(memoryLimit);
+    try (InputStream result = in) {
+      byte[] bytes = new byte[ResultBuffer.CHUNK_SIZE];
+      int read;
+      while ((read = result.read(bytes)) != -1) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Result download is cancelled");
+        }
+        buffer.write(bytes, 0, read);
+      }
+    } catch (IOException | RuntimeException e) {
+      buffer.release();
+      throw e;
+    }
+    if (closed) {
+      // reader is closed before the download completed, nobody is going to read the buffer
+      buffer.release();
+      return null;
+    }
+    metrics.increment(SalesforceReadMetrics.BYTES_SPILLED, buffer.getSpilled());
+    return buffer;
+  }
+
+  @Nullable
+  private static ResultBuffer await(Future<ResultBuffer> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for result download");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to download result", e.getCause());
+    }
+  }
+
+  /**
+   * Wraps the stream, so that time spent reading it is recorded as network wait time.
+   */
+  private InputStream timeReads(InputStream in) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+          return super.read();
+        } finally {
+          networkWaitNanos += System.nanoTime() - start;
+        }
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        try {
+          return super.read(bytes, off, len);
+        } finally {
+          networkWaitNanos += System.nanoTime() - start;
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream of a downloaded result, which survives connection resets. Number of bytes consumed from the result
+ * is tracked, and when reading fails, the result is reopened at that position and reading continues.
+ * Since the result is reopened at the exact byte, rows already emitted are neither repeated nor lost.
+ * <p/>
+ * Reading fails only if the result cannot be reopened or read after several consecutive attempts.
+ */
+final class ResumableInputStream extends InputStream {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResumableInputStream.class);
+
+  /**
+   * Maximum number of consecutive attempts to resume reading without reading any bytes in between
+   */
+  static final int MAX_RESUMES = 3;
+  private static final long RESUME_BACKOFF_MS = 1000;
+
+  private final String name;
+  private final Opener opener;
+  private final SalesforceReadMetrics metrics;
+  private InputStream current;
+  private long position;
+  private int failures;
+
+  /**
+   * @param name name of the result used in logs
+   * @param in stream of the result opened at the beginning
+   * @param opener reopens the result at given position
+   * @param metrics metrics to record resumes to
+   */
+  ResumableInputStream(String name, InputStream in, Opener opener, SalesforceReadMetrics metrics) {
+    this.name = name;
+    this.current = in;
+    this.opener = opener;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int off, int len) throws IOException {
+    while (true) {
+      try {
+        if (current == null) {
+          current = opener.open(position);
+        }
+        int read = current.read(bytes, off, len);
+        if (read > 0) {
+          position += read;
+          failures = 0;
+        }
+        return read;
+      } catch (InterruptedIOException e) {
+        throw e;
+      } catch (IOException e) {
+        resume(e);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (current != null) {
+      InputStream closed = current;
+      current = null;
+      closed.close();
+    }
+  }
+
+  private void resume(IOException e) throws IOException {
+    closeQuietly();
+    if (++failures > MAX_RESUMES) {
+      throw new IOException(String.format("Failed to read result '%s' after %d attempts to resume at byte %d",
+                                          name, MAX_RESUMES, position), e);
+    }
+    LOG.warn("Failed to read result '{}' at byte {}, resuming, attempt {} of {}: {}",
+             name, position, failures, MAX_RESUMES, e.getMessage());
+    metrics.increment(SalesforceReadMetrics.RESULT_RESUMES, 1);
+    try {
+      TimeUnit.MILLISECONDS.sleep(RESUME_BACKOFF_MS * failures);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while resuming result " + name);
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException e) {
+      // connection is already broken
+    }
+  }
+
+  /**
+   * Opens result at a position.
+   */
+  @FunctionalInterface
+  interface Opener {
+
+    /**
+     * @param position number of bytes to skip from the beginning of the result
+     * @return stream of the result starting at the position
+     * @throws IOException if result cannot be opened
+     */
+    InputStream open(long position) throws IOException;
+  }
+}
@@ -18,7 +18,6 @@ package io.cdap.plugin.salesforce;
 import com.google.common.base.Preconditions;
 import com.sforce.soap.partner.Field;
 import com.sforce.soap.partner.FieldType;
-import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.ws.ConnectionException;
 import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
 import io.cdap.plugin.salesforce.parser.SalesforceQueryParser;
@@ -52,9 +51,8 @@ public class SObjectDescriptor {
   public static SObjectDescriptor fromName(String name,
                                            AuthenticatorCredentials credentials, Set<FieldType> typesToSkip)
     throws ConnectionException {
-    PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(credentials);
-    SObjectsDescribeResult describeResult = new SObjectsDescribeResult(
-      partnerConnection, Collections.singletonList(name));
+    SalesforceSession session = SalesforceConnectionUtil.getSession(credentials);
+    SObjectsDescribeResult describeResult = new SObjectsDescribeResult(session, Collections.singletonList(name));
     List<FieldDescriptor> fields = describeResult.getFields().stream()
       .filter(field -> !typesToSkip.contains(field.getType()))
       .map(FieldDescriptor::new)
@@ -19,7 +19,6 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.sforce.soap.partner.DescribeSObjectResult;
 import com.sforce.soap.partner.Field;
-import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.ws.ConnectionException;
 
 import java.util.ArrayList;
@@ -46,13 +45,14 @@ public class SObjectsDescribeResult {
   // key -> [sObject name], value -> [key -> field name,  value -> field]
   private final Map<String, Map<String, Field>> objectToFieldMap = new HashMap<>();
 
-  public SObjectsDescribeResult(PartnerConnection connection, Collection<String> sObjects) {
+  public SObjectsDescribeResult(SalesforceSession session, Collection<String> sObjects) {
 
     // split the given sObjects into smaller partitions to ensure we don't exceed the limitation
     Lists.partition(new ArrayList<>(sObjects), DESCRIBE_SOBJECTS_LIMIT).stream()
       .map(partition -> {
         try {
-          return connection.describeSObjects(partition.toArray(new String[0]));
+          String[] sObjectNames = partition.toArray(new String[0]);
+          return session.callSoap(connection -> connection.describeSObjects(sObjectNames));
         } catch (ConnectionException e) {
           throw new RuntimeException(e);
         }
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+/**
+ * Number of Salesforce API calls a run is allowed to make. The driver charges calls made while preparing splits
+ * and hands the rest out to the splits, each of which charges calls made by its reader against its own share.
+ * <p/>
+ * Budget is charged only by calls made through a session returned by {@link SalesforceSession#withBudget},
+ * so calls of other sources and runs sharing the JVM are not affected.
+ */
+public class SalesforceApiBudget {
+
+  public static final long UNLIMITED = -1;
+
+  private long remaining;
+
+  /**
+   * @param calls number of calls or {@link #UNLIMITED}
+   */
+  public SalesforceApiBudget(long calls) {
+    this.remaining = calls;
+  }
+
+  /**
+   * Charges a single call.
+   *
+   * @throws IllegalStateException if budget is exhausted
+   */
+  public synchronized void charge() {
+    if (remaining == UNLIMITED) {
+      return;
+    }
+    if (remaining <= 0) {
+      throw new IllegalStateException("Salesforce API call budget of the run is exhausted");
+    }
+    remaining--;
+  }
+
+  /**
+   * Takes the remaining calls away from this budget, so that they can be handed out to the splits.
+   *
+   * @return remaining number of calls or {@link #UNLIMITED}
+   */
+  public synchronized long reserve() {
+    long reserved = remaining;
+    if (remaining != UNLIMITED) {
+      remaining = 0;
+    }
+    return reserved;
+  }
+}
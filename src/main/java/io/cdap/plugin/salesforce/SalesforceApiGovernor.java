@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Governs Salesforce API calls made within JVM to a single Salesforce org, since the org shares its
+ * daily API limit and concurrent requests limit with other integrations.
+ * <p/>
+ * Governor caps number of in-flight calls. The cap is halved each time Salesforce rejects a call because
+ * of exceeded request limit and grows back by one after a series of successful calls. Rejected calls are
+ * retried with exponential backoff. Once the org used most of its daily API limit, according to
+ * {@code Sforce-Limit-Info} response header, calls are made one at a time. The header is read from every
+ * response received through {@link io.cdap.plugin.salesforce.transport.SalesforceHttpClient}, which sends
+ * all SOAP and Bulk API calls, batch polls included.
+ * <p/>
+ * Each attempt of a call is charged to the {@link SalesforceApiBudget} of the run the call is made for, if any.
+ * <p/>
+ * The cap is shared by all sources calling the org from the JVM, so it is set by system property
+ * {@link SalesforceConstants#SYSTEM_PROPERTY_MAX_CONCURRENT_CALLS}.
+ */
+public class SalesforceApiGovernor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceApiGovernor.class);
+
+  public static final int DEFAULT_MAX_CONCURRENT_CALLS = 8;
+
+  private static final int MAX_RETRIES = 5;
+  private static final long INITIAL_BACKOFF_MS = TimeUnit.SECONDS.toMillis(1);
+  private static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(1);
+  /**
+   * Share of the org daily API limit, after which calls are made one at a time.
+   */
+  private static final int THROTTLE_USAGE_PERCENT = 90;
+  private static final Pattern API_USAGE_PATTERN = Pattern.compile("(?:^|[,\\s])api-usage=(\\d+)/(\\d+)");
+
+  private static final ConcurrentMap<String, SalesforceApiGovernor> GOVERNORS = new ConcurrentHashMap<>();
+
+  private static final int MAX_CONCURRENT_CALLS = Math.max(
+    1, Integer.getInteger(SalesforceConstants.SYSTEM_PROPERTY_MAX_CONCURRENT_CALLS, DEFAULT_MAX_CONCURRENT_CALLS));
+
+  private final String host;
+  private int limit;
+  private int inFlight;
+  private int successes;
+  private boolean throttled;
+  private volatile long apiUsage;
+  private volatile long apiLimit;
+
+  @VisibleForTesting
+  SalesforceApiGovernor(String host) {
+    this.host = host;
+    this.limit = MAX_CONCURRENT_CALLS;
+  }
+
+  /**
+   * Returns governor for the Salesforce org served by given host.
+   *
+   * @param host Salesforce instance host
+   * @return governor shared within JVM
+   */
+  public static SalesforceApiGovernor forHost(String host) {
+    return GOVERNORS.computeIfAbsent(host, SalesforceApiGovernor::new);
+  }
+
+  /**
+   * Executes Salesforce API call, waiting for in-flight calls cap if needed.
+   * Retries call with backoff if Salesforce rejected it because of exceeded request limit.
+   *
+   * @param call Salesforce API call
+   * @param isLimitExceeded checks whether call failed because of exceeded request limit
+   * @param <T> call result type
+   * @param <E> call exception type
+   * @return call result
+   * @throws E if call failed
+   */
+  public <T, E extends Exception> T call(GovernedCall<T, E> call, Predicate<Exception> isLimitExceeded) throws E {
+    return call(call, isLimitExceeded, null);
+  }
+
+  /**
+   * Executes Salesforce API call, charging each attempt to the budget.
+   *
+   * @param call Salesforce API call
+   * @param isLimitExceeded checks whether call failed because of exceeded request limit
+   * @param budget budget of the run the call is made for, if {@code null} call is not charged
+   * @param <T> call result type
+   * @param <E> call exception type
+   * @return call result
+   * @throws E if call failed
+   * @throws IllegalStateException if budget is exhausted
+   */
+  public <T, E extends Exception> T call(GovernedCall<T, E> call, Predicate<Exception> isLimitExceeded,
+                                         @Nullable SalesforceApiBudget budget) throws E {
+    for (int attempt = 0; ; attempt++) {
+      if (budget != null) {
+        budget.charge();
+      }
+      acquire();
+      boolean limitExceeded = false;
+      try {
+        return call.call();
+      } catch (Exception e) {
+        if (!isLimitExceeded.test(e) || attempt >= MAX_RETRIES) {
+          throw e;
+        }
+        limitExceeded = true;
+        LOG.debug("Salesforce request limit exceeded, in-flight calls cap for '{}' is reduced", host, e);
+      } finally {
+        release(limitExceeded);
+      }
+      sleep(getBackoffMs(attempt));
+    }
+  }
+
+  /**
+   * Records org API usage reported by Salesforce.
+   *
+   * @param limitInfo value of {@code Sforce-Limit-Info} header, for example {@code api-usage=25/15000}
+   */
+  public void recordApiUsage(String limitInfo) {
+    Matcher matcher = API_USAGE_PATTERN.matcher(limitInfo);
+    if (!matcher.find()) {
+      return;
+    }
+    apiUsage = Long.parseLong(matcher.group(1));
+    apiLimit = Long.parseLong(matcher.group(2));
+    boolean throttle = apiUsage * 100 >= apiLimit * THROTTLE_USAGE_PERCENT;
+    synchronized (this) {
+      if (throttle && !throttled) {
+        LOG.warn("Salesforce org '{}' used {} of {} daily API calls, calls will be made one at a time",
+                 host, apiUsage, apiLimit);
+      }
+      throttled = throttle;
+      notifyAll();
+    }
+  }
+
+  public long getApiUsage() {
+    return apiUsage;
+  }
+
+  public long getApiLimit() {
+    return apiLimit;
+  }
+
+  @VisibleForTesting
+  synchronized int getLimit() {
+    return throttled ? 1 : limit;
+  }
+
+  @VisibleForTesting
+  static long getBackoffMs(int attempt) {
+    return Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(attempt, 16));
+  }
+
+  private synchronized void acquire() {
+    try {
+      while (inFlight >= getLimit()) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting to call Salesforce", e);
+    }
+    inFlight++;
+  }
+
+  private synchronized void release(boolean limitExceeded) {
+    inFlight--;
+    if (limitExceeded) {
+      limit = Math.max(1, limit / 2);
+      successes = 0;
+    } else if (limit < MAX_CONCURRENT_CALLS && ++successes >= limit) {
+      limit++;
+      successes = 0;
+    }
+    notifyAll();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while backing off from Salesforce", e);
+    }
+  }
+
+  /**
+   * Salesforce API call.
+   *
+   * @param <T> call result type
+   * @param <E> call exception type
+   */
+  @FunctionalInterface
+  public interface GovernedCall<T, E extends Exception> {
+    T call() throws E;
+  }
+}
@@ -17,7 +17,9 @@
 package io.cdap.plugin.salesforce;
 
 import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
 import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
 import com.sforce.async.BatchInfo;
 import com.sforce.async.BatchStateEnum;
 import com.sforce.async.BulkConnection;
@@ -26,14 +28,17 @@ import com.sforce.async.ContentType;
 import com.sforce.async.JobInfo;
 import com.sforce.async.OperationEnum;
 import com.sforce.async.QueryResultList;
+import io.cdap.plugin.salesforce.transport.PooledBulkConnection;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * Class which provides functions to submit jobs to bulk api and read resulting batches
@@ -45,91 +50,286 @@ public final class SalesforceBulkUtil {
    */
   private static final long GET_BATCH_WAIT_TIME_SECONDS = 600;
   /**
-   * Sleep time between polling the batch status
+   * Batch state is polled first after this time, polling interval is doubled after each poll
    */
-  private static final long GET_BATCH_RESULTS_SLEEP_MS = 500;
+  private static final long MIN_POLL_INTERVAL_MS = 500;
+  private static final long MAX_POLL_INTERVAL_MS = 10000;
+
+
   /**
-   * Number of tries while polling the batch status
+   * Create a new job using the Bulk API.
+   *
+   * @param session Salesforce session
+   * @param sObject sObject name
+   * @return The JobInfo for the new job.
+   * @throws AsyncApiException if there is an issue creating the job
    */
-  private static final long GET_BATCH_RESULTS_TRIES = GET_BATCH_WAIT_TIME_SECONDS * (1000 / GET_BATCH_RESULTS_SLEEP_MS);
-
+  public static JobInfo createJob(SalesforceSession session, String sObject) throws AsyncApiException {
+    return createJob(session, sObject, null);
+  }
 
   /**
    * Create a new job using the Bulk API.
    *
+   * @param session Salesforce session
+   * @param sObject sObject name
+   * @param pkChunking PK chunking settings, if {@code null} query is not chunked
    * @return The JobInfo for the new job.
    * @throws AsyncApiException if there is an issue creating the job
    */
-  public static JobInfo createJob(BulkConnection bulkConnection, String sObject) throws AsyncApiException {
+  public static JobInfo createJob(SalesforceSession session, String sObject,
+                                  @Nullable PKChunkingDescriptor pkChunking) throws AsyncApiException {
     JobInfo job = new JobInfo();
     job.setObject(sObject);
     job.setOperation(OperationEnum.query);
     job.setConcurrencyMode(ConcurrencyMode.Parallel);
     job.setContentType(ContentType.CSV);
-    job = bulkConnection.createJob(job);
-    Preconditions.checkState(job.getId() != null, "Couldn't get job ID. There was a problem in creating the " +
+    JobInfo createdJob = session.callBulk(bulkConnection -> pkChunking == null
+      ? bulkConnection.createJob(job)
+      : createPKChunkingConnection(session, pkChunking).createJob(job));
+    Preconditions.checkState(createdJob.getId() != null, "Couldn't get job ID. There was a problem in creating the " +
       "batch job");
-    return bulkConnection.getJobStatus(job.getId());
+    return session.callBulk(bulkConnection -> bulkConnection.getJobStatus(createdJob.getId()));
   }
 
   /**
    * Start batch job of reading a given guery result.
+   * <p/>
+   * If PK chunking is enabled, waits until Salesforce splits the query into chunk batches and returns
+   * them without the original batch, which is never processed.
    *
-   * @param bulkConnection bulk connection instance
+   * @param session Salesforce session
    * @param query a SOQL query
+   * @param pkChunking PK chunking settings, if {@code null} query is not chunked
+   * @param metrics metrics to record job creation time to
    * @return an array of batches
    * @throws AsyncApiException  if there is an issue creating the job
-   * @throws IOException failed to close the query
+   * @throws InterruptedException sleep interrupted while waiting for chunk batches
    */
-  public static BatchInfo[] runBulkQuery(BulkConnection bulkConnection, String query)
-    throws AsyncApiException, IOException {
+  public static BatchInfo[] runBulkQuery(SalesforceSession session, String query,
+                                         @Nullable PKChunkingDescriptor pkChunking, SalesforceReadMetrics metrics)
+    throws AsyncApiException, InterruptedException {
 
-    SObjectDescriptor sObjectDescriptor = SObjectDescriptor.fromQuery(query);
-    JobInfo job = createJob(bulkConnection, sObjectDescriptor.getName());
+    long start = System.nanoTime();
+    BatchInfo batch = submitQuery(session, query, pkChunking);
+    BatchInfo[] batches = pkChunking == null
+      ? getBatchInfoList(session, batch.getJobId())
+      : waitForChunkBatches(session, batch, metrics);
+    metrics.addTimeSince(SalesforceReadMetrics.JOB_CREATION_TIME_MS, start);
+    return batches;
+  }
 
-    try (ByteArrayInputStream bout = new ByteArrayInputStream(query.getBytes())) {
-      bulkConnection.createBatchFromStream(job, bout);
+  /**
+   * Start batch job of reading results of given queries on the same sObject. Each query is added to the job
+   * as a separate batch, so that Salesforce processes them in parallel.
+   *
+   * @param session Salesforce session
+   * @param queries SOQL queries
+   * @param metrics metrics to record job creation time to
+   * @return an array of batches in the order of queries
+   * @throws AsyncApiException  if there is an issue creating the job
+   */
+  public static BatchInfo[] runBulkQueries(SalesforceSession session, List<String> queries,
+                                           SalesforceReadMetrics metrics) throws AsyncApiException {
+    long start = System.nanoTime();
+    SObjectDescriptor sObjectDescriptor = SObjectDescriptor.fromQuery(queries.get(0));
+    JobInfo job = createJob(session, sObjectDescriptor.getName());
+
+    BatchInfo[] batches = new BatchInfo[queries.size()];
+    for (int i = 0; i < batches.length; i++) {
+      batches[i] = createBatch(session, job, queries.get(i));
     }
+    metrics.addTimeSince(SalesforceReadMetrics.JOB_CREATION_TIME_MS, start);
+    return batches;
+  }
+
+  /**
+   * Wait until all given batches of a job succeed, or throw an exception.
+   *
+   * @param session Salesforce session
+   * @param jobId a job id
+   * @param batchIds batch ids
+   * @param metrics metrics to record polls and wait time to
+   * @return completed batches in the order of batch ids
+   *
+   * @throws AsyncApiException  if there is an issue reading batches
+   * @throws InterruptedException sleep interrupted
+   */
+  public static List<BatchInfo> waitForBatches(SalesforceSession session, String jobId, List<String> batchIds,
+                                               SalesforceReadMetrics metrics)
+    throws AsyncApiException, InterruptedException {
 
-    return bulkConnection.getBatchInfoList(job.getId()).getBatchInfo();
+    long start = System.nanoTime();
+    List<BatchInfo> batches = BulkJobPoller.awaitBatches(
+      session, jobId, batchIds, TimeUnit.SECONDS.toMillis(GET_BATCH_WAIT_TIME_SECONDS), metrics);
+    for (BatchInfo info : batches) {
+      if (info.getState() == BatchStateEnum.Failed) {
+        throw new BulkAPIBatchException("Batch failed", info);
+      }
+    }
+    metrics.addTimeSince(SalesforceReadMetrics.BATCH_WAIT_TIME_MS, start);
+    return batches;
   }
 
   /**
-   * Wait until a batch with given batchId succeeds, or throw an exception
+   * Returns results of a completed batch. Result files are downloaded one after another as the stream is read,
+   * the next one is prefetched while the current one is read.
    *
-   * @param bulkConnection bulk connection instance
+   * @param session Salesforce session
    * @param jobId a job id
    * @param batchId a batch id
+   * @param metrics metrics to record result files and downloaded bytes to
    * @return an input stream which represents a current batch response, which is a bunch of lines in csv format.
    *
-   * @throws AsyncApiException  if there is an issue creating the job
-   * @throws InterruptedException sleep interrupted
+   * @throws AsyncApiException  if there is an issue reading the result list
    */
-  public static InputStream waitForBatchResults(BulkConnection bulkConnection, String jobId, String batchId)
-    throws AsyncApiException, InterruptedException {
+  public static InputStream getBatchResults(SalesforceSession session, String jobId, String batchId,
+                                            SalesforceReadMetrics metrics) throws AsyncApiException {
+    Iterator<String> results = Arrays.asList(getBatchResultIds(session, jobId, batchId)).iterator();
+    return new CsvResultsInputStream(ResultPrefetcher.wrap(() -> {
+      if (!results.hasNext()) {
+        return null;
+      }
+      String resultId = results.next();
+      try {
+        return getBatchResult(session, jobId, batchId, resultId, metrics);
+      } catch (AsyncApiException e) {
+        throw new IOException(String.format("Failed to download result '%s' of batch '%s'", resultId, batchId), e);
+      }
+    }, metrics));
+  }
+
+  /**
+   * @param session Salesforce session
+   * @param jobId a job id
+   * @param batchId id of a completed batch
+   * @return ids of result files of the batch
+   * @throws AsyncApiException  if there is an issue reading the result list
+   */
+  public static String[] getBatchResultIds(SalesforceSession session, String jobId, String batchId)
+    throws AsyncApiException {
+    QueryResultList list = session.callBulk(bulkConnection -> bulkConnection.getQueryResultList(jobId, batchId));
+    return list.getResult();
+  }
+
+  /**
+   * Returns a single result file of a completed batch. If connection is reset while the result is read,
+   * the result is requested again starting at the first byte which was not read yet.
+   *
+   * @param session Salesforce session
+   * @param jobId a job id
+   * @param batchId a batch id
+   * @param resultId a result id
+   * @param metrics metrics to record result files, resumes and downloaded bytes to
+   * @return an input stream of the result file in csv format, starting with header
+   * @throws AsyncApiException  if there is an issue requesting the result
+   */
+  public static InputStream getBatchResult(SalesforceSession session, String jobId, String batchId,
+                                           String resultId, SalesforceReadMetrics metrics) throws AsyncApiException {
+    InputStream result = session.callBulk(bulkConnection ->
+                                            bulkConnection.getQueryResultStream(jobId, batchId, resultId));
+    metrics.increment(SalesforceReadMetrics.RESULT_FILES, 1);
+    ResumableInputStream.Opener opener = position -> {
+      try {
+        return session.callBulk(bulkConnection -> bulkConnection instanceof PooledBulkConnection
+          ? ((PooledBulkConnection) bulkConnection).getQueryResultStream(jobId, batchId, resultId, position)
+          : skip(bulkConnection.getQueryResultStream(jobId, batchId, resultId), position));
+      } catch (AsyncApiException e) {
+        throw new IOException(String.format("Failed to reopen result '%s' of batch '%s'", resultId, batchId), e);
+      }
+    };
+    return metrics.countDownloaded(new ResumableInputStream(resultId, result, opener, metrics));
+  }
+
+  private static InputStream skip(InputStream in, long position) throws AsyncApiException {
+    try {
+      ByteStreams.skipFully(in, position);
+      return in;
+    } catch (IOException e) {
+      throw new AsyncApiException("Failed to skip already read part of the result",
+                                  AsyncExceptionCode.ClientInputError, e);
+    }
+  }
+
+  /**
+   * Creates a job for the query and adds the query to it as a batch.
+   *
+   * @param session Salesforce session
+   * @param query a SOQL query
+   * @param pkChunking PK chunking settings, if {@code null} query is not chunked
+   * @return created batch
+   * @throws AsyncApiException if there is an issue creating the job
+   */
+  private static BatchInfo submitQuery(SalesforceSession session, String query,
+                                       @Nullable PKChunkingDescriptor pkChunking) throws AsyncApiException {
+    SObjectDescriptor sObjectDescriptor = SObjectDescriptor.fromQuery(query);
+    JobInfo job = createJob(session, sObjectDescriptor.getName(), pkChunking);
+    return createBatch(session, job, query);
+  }
 
-    BatchInfo info = null;
-    for (int i = 0; i < GET_BATCH_RESULTS_TRIES; i++) {
-      info = bulkConnection.getBatchInfo(jobId, batchId);
+  private static BatchInfo createBatch(SalesforceSession session, JobInfo job, String query)
+    throws AsyncApiException {
+    byte[] queryBytes = query.getBytes();
+    return session.callBulk(bulkConnection ->
+                              bulkConnection.createBatchFromStream(job, new ByteArrayInputStream(queryBytes)));
+  }
 
-      if (info.getState() == BatchStateEnum.Completed) {
-        QueryResultList list =
-          bulkConnection.getQueryResultList(jobId, batchId);
-        String[] resultIds = list.getResult();
+  private static BatchInfo[] getBatchInfoList(SalesforceSession session, String jobId) throws AsyncApiException {
+    return session.callBulk(bulkConnection -> bulkConnection.getBatchInfoList(jobId)).getBatchInfo();
+  }
+
+  /**
+   * Waits until Salesforce creates chunk batches of PK chunking job, which is signaled by the original
+   * batch moving to {@link BatchStateEnum#NotProcessed} state.
+   *
+   * @param session Salesforce session
+   * @param original batch created for the query
+   * @param metrics metrics to record polls to
+   * @return chunk batches
+   * @throws AsyncApiException if there is an issue reading batches
+   * @throws InterruptedException sleep interrupted
+   */
+  private static BatchInfo[] waitForChunkBatches(SalesforceSession session, BatchInfo original,
+                                                 SalesforceReadMetrics metrics)
+    throws AsyncApiException, InterruptedException {
 
-        List<InputStream> streams = new ArrayList<>(resultIds.length);
-        for (String resultId : resultIds) {
-          streams.add(bulkConnection.getQueryResultStream(jobId, batchId, resultId));
-        }
+    BatchInfo info = original;
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(GET_BATCH_WAIT_TIME_SECONDS);
+    long interval = MIN_POLL_INTERVAL_MS;
+    while (true) {
+      BatchInfo[] batches = getBatchInfoList(session, original.getJobId());
+      metrics.increment(SalesforceReadMetrics.BATCH_POLLS, 1);
+      info = Stream.of(batches)
+        .filter(batch -> batch.getId().equals(original.getId()))
+        .findFirst()
+        .orElse(info);
 
-        return new SequenceInputStream(Collections.enumeration(streams));
+      if (info.getState() == BatchStateEnum.NotProcessed) {
+        return Stream.of(batches)
+          .filter(batch -> !batch.getId().equals(original.getId()))
+          .toArray(BatchInfo[]::new);
       } else if (info.getState() == BatchStateEnum.Failed) {
-
-        throw new BulkAPIBatchException("Batch failed", info);
-      } else {
-        Thread.sleep(GET_BATCH_RESULTS_SLEEP_MS);
+        throw new BulkAPIBatchException("PK chunking failed", info);
+      } else if (info.getState() == BatchStateEnum.Completed) {
+        // Salesforce processed the query without chunking
+        return new BatchInfo[] {info};
+      } else if (System.currentTimeMillis() + interval > deadline) {
+        throw new BulkAPIBatchException("Timeout waiting for PK chunking batches", info);
       }
+      Thread.sleep(interval);
+      interval = Math.min(MAX_POLL_INTERVAL_MS, interval * 2);
     }
-    throw new BulkAPIBatchException("Timeout waiting for batch results", info);
+  }
+
+  /**
+   * Creates Bulk API connection, which enables PK chunking of the jobs it creates.
+   * A separate connection is used, since headers apply to all requests sent through a connection.
+   */
+  private static BulkConnection createPKChunkingConnection(SalesforceSession session,
+                                                           PKChunkingDescriptor pkChunking)
+    throws AsyncApiException {
+    BulkConnection connection = new PooledBulkConnection(session.getConnectorConfig());
+    connection.addHeader(PKChunkingDescriptor.HEADER, pkChunking.getHeaderValue());
+    return connection;
   }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.io.ByteStreams;
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
+import io.cdap.plugin.salesforce.transport.BulkV2Connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Class which provides functions to submit query jobs to Bulk API 2.0 and read their results.
+ */
+public final class SalesforceBulkV2Util {
+
+  public static final String JOB_COMPLETE = "JobComplete";
+  public static final String FAILED = "Failed";
+  public static final String ABORTED = "Aborted";
+
+  /**
+   * Bulk API 2.0 processes large queries in several chunks, so the job is given more time than a v1 batch
+   */
+  private static final long GET_JOB_WAIT_TIME_MS = TimeUnit.HOURS.toMillis(1);
+  /**
+   * Job state is polled first after this time, polling interval is doubled after each poll
+   */
+  private static final long MIN_POLL_INTERVAL_MS = 500;
+  private static final long MAX_POLL_INTERVAL_MS = 10000;
+  /**
+   * Errors which mean that Bulk API 2.0 query jobs are not available for the org or the object
+   */
+  private static final Set<AsyncExceptionCode> UNSUPPORTED_CODES = EnumSet.of(
+    AsyncExceptionCode.InvalidUrl, AsyncExceptionCode.InvalidVersion, AsyncExceptionCode.FeatureNotEnabled,
+    AsyncExceptionCode.InvalidEntity);
+
+  private SalesforceBulkV2Util() {
+  }
+
+  /**
+   * Creates query job, which Salesforce starts processing immediately.
+   *
+   * @param session Salesforce session
+   * @param query a SOQL query
+   * @param metrics metrics to record job creation time to
+   * @return created job
+   * @throws AsyncApiException if there is an issue creating the job
+   */
+  public static BulkV2Connection.JobInfo createQueryJob(SalesforceSession session, String query,
+                                                        SalesforceReadMetrics metrics) throws AsyncApiException {
+    long start = System.nanoTime();
+    BulkV2Connection.JobInfo job = session.callBulkV2(connection -> connection.createQueryJob(query));
+    metrics.addTimeSince(SalesforceReadMetrics.JOB_CREATION_TIME_MS, start);
+    return job;
+  }
+
+  /**
+   * Wait until a job with given jobId completes, or throw an exception.
+   *
+   * @param session Salesforce session
+   * @param jobId a job id
+   * @param metrics metrics to record polls and wait time to
+   * @return completed job
+   * @throws AsyncApiException if there is an issue reading the job
+   * @throws InterruptedException sleep interrupted
+   */
+  public static BulkV2Connection.JobInfo waitForJob(SalesforceSession session, String jobId,
+                                                    SalesforceReadMetrics metrics)
+    throws AsyncApiException, InterruptedException {
+
+    long start = System.nanoTime();
+    long deadline = System.currentTimeMillis() + GET_JOB_WAIT_TIME_MS;
+    long interval = MIN_POLL_INTERVAL_MS;
+    BulkV2Connection.JobInfo info;
+    while (true) {
+      info = session.callBulkV2(connection -> connection.getQueryJob(jobId));
+      metrics.increment(SalesforceReadMetrics.BATCH_POLLS, 1);
+      if (JOB_COMPLETE.equals(info.getState())) {
+        break;
+      } else if (FAILED.equals(info.getState()) || ABORTED.equals(info.getState())) {
+        throw new IllegalStateException(String.format("Bulk API 2.0 job failed. JobId='%s', Reason='%s'",
+                                                      jobId, info.getErrorMessage()));
+      } else if (System.currentTimeMillis() + interval > deadline) {
+        throw new IllegalStateException(String.format("Timeout waiting for Bulk API 2.0 job results. "
+                                                        + "JobId='%s', State='%s'", jobId, info.getState()));
+      }
+      Thread.sleep(interval);
+      interval = Math.min(MAX_POLL_INTERVAL_MS, interval * 2);
+    }
+    metrics.addTimeSince(SalesforceReadMetrics.BATCH_WAIT_TIME_MS, start);
+    return info;
+  }
+
+  /**
+   * Returns results of a completed job. Result pages are requested one after another as the stream is read,
+   * the next one is prefetched while the current one is read.
+   *
+   * @param session Salesforce session
+   * @param jobId a job id
+   * @param maxRecords maximum number of records in a result page, if {@code null} Salesforce chooses the page size
+   * @param metrics metrics to record pages and downloaded bytes to
+   * @return an input stream of job results in csv format
+   */
+  public static InputStream getJobResults(SalesforceSession session, String jobId, @Nullable Integer maxRecords,
+                                          SalesforceReadMetrics metrics) {
+    return metrics.countDownloaded(new CsvResultsInputStream(
+      ResultPrefetcher.wrap(new ResultPages(session, jobId, maxRecords, metrics), metrics)));
+  }
+
+  /**
+   * Checks if Salesforce rejected the call because Bulk API 2.0 query jobs are not available for the org,
+   * its API version or the queried object.
+   *
+   * @param e exception thrown by Bulk API 2.0 call
+   * @return true if Bulk API 2.0 is not supported, false otherwise
+   */
+  public static boolean isUnsupported(AsyncApiException e) {
+    return UNSUPPORTED_CODES.contains(e.getExceptionCode());
+  }
+
+  /**
+   * Requests result pages of a completed job, each page points to the next one with a locator.
+   */
+  private static final class ResultPages implements CsvResultsInputStream.ResultSource {
+    private final SalesforceSession session;
+    private final String jobId;
+    private final Integer maxRecords;
+    private final SalesforceReadMetrics metrics;
+    private String locator;
+    private boolean last;
+
+    private ResultPages(SalesforceSession session, String jobId, @Nullable Integer maxRecords,
+                        SalesforceReadMetrics metrics) {
+      this.session = session;
+      this.jobId = jobId;
+      this.maxRecords = maxRecords;
+      this.metrics = metrics;
+    }
+
+    @Nullable
+    @Override
+    public InputStream next() throws IOException {
+      if (last) {
+        return null;
+      }
+      String pageLocator = locator;
+      BulkV2Connection.ResultPage page = getPage(pageLocator);
+      metrics.increment(SalesforceReadMetrics.RESULT_FILES, 1);
+      locator = page.getNextLocator();
+      last = locator == null;
+
+      // page is requested again by its locator if connection is reset, already read bytes are skipped
+      ResumableInputStream.Opener opener = position -> {
+        InputStream content = getPage(pageLocator).getContent();
+        ByteStreams.skipFully(content, position);
+        return content;
+      };
+      return new ResumableInputStream(jobId + "/" + pageLocator, page.getContent(), opener, metrics);
+    }
+
+    private BulkV2Connection.ResultPage getPage(@Nullable String pageLocator) throws IOException {
+      try {
+        return session.callBulkV2(connection -> connection.getQueryResults(jobId, pageLocator, maxRecords));
+      } catch (AsyncApiException e) {
+        throw new IOException(String.format("Failed to download results of job '%s' at locator '%s'",
+                                            jobId, pageLocator), e);
+      }
+    }
+  }
+}
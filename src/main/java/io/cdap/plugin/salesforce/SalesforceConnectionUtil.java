@@ -15,18 +15,29 @@
  */
 package io.cdap.plugin.salesforce;
 
+import com.google.common.base.Strings;
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
 import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.fault.ApiFault;
+import com.sforce.soap.partner.fault.ExceptionCode;
 import com.sforce.ws.ConnectionException;
-import com.sforce.ws.ConnectorConfig;
+import io.cdap.plugin.salesforce.authenticator.AuthResponse;
 import io.cdap.plugin.salesforce.authenticator.Authenticator;
 import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
 import org.apache.hadoop.conf.Configuration;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Utility class which provides methods to establish connection with Salesforce.
  */
 public class SalesforceConnectionUtil {
 
+  private static final ConcurrentMap<AuthenticatorCredentials, SalesforceSession> SESSIONS =
+    new ConcurrentHashMap<>();
+
   /**
    * Based on given Salesforce credentials, attempt to establish {@link PartnerConnection}.
    * This is mainly used to obtain sObject describe results.
@@ -37,8 +48,95 @@ public class SalesforceConnectionUtil {
    */
   public static PartnerConnection getPartnerConnection(AuthenticatorCredentials credentials)
     throws ConnectionException {
-    ConnectorConfig connectorConfig = Authenticator.createConnectorConfig(credentials);
-    return new PartnerConnection(connectorConfig);
+    return getSession(credentials).getPartnerConnection();
+  }
+
+  /**
+   * Returns Salesforce session for given credentials. Session is shared within JVM,
+   * so Salesforce login is performed only once for the same credentials.
+   *
+   * @param credentials Salesforce credentials
+   * @return Salesforce session
+   */
+  public static SalesforceSession getSession(AuthenticatorCredentials credentials) {
+    return SESSIONS.computeIfAbsent(credentials, key -> {
+      AuthResponse authResponse = login(key);
+      return new SalesforceSession(key, authResponse.getAccessToken(), authResponse.getInstanceUrl());
+    });
+  }
+
+  /**
+   * Returns Salesforce session based on given Hadoop configuration. Session id, instance url and the time
+   * the session was issued at are set by the driver, so that record readers do not need to log in to Salesforce
+   * and refresh the session before it expires.
+   * If they are absent, logs in using the credentials from the configuration.
+   *
+   * @param conf hadoop job configuration
+   * @return Salesforce session
+   */
+  public static SalesforceSession getSession(Configuration conf) {
+    AuthenticatorCredentials credentials = getAuthenticatorCredentials(conf);
+    String sessionId = conf.get(SalesforceConstants.CONFIG_SESSION_ID);
+    String instanceUrl = conf.get(SalesforceConstants.CONFIG_INSTANCE_URL);
+    if (Strings.isNullOrEmpty(sessionId) || Strings.isNullOrEmpty(instanceUrl)) {
+      return getSession(credentials);
+    }
+    long issuedAt = conf.getLong(SalesforceConstants.CONFIG_SESSION_ISSUED_AT, System.currentTimeMillis());
+    return SESSIONS.computeIfAbsent(credentials, key -> new SalesforceSession(key, sessionId, instanceUrl, issuedAt));
+  }
+
+  /**
+   * Logs in to Salesforce with given credentials.
+   *
+   * @param credentials Salesforce credentials
+   * @return response with issued session id and instance url
+   */
+  public static AuthResponse login(AuthenticatorCredentials credentials) {
+    try {
+      return Authenticator.oauthLogin(credentials);
+    } catch (Exception e) {
+      throw new RuntimeException("Connection to salesforce with plugin configurations failed", e);
+    }
+  }
+
+  /**
+   * Checks if Salesforce rejected the call because the session is expired or invalid.
+   *
+   * @param e exception thrown by Bulk API call
+   * @return true if session was rejected, false otherwise
+   */
+  public static boolean isInvalidSession(AsyncApiException e) {
+    return e.getExceptionCode() == AsyncExceptionCode.InvalidSessionId;
+  }
+
+  /**
+   * Checks if Salesforce rejected the call because the session is expired or invalid.
+   *
+   * @param e exception thrown by SOAP API call
+   * @return true if session was rejected, false otherwise
+   */
+  public static boolean isInvalidSession(ConnectionException e) {
+    return e instanceof ApiFault && ((ApiFault) e).getExceptionCode() == ExceptionCode.INVALID_SESSION_ID;
+  }
+
+  /**
+   * Checks if Salesforce rejected the call because the org exceeded its Bulk API limits.
+   *
+   * @param e exception thrown by Bulk API call
+   * @return true if limit was exceeded, false otherwise
+   */
+  public static boolean isLimitExceeded(AsyncApiException e) {
+    return e.getExceptionCode() == AsyncExceptionCode.ExceededQuota;
+  }
+
+  /**
+   * Checks if Salesforce rejected the call because the org exceeded its API request limits.
+   *
+   * @param e exception thrown by SOAP API call
+   * @return true if limit was exceeded, false otherwise
+   */
+  public static boolean isLimitExceeded(ConnectionException e) {
+    return e instanceof ApiFault && ((ApiFault) e).getExceptionCode() == ExceptionCode.REQUEST_LIMIT_EXCEEDED;
   }
 
   /**
@@ -34,6 +34,19 @@ public class SalesforceConstants {
   public static final String CONFIG_USERNAME = "mapred.salesforce.user";
   public static final String CONFIG_CONSUMER_SECRET = "mapred.salesforce.consumer.secret";
   public static final String CONFIG_LOGIN_URL = "mapred.salesforce.login.url";
+  public static final String CONFIG_SESSION_ID = "mapred.salesforce.session.id";
+  public static final String CONFIG_INSTANCE_URL = "mapred.salesforce.instance.url";
+  public static final String CONFIG_SESSION_ISSUED_AT = "mapred.salesforce.session.issued.at";
+
+  /**
+   * Java system properties of settings shared by all Salesforce sources running in the JVM
+   */
+  public static final String SYSTEM_PROPERTY_HTTP_MAX_CONNECTIONS = "salesforce.http.maxConnections";
+  public static final String SYSTEM_PROPERTY_HTTP_CONNECT_TIMEOUT = "salesforce.http.connectTimeout";
+  public static final String SYSTEM_PROPERTY_HTTP_READ_TIMEOUT = "salesforce.http.readTimeout";
+  public static final String SYSTEM_PROPERTY_MAX_CONCURRENT_CALLS = "salesforce.maxConcurrentCalls";
+  public static final String SYSTEM_PROPERTY_PREFETCH_BUFFER_SIZE = "salesforce.prefetchBufferSize";
+  public static final String SYSTEM_PROPERTY_IO_THREADS = "salesforce.ioThreads";
 
   public static final int RANGE_FILTER_MIN_VALUE = 0;
   public static final int SOQL_MAX_LENGTH = 20000;
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Executor of blocking Salesforce calls made in parallel within JVM, such as preparing splits of queries,
+ * prefetching results and retrieving records of wide objects. Number of threads is sized for network I/O rather
+ * than for the number of cores, and is set by system property {@link SalesforceConstants#SYSTEM_PROPERTY_IO_THREADS}.
+ * Threads are virtual when running on JDK 21 or later, platform daemon threads otherwise.
+ * <p/>
+ * Parallel work is not run on {@link java.util.concurrent.ForkJoinPool#commonPool()}, so that blocking calls
+ * are not limited by the number of cores and do not starve other users of the common pool.
+ */
+public final class SalesforceExecutor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceExecutor.class);
+
+  public static final int DEFAULT_THREADS = 32;
+  private static final int THREADS = Math.max(
+    1, Integer.getInteger(SalesforceConstants.SYSTEM_PROPERTY_IO_THREADS, DEFAULT_THREADS));
+  private static final String THREAD_NAME_PREFIX = "salesforce-io-";
+  private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+    THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), createThreadFactory());
+
+  static {
+    EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
+  private SalesforceExecutor() {
+  }
+
+  /**
+   * Submits the call to run in background.
+   *
+   * @param call blocking call
+   * @return future of the call result
+   */
+  public static <T> Future<T> submit(Callable<T> call) {
+    return EXECUTOR.submit(call);
+  }
+
+  /**
+   * Applies the function to each element in parallel and waits for all results. The calling thread applies
+   * the function as well to elements not yet taken by the executor, so that nested calls do not exhaust
+   * the threads.
+   *
+   * @param elements elements to apply the function to
+   * @param function blocking function
+   * @return results in the order of elements
+   * @throws RuntimeException thrown by the function for any of the elements
+   */
+  public static <T, R> List<R> map(List<T> elements, Function<? super T, ? extends R> function) {
+    return map(EXECUTOR, elements, function);
+  }
+
+  /**
+   * Applies the function to each element in parallel on the executor and waits for all results.
+   *
+   * @param executor executor of blocking calls
+   * @param elements elements to apply the function to
+   * @param function blocking function
+   * @return results in the order of elements
+   */
+  @VisibleForTesting
+  static <T, R> List<R> map(Executor executor, List<T> elements, Function<? super T, ? extends R> function) {
+    if (elements.size() <= 1) {
+      List<R> results = new ArrayList<>(elements.size());
+      elements.forEach(element -> results.add(function.apply(element)));
+      return results;
+    }
+
+    List<FutureTask<R>> tasks = new ArrayList<>(elements.size());
+    for (T element : elements) {
+      FutureTask<R> task = new FutureTask<>(() -> function.apply(element));
+      tasks.add(task);
+      executor.execute(task);
+    }
+    try {
+      // task already run by a thread of the executor is not run again
+      tasks.forEach(FutureTask::run);
+      List<R> results = new ArrayList<>(tasks.size());
+      for (FutureTask<R> task : tasks) {
+        results.add(task.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for parallel calls", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } finally {
+      tasks.forEach(task -> task.cancel(true));
+    }
+  }
+
+  /**
+   * Creates factory of virtual threads if the JVM supports them, of platform daemon threads otherwise.
+   * Virtual threads are created through reflection, since the plugin is built for Java 8.
+   */
+  private static ThreadFactory createThreadFactory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, THREAD_NAME_PREFIX, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.debug("Virtual threads are not available, platform threads are used for Salesforce calls");
+      return new ThreadFactoryBuilder().setNameFormat(THREAD_NAME_PREFIX + "%d").setDaemon(true).build();
+    }
+  }
+}
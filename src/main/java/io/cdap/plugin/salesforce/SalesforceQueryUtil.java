@@ -18,6 +18,7 @@ package io.cdap.plugin.salesforce;
 import io.cdap.plugin.salesforce.parser.SalesforceQueryParser;
 
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,6 +32,10 @@ public class SalesforceQueryUtil {
   private static final String FROM = " FROM ";
   private static final String WHERE = " WHERE ";
   private static final String AND = " AND ";
+  private static final String ORDER_BY = " ORDER BY ";
+  private static final String LIMIT_ONE = " LIMIT 1";
+  private static final String ASC = " ASC";
+  private static final String DESC = " DESC";
 
 
   private static final String FIELD_LAST_MODIFIED_DATE = "LastModifiedDate";
@@ -84,6 +89,95 @@ public class SalesforceQueryUtil {
     return SELECT + FIELD_ID + " " + fromStatement;
   }
 
+  /**
+   * Splits fields of a wide object query into column groups, so that each group is selected by a query
+   * under SOQL length limit. Each group query selects {@link #FIELD_ID} as well, keeps filters of initial query
+   * and orders records by {@link #FIELD_ID}, so that results of group queries can be joined by record Id.
+   * <p/>
+   * Example, if `CloseDate` does not fit into the first group:
+   * <ul>
+   *  <li>Initial query: `SELECT Name, Amount, CloseDate FROM Opportunity WHERE IsClosed = true`</li>
+   *  <li>Result queries: `SELECT Id,Name,Amount FROM Opportunity WHERE IsClosed = true ORDER BY Id` and
+   *  `SELECT Id,CloseDate FROM Opportunity WHERE IsClosed = true ORDER BY Id`</li>
+   * </ul>
+   *
+   * @param query initial query
+   * @return column group queries
+   */
+  public static List<String> createColumnGroupQueries(String query) {
+    String suffix = " " + SalesforceQueryParser.getFilterStatement(query) + ORDER_BY + FIELD_ID;
+    List<String> queries = new ArrayList<>();
+    StringBuilder group = new StringBuilder(SELECT).append(FIELD_ID);
+    for (String field : SObjectDescriptor.fromQuery(query).getFieldsNames()) {
+      if (FIELD_ID.equals(field)) {
+        continue;
+      }
+      if (group.length() > SELECT.length() + FIELD_ID.length()
+        && !isQueryUnderLengthLimit(group + "," + field + suffix)) {
+        queries.add(group.append(suffix).toString());
+        group = new StringBuilder(SELECT).append(FIELD_ID);
+      }
+      group.append(",").append(field);
+    }
+    queries.add(group.append(suffix).toString());
+    return queries;
+  }
+
+  /**
+   * Creates query which selects the smallest or the largest field value among records of initial query.
+   * <p/>
+   * Example:
+   * <ul>
+   *  <li>Initial query: `SELECT Name FROM Opportunity WHERE Name LIKE 'S_%' ORDER BY Name`</li>
+   *  <li>Result query: `SELECT Id FROM Opportunity WHERE Name LIKE 'S_%' ORDER BY Id ASC LIMIT 1`</li>
+   * </ul>
+   *
+   * @param query initial query
+   * @param field field name
+   * @param ascending true to select the smallest value, false to select the largest
+   * @return boundary query
+   */
+  public static String createBoundaryQuery(String query, String field, boolean ascending) {
+    String filterStatement = SalesforceQueryParser.getFilterStatement(query);
+    return SELECT + field + " " + filterStatement + ORDER_BY + field + (ascending ? ASC : DESC) + LIMIT_ONE;
+  }
+
+  /**
+   * Splits initial query into disjoint queries by field value ranges. The first query selects records
+   * with values less than the first boundary, the last one selects records with values greater than or equal
+   * to the last boundary, so that together queries select the same records as initial query.
+   * <p/>
+   * Example for `2019-01-01T00:00:00Z` boundary:
+   * <ul>
+   *  <li>Initial query: `SELECT Name FROM Opportunity WHERE Name LIKE 'S_%'`</li>
+   *  <li>Result queries: `SELECT Name FROM Opportunity WHERE (Name LIKE 'S_%')
+   *  AND (SystemModstamp < 2019-01-01T00:00:00Z)` and `SELECT Name FROM Opportunity WHERE (Name LIKE 'S_%')
+   *  AND (SystemModstamp >= 2019-01-01T00:00:00Z)`</li>
+   * </ul>
+   *
+   * @param query initial query
+   * @param field field name
+   * @param boundaries ascending SOQL literals of range boundaries
+   * @return range queries, initial query if there are no boundaries
+   */
+  public static List<String> createRangeQueries(String query, String field, List<String> boundaries) {
+    List<String> queries = new ArrayList<>(boundaries.size() + 1);
+    for (int i = 0; i <= boundaries.size(); i++) {
+      StringBuilder condition = new StringBuilder();
+      if (i > 0) {
+        condition.append(field).append(" ").append(GREATER_THAN_OR_EQUAL).append(" ").append(boundaries.get(i - 1));
+      }
+      if (i < boundaries.size()) {
+        if (condition.length() > 0) {
+          condition.append(AND);
+        }
+        condition.append(field).append(" ").append(LESS_THAN).append(" ").append(boundaries.get(i));
+      }
+      queries.add(condition.length() == 0 ? query : SalesforceQueryParser.addCondition(query, condition.toString()));
+    }
+    return queries;
+  }
+
   /**
    * Generates SObject query filter based on provided values.
    *
@@ -0,0 +1,272 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import io.cdap.cdap.etl.api.StageContext;
+import io.cdap.cdap.etl.api.StageMetrics;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Timers and counters of a Salesforce read, one per stage of the read: login, job creation, waiting
+ * for batch results, download, parsing and SOAP retrieve calls of wide objects.
+ * <p/>
+ * Record readers collect their own metrics and publish them as Hadoop counters of {@link #GROUP} group
+ * once closed. Hadoop counters are not shown by Spark, so readers also add their metrics to readers of the run
+ * within JVM, which the source reports as CDAP stage metrics. Metrics collected in the driver are registered
+ * per run, so that the source can write a summary of the run when it finishes.
+ */
+public class SalesforceReadMetrics {
+
+  public static final String GROUP = "Salesforce";
+
+  public static final String LOGIN_TIME_MS = "login.time.ms";
+  public static final String SCHEMA_TIME_MS = "schema.time.ms";
+  public static final String JOB_CREATION_TIME_MS = "job.creation.time.ms";
+  public static final String SPLITS = "splits";
+  public static final String SPLITS_REUSED = "splits.reused";
+  public static final String SPLITS_CACHED = "splits.cached";
+  public static final String BATCH_POLLS = "batch.polls";
+  public static final String BATCH_WAIT_TIME_MS = "batch.wait.time.ms";
+  public static final String RESULT_FILES = "result.files";
+  public static final String RESULT_RESUMES = "result.resumes";
+  public static final String BYTES_DOWNLOADED = "bytes.downloaded";
+  public static final String BYTES_SPILLED = "bytes.spilled";
+  public static final String NETWORK_WAIT_TIME_MS = "network.wait.time.ms";
+  public static final String ROWS_PARSED = "rows.parsed";
+  public static final String PARSE_TIME_MS = "parse.time.ms";
+  public static final String RETRIEVE_CALLS = "retrieve.calls";
+  public static final String RETRIEVE_TIME_MS = "retrieve.time.ms";
+  public static final String CONVERSION_TIME_MS = "conversion.time.ms";
+
+  /**
+   * Interval, at which the source reports metrics of readers closed meanwhile as stage metrics
+   */
+  public static final long READERS_REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private static final Gson GSON = new Gson();
+  private static final int[] PERCENTILES = {50, 95, 99};
+  private static final ConcurrentMap<String, SalesforceReadMetrics> RUNS = new ConcurrentHashMap<>();
+  /**
+   * Metrics of record readers closed within JVM per run, which were not reported as stage metrics yet
+   */
+  private static final ConcurrentMap<String, SalesforceReadMetrics> READERS = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+  private final List<Long> retrieveLatencies = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Registers metrics collected in the driver for the given run, until {@link #finishRun} is called.
+   *
+   * @param runId run identifier
+   * @return metrics shared within JVM
+   */
+  public static SalesforceReadMetrics startRun(String runId) {
+    return RUNS.computeIfAbsent(runId, id -> new SalesforceReadMetrics());
+  }
+
+  /**
+   * Returns metrics collected in the driver for the given run. Metrics are not registered here, so that
+   * a JVM which did not start the run, and thus never finishes it, does not keep them.
+   *
+   * @param runId run identifier
+   * @return metrics shared within JVM, or metrics which are not registered if the run was not started in this JVM
+   */
+  public static SalesforceReadMetrics forRun(@Nullable String runId) {
+    SalesforceReadMetrics metrics = runId == null ? null : RUNS.get(runId);
+    return metrics == null ? new SalesforceReadMetrics() : metrics;
+  }
+
+  /**
+   * Unregisters metrics collected in the driver for the given run.
+   *
+   * @param runId run identifier
+   * @return metrics of the run
+   */
+  public static SalesforceReadMetrics finishRun(String runId) {
+    SalesforceReadMetrics metrics = RUNS.remove(runId);
+    return metrics == null ? new SalesforceReadMetrics() : metrics;
+  }
+
+  /**
+   * Returns identifier of the run of the stage, which is the same in the driver and in the executors.
+   *
+   * @param context stage context
+   * @return run identifier
+   */
+  public static String getRunId(StageContext context) {
+    return String.join(":", context.getNamespace(), context.getPipelineName(), context.getStageName(),
+                       String.valueOf(context.getLogicalStartTime()));
+  }
+
+  /**
+   * Adds metrics of a closed record reader to metrics of readers of the run, which are reported as
+   * stage metrics by {@link #reportReaders}.
+   *
+   * @param runId run identifier, if {@code null} metrics are not added
+   */
+  public void addToReaders(@Nullable String runId) {
+    if (runId == null) {
+      return;
+    }
+    // compute is atomic with removal of the run by reportReaders, so metrics are reported exactly once
+    READERS.compute(runId, (id, readers) -> {
+      SalesforceReadMetrics merged = readers == null ? new SalesforceReadMetrics() : readers;
+      counters.forEach((name, value) -> merged.increment(name, value.get()));
+      return merged;
+    });
+  }
+
+  /**
+   * Reports metrics of record readers of the run closed within JVM since the last report as stage metrics.
+   * Latency percentiles of retrieve calls are not reported, since they cannot be summed up across reports.
+   *
+   * @param runId run identifier
+   * @param stageMetrics stage metrics of the source
+   */
+  public static void reportReaders(String runId, StageMetrics stageMetrics) {
+    drainReaders(runId).forEach((name, value) -> {
+      // stage metrics count by int
+      for (long left = value; left > 0; left -= Integer.MAX_VALUE) {
+        stageMetrics.count(name, (int) Math.min(left, Integer.MAX_VALUE));
+      }
+    });
+  }
+
+  /**
+   * Removes metrics of record readers of the run closed within JVM.
+   *
+   * @param runId run identifier
+   * @return counters and timers of the readers
+   */
+  @VisibleForTesting
+  static Map<String, Long> drainReaders(String runId) {
+    SalesforceReadMetrics readers = READERS.remove(runId);
+    return readers == null ? Collections.emptyMap() : readers.getSummary();
+  }
+
+  public void increment(String name, long delta) {
+    counters.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+  }
+
+  /**
+   * Adds time passed since given start to the timer.
+   *
+   * @param name timer name
+   * @param startNanos start time in {@link System#nanoTime()} units
+   */
+  public void addTimeSince(String name, long startNanos) {
+    addTime(name, System.nanoTime() - startNanos);
+  }
+
+  public void addTime(String name, long nanos) {
+    increment(name, TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+
+  /**
+   * Records latency of a single SOAP retrieve call.
+   *
+   * @param startNanos start time of the call in {@link System#nanoTime()} units
+   */
+  public void recordRetrieve(long startNanos) {
+    long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    retrieveLatencies.add(latencyMs);
+    increment(RETRIEVE_CALLS, 1);
+    increment(RETRIEVE_TIME_MS, latencyMs);
+  }
+
+  public long get(String name) {
+    AtomicLong counter = counters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  /**
+   * Wraps the stream, so that bytes read from it are counted as downloaded.
+   *
+   * @param in downloaded stream
+   * @return counting stream
+   */
+  public InputStream countDownloaded(InputStream in) {
+    AtomicLong downloaded = counters.computeIfAbsent(BYTES_DOWNLOADED, key -> new AtomicLong());
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+          downloaded.incrementAndGet();
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) throws IOException {
+        int read = super.read(bytes, off, len);
+        if (read > 0) {
+          downloaded.addAndGet(read);
+        }
+        return read;
+      }
+    };
+  }
+
+  /**
+   * Adds collected counters and timers to Hadoop counters of the task.
+   *
+   * @param context task context
+   */
+  public void publish(TaskAttemptContext context) {
+    counters.forEach((name, value) -> context.getCounter(GROUP, name).increment(value.get()));
+  }
+
+  /**
+   * @return counters, timers and retrieve latency percentiles sorted by name
+   */
+  public Map<String, Long> getSummary() {
+    Map<String, Long> summary = new TreeMap<>();
+    counters.forEach((name, value) -> summary.put(name, value.get()));
+    List<Long> latencies;
+    synchronized (retrieveLatencies) {
+      latencies = new ArrayList<>(retrieveLatencies);
+    }
+    if (!latencies.isEmpty()) {
+      Collections.sort(latencies);
+      for (int percentile : PERCENTILES) {
+        int index = (int) Math.ceil(percentile / 100.0 * latencies.size()) - 1;
+        summary.put(String.format("retrieve.latency.p%d.ms", percentile), latencies.get(Math.max(0, index)));
+      }
+    }
+    return summary;
+  }
+
+  public String toJson() {
+    return GSON.toJson(getSummary());
+  }
+}
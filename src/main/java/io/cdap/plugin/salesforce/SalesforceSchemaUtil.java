@@ -19,7 +19,6 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.sforce.soap.partner.Field;
 import com.sforce.soap.partner.FieldType;
-import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.ws.ConnectionException;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
@@ -76,8 +75,8 @@ public class SalesforceSchemaUtil {
    */
   public static Schema getSchema(AuthenticatorCredentials credentials, SObjectDescriptor sObjectDescriptor)
     throws ConnectionException {
-    PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(credentials);
-    SObjectsDescribeResult describeResult = new SObjectsDescribeResult(partnerConnection,
+    SalesforceSession session = SalesforceConnectionUtil.getSession(credentials);
+    SObjectsDescribeResult describeResult = new SObjectsDescribeResult(session,
       sObjectDescriptor.getAllParentObjects());
 
     return getSchemaWithFields(sObjectDescriptor, describeResult);
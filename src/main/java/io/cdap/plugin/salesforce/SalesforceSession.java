@@ -0,0 +1,333 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.BulkConnection;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import io.cdap.plugin.salesforce.authenticator.AuthResponse;
+import io.cdap.plugin.salesforce.authenticator.Authenticator;
+import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
+import io.cdap.plugin.salesforce.transport.BulkV2Connection;
+import io.cdap.plugin.salesforce.transport.PooledBulkConnection;
+import io.cdap.plugin.salesforce.transport.RetrieveConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Salesforce session shared by all connections created for the same credentials within JVM.
+ * Connections handed out by the session stay valid for its whole lifetime, since session id is
+ * updated in place when the session is refreshed. Session is refreshed proactively before it expires
+ * and on demand, when Salesforce rejects it.
+ * <p/>
+ * Calls of a run are charged to its {@link SalesforceApiBudget} through a view of the session returned by
+ * {@link #withBudget}, which shares connections and session id with the session.
+ */
+public class SalesforceSession {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceSession.class);
+
+  /**
+   * Salesforce session timeout can be configured down to 30 minutes, so session is refreshed before that.
+   */
+  private static final long SESSION_REFRESH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(25);
+
+  private final AuthenticatorCredentials credentials;
+  private final ConnectorConfig connectorConfig;
+  private final PartnerConnection partnerConnection;
+  private final BulkConnection bulkConnection;
+  private final BulkV2Connection bulkV2Connection;
+  private final RetrieveConnection retrieveConnection;
+  /**
+   * Session shared within JVM, which holds the instance url and is refreshed; this session unless it is a view
+   */
+  private final SalesforceSession shared;
+  @Nullable
+  private final SalesforceApiBudget budget;
+  private volatile String instanceUrl;
+  private volatile long issuedAt;
+
+  SalesforceSession(AuthenticatorCredentials credentials, String sessionId, String instanceUrl) {
+    this(credentials, sessionId, instanceUrl, System.currentTimeMillis());
+  }
+
+  /**
+   * @param credentials credentials the session is refreshed with
+   * @param sessionId session id issued by Salesforce
+   * @param instanceUrl url of Salesforce instance
+   * @param issuedAt time in milliseconds, when the session id was issued
+   */
+  SalesforceSession(AuthenticatorCredentials credentials, String sessionId, String instanceUrl, long issuedAt) {
+    this.credentials = credentials;
+    this.instanceUrl = instanceUrl;
+    this.connectorConfig = Authenticator.createConnectorConfig(sessionId, instanceUrl);
+    try {
+      this.partnerConnection = new PartnerConnection(connectorConfig);
+      this.bulkConnection = new PooledBulkConnection(connectorConfig);
+      this.bulkV2Connection = new BulkV2Connection(connectorConfig);
+      this.retrieveConnection = new RetrieveConnection(connectorConfig);
+    } catch (ConnectionException | AsyncApiException e) {
+      throw new RuntimeException("There was issue communicating with Salesforce", e);
+    }
+    this.issuedAt = issuedAt;
+    this.shared = this;
+    this.budget = null;
+  }
+
+  private SalesforceSession(SalesforceSession shared, SalesforceApiBudget budget) {
+    this.credentials = shared.credentials;
+    this.connectorConfig = shared.connectorConfig;
+    this.partnerConnection = shared.partnerConnection;
+    this.bulkConnection = shared.bulkConnection;
+    this.bulkV2Connection = shared.bulkV2Connection;
+    this.retrieveConnection = shared.retrieveConnection;
+    this.shared = shared;
+    this.budget = budget;
+  }
+
+  /**
+   * Returns a view of the session, calls made through which are charged to the budget.
+   *
+   * @param budget API call budget of the run
+   * @return session view sharing connections with this session
+   */
+  public SalesforceSession withBudget(SalesforceApiBudget budget) {
+    return new SalesforceSession(shared, budget);
+  }
+
+  public AuthenticatorCredentials getCredentials() {
+    return credentials;
+  }
+
+  public ConnectorConfig getConnectorConfig() {
+    refreshIfExpiring();
+    return connectorConfig;
+  }
+
+  public String getSessionId() {
+    refreshIfExpiring();
+    return connectorConfig.getSessionId();
+  }
+
+  public String getInstanceUrl() {
+    refreshIfExpiring();
+    return shared.instanceUrl;
+  }
+
+  /**
+   * Returns time in milliseconds, when the current session id was issued.
+   */
+  public long getIssuedAt() {
+    refreshIfExpiring();
+    return shared.issuedAt;
+  }
+
+  public PartnerConnection getPartnerConnection() {
+    refreshIfExpiring();
+    return partnerConnection;
+  }
+
+  public BulkConnection getBulkConnection() {
+    refreshIfExpiring();
+    return bulkConnection;
+  }
+
+  /**
+   * Executes Bulk API call through the org {@link SalesforceApiGovernor}.
+   * If Salesforce rejects the session, refreshes it and retries the call once.
+   *
+   * @param call Bulk API call
+   * @param <T> call result type
+   * @return call result
+   * @throws AsyncApiException if call failed
+   */
+  public <T> T callBulk(BulkCall<T> call) throws AsyncApiException {
+    String sessionId = getSessionId();
+    try {
+      return governBulk(call);
+    } catch (AsyncApiException e) {
+      if (!SalesforceConnectionUtil.isInvalidSession(e)) {
+        throw e;
+      }
+      refresh(sessionId);
+      return governBulk(call);
+    }
+  }
+
+  /**
+   * Executes Bulk API 2.0 call through the org {@link SalesforceApiGovernor}.
+   * If Salesforce rejects the session, refreshes it and retries the call once.
+   *
+   * @param call Bulk API 2.0 call
+   * @param <T> call result type
+   * @return call result
+   * @throws AsyncApiException if call failed
+   */
+  public <T> T callBulkV2(BulkV2Call<T> call) throws AsyncApiException {
+    String sessionId = getSessionId();
+    try {
+      return governBulk(bulkConnection -> call.call(bulkV2Connection));
+    } catch (AsyncApiException e) {
+      if (!SalesforceConnectionUtil.isInvalidSession(e)) {
+        throw e;
+      }
+      refresh(sessionId);
+      return governBulk(bulkConnection -> call.call(bulkV2Connection));
+    }
+  }
+
+  /**
+   * Executes SOAP API call through the org {@link SalesforceApiGovernor}.
+   * If Salesforce rejects the session, refreshes it and retries the call once.
+   *
+   * @param call SOAP API call
+   * @param <T> call result type
+   * @return call result
+   * @throws ConnectionException if call failed
+   */
+  public <T> T callSoap(SoapCall<T> call) throws ConnectionException {
+    String sessionId = getSessionId();
+    try {
+      return governSoap(call);
+    } catch (ConnectionException e) {
+      if (!SalesforceConnectionUtil.isInvalidSession(e)) {
+        throw e;
+      }
+      refresh(sessionId);
+      return governSoap(call);
+    }
+  }
+
+  /**
+   * Executes SOAP API retrieve call of {@link RetrieveConnection} through the org {@link SalesforceApiGovernor}.
+   * If Salesforce rejects the session, refreshes it and retries the call once.
+   *
+   * @param call SOAP API retrieve call
+   * @param <T> call result type
+   * @return call result
+   * @throws ConnectionException if call failed
+   */
+  public <T> T callRetrieve(RetrieveCall<T> call) throws ConnectionException {
+    String sessionId = getSessionId();
+    try {
+      return governSoap(partnerConnection -> call.call(retrieveConnection));
+    } catch (ConnectionException e) {
+      if (!SalesforceConnectionUtil.isInvalidSession(e)) {
+        throw e;
+      }
+      refresh(sessionId);
+      return governSoap(partnerConnection -> call.call(retrieveConnection));
+    }
+  }
+
+  private <T> T governBulk(BulkCall<T> call) throws AsyncApiException {
+    return getGovernor().call(() -> call.call(bulkConnection), e -> e instanceof AsyncApiException
+      && SalesforceConnectionUtil.isLimitExceeded((AsyncApiException) e), budget);
+  }
+
+  private <T> T governSoap(SoapCall<T> call) throws ConnectionException {
+    return getGovernor().call(() -> call.call(partnerConnection), e -> e instanceof ConnectionException
+      && SalesforceConnectionUtil.isLimitExceeded((ConnectionException) e), budget);
+  }
+
+  private SalesforceApiGovernor getGovernor() {
+    return SalesforceApiGovernor.forHost(URI.create(shared.instanceUrl).getHost());
+  }
+
+  /**
+   * Logs in to Salesforce again, unless session was already refreshed by other thread.
+   *
+   * @param rejectedSessionId session id rejected by Salesforce
+   */
+  void refresh(String rejectedSessionId) {
+    synchronized (shared) {
+      if (Objects.equals(rejectedSessionId, connectorConfig.getSessionId())) {
+        LOG.debug("Salesforce session was rejected, logging in again");
+        shared.renew(SalesforceConnectionUtil.login(credentials));
+      }
+    }
+  }
+
+  private void refreshIfExpiring() {
+    if (System.currentTimeMillis() - shared.issuedAt < SESSION_REFRESH_INTERVAL_MS) {
+      return;
+    }
+    synchronized (shared) {
+      if (System.currentTimeMillis() - shared.issuedAt >= SESSION_REFRESH_INTERVAL_MS) {
+        LOG.debug("Salesforce session is about to expire, logging in again");
+        shared.renew(SalesforceConnectionUtil.login(credentials));
+      }
+    }
+  }
+
+  private void renew(AuthResponse authResponse) {
+    ConnectorConfig renewed = Authenticator.createConnectorConfig(authResponse.getAccessToken(),
+                                                                  authResponse.getInstanceUrl());
+    connectorConfig.setSessionId(renewed.getSessionId());
+    connectorConfig.setRestEndpoint(renewed.getRestEndpoint());
+    connectorConfig.setServiceEndpoint(renewed.getServiceEndpoint());
+    partnerConnection.setSessionHeader(renewed.getSessionId());
+    instanceUrl = authResponse.getInstanceUrl();
+    issuedAt = System.currentTimeMillis();
+  }
+
+  /**
+   * Call to Salesforce Bulk API.
+   *
+   * @param <T> call result type
+   */
+  @FunctionalInterface
+  public interface BulkCall<T> {
+    T call(BulkConnection bulkConnection) throws AsyncApiException;
+  }
+
+  /**
+   * Call to Salesforce Bulk API 2.0.
+   *
+   * @param <T> call result type
+   */
+  @FunctionalInterface
+  public interface BulkV2Call<T> {
+    T call(BulkV2Connection bulkV2Connection) throws AsyncApiException;
+  }
+
+  /**
+   * Call to Salesforce SOAP API.
+   *
+   * @param <T> call result type
+   */
+  @FunctionalInterface
+  public interface SoapCall<T> {
+    T call(PartnerConnection partnerConnection) throws ConnectionException;
+  }
+
+  /**
+   * Call to Salesforce SOAP API retrieve.
+   *
+   * @param <T> call result type
+   */
+  @FunctionalInterface
+  public interface RetrieveCall<T> {
+    T call(RetrieveConnection retrieveConnection) throws ConnectionException;
+  }
+}
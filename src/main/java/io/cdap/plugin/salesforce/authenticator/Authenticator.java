@@ -20,8 +20,8 @@ import com.google.common.base.Strings;
 import com.google.gson.Gson;
 import com.sforce.ws.ConnectorConfig;
 import io.cdap.plugin.salesforce.SalesforceConstants;
-import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.util.ssl.SslContextFactory;
+import io.cdap.plugin.salesforce.transport.PooledHttpTransport;
+import io.cdap.plugin.salesforce.transport.SalesforceHttpClient;
 
 /**
  * Authentication to Salesforce via oauth2
@@ -40,24 +40,40 @@ public class Authenticator {
   public static ConnectorConfig createConnectorConfig(AuthenticatorCredentials credentials) {
     try {
       AuthResponse authResponse = oauthLogin(credentials);
-      ConnectorConfig connectorConfig = new ConnectorConfig();
-      connectorConfig.setSessionId(authResponse.getAccessToken());
-      String apiVersion = SalesforceConstants.API_VERSION;
-      String restEndpoint = String.format("%s/services/async/%s", authResponse.getInstanceUrl(), apiVersion);
-      String serviceEndPoint = String.format("%s/services/Soap/u/%s", authResponse.getInstanceUrl(), apiVersion);
-      connectorConfig.setRestEndpoint(restEndpoint);
-      connectorConfig.setServiceEndpoint(serviceEndPoint);
-      // This should only be false when doing debugging.
-      connectorConfig.setCompression(true);
-      // Set this to true to see HTTP requests and responses on stdout
-      connectorConfig.setTraceMessage(false);
-
-      return connectorConfig;
+      return createConnectorConfig(authResponse.getAccessToken(), authResponse.getInstanceUrl());
     } catch (Exception e) {
       throw new RuntimeException("Connection to salesforce with plugin configurations failed", e);
     }
   }
 
+  /**
+   * Creates a connectorConfig for an already issued session, so no login request is sent to salesforce.
+   *
+   * @param sessionId session id (oauth2 access token)
+   * @param instanceUrl url of the salesforce instance the session was issued for
+   *
+   * @return ConnectorConfig which can be used to create BulkConnection and PartnerConnection
+   */
+  public static ConnectorConfig createConnectorConfig(String sessionId, String instanceUrl) {
+    ConnectorConfig connectorConfig = new ConnectorConfig();
+    connectorConfig.setSessionId(sessionId);
+    String apiVersion = SalesforceConstants.API_VERSION;
+    String restEndpoint = String.format("%s/services/async/%s", instanceUrl, apiVersion);
+    String serviceEndPoint = String.format("%s/services/Soap/u/%s", instanceUrl, apiVersion);
+    connectorConfig.setRestEndpoint(restEndpoint);
+    connectorConfig.setServiceEndpoint(serviceEndPoint);
+    // This should only be false when doing debugging.
+    connectorConfig.setCompression(true);
+    // Set this to true to see HTTP requests and responses on stdout
+    connectorConfig.setTraceMessage(false);
+    // keep connections alive and reuse them across calls instead of opening a new connection per call
+    connectorConfig.setTransport(PooledHttpTransport.class);
+    connectorConfig.setConnectionTimeout(SalesforceHttpClient.getConnectTimeoutMs());
+    connectorConfig.setReadTimeout(SalesforceHttpClient.getReadTimeoutMs());
+
+    return connectorConfig;
+  }
+
   /**
    * Authenticate via oauth2 to salesforce and return response to auth request.
    *
@@ -66,26 +82,19 @@ public class Authenticator {
    * @return AuthResponse response to http request
    */
   public static AuthResponse oauthLogin(AuthenticatorCredentials credentials) throws Exception {
-    SslContextFactory sslContextFactory = new SslContextFactory();
-    HttpClient httpClient = new HttpClient(sslContextFactory);
-    try {
-      httpClient.start();
-      String response = httpClient.POST(credentials.getLoginUrl()).param("grant_type", "password")
-        .param("client_id", credentials.getConsumerKey())
-        .param("client_secret", credentials.getConsumerSecret())
-        .param("username", credentials.getUsername())
-        .param("password", credentials.getPassword()).send().getContentAsString();
-
-      AuthResponse authResponse = GSON.fromJson(response, AuthResponse.class);
+    String response = SalesforceHttpClient.get().POST(credentials.getLoginUrl()).param("grant_type", "password")
+      .param("client_id", credentials.getConsumerKey())
+      .param("client_secret", credentials.getConsumerSecret())
+      .param("username", credentials.getUsername())
+      .param("password", credentials.getPassword()).send().getContentAsString();
 
-      if (!Strings.isNullOrEmpty(authResponse.getError())) {
-        throw new IllegalArgumentException(
-          String.format("Cannot authenticate to Salesforce with given credentials. ServerResponse='%s'", response));
-      }
+    AuthResponse authResponse = GSON.fromJson(response, AuthResponse.class);
 
-      return authResponse;
-    } finally {
-      httpClient.stop();
+    if (!Strings.isNullOrEmpty(authResponse.getError())) {
+      throw new IllegalArgumentException(
+        String.format("Cannot authenticate to Salesforce with given credentials. ServerResponse='%s'", response));
     }
+
+    return authResponse;
   }
 }
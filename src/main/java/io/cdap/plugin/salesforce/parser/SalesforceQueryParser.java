@@ -53,6 +53,54 @@ public class SalesforceQueryParser {
     return visitor.visit(parser.statement());
   }
 
+  /**
+   * Returns part of SOQL query which selects records: from statement up to, and including, where clause.
+   * Ordering, grouping and limits are not included.
+   *
+   * @param query SOQL query
+   * @return from statement without ordering, grouping and limits
+   */
+  public static String getFilterStatement(String query) {
+    SOQLParser parser = initParser(query);
+    SalesforceQueryVisitor.FilterStatementVisitor visitor = new SalesforceQueryVisitor.FilterStatementVisitor();
+    return visitor.visit(parser.statement());
+  }
+
+  /**
+   * Adds condition to where clause of SOQL query, so that query selects only records which match
+   * both existing conditions and the given one. Where clause is created if query does not have it.
+   * <p/>
+   * Example:
+   * <ul>
+   *  <li>Initial query: `SELECT Id FROM Opportunity WHERE Name LIKE 'S_%' OR IsClosed = true`</li>
+   *  <li>Condition: `Id >= '0060000000AbcDE'`</li>
+   *  <li>Result query: `SELECT Id FROM Opportunity WHERE (Name LIKE 'S_%' OR IsClosed = true)
+   *  AND (Id >= '0060000000AbcDE')`</li>
+   * </ul>
+   *
+   * @param query SOQL query
+   * @param condition SOQL condition expression
+   * @return query with condition added
+   */
+  public static String addCondition(String query, String condition) {
+    SOQLParser parser = initParser(query);
+    SalesforceQueryVisitor.AddConditionVisitor visitor = new SalesforceQueryVisitor.AddConditionVisitor(condition);
+    return visitor.visit(parser.statement());
+  }
+
+  /**
+   * Checks if query result can be read in parts, each selecting a range of records. Queries with limit,
+   * offset or grouping cannot be split, since each part would apply them separately.
+   *
+   * @param query SOQL query
+   * @return true if records of the query can be split into ranges
+   */
+  public static boolean isRangeSplittable(String query) {
+    SOQLParser parser = initParser(query);
+    SOQLParser.FromStatementContext fromStatement = parser.statement().fromStatement();
+    return fromStatement.LIMIT() == null && fromStatement.OFFSET() == null && fromStatement.GROUP() == null;
+  }
+
   private static SOQLParser initParser(String query) {
     SOQLLexer lexer = new SOQLLexer(CharStreams.fromString(query));
     lexer.removeErrorListeners();
@@ -18,7 +18,9 @@
 package io.cdap.plugin.salesforce.parser;
 
 import io.cdap.plugin.salesforce.SObjectDescriptor;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.misc.Interval;
 import soql.SOQLBaseVisitor;
 import soql.SOQLParser;
@@ -157,4 +159,59 @@ public class SalesforceQueryVisitor extends SOQLBaseVisitor<SObjectDescriptor> {
     }
   }
 
+  /**
+   * Visits query statement and extracts from statement up to, and including, where clause
+   * in the original representation.
+   */
+  public static class FilterStatementVisitor extends SOQLBaseVisitor<String> {
+
+    @Override
+    public String visitStatement(SOQLParser.StatementContext ctx) {
+      SOQLParser.FromStatementContext fromStatementContext = ctx.fromStatement();
+      Interval interval = new Interval(
+        fromStatementContext.start.getStartIndex(),
+        getFilterEnd(fromStatementContext).getStopIndex());
+      return fromStatementContext.start.getInputStream().getText(interval);
+    }
+  }
+
+  /**
+   * Visits query statement and returns the query in the original representation with a condition
+   * added to its where clause. Existing conditions and the added one are enclosed in parentheses,
+   * so that operator precedence within them is kept.
+   */
+  public static class AddConditionVisitor extends SOQLBaseVisitor<String> {
+
+    private final String condition;
+
+    public AddConditionVisitor(String condition) {
+      this.condition = condition;
+    }
+
+    @Override
+    public String visitStatement(SOQLParser.StatementContext ctx) {
+      CharStream input = ctx.start.getInputStream();
+      StringBuilder builder = new StringBuilder(input.getText(Interval.of(0, input.size() - 1)));
+      SOQLParser.ConditionExpressionsContext conditions = ctx.fromStatement().conditionExpressions();
+      if (conditions == null) {
+        builder.insert(getFilterEnd(ctx.fromStatement()).getStopIndex() + 1, " WHERE " + condition);
+      } else {
+        builder.insert(conditions.stop.getStopIndex() + 1, ") AND (" + condition + ")");
+        builder.insert(conditions.start.getStartIndex(), "(");
+      }
+      return builder.toString();
+    }
+  }
+
+  /**
+   * Returns last token of the from statement part which selects records, i.e. object list,
+   * scope or where clause.
+   */
+  private static Token getFilterEnd(SOQLParser.FromStatementContext ctx) {
+    if (ctx.conditionExpressions() != null) {
+      return ctx.conditionExpressions().stop;
+    }
+    return ctx.filterScope() == null ? ctx.objectList().stop : ctx.filterScope().stop;
+  }
+
 }
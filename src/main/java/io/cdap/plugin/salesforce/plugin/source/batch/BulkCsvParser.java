@@ -0,0 +1,355 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Parser of query results in the CSV format of Bulk API: UTF-8 text with a header, comma separated values
+ * enclosed in double quotes, quotes escaped by doubling, records separated by line feeds or CRLF.
+ * Unquoted values are accepted as well.
+ * <p/>
+ * Bytes are read into a reusable buffer and decoded from UTF-8 as values are parsed. Only values of projected
+ * columns are decoded into strings, the other ones are skipped on the byte level, which is safe since bytes
+ * of multi-byte UTF-8 characters never match separators or quotes. Values of a record are set into a row array,
+ * which is reused by the next record.
+ */
+public final class BulkCsvParser implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte QUOTE = '"';
+  private static final byte DELIMITER = ',';
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+  private static final char REPLACEMENT = '\uFFFD';
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private boolean eof;
+  /**
+   * Value being decoded
+   */
+  private char[] chars = new char[256];
+  private int length;
+  /**
+   * Set when the last parsed value ended the record
+   */
+  private boolean endOfRecord;
+  private long line = 1;
+
+  private final List<String> header;
+  private final boolean[] projected;
+  private final String[] row;
+
+  /**
+   * Reads the header of results.
+   *
+   * @param in stream of results, closed when the parser is closed
+   * @param projection columns, values of which are parsed, values of other columns are {@code null}
+   * @throws IOException if header cannot be read
+   * @throws IllegalArgumentException if a header name is missing or duplicated
+   */
+  public BulkCsvParser(InputStream in, Predicate<String> projection) throws IOException {
+    this.in = in;
+    this.header = Collections.unmodifiableList(readHeader());
+    this.projected = new boolean[header.size()];
+    for (int column = 0; column < projected.length; column++) {
+      projected[column] = projection.test(header.get(column));
+    }
+    this.row = new String[header.size()];
+  }
+
+  /**
+   * @return names of columns, empty if results are empty
+   */
+  public List<String> getHeader() {
+    return header;
+  }
+
+  /**
+   * @param name column name
+   * @return index of the column in the header, -1 if there is no such column
+   */
+  public int getColumn(String name) {
+    return header.indexOf(name);
+  }
+
+  /**
+   * @param column index of the column
+   * @return true if values of the column are parsed
+   */
+  public boolean isProjected(int column) {
+    return projected[column];
+  }
+
+  /**
+   * Parses the next record into the row.
+   *
+   * @return false if there are no more records
+   * @throws IOException if results cannot be read or are not valid CSV
+   */
+  public boolean next() throws IOException {
+    if (!skipEmptyLines()) {
+      return false;
+    }
+    int column = 0;
+    endOfRecord = false;
+    while (!endOfRecord) {
+      boolean parse = column < projected.length && projected[column];
+      String value = readValue(parse);
+      if (parse) {
+        row[column] = value;
+      }
+      column++;
+    }
+    // values missing in a short record are null, same as values of columns which are not projected
+    if (column < row.length) {
+      Arrays.fill(row, column, row.length, null);
+    }
+    line++;
+    return true;
+  }
+
+  /**
+   * Returns values of the current record, indexed by columns of the header. The array is reused by the next record.
+   *
+   * @return values of the record, {@code null} for columns which are not projected
+   */
+  public String[] getRow() {
+    return row;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private List<String> readHeader() throws IOException {
+    List<String> names = new ArrayList<>();
+    if (!skipEmptyLines()) {
+      return names;
+    }
+    Set<String> unique = new HashSet<>();
+    endOfRecord = false;
+    while (!endOfRecord) {
+      String name = readValue(true);
+      if (name.isEmpty()) {
+        throw new IllegalArgumentException("A header name is missing in results header");
+      }
+      if (!unique.add(name)) {
+        throw new IllegalArgumentException(String.format("The header contains a duplicate name: '%s'", name));
+      }
+      names.add(name);
+    }
+    line++;
+    return names;
+  }
+
+  /**
+   * Skips line breaks before a record.
+   *
+   * @return false if the end of results is reached
+   */
+  private boolean skipEmptyLines() throws IOException {
+    while (ensure()) {
+      byte b = buffer[position];
+      if (b != CR && b != LF) {
+        return true;
+      }
+      position++;
+    }
+    return false;
+  }
+
+  /**
+   * Reads a value and the separator following it, setting {@link #endOfRecord} if the value is the last one.
+   *
+   * @param parse true if the value is decoded, false if it is skipped
+   * @return decoded value, or {@code null} if the value is skipped
+   */
+  private String readValue(boolean parse) throws IOException {
+    length = 0;
+    if (ensure() && buffer[position] == QUOTE) {
+      position++;
+      readQuoted(parse);
+    } else {
+      readUnquoted(parse);
+    }
+    if (!parse) {
+      return null;
+    }
+    return length == 0 ? "" : new String(chars, 0, length);
+  }
+
+  private void readQuoted(boolean parse) throws IOException {
+    while (true) {
+      if (!ensure()) {
+        throw new IOException(String.format("(line %d) EOF reached before encapsulated token finished", line));
+      }
+      byte b = buffer[position++];
+      if (b == QUOTE) {
+        if (ensure() && buffer[position] == QUOTE) {
+          // escaped quote
+          position++;
+          if (parse) {
+            append('"');
+          }
+          continue;
+        }
+        readSeparator();
+        return;
+      }
+      if (b == LF) {
+        line++;
+      }
+      if (parse) {
+        decode(b);
+      }
+    }
+  }
+
+  private void readUnquoted(boolean parse) throws IOException {
+    while (ensure()) {
+      byte b = buffer[position];
+      if (b == DELIMITER || b == CR || b == LF) {
+        readSeparator();
+        return;
+      }
+      position++;
+      if (parse) {
+        decode(b);
+      }
+    }
+    endOfRecord = true;
+  }
+
+  /**
+   * Reads delimiter or line break after a value, sets {@link #endOfRecord} unless it is a delimiter.
+   */
+  private void readSeparator() throws IOException {
+    if (!ensure()) {
+      endOfRecord = true;
+      return;
+    }
+    byte b = buffer[position++];
+    if (b == DELIMITER) {
+      return;
+    }
+    if (b == CR) {
+      if (ensure() && buffer[position] == LF) {
+        position++;
+      }
+      endOfRecord = true;
+      return;
+    }
+    if (b == LF) {
+      endOfRecord = true;
+      return;
+    }
+    throw new IOException(String.format("(line %d) invalid char between encapsulated token and delimiter", line));
+  }
+
+  /**
+   * Decodes a byte and continuation bytes following it, if it starts a multi-byte character.
+   * Malformed sequences are replaced with the replacement character, as by the UTF-8 decoder of JDK.
+   */
+  private void decode(byte first) throws IOException {
+    if (first >= 0) {
+      append((char) first);
+      return;
+    }
+    int lead = first & 0xFF;
+    int continuations;
+    int codePoint;
+    int min;
+    if ((lead & 0xE0) == 0xC0) {
+      continuations = 1;
+      codePoint = lead & 0x1F;
+      min = 0x80;
+    } else if ((lead & 0xF0) == 0xE0) {
+      continuations = 2;
+      codePoint = lead & 0x0F;
+      min = 0x800;
+    } else if ((lead & 0xF8) == 0xF0) {
+      continuations = 3;
+      codePoint = lead & 0x07;
+      min = 0x10000;
+    } else {
+      append(REPLACEMENT);
+      return;
+    }
+    for (int i = 0; i < continuations; i++) {
+      // a byte which does not continue the character is left to be parsed on its own
+      if (!ensure() || (buffer[position] & 0xC0) != 0x80) {
+        append(REPLACEMENT);
+        return;
+      }
+      codePoint = codePoint << 6 | buffer[position++] & 0x3F;
+    }
+    if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+      || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+      append(REPLACEMENT);
+    } else if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+      append(Character.highSurrogate(codePoint));
+      append(Character.lowSurrogate(codePoint));
+    } else {
+      append((char) codePoint);
+    }
+  }
+
+  private void append(char c) {
+    if (length == chars.length) {
+      chars = Arrays.copyOf(chars, length * 2);
+    }
+    chars[length++] = c;
+  }
+
+  /**
+   * Makes sure there is an unread byte in the buffer.
+   *
+   * @return false if the end of results is reached
+   */
+  private boolean ensure() throws IOException {
+    if (position < limit) {
+      return true;
+    }
+    if (eof) {
+      return false;
+    }
+    int read;
+    do {
+      read = in.read(buffer, 0, buffer.length);
+    } while (read == 0);
+    if (read < 0) {
+      eof = true;
+      return false;
+    }
+    position = 0;
+    limit = read;
+    return true;
+  }
+}
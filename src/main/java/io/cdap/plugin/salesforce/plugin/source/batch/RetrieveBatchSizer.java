@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+
+/**
+ * Chooses the number of Id's requested by a single SOAP retrieve call of a wide object reader, so that responses
+ * stay close to the target payload size. The first size is estimated from the number of queried fields,
+ * the following ones from the size of records in observed responses.
+ * <p/>
+ * Size shrinks as soon as responses get larger than the target or slower than
+ * {@link #TARGET_LATENCY_MS}, and is halved when a call times out. It grows at most twice per response,
+ * while responses are small. Size is never greater than {@link SalesforceSourceConstants#WIDE_QUERY_MAX_BATCH_COUNT},
+ * which is the limit of retrieve call.
+ */
+public class RetrieveBatchSizer {
+
+  public static final int DEFAULT_PAYLOAD_SIZE_MB = 8;
+  /**
+   * Size of a field value in a response assumed before any response is observed
+   */
+  static final int ESTIMATED_FIELD_BYTES = 64;
+  static final long TARGET_LATENCY_MS = 30_000;
+
+  private final long targetBytes;
+  private int batchSize;
+  /**
+   * Size of a record in observed responses, 0 until a response is observed
+   */
+  private double recordBytes;
+
+  /**
+   * @param fieldCount number of fields retrieved for each record
+   * @param targetBytes target size of a response in bytes
+   */
+  public RetrieveBatchSizer(int fieldCount, long targetBytes) {
+    this.targetBytes = targetBytes;
+    this.batchSize = clamp(targetBytes / ((long) Math.max(1, fieldCount) * ESTIMATED_FIELD_BYTES));
+  }
+
+  /**
+   * @return number of Id's to request by the next retrieve call
+   */
+  public synchronized int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Adjusts size to a received response.
+   *
+   * @param records number of Id's requested by the call
+   * @param bytes size of the response in bytes
+   * @param latencyMs duration of the call in milliseconds
+   */
+  public synchronized void onResponse(int records, long bytes, long latencyMs) {
+    if (records <= 0) {
+      return;
+    }
+    double observed = (double) bytes / records;
+    // larger records are taken into account immediately, smaller ones gradually
+    recordBytes = observed > recordBytes ? observed : (recordBytes + observed) / 2;
+    long size = Math.min((long) (targetBytes / Math.max(1, recordBytes)), batchSize * 2L);
+    if (latencyMs > TARGET_LATENCY_MS) {
+      size = Math.min(size, records * TARGET_LATENCY_MS / latencyMs);
+    }
+    batchSize = clamp(size);
+  }
+
+  /**
+   * Shrinks size after a call timed out.
+   *
+   * @param records number of Id's requested by the call
+   * @return number of Id's to request by each call retrying the timed out one, less than the number of records
+   *   unless it is a single record
+   */
+  public synchronized int onTimeout(int records) {
+    batchSize = clamp(Math.min(batchSize, records / 2));
+    return batchSize;
+  }
+
+  private static int clamp(long size) {
+    return (int) Math.max(1, Math.min(SalesforceSourceConstants.WIDE_QUERY_MAX_BATCH_COUNT, size));
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.format.UnexpectedFormatException;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.etl.api.StageMetrics;
+import io.cdap.plugin.salesforce.SalesforceReadMetrics;
+import io.cdap.plugin.salesforce.SalesforceTransformUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Transforms {@link SalesforceRow} into {@link StructuredRecord}.
+ * <p/>
+ * Position of the column and type of each schema field are resolved once per header and schema, which are
+ * shared by all rows of a split, so that converting a row only indexes its values.
+ */
+public class RowToRecordTransformer {
+
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final StageMetrics metrics;
+  private long conversionNanos;
+  private Schema schema;
+  private SalesforceRow.Header header;
+  private List<FieldTransformer> fields;
+
+  public RowToRecordTransformer() {
+    this(null);
+  }
+
+  /**
+   * @param metrics stage metrics to record conversion time to, if {@code null} time is not recorded
+   */
+  public RowToRecordTransformer(@Nullable StageMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public StructuredRecord transform(Schema schema, SalesforceRow row) {
+    if (metrics == null) {
+      return convert(schema, row);
+    }
+    long start = System.nanoTime();
+    StructuredRecord result = convert(schema, row);
+    conversionNanos += System.nanoTime() - start;
+    // conversion takes microseconds, so the time is emitted once a whole millisecond is accumulated
+    if (conversionNanos >= NANOS_PER_MILLI) {
+      long millis = conversionNanos / NANOS_PER_MILLI;
+      metrics.count(SalesforceReadMetrics.CONVERSION_TIME_MS, (int) millis);
+      conversionNanos -= millis * NANOS_PER_MILLI;
+    }
+    return result;
+  }
+
+  private StructuredRecord convert(Schema schema, SalesforceRow row) {
+    // rows of a split share the header, so fields are resolved again only when the next split is read
+    if (schema != this.schema || row.getHeader() != header) {
+      this.schema = schema;
+      this.header = row.getHeader();
+      this.fields = resolveFields(schema, header);
+    }
+
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+    for (FieldTransformer field : fields) {
+      builder.set(field.name, field.convert(row.get(field.column)));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Finds columns of schema fields, fields which are not in the header are skipped.
+   */
+  private static List<FieldTransformer> resolveFields(Schema schema, SalesforceRow.Header header) {
+    List<FieldTransformer> fields = new ArrayList<>();
+    for (Schema.Field field : schema.getFields()) {
+      int column = header.indexOf(field.getName());
+      if (column >= 0) {
+        fields.add(new FieldTransformer(column, field));
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Converts value of a single field.
+   */
+  private static final class FieldTransformer {
+    private final int column;
+    private final String name;
+    private final Schema fieldSchema;
+    private final Schema.Type type;
+    private final Schema.LogicalType logicalType;
+
+    private FieldTransformer(int column, Schema.Field field) {
+      this.column = column;
+      this.name = field.getName();
+      this.fieldSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+      this.type = fieldSchema.getType();
+      this.logicalType = fieldSchema.getLogicalType();
+    }
+
+    @Nullable
+    private Object convert(@Nullable String value) {
+      // empty string is considered null in csv
+      if (value == null || value.isEmpty()) {
+        return null;
+      }
+      if (logicalType != null) {
+        return SalesforceTransformUtil.transformLogicalType(name, logicalType, value);
+      }
+      switch (type) {
+        case NULL:
+          return null;
+        case BOOLEAN:
+          return Boolean.parseBoolean(value);
+        case INT:
+          return Integer.parseInt(value);
+        case LONG:
+          return Long.parseLong(value);
+        case FLOAT:
+          return Float.parseFloat(value);
+        case DOUBLE:
+          return Double.parseDouble(value);
+        case STRING:
+          return value;
+      }
+      throw new UnexpectedFormatException(
+        String.format("Unsupported schema type: '%s' for field: '%s'. Supported types are 'boolean, int, long, float,"
+                        + "double and string'.", fieldSchema, name));
+    }
+  }
+}
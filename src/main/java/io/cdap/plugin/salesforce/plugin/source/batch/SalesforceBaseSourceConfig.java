@@ -21,8 +21,11 @@ import io.cdap.cdap.api.annotation.Macro;
 import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.etl.api.validation.InvalidConfigPropertyException;
+import io.cdap.plugin.salesforce.PKChunkingDescriptor;
+import io.cdap.plugin.salesforce.RangeSplitDescriptor;
 import io.cdap.plugin.salesforce.SObjectDescriptor;
 import io.cdap.plugin.salesforce.SObjectFilterDescriptor;
+import io.cdap.plugin.salesforce.SalesforceApiBudget;
 import io.cdap.plugin.salesforce.SalesforceConstants;
 import io.cdap.plugin.salesforce.SalesforceQueryUtil;
 import io.cdap.plugin.salesforce.SalesforceSchemaUtil;
@@ -50,6 +53,8 @@ public abstract class SalesforceBaseSourceConfig extends BaseSalesforceConfig {
 
   private static final Logger LOG = LoggerFactory.getLogger(SalesforceBaseSourceConfig.class);
 
+  private static final String ENABLED_KEYWORD = "Enabled";
+
   @Name(SalesforceSourceConstants.PROPERTY_DATETIME_AFTER)
   @Description("Salesforce SObject query datetime filter. Example: 2019-03-12T11:29:52Z")
   @Nullable
@@ -74,6 +79,120 @@ public abstract class SalesforceBaseSourceConfig extends BaseSalesforceConfig {
   @Macro
   private String offset;
 
+  @Name(SalesforceSourceConstants.PROPERTY_API_CALL_BUDGET)
+  @Description("Maximum number of Salesforce API calls the source is allowed to make in a pipeline run. "
+    + "Calls left after preparing splits are shared evenly among the splits, and run fails if fewer calls are left "
+    + "than there are splits. Run fails once the budget is exhausted. A retried task starts with the whole share "
+    + "of its split again. If not provided, number of calls is not limited.")
+  @Nullable
+  @Macro
+  private Long apiCallBudget;
+
+  @Name(SalesforceSourceConstants.PROPERTY_ENABLE_PK_CHUNKING)
+  @Description("Enables primary key chunking, which splits query on a large object into chunks by record Id ranges. "
+    + "Chunks are read in parallel. Supported for most standard objects, custom objects and sharing objects. "
+    + "Default is Disabled.")
+  @Nullable
+  @Macro
+  private String enablePKChunking;
+
+  @Name(SalesforceSourceConstants.PROPERTY_CHUNK_SIZE)
+  @Description("Number of records in a chunk when primary key chunking is enabled. Maximum is 250000. "
+    + "Default is 100000.")
+  @Nullable
+  @Macro
+  private Integer chunkSize;
+
+  @Name(SalesforceSourceConstants.PROPERTY_CHUNK_PARENT)
+  @Description("Parent object of a sharing object, which is chunked when primary key chunking is enabled. "
+    + "For example, Account when reading AccountShare.")
+  @Nullable
+  @Macro
+  private String chunkParent;
+
+  @Name(SalesforceSourceConstants.PROPERTY_RANGE_SPLITS)
+  @Description("Number of parts the query is split into when primary key chunking is disabled. "
+    + "Each part selects a range of records by the value of split field and is read in parallel. "
+    + "Queries with LIMIT, OFFSET or GROUP BY are not split. If not provided, query is not split.")
+  @Nullable
+  @Macro
+  private Integer rangeSplits;
+
+  @Name(SalesforceSourceConstants.PROPERTY_RANGE_SPLIT_FIELD)
+  @Description("Field the query is split by into ranges of records. One of SystemModstamp, LastModifiedDate "
+    + "or Id. Default is SystemModstamp.")
+  @Nullable
+  @Macro
+  private String rangeSplitField;
+
+  @Name(SalesforceSourceConstants.PROPERTY_BULK_API_VERSION)
+  @Description("Version of Bulk API used to read records, 1.0 or 2.0. Bulk API 2.0 splits large queries "
+    + "into chunks automatically and returns results in pages. Version 1.0 is used for objects and orgs "
+    + "which do not support Bulk API 2.0. Default is 1.0.")
+  @Nullable
+  @Macro
+  private String bulkApiVersion;
+
+  @Name(SalesforceSourceConstants.PROPERTY_MAX_RECORDS_PER_PAGE)
+  @Description("Maximum number of records in a page of Bulk API 2.0 query results. "
+    + "If not provided, Salesforce chooses the page size.")
+  @Nullable
+  @Macro
+  private Integer maxRecordsPerPage;
+
+  @Name(SalesforceSourceConstants.PROPERTY_SPLIT_BY_RESULT_FILE)
+  @Description("Waits for Bulk API batches to complete before the run starts reading, and reads each result file "
+    + "of a batch by a separate split, so that large batches are downloaded in parallel. If batches do not complete "
+    + "within 10 minutes, they are read by batch instead. Applies to Bulk API 1.0. Default is Disabled.")
+  @Nullable
+  @Macro
+  private String splitByResultFile;
+
+  @Name(SalesforceSourceConstants.PROPERTY_JOB_REGISTRY_PATH)
+  @Description("Local or HDFS directory, where Bulk API jobs submitted for queries are recorded. When a failed "
+    + "pipeline is run again, jobs recorded for the same query and credentials are reused instead of submitting "
+    + "the query again, as long as Salesforce keeps their results. Jobs of a successful run are removed from "
+    + "the registry. If not provided, jobs are not recorded.")
+  @Nullable
+  @Macro
+  private String jobRegistryPath;
+
+  @Name(SalesforceSourceConstants.PROPERTY_RESULT_CACHE_DIRECTORY)
+  @Description("Local directory, where downloaded query results are cached, so that repeated preview runs of "
+    + "the same query read them without calling Salesforce. Used only by preview runs, which read all results on "
+    + "a single machine. If not provided, results are not cached.")
+  @Nullable
+  @Macro
+  private String resultCacheDirectory;
+
+  @Name(SalesforceSourceConstants.PROPERTY_RESULT_CACHE_TTL)
+  @Description("Time in minutes, for which cached query results are used. Default is 60.")
+  @Nullable
+  @Macro
+  private Integer resultCacheTtl;
+
+  @Name(SalesforceSourceConstants.PROPERTY_RESULT_CACHE_SIZE)
+  @Description("Maximum size of the result cache in megabytes. Results least recently used are evicted first. "
+    + "Default is 1024.")
+  @Nullable
+  @Macro
+  private Integer resultCacheSize;
+
+  @Name(SalesforceSourceConstants.PROPERTY_WIDE_OBJECT_COLUMN_GROUPS)
+  @Description("Reads wide object queries, which exceed SOQL length limit, by splitting their fields into column "
+    + "groups, each queried by a separate Bulk API batch, instead of retrieving records using SOAP API. Applies to "
+    + "Bulk API 1.0 and queries without limit, offset or grouping. Default is Disabled.")
+  @Nullable
+  @Macro
+  private String wideObjectColumnGroups;
+
+  @Name(SalesforceSourceConstants.PROPERTY_RETRIEVE_PAYLOAD_SIZE)
+  @Description("Target size in megabytes of a response to a SOAP retrieve call, used to read wide object queries. "
+    + "Number of records requested by each call is adjusted to it. Default is 8.")
+  @Nullable
+  @Macro
+  private Integer retrievePayloadSize;
+
   protected SalesforceBaseSourceConfig(String referenceName,
                                        String consumerKey,
                                        String consumerSecret,
@@ -109,6 +228,112 @@ public abstract class SalesforceBaseSourceConfig extends BaseSalesforceConfig {
     return datetimeBefore;
   }
 
+  public long getApiCallBudget() {
+    return apiCallBudget == null ? SalesforceApiBudget.UNLIMITED : apiCallBudget;
+  }
+
+  public boolean isPKChunkingEnabled() {
+    return ENABLED_KEYWORD.equals(enablePKChunking);
+  }
+
+  /**
+   * @return PK chunking settings if PK chunking is enabled, otherwise {@code null}
+   */
+  @Nullable
+  public PKChunkingDescriptor getPKChunking() {
+    if (!isPKChunkingEnabled()) {
+      return null;
+    }
+    return new PKChunkingDescriptor(chunkSize == null ? PKChunkingDescriptor.DEFAULT_CHUNK_SIZE : chunkSize,
+                                    StringUtils.isBlank(chunkParent) ? null : chunkParent);
+  }
+
+  /**
+   * @return range splitting settings if query is split into more than one range, otherwise {@code null}
+   */
+  @Nullable
+  public RangeSplitDescriptor getRangeSplit() {
+    if (rangeSplits == null || rangeSplits < 2) {
+      return null;
+    }
+    return new RangeSplitDescriptor(StringUtils.isBlank(rangeSplitField)
+                                      ? RangeSplitDescriptor.FIELD_SYSTEM_MODSTAMP : rangeSplitField, rangeSplits);
+  }
+
+  public boolean isBulkV2() {
+    return SalesforceSourceConstants.BULK_API_V2.equals(bulkApiVersion);
+  }
+
+  @Nullable
+  public Integer getMaxRecordsPerPage() {
+    return maxRecordsPerPage;
+  }
+
+  @Nullable
+  public String getJobRegistryPath() {
+    return StringUtils.isBlank(jobRegistryPath) ? null : jobRegistryPath;
+  }
+
+  @Nullable
+  public String getResultCacheDirectory() {
+    return StringUtils.isBlank(resultCacheDirectory) ? null : resultCacheDirectory;
+  }
+
+  public int getResultCacheTtl() {
+    return resultCacheTtl == null ? SalesforceResultCache.DEFAULT_TTL_MINUTES : resultCacheTtl;
+  }
+
+  public int getResultCacheSize() {
+    return resultCacheSize == null ? SalesforceResultCache.DEFAULT_SIZE_MB : resultCacheSize;
+  }
+
+  public boolean isSplitByResultFile() {
+    return ENABLED_KEYWORD.equals(splitByResultFile);
+  }
+
+  public boolean isWideObjectColumnGroups() {
+    return ENABLED_KEYWORD.equals(wideObjectColumnGroups);
+  }
+
+  public int getRetrievePayloadSize() {
+    return retrievePayloadSize == null ? RetrieveBatchSizer.DEFAULT_PAYLOAD_SIZE_MB : retrievePayloadSize;
+  }
+
+  @Override
+  public void validate() {
+    super.validate();
+    validatePositiveProperty(SalesforceSourceConstants.PROPERTY_API_CALL_BUDGET, apiCallBudget);
+    validatePositiveProperty(SalesforceSourceConstants.PROPERTY_CHUNK_SIZE, chunkSize);
+    if (!containsMacro(SalesforceSourceConstants.PROPERTY_CHUNK_SIZE) && chunkSize != null
+      && chunkSize > PKChunkingDescriptor.MAX_CHUNK_SIZE) {
+      throw new InvalidConfigPropertyException(
+        String.format("Invalid '%s' value: '%d'. Value must not be greater than %d",
+                      SalesforceSourceConstants.PROPERTY_CHUNK_SIZE, chunkSize, PKChunkingDescriptor.MAX_CHUNK_SIZE),
+        SalesforceSourceConstants.PROPERTY_CHUNK_SIZE);
+    }
+    validatePositiveProperty(SalesforceSourceConstants.PROPERTY_RANGE_SPLITS, rangeSplits);
+    validatePositiveProperty(SalesforceSourceConstants.PROPERTY_MAX_RECORDS_PER_PAGE, maxRecordsPerPage);
+    validatePositiveProperty(SalesforceSourceConstants.PROPERTY_RESULT_CACHE_TTL, resultCacheTtl);
+    validatePositiveProperty(SalesforceSourceConstants.PROPERTY_RESULT_CACHE_SIZE, resultCacheSize);
+    validatePositiveProperty(SalesforceSourceConstants.PROPERTY_RETRIEVE_PAYLOAD_SIZE, retrievePayloadSize);
+    if (!containsMacro(SalesforceSourceConstants.PROPERTY_BULK_API_VERSION) && !StringUtils.isBlank(bulkApiVersion)
+      && !SalesforceSourceConstants.BULK_API_V1.equals(bulkApiVersion) && !isBulkV2()) {
+      throw new InvalidConfigPropertyException(
+        String.format("Invalid '%s' value: '%s'. Value must be '%s' or '%s'",
+                      SalesforceSourceConstants.PROPERTY_BULK_API_VERSION, bulkApiVersion,
+                      SalesforceSourceConstants.BULK_API_V1, SalesforceSourceConstants.BULK_API_V2),
+        SalesforceSourceConstants.PROPERTY_BULK_API_VERSION);
+    }
+    if (!containsMacro(SalesforceSourceConstants.PROPERTY_RANGE_SPLIT_FIELD) && !StringUtils.isBlank(rangeSplitField)
+      && !RangeSplitDescriptor.FIELDS.contains(rangeSplitField)) {
+      throw new InvalidConfigPropertyException(
+        String.format("Invalid '%s' value: '%s'. Value must be one of %s",
+                      SalesforceSourceConstants.PROPERTY_RANGE_SPLIT_FIELD, rangeSplitField,
+                      RangeSplitDescriptor.FIELDS),
+        SalesforceSourceConstants.PROPERTY_RANGE_SPLIT_FIELD);
+    }
+  }
+
   protected void validateFilters() {
     validateIntervalFilterProperty(SalesforceSourceConstants.PROPERTY_DATETIME_AFTER, getDatetimeAfter());
     validateIntervalFilterProperty(SalesforceSourceConstants.PROPERTY_DATETIME_BEFORE, getDatetimeBefore());
@@ -185,6 +410,14 @@ public abstract class SalesforceBaseSourceConfig extends BaseSalesforceConfig {
     }
   }
 
+  private void validatePositiveProperty(String propertyName, @Nullable Number value) {
+    if (containsMacro(propertyName) || value == null || value.longValue() > 0) {
+      return;
+    }
+    throw new InvalidConfigPropertyException(
+      String.format("Invalid '%s' value: '%s'. Value must be greater than 0", propertyName, value), propertyName);
+  }
+
   private void validateRangeFilterProperty(String propertyName, Map<ChronoUnit, Integer> rangeValue) {
     if (containsMacro(propertyName) || rangeValue.isEmpty()) {
       return;
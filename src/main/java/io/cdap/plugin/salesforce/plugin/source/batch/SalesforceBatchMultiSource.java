@@ -25,10 +25,16 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.etl.api.Emitter;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.StageMetrics;
 import io.cdap.cdap.etl.api.action.SettableArguments;
 import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
 import io.cdap.cdap.etl.api.batch.BatchSource;
 import io.cdap.cdap.etl.api.batch.BatchSourceContext;
+import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
+import io.cdap.plugin.salesforce.SalesforceReadMetrics;
+import io.cdap.plugin.salesforce.SalesforceSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -44,14 +50,20 @@ import java.util.stream.Collectors;
 @Description("Reads multiple SObjects in Salesforce. "
   + "Outputs one record for each row in each SObject, with the SObject name as a record field. "
   + "Also sets a pipeline argument for each SObject read, which contains its schema.")
-public class SalesforceBatchMultiSource extends BatchSource<Schema, Map<String, String>, StructuredRecord> {
+public class SalesforceBatchMultiSource extends BatchSource<Schema, SalesforceRow, StructuredRecord> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceBatchMultiSource.class);
 
   public static final String NAME = "SalesforceMultiObjects";
 
   private static final String MULTI_SINK_PREFIX = "multisink.";
 
   private final SalesforceMultiSourceConfig config;
-  private MapToRecordTransformer transformer;
+  private RowToRecordTransformer transformer;
+  private String runId;
+  private StageMetrics stageMetrics;
+  private long lastReportNanos;
+  private SalesforceInputFormatProvider inputFormatProvider;
 
   public SalesforceBatchMultiSource(SalesforceMultiSourceConfig config) {
     this.config = config;
@@ -66,8 +78,12 @@ public class SalesforceBatchMultiSource extends BatchSource<Schema, Map<String,
   @Override
   public void prepareRun(BatchSourceContext context) throws ConnectionException {
     config.validate();
+    runId = SalesforceReadMetrics.getRunId(context);
+    SalesforceReadMetrics metrics = SalesforceReadMetrics.startRun(runId);
     List<String> queries = config.getQueries(context.getLogicalStartTime());
+    long start = System.nanoTime();
     Map<String, Schema> schemas = config.getSObjectsSchemas(queries);
+    metrics.addTimeSince(SalesforceReadMetrics.SCHEMA_TIME_MS, start);
 
     // propagate schema for each SObject for multi sink plugin
     SettableArguments arguments = context.getArguments();
@@ -75,21 +91,57 @@ public class SalesforceBatchMultiSource extends BatchSource<Schema, Map<String,
       (sObjectName, sObjectSchema) -> arguments.set(MULTI_SINK_PREFIX + sObjectName, sObjectSchema.toString()));
 
     String sObjectNameField = config.getSObjectNameField();
-    context.setInput(Input.of(config.referenceName, new SalesforceInputFormatProvider(
-      config, queries, getSchemaWithNameField(sObjectNameField, schemas), sObjectNameField)));
+    // record readers reuse the session the driver logged in with while retrieving schemas
+    start = System.nanoTime();
+    SalesforceSession session = SalesforceConnectionUtil.getSession(config.getAuthenticatorCredentials());
+    metrics.addTimeSince(SalesforceReadMetrics.LOGIN_TIME_MS, start);
+    inputFormatProvider = new SalesforceInputFormatProvider(
+      config, session, queries, getSchemaWithNameField(sObjectNameField, schemas), sObjectNameField, runId,
+      context.isPreviewEnabled());
+    context.setInput(Input.of(config.referenceName, inputFormatProvider));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    super.onRunFinish(succeeded, context);
+    if (succeeded && inputFormatProvider != null) {
+      // jobs of a successful run must not be reused by the next run, which would read the same data again
+      SalesforceJobRegistry.removeQueries(inputFormatProvider.getInputFormatConfiguration());
+    }
+    if (runId != null) {
+      LOG.info("Salesforce read {}, driver metrics: {}", succeeded ? "succeeded" : "failed",
+               SalesforceReadMetrics.finishRun(runId).toJson());
+    }
   }
 
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
-    this.transformer = new MapToRecordTransformer();
+    this.transformer = new RowToRecordTransformer(context.getMetrics());
+    this.runId = SalesforceReadMetrics.getRunId(context);
+    this.stageMetrics = context.getMetrics();
+    this.lastReportNanos = System.nanoTime();
   }
 
   @Override
-  public void transform(KeyValue<Schema, Map<String, String>> input,
+  public void transform(KeyValue<Schema, SalesforceRow> input,
                         Emitter<StructuredRecord> emitter) throws Exception {
     StructuredRecord record = transformer.transform(input.getKey(), input.getValue());
     emitter.emit(record);
+    // metrics of readers closed meanwhile are reported periodically, the rest once the source is destroyed
+    long now = System.nanoTime();
+    if (now - lastReportNanos >= SalesforceReadMetrics.READERS_REPORT_INTERVAL_NANOS) {
+      lastReportNanos = now;
+      SalesforceReadMetrics.reportReaders(runId, stageMetrics);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (stageMetrics != null) {
+      SalesforceReadMetrics.reportReaders(runId, stageMetrics);
+    }
+    super.destroy();
   }
 
   /**
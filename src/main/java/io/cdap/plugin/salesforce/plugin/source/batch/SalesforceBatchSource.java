@@ -27,16 +27,21 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.etl.api.Emitter;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.StageMetrics;
 import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
 import io.cdap.cdap.etl.api.batch.BatchSource;
 import io.cdap.cdap.etl.api.batch.BatchSourceContext;
 import io.cdap.plugin.common.LineageRecorder;
 import io.cdap.plugin.salesforce.SObjectDescriptor;
+import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
+import io.cdap.plugin.salesforce.SalesforceReadMetrics;
 import io.cdap.plugin.salesforce.SalesforceSchemaUtil;
+import io.cdap.plugin.salesforce.SalesforceSession;
 import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -46,14 +51,19 @@ import java.util.stream.Collectors;
 @Plugin(type = BatchSource.PLUGIN_TYPE)
 @Name(SalesforceBatchSource.NAME)
 @Description("Read data from Salesforce.")
-public class SalesforceBatchSource extends BatchSource<Schema, Map<String, String>, StructuredRecord> {
+public class SalesforceBatchSource extends BatchSource<Schema, SalesforceRow, StructuredRecord> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceBatchSource.class);
 
   public static final String NAME = "Salesforce";
 
   private final SalesforceSourceConfig config;
   private Schema schema;
-  private MapToRecordTransformer transformer;
+  private RowToRecordTransformer transformer;
+  private String runId;
+  private StageMetrics stageMetrics;
+  private long lastReportNanos;
+  private SalesforceInputFormatProvider inputFormatProvider;
 
   public SalesforceBatchSource(SalesforceSourceConfig config) {
     this.config = config;
@@ -85,9 +95,13 @@ public class SalesforceBatchSource extends BatchSource<Schema, Map<String, Strin
   @Override
   public void prepareRun(BatchSourceContext context) {
     config.validate(); // validate when macros are already substituted
+    runId = SalesforceReadMetrics.getRunId(context);
+    SalesforceReadMetrics metrics = SalesforceReadMetrics.startRun(runId);
 
     if (schema == null) {
+      long start = System.nanoTime();
       schema = retrieveSchema();
+      metrics.addTimeSince(SalesforceReadMetrics.SCHEMA_TIME_MS, start);
     }
 
     LineageRecorder lineageRecorder = new LineageRecorder(context, config.referenceName);
@@ -99,21 +113,57 @@ public class SalesforceBatchSource extends BatchSource<Schema, Map<String, Strin
 
     String query = config.getQuery(context.getLogicalStartTime());
     String sObjectName = SObjectDescriptor.fromQuery(query).getName();
-    context.setInput(Input.of(config.referenceName, new SalesforceInputFormatProvider(config,
-        Collections.singletonList(query), ImmutableMap.of(sObjectName, schema.toString()), null)));
+    // record readers reuse the session the driver logged in with while retrieving schema
+    long start = System.nanoTime();
+    SalesforceSession session = SalesforceConnectionUtil.getSession(config.getAuthenticatorCredentials());
+    metrics.addTimeSince(SalesforceReadMetrics.LOGIN_TIME_MS, start);
+    inputFormatProvider = new SalesforceInputFormatProvider(config, session, Collections.singletonList(query),
+                                                            ImmutableMap.of(sObjectName, schema.toString()), null,
+                                                            runId, context.isPreviewEnabled());
+    context.setInput(Input.of(config.referenceName, inputFormatProvider));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    super.onRunFinish(succeeded, context);
+    if (succeeded && inputFormatProvider != null) {
+      // jobs of a successful run must not be reused by the next run, which would read the same data again
+      SalesforceJobRegistry.removeQueries(inputFormatProvider.getInputFormatConfiguration());
+    }
+    if (runId != null) {
+      LOG.info("Salesforce read {}, driver metrics: {}", succeeded ? "succeeded" : "failed",
+               SalesforceReadMetrics.finishRun(runId).toJson());
+    }
   }
 
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
-    this.transformer = new MapToRecordTransformer();
+    this.transformer = new RowToRecordTransformer(context.getMetrics());
+    this.runId = SalesforceReadMetrics.getRunId(context);
+    this.stageMetrics = context.getMetrics();
+    this.lastReportNanos = System.nanoTime();
   }
 
   @Override
-  public void transform(KeyValue<Schema, Map<String, String>> input,
+  public void transform(KeyValue<Schema, SalesforceRow> input,
                         Emitter<StructuredRecord> emitter) throws Exception {
     StructuredRecord record = transformer.transform(input.getKey(), input.getValue());
     emitter.emit(record);
+    // metrics of readers closed meanwhile are reported periodically, the rest once the source is destroyed
+    long now = System.nanoTime();
+    if (now - lastReportNanos >= SalesforceReadMetrics.READERS_REPORT_INTERVAL_NANOS) {
+      lastReportNanos = now;
+      SalesforceReadMetrics.reportReaders(runId, stageMetrics);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (stageMetrics != null) {
+      SalesforceReadMetrics.reportReaders(runId, stageMetrics);
+    }
+    super.destroy();
   }
 
   /**
@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import com.sforce.async.AsyncApiException;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.salesforce.SalesforceBulkUtil;
+import io.cdap.plugin.salesforce.SalesforceSession;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * RecordReader implementation for wide SOQL queries split into column groups. Each column group is queried by
+ * a batch of the same Bulk API job, all of which select record Id and order records by it. Results of the first
+ * batch are read as usual, results of the other batches are read alongside and joined to them by Id,
+ * so that whole records are read using Bulk API only.
+ * <p/>
+ * Ids are compared as strings. Records, which are created or deleted while batches are processed and so are
+ * missing in results of some of the batches, are skipped.
+ * <p/>
+ * Joined row has columns of the first batch followed by columns of the other batches, values are copied
+ * into a single reused array.
+ */
+public class SalesforceColumnGroupRecordReader extends SalesforceRecordReader {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceColumnGroupRecordReader.class);
+  private static final String FIELD_ID = "Id";
+
+  private final List<ColumnGroup> groups = new ArrayList<>();
+  private SalesforceRow value;
+  private String[] values;
+  private int idColumn;
+  private long skipped;
+
+  public SalesforceColumnGroupRecordReader(Schema schema) {
+    super(schema);
+  }
+
+  @Override
+  protected InputStream openResults(SalesforceSplit split, SalesforceSession session, Configuration conf)
+    throws AsyncApiException, InterruptedException {
+    List<String> batchIds = split.getColumnGroupBatchIds();
+    List<String> groupBatchIds = batchIds.subList(1, batchIds.size());
+    if (!split.isCompleted()) {
+      SalesforceBulkUtil.waitForBatches(session, split.getJobId(), groupBatchIds, getMetrics());
+    }
+    for (String batchId : groupBatchIds) {
+      InputStream results = SalesforceBulkUtil.getBatchResults(session, split.getJobId(), batchId, getMetrics());
+      try {
+        groups.add(new ColumnGroup(batchId, createParser(results)));
+      } catch (IOException e) {
+        throw new RuntimeException(String.format("Failed to read results of column group batch '%s'", batchId), e);
+      }
+    }
+    LOG.debug("Joining results of '{}' column group batches of job '{}'", batchIds.size(), split.getJobId());
+    return super.openResults(split, session, conf);
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    while (super.nextKeyValue()) {
+      SalesforceRow row = super.getCurrentValue();
+      if (value == null) {
+        createRow(row.getHeader());
+      }
+      if (join(row)) {
+        return true;
+      }
+      skipped++;
+    }
+    if (skipped > 0) {
+      LOG.warn("Skipped '{}' records, which were changed while column groups were queried", skipped);
+    }
+    return false;
+  }
+
+  @Override
+  public SalesforceRow getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (ColumnGroup group : groups) {
+      group.parser.close();
+    }
+    groups.clear();
+    super.close();
+  }
+
+  /**
+   * Parses record Id in addition to schema fields, since records are joined by it.
+   */
+  @Override
+  protected boolean isProjected(String column) {
+    return FIELD_ID.equals(column) || super.isProjected(column);
+  }
+
+  /**
+   * Creates joined row with columns of the first column group followed by columns of the other groups.
+   */
+  private void createRow(SalesforceRow.Header header) {
+    List<String> columns = new ArrayList<>(header.getColumns());
+    for (ColumnGroup group : groups) {
+      group.offset = columns.size();
+      columns.addAll(group.parser.getHeader());
+    }
+    idColumn = header.indexOf(FIELD_ID);
+    values = new String[columns.size()];
+    value = new SalesforceRow(new SalesforceRow.Header(columns), values);
+  }
+
+  /**
+   * Copies values of the record and values of the same record from results of other column groups
+   * into the joined row.
+   *
+   * @param row record read from results of the first column group
+   * @return true if the record is found in results of all column groups, false otherwise
+   */
+  private boolean join(SalesforceRow row) throws IOException {
+    String id = row.get(idColumn);
+    for (ColumnGroup group : groups) {
+      while (group.getId() != null && group.getId().compareTo(id) < 0) {
+        group.next();
+      }
+      if (!id.equals(group.getId())) {
+        return false;
+      }
+    }
+    String[] rowValues = row.getValues();
+    System.arraycopy(rowValues, 0, values, 0, rowValues.length);
+    for (ColumnGroup group : groups) {
+      String[] groupValues = group.parser.getRow();
+      System.arraycopy(groupValues, 0, values, group.offset, groupValues.length);
+      group.next();
+    }
+    return true;
+  }
+
+  /**
+   * Results of a column group batch, positioned at the record with the least Id not yet joined.
+   */
+  private static final class ColumnGroup {
+    private final BulkCsvParser parser;
+    private final int idColumn;
+    private boolean hasRecord;
+    /**
+     * Position of the first column of the group in the joined row
+     */
+    private int offset;
+
+    private ColumnGroup(String batchId, BulkCsvParser parser) throws IOException {
+      this.parser = parser;
+      this.idColumn = parser.getColumn(FIELD_ID);
+      if (idColumn < 0) {
+        parser.close();
+        throw new IllegalStateException(
+          String.format("Results of column group batch '%s' have no '%s' column", batchId, FIELD_ID));
+      }
+      this.hasRecord = parser.next();
+    }
+
+    /**
+     * @return Id of the current record, {@code null} if all records are read
+     */
+    @Nullable
+    private String getId() {
+      return hasRecord ? parser.getRow()[idColumn] : null;
+    }
+
+    private void next() throws IOException {
+      hasRecord = parser.next();
+    }
+  }
+}
@@ -15,19 +15,32 @@
  */
 package io.cdap.plugin.salesforce.plugin.source.batch;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.sforce.async.AsyncApiException;
 import com.sforce.async.BatchInfo;
-import com.sforce.async.BulkConnection;
+import com.sforce.async.BatchStateEnum;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.salesforce.BulkAPIBatchException;
+import io.cdap.plugin.salesforce.PKChunkingDescriptor;
+import io.cdap.plugin.salesforce.RangeSplitDescriptor;
 import io.cdap.plugin.salesforce.SObjectDescriptor;
+import io.cdap.plugin.salesforce.SalesforceApiBudget;
 import io.cdap.plugin.salesforce.SalesforceBulkUtil;
+import io.cdap.plugin.salesforce.SalesforceBulkV2Util;
 import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
+import io.cdap.plugin.salesforce.SalesforceExecutor;
 import io.cdap.plugin.salesforce.SalesforceQueryUtil;
-import io.cdap.plugin.salesforce.authenticator.Authenticator;
-import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
+import io.cdap.plugin.salesforce.SalesforceReadMetrics;
+import io.cdap.plugin.salesforce.SalesforceSession;
+import io.cdap.plugin.salesforce.parser.SalesforceQueryParser;
 import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import io.cdap.plugin.salesforce.transport.BulkV2Connection;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -39,11 +52,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * Input format class which generates input splits for each given query
@@ -61,12 +79,64 @@ public class SalesforceInputFormat extends InputFormat {
   public List<InputSplit> getSplits(JobContext context) {
     Configuration configuration = context.getConfiguration();
     List<String> queries = GSON.fromJson(configuration.get(SalesforceSourceConstants.CONFIG_QUERIES), QUERIES_TYPE);
-    BulkConnection bulkConnection = getBulkConnection(configuration);
+    SalesforceReadMetrics metrics =
+      SalesforceReadMetrics.forRun(configuration.get(SalesforceSourceConstants.CONFIG_RUN_ID));
+    SalesforceApiBudget budget = new SalesforceApiBudget(
+      configuration.getLong(SalesforceSourceConstants.CONFIG_API_CALL_BUDGET, SalesforceApiBudget.UNLIMITED));
+    Supplier<SalesforceSession> session = Suppliers.memoize(() -> {
+      long start = System.nanoTime();
+      SalesforceSession newSession = SalesforceConnectionUtil.getSession(configuration).withBudget(budget);
+      metrics.addTimeSince(SalesforceReadMetrics.LOGIN_TIME_MS, start);
+      return newSession;
+    });
+    PKChunkingDescriptor pkChunking = getPKChunking(configuration);
+    RangeSplitDescriptor rangeSplit = getRangeSplit(configuration);
+    boolean bulkV2 = SalesforceSourceConstants.BULK_API_V2.equals(
+      configuration.get(SalesforceSourceConstants.CONFIG_BULK_API_VERSION));
+    boolean splitByResultFile = configuration.getBoolean(SalesforceSourceConstants.CONFIG_SPLIT_BY_RESULT_FILE, false);
+    boolean columnGroups =
+      configuration.getBoolean(SalesforceSourceConstants.CONFIG_WIDE_OBJECT_COLUMN_GROUPS, false);
+    String registryPath = configuration.get(SalesforceSourceConstants.CONFIG_JOB_REGISTRY_PATH);
+    SalesforceJobRegistry registry = registryPath == null
+      ? null : new SalesforceJobRegistry(registryPath, configuration);
+    SalesforceResultCache cache = SalesforceResultCache.fromConfiguration(configuration);
 
-    return queries.parallelStream()
-      .map(query -> getQuerySplits(query, bulkConnection))
+    List<SalesforceSplit> splits = SalesforceExecutor.map(queries, query -> {
+      // results of wide object queries are retrieved by readers using SOAP API, so they are not cached
+      boolean cacheable = cache != null && SalesforceQueryUtil.isQueryUnderLengthLimit(query);
+      String cacheKey = cacheable ? SalesforceResultCache.getKey(query, configuration) : null;
+      List<SalesforceSplit> cached = cacheable ? cache.getSplits(cacheKey, query) : null;
+      if (cached != null) {
+        metrics.increment(SalesforceReadMetrics.SPLITS_CACHED, cached.size());
+        return cached;
+      }
+
+      String key = registry == null ? null : SalesforceJobRegistry.getKey(query, configuration);
+      List<SalesforceSplit> querySplits = registry == null ? null : registry.load(key, session.get());
+      if (querySplits != null) {
+        metrics.increment(SalesforceReadMetrics.SPLITS_REUSED, querySplits.size());
+      } else {
+        querySplits = columnGroups && isColumnGroupQuery(query, bulkV2)
+          ? getColumnGroupSplits(query, session.get(), rangeSplit, metrics)
+          : getQuerySplits(query, session.get(), bulkV2, pkChunking, rangeSplit, metrics);
+        if (splitByResultFile) {
+          querySplits = getResultFileSplits(querySplits, session.get(), metrics);
+        }
+        if (registry != null) {
+          registry.save(key, querySplits);
+        }
+      }
+      if (cacheable) {
+        cache.prepare(cacheKey, querySplits);
+      }
+      return querySplits;
+    }).stream()
       .flatMap(Collection::stream)
       .collect(Collectors.toList());
+    sortLargestFirst(splits);
+    metrics.increment(SalesforceReadMetrics.SPLITS, splits.size());
+    distributeApiCallBudget(splits, budget);
+    return new ArrayList<>(splits);
   }
 
   @Override
@@ -83,31 +153,187 @@ public class SalesforceInputFormat extends InputFormat {
       configuration.get(SalesforceSourceConstants.CONFIG_SCHEMAS), SCHEMAS_TYPE);
     Schema schema = Schema.parseJson(schemas.get(sObjectName));
 
-    RecordReader<Schema, Map<String, String>> delegate = SalesforceQueryUtil.isQueryUnderLengthLimit(query)
-      ? new SalesforceRecordReader(schema)
-      : new SalesforceWideRecordReader(schema, query);
+    RecordReader<Schema, SalesforceRow> delegate;
+    if (!multiSplit.getColumnGroupBatchIds().isEmpty()) {
+      delegate = new SalesforceColumnGroupRecordReader(schema);
+    } else if (SalesforceQueryUtil.isQueryUnderLengthLimit(query)) {
+      delegate = new SalesforceRecordReader(schema);
+    } else {
+      delegate = new SalesforceWideRecordReader(schema, query);
+    }
 
     return new SalesforceRecordReaderWrapper(sObjectName, sObjectNameField, delegate);
   }
 
-  private List<SalesforceSplit> getQuerySplits(String query, BulkConnection bulkConnection) {
-    return Stream.of(getBatches(query, bulkConnection))
-      .map(batch -> new SalesforceSplit(batch.getJobId(), batch.getId(), query))
+  private List<SalesforceSplit> getQuerySplits(String query, SalesforceSession session, boolean bulkV2,
+                                               @Nullable PKChunkingDescriptor pkChunking,
+                                               @Nullable RangeSplitDescriptor rangeSplit,
+                                               SalesforceReadMetrics metrics) {
+    // Bulk API 2.0 chunks queries itself, PK chunking settings apply to Bulk API v1 only
+    List<String> rangeQueries = rangeSplit != null && (bulkV2 || pkChunking == null)
+      ? getRangeQueries(query, session, rangeSplit)
+      : Collections.singletonList(query);
+    if (bulkV2) {
+      List<SalesforceSplit> splits = getBulkV2Splits(rangeQueries, session, metrics);
+      if (splits != null) {
+        return splits;
+      }
+    }
+    if (rangeQueries.size() > 1) {
+      BatchInfo[] batches = getRangeBatches(rangeQueries, session, metrics);
+      return IntStream.range(0, batches.length)
+        .mapToObj(i -> SalesforceSplit.forBatch(batches[i], rangeQueries.get(i)))
+        .collect(Collectors.toList());
+    }
+    return Stream.of(getBatches(query, session, pkChunking, metrics))
+      .map(batch -> SalesforceSplit.forBatch(batch, query))
       .collect(Collectors.toList());
   }
 
   /**
-   * Initializes bulk connection based on given Hadoop configuration.
+   * Waits for batches of the splits to complete and replaces each split with splits reading single result files
+   * of its batch. Splits of Bulk API 2.0 jobs and of column groups are returned as is.
+   * <p/>
+   * All batches of the job are waited for under the deadline of a single batch. A job with many batches may be
+   * queued by Salesforce for longer than that, in which case splits are returned as is, and each of them waits
+   * for its own batch while being read.
    *
-   * @param conf Hadoop configuration
-   * @return bulk connection instance
+   * @param splits splits of a query, all of which belong to the same job
+   * @param session Salesforce session
+   * @param metrics metrics to record polls and wait time to
+   * @return a split per result file
    */
-  private BulkConnection getBulkConnection(Configuration conf) {
+  private List<SalesforceSplit> getResultFileSplits(List<SalesforceSplit> splits, SalesforceSession session,
+                                                    SalesforceReadMetrics metrics) {
+    if (splits.isEmpty() || splits.get(0).isBulkV2() || !splits.get(0).getColumnGroupBatchIds().isEmpty()) {
+      return splits;
+    }
+    String jobId = splits.get(0).getJobId();
+    List<String> batchIds = splits.stream()
+      .map(SalesforceSplit::getBatchId)
+      .collect(Collectors.toList());
     try {
-      AuthenticatorCredentials credentials = SalesforceConnectionUtil.getAuthenticatorCredentials(conf);
-      return new BulkConnection(Authenticator.createConnectorConfig(credentials));
+      List<BatchInfo> batches = SalesforceBulkUtil.waitForBatches(session, jobId, batchIds, metrics);
+      List<SalesforceSplit> resultSplits = new ArrayList<>();
+      for (int i = 0; i < splits.size(); i++) {
+        SalesforceSplit split = splits.get(i);
+        String[] resultIds = SalesforceBulkUtil.getBatchResultIds(session, jobId, split.getBatchId());
+        // number of records in each result file is not known, records are assumed to be spread evenly
+        long recordCount = batches.get(i).getNumberRecordsProcessed() / Math.max(1, resultIds.length);
+        for (String resultId : resultIds) {
+          resultSplits.add(SalesforceSplit.forResult(jobId, split.getBatchId(), resultId, split.getQuery(),
+                                                     recordCount));
+        }
+      }
+      LOG.debug("Number of result files of job '{}': '{}'", jobId, resultSplits.size());
+      return resultSplits;
+    } catch (BulkAPIBatchException e) {
+      if (e.getBatchInfo().getState() == BatchStateEnum.Failed) {
+        throw e;
+      }
+      LOG.warn("Batches of job '{}' did not complete in time to be split by result file, reading them by batch",
+               jobId, e);
+      return splits;
     } catch (AsyncApiException e) {
       throw new RuntimeException("There was issue communicating with Salesforce", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for batches to complete", e);
+    }
+  }
+
+  /**
+   * Checks if wide object query can be read by column groups. Column groups are queried by batches of
+   * Bulk API v1 ordered by Id, so queries with limit, offset or grouping cannot be split.
+   */
+  private boolean isColumnGroupQuery(String query, boolean bulkV2) {
+    return !bulkV2 && !SalesforceQueryUtil.isQueryUnderLengthLimit(query)
+      && SalesforceQueryParser.isRangeSplittable(query);
+  }
+
+  /**
+   * Splits wide object query, or each of its range queries, into column group queries, which are sent
+   * to Salesforce as batches of a job per query. Results of each job are read by a separate split,
+   * which joins results of its batches by record Id.
+   *
+   * @param query SOQL query
+   * @param session Salesforce session
+   * @param rangeSplit range splitting settings, if {@code null} query is not split into ranges
+   * @param metrics metrics to record job creation time to
+   * @return a split per query
+   */
+  private List<SalesforceSplit> getColumnGroupSplits(String query, SalesforceSession session,
+                                                     @Nullable RangeSplitDescriptor rangeSplit,
+                                                     SalesforceReadMetrics metrics) {
+    List<String> rangeQueries = rangeSplit == null
+      ? Collections.singletonList(query)
+      : getRangeQueries(query, session, rangeSplit);
+    List<SalesforceSplit> splits = new ArrayList<>(rangeQueries.size());
+    try {
+      for (String rangeQuery : rangeQueries) {
+        List<String> groupQueries = SalesforceQueryUtil.createColumnGroupQueries(rangeQuery);
+        BatchInfo[] batches = SalesforceBulkUtil.runBulkQueries(session, groupQueries, metrics);
+        splits.add(SalesforceSplit.forColumnGroups(batches, rangeQuery));
+      }
+    } catch (AsyncApiException e) {
+      throw new RuntimeException("There was issue communicating with Salesforce", e);
+    }
+    LOG.debug("Wide object query is split into '{}' column groups", splits.get(0).getColumnGroupBatchIds().size());
+    return splits;
+  }
+
+  /**
+   * Sorts splits, so that the largest ones are read first and do not delay the end of the run. Length of a split
+   * is known only once its batch is completed, so splits are sorted only if lengths of all of them are known.
+   * Otherwise, splits of batches still in progress, which may be the largest ones, would be read last.
+   *
+   * @param splits input splits
+   */
+  @VisibleForTesting
+  static void sortLargestFirst(List<SalesforceSplit> splits) {
+    if (splits.stream().allMatch(SalesforceSplit::isCompleted)) {
+      splits.sort(Comparator.comparingLong(SalesforceSplit::getLength).reversed());
+    }
+  }
+
+  /**
+   * Hands out the API call budget of the run, which remains after preparing splits, to the splits evenly.
+   * Reading a split takes at least one call, except for splits read from the result cache, so splits are not
+   * handed out if fewer calls remain than there are splits to read from Salesforce.
+   * <p/>
+   * A share limits each attempt to read the split. A retried task attempt starts with the whole share again,
+   * so calls made by failed attempts are not charged against the budget of the run.
+   *
+   * @param splits input splits
+   * @param budget API call budget of the run
+   * @throws IllegalStateException if fewer calls remain than there are splits to read from Salesforce
+   */
+  @VisibleForTesting
+  static void distributeApiCallBudget(List<SalesforceSplit> splits, SalesforceApiBudget budget) {
+    long remaining = budget.reserve();
+    if (remaining == SalesforceApiBudget.UNLIMITED) {
+      return;
+    }
+    List<SalesforceSplit> calling = new ArrayList<>();
+    for (SalesforceSplit split : splits) {
+      if (split.isCached()) {
+        split.setApiCallBudget(0);
+      } else {
+        calling.add(split);
+      }
+    }
+    if (calling.isEmpty()) {
+      return;
+    }
+    if (remaining < calling.size()) {
+      throw new IllegalStateException(
+        String.format("Salesforce API call budget of the run leaves '%d' calls for reading '%d' splits, "
+                        + "at least one call per split is needed", remaining, calling.size()));
+    }
+    LOG.debug("Distributing remaining API call budget '{}' among '{}' splits", remaining, calling.size());
+    for (int i = 0; i < calling.size(); i++) {
+      long share = remaining / calling.size() + (i < remaining % calling.size() ? 1 : 0);
+      calling.get(i).setApiCallBudget(share);
     }
   }
 
@@ -118,21 +344,142 @@ public class SalesforceInputFormat extends InputFormat {
    * to retrieve data using SOAP API.
    *
    * @param query SOQL query
-   * @param bulkConnection bulk connection
+   * @param session Salesforce session
+   * @param pkChunking PK chunking settings, if {@code null} query is not chunked
+   * @param metrics metrics to record job creation time to
    * @return array of batch info
    */
-  private BatchInfo[] getBatches(String query, BulkConnection bulkConnection) {
+  private BatchInfo[] getBatches(String query, SalesforceSession session, @Nullable PKChunkingDescriptor pkChunking,
+                                 SalesforceReadMetrics metrics) {
     try {
-      if (!SalesforceQueryUtil.isQueryUnderLengthLimit(query)) {
-        LOG.debug("Wide object query detected. Query length '{}'", query.length());
-        query = SalesforceQueryUtil.createSObjectIdQuery(query);
-      }
-      BatchInfo[] batches = SalesforceBulkUtil.runBulkQuery(bulkConnection, query);
+      BatchInfo[] batches = SalesforceBulkUtil.runBulkQuery(session, getBulkQuery(query), pkChunking, metrics);
       LOG.debug("Number of batches received from Salesforce: '{}'", batches.length);
       return batches;
-    } catch (AsyncApiException | IOException e) {
+    } catch (AsyncApiException e) {
+      throw new RuntimeException("There was issue communicating with Salesforce", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for PK chunking batches", e);
+    }
+  }
+
+  /**
+   * Splits query into queries which select disjoint ranges of records by field value. Range boundaries
+   * are spread evenly between the smallest and the largest field value, each of which is selected by a query
+   * ordered by the field. The field is expected to be indexed, so that both queries are cheap.
+   *
+   * @param query SOQL query
+   * @param session Salesforce session
+   * @param rangeSplit range splitting settings
+   * @return range queries, or the query itself if it cannot be split
+   */
+  private List<String> getRangeQueries(String query, SalesforceSession session, RangeSplitDescriptor rangeSplit) {
+    if (!SalesforceQueryParser.isRangeSplittable(query)) {
+      LOG.debug("Query with limit, offset or grouping cannot be split into ranges: '{}'", query);
+      return Collections.singletonList(query);
+    }
+    try {
+      String min = getBoundaryValue(query, rangeSplit.getField(), true, session);
+      String max = getBoundaryValue(query, rangeSplit.getField(), false, session);
+      if (min == null || max == null) {
+        return Collections.singletonList(query);
+      }
+      List<String> boundaries = rangeSplit.getBoundaries(min, max);
+      LOG.debug("Splitting query by '{}' values between '{}' and '{}' at boundaries '{}'",
+                rangeSplit.getField(), min, max, boundaries);
+      return SalesforceQueryUtil.createRangeQueries(query, rangeSplit.getField(), boundaries);
+    } catch (ConnectionException e) {
       throw new RuntimeException("There was issue communicating with Salesforce", e);
     }
   }
 
+  @Nullable
+  private String getBoundaryValue(String query, String field, boolean ascending, SalesforceSession session)
+    throws ConnectionException {
+    String boundaryQuery = SalesforceQueryUtil.createBoundaryQuery(query, field, ascending);
+    SObject[] records = session.callSoap(partnerConnection -> partnerConnection.query(boundaryQuery)).getRecords();
+    return records.length == 0 ? null : (String) records[0].getField(field);
+  }
+
+  /**
+   * Sends range queries to Salesforce as batches of a single job, which are processed in parallel.
+   *
+   * @param queries range queries of the same sObject
+   * @param session Salesforce session
+   * @param metrics metrics to record job creation time to
+   * @return array of batch info in the order of queries
+   */
+  private BatchInfo[] getRangeBatches(List<String> queries, SalesforceSession session,
+                                      SalesforceReadMetrics metrics) {
+    try {
+      List<String> bulkQueries = queries.stream()
+        .map(this::getBulkQuery)
+        .collect(Collectors.toList());
+      BatchInfo[] batches = SalesforceBulkUtil.runBulkQueries(session, bulkQueries, metrics);
+      LOG.debug("Number of range batches sent to Salesforce: '{}'", batches.length);
+      return batches;
+    } catch (AsyncApiException e) {
+      throw new RuntimeException("There was issue communicating with Salesforce", e);
+    }
+  }
+
+  /**
+   * Creates a Bulk API 2.0 query job for each query, results of each job are read by a separate split.
+   *
+   * @param queries SOQL queries
+   * @param session Salesforce session
+   * @param metrics metrics to record job creation time to
+   * @return splits, or {@code null} if Bulk API 2.0 is not supported and Bulk API v1 has to be used instead
+   */
+  @Nullable
+  private List<SalesforceSplit> getBulkV2Splits(List<String> queries, SalesforceSession session,
+                                                SalesforceReadMetrics metrics) {
+    List<SalesforceSplit> splits = new ArrayList<>(queries.size());
+    try {
+      for (String query : queries) {
+        BulkV2Connection.JobInfo job = SalesforceBulkV2Util.createQueryJob(session, getBulkQuery(query), metrics);
+        splits.add(SalesforceSplit.forBulkV2Job(job.getId(), query));
+      }
+    } catch (AsyncApiException e) {
+      if (SalesforceBulkV2Util.isUnsupported(e)) {
+        LOG.warn("Bulk API 2.0 query jobs are not supported, falling back to Bulk API v1: {}", e.getMessage());
+        return null;
+      }
+      throw new RuntimeException("There was issue communicating with Salesforce", e);
+    }
+    LOG.debug("Number of Bulk API 2.0 jobs sent to Salesforce: '{}'", splits.size());
+    return splits;
+  }
+
+  /**
+   * Returns query to be sent to Bulk API. Wide object queries, which exceed SOQL length limit,
+   * are replaced with Id queries, records are retrieved later using SOAP API.
+   */
+  private String getBulkQuery(String query) {
+    if (SalesforceQueryUtil.isQueryUnderLengthLimit(query)) {
+      return query;
+    }
+    LOG.debug("Wide object query detected. Query length '{}'", query.length());
+    return SalesforceQueryUtil.createSObjectIdQuery(query);
+  }
+
+  @Nullable
+  private RangeSplitDescriptor getRangeSplit(Configuration configuration) {
+    String splits = configuration.get(SalesforceSourceConstants.CONFIG_RANGE_SPLITS);
+    if (splits == null) {
+      return null;
+    }
+    return new RangeSplitDescriptor(configuration.get(SalesforceSourceConstants.CONFIG_RANGE_SPLIT_FIELD),
+                                    Integer.parseInt(splits));
+  }
+
+  @Nullable
+  private PKChunkingDescriptor getPKChunking(Configuration configuration) {
+    String chunkSize = configuration.get(SalesforceSourceConstants.CONFIG_PK_CHUNK_SIZE);
+    if (chunkSize == null) {
+      return null;
+    }
+    return new PKChunkingDescriptor(Integer.parseInt(chunkSize),
+                                    configuration.get(SalesforceSourceConstants.CONFIG_PK_CHUNK_PARENT));
+  }
 }
@@ -19,8 +19,14 @@ package io.cdap.plugin.salesforce.plugin.source.batch;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import io.cdap.cdap.api.data.batch.InputFormatProvider;
+import io.cdap.plugin.salesforce.PKChunkingDescriptor;
+import io.cdap.plugin.salesforce.RangeSplitDescriptor;
+import io.cdap.plugin.salesforce.SalesforceApiBudget;
 import io.cdap.plugin.salesforce.SalesforceConstants;
+import io.cdap.plugin.salesforce.SalesforceSession;
 import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Map;
@@ -31,27 +37,88 @@ import javax.annotation.Nullable;
  */
 public class SalesforceInputFormatProvider implements InputFormatProvider {
 
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceInputFormatProvider.class);
   private static final Gson GSON = new Gson();
 
   private final Map<String, String> conf;
 
   public SalesforceInputFormatProvider(SalesforceBaseSourceConfig config,
+                                       SalesforceSession session,
                                        List<String> queries,
                                        Map<String, String> schemas,
-                                       @Nullable String sObjectNameField) {
+                                       @Nullable String sObjectNameField,
+                                       String runId,
+                                       boolean preview) {
     ImmutableMap.Builder<String, String> builder = new ImmutableMap.Builder<String, String>()
       .put(SalesforceConstants.CONFIG_USERNAME, config.getUsername())
       .put(SalesforceConstants.CONFIG_PASSWORD, config.getPassword())
       .put(SalesforceConstants.CONFIG_CONSUMER_KEY, config.getConsumerKey())
       .put(SalesforceConstants.CONFIG_CONSUMER_SECRET, config.getConsumerSecret())
       .put(SalesforceConstants.CONFIG_LOGIN_URL, config.getLoginUrl())
+      // issue time is read before the session id, so that it is never later than the time the id was issued at
+      .put(SalesforceConstants.CONFIG_SESSION_ISSUED_AT, String.valueOf(session.getIssuedAt()))
+      .put(SalesforceConstants.CONFIG_SESSION_ID, session.getSessionId())
+      .put(SalesforceConstants.CONFIG_INSTANCE_URL, session.getInstanceUrl())
       .put(SalesforceSourceConstants.CONFIG_QUERIES, GSON.toJson(queries))
-      .put(SalesforceSourceConstants.CONFIG_SCHEMAS, GSON.toJson(schemas));
+      .put(SalesforceSourceConstants.CONFIG_SCHEMAS, GSON.toJson(schemas))
+      .put(SalesforceSourceConstants.CONFIG_RUN_ID, runId);
+
+    if (config.getApiCallBudget() != SalesforceApiBudget.UNLIMITED) {
+      builder.put(SalesforceSourceConstants.CONFIG_API_CALL_BUDGET, String.valueOf(config.getApiCallBudget()));
+    }
 
     if (sObjectNameField != null) {
       builder.put(SalesforceSourceConstants.CONFIG_SOBJECT_NAME_FIELD, sObjectNameField);
     }
 
+    PKChunkingDescriptor pkChunking = config.getPKChunking();
+    if (pkChunking != null) {
+      builder.put(SalesforceSourceConstants.CONFIG_PK_CHUNK_SIZE, String.valueOf(pkChunking.getChunkSize()));
+      if (pkChunking.getParent() != null) {
+        builder.put(SalesforceSourceConstants.CONFIG_PK_CHUNK_PARENT, pkChunking.getParent());
+      }
+    }
+
+    RangeSplitDescriptor rangeSplit = config.getRangeSplit();
+    if (rangeSplit != null) {
+      builder.put(SalesforceSourceConstants.CONFIG_RANGE_SPLITS, String.valueOf(rangeSplit.getSplits()));
+      builder.put(SalesforceSourceConstants.CONFIG_RANGE_SPLIT_FIELD, rangeSplit.getField());
+    }
+
+    if (config.isBulkV2()) {
+      builder.put(SalesforceSourceConstants.CONFIG_BULK_API_VERSION, SalesforceSourceConstants.BULK_API_V2);
+      if (config.getMaxRecordsPerPage() != null) {
+        builder.put(SalesforceSourceConstants.CONFIG_MAX_RECORDS_PER_PAGE,
+                    String.valueOf(config.getMaxRecordsPerPage()));
+      }
+    }
+
+    if (config.isSplitByResultFile()) {
+      builder.put(SalesforceSourceConstants.CONFIG_SPLIT_BY_RESULT_FILE, Boolean.TRUE.toString());
+    }
+
+    if (config.getJobRegistryPath() != null) {
+      builder.put(SalesforceSourceConstants.CONFIG_JOB_REGISTRY_PATH, config.getJobRegistryPath());
+    }
+
+    if (config.isWideObjectColumnGroups()) {
+      builder.put(SalesforceSourceConstants.CONFIG_WIDE_OBJECT_COLUMN_GROUPS, Boolean.TRUE.toString());
+    }
+    builder.put(SalesforceSourceConstants.CONFIG_RETRIEVE_PAYLOAD_SIZE,
+                String.valueOf(config.getRetrievePayloadSize()));
+
+    if (preview) {
+      builder.put(SalesforceSourceConstants.CONFIG_PREVIEW, Boolean.TRUE.toString());
+    } else if (config.getResultCacheDirectory() != null) {
+      LOG.warn("Query results are cached only by preview runs, result cache directory '{}' is not used",
+               config.getResultCacheDirectory());
+    }
+    if (config.getResultCacheDirectory() != null) {
+      builder.put(SalesforceSourceConstants.CONFIG_RESULT_CACHE_DIRECTORY, config.getResultCacheDirectory())
+        .put(SalesforceSourceConstants.CONFIG_RESULT_CACHE_TTL, String.valueOf(config.getResultCacheTtl()))
+        .put(SalesforceSourceConstants.CONFIG_RESULT_CACHE_SIZE, String.valueOf(config.getResultCacheSize()));
+    }
+
     this.conf = builder.build();
   }
 
@@ -0,0 +1,291 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchStateEnum;
+import io.cdap.plugin.salesforce.SalesforceBulkV2Util;
+import io.cdap.plugin.salesforce.SalesforceConstants;
+import io.cdap.plugin.salesforce.SalesforceSession;
+import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import io.cdap.plugin.salesforce.transport.BulkV2Connection;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Registry of Bulk API jobs submitted for queries, stored as files in a local or HDFS directory.
+ * A file per query records job and batch ids of its splits, so that a rerun of a failed pipeline reuses
+ * jobs Salesforce already processed instead of submitting the same query again. Files of a run are removed
+ * once it succeeds, so that the next run reads current data.
+ * <p/>
+ * Files are keyed by a hash of the query, which contains its filter window, the credentials and the settings
+ * which affect how the query is split. Recorded jobs are reused only if none of their batches failed and
+ * Salesforce still keeps them, which it does for 7 days.
+ */
+public class SalesforceJobRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceJobRegistry.class);
+  private static final Gson GSON = new Gson();
+  private static final Type ENTRIES_TYPE = new TypeToken<List<Entry>>() { }.getType();
+  private static final Type QUERIES_TYPE = new TypeToken<List<String>>() { }.getType();
+  /**
+   * Configuration properties, which change splits of a query
+   */
+  private static final List<String> KEY_PROPERTIES = Arrays.asList(
+    SalesforceConstants.CONFIG_USERNAME, SalesforceConstants.CONFIG_LOGIN_URL,
+    SalesforceSourceConstants.CONFIG_PK_CHUNK_SIZE, SalesforceSourceConstants.CONFIG_PK_CHUNK_PARENT,
+    SalesforceSourceConstants.CONFIG_RANGE_SPLITS, SalesforceSourceConstants.CONFIG_RANGE_SPLIT_FIELD,
+    SalesforceSourceConstants.CONFIG_BULK_API_VERSION, SalesforceSourceConstants.CONFIG_SPLIT_BY_RESULT_FILE,
+    SalesforceSourceConstants.CONFIG_WIDE_OBJECT_COLUMN_GROUPS);
+
+  private final Path directory;
+  private final Configuration conf;
+
+  /**
+   * @param directory directory of registry files, on local file system or HDFS
+   * @param conf Hadoop configuration used to access the file system
+   */
+  public SalesforceJobRegistry(String directory, Configuration conf) {
+    this.directory = new Path(directory);
+    this.conf = conf;
+  }
+
+  /**
+   * Returns the key of the query in the registry.
+   *
+   * @param query SOQL query
+   * @param conf input format configuration
+   * @return hex-encoded SHA-256 hash
+   */
+  public static String getKey(String query, Configuration conf) {
+    Hasher hasher = Hashing.sha256().newHasher().putString(query, StandardCharsets.UTF_8);
+    for (String property : KEY_PROPERTIES) {
+      hasher.putChar('\n').putString(String.valueOf(conf.get(property)), StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Loads splits recorded for the key, if their jobs can be reused.
+   *
+   * @param key query key
+   * @param session Salesforce session
+   * @return splits, or {@code null} if there are no recorded splits or their jobs cannot be reused
+   */
+  @Nullable
+  public List<SalesforceSplit> load(String key, SalesforceSession session) {
+    Path path = getPath(key);
+    List<Entry> entries;
+    try {
+      FileSystem fs = path.getFileSystem(conf);
+      if (!fs.exists(path)) {
+        return null;
+      }
+      try (Reader reader = new InputStreamReader(fs.open(path), StandardCharsets.UTF_8)) {
+        entries = GSON.fromJson(reader, ENTRIES_TYPE);
+      }
+    } catch (IOException | JsonParseException e) {
+      LOG.warn("Failed to read Salesforce job registry file '{}', jobs are not reused", path, e);
+      return null;
+    }
+    if (entries == null || entries.isEmpty()) {
+      return null;
+    }
+
+    try {
+      List<SalesforceSplit> splits = entries.get(0).bulkV2
+        ? getBulkV2Splits(entries, session)
+        : getBatchSplits(entries, session);
+      if (splits != null) {
+        LOG.info("Reusing Salesforce jobs '{}' recorded in '{}'",
+                 entries.stream().map(entry -> entry.jobId).distinct().collect(Collectors.toList()), path);
+      }
+      return splits;
+    } catch (AsyncApiException e) {
+      LOG.debug("Recorded Salesforce jobs cannot be reused: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Records splits of the query.
+   *
+   * @param key query key
+   * @param splits splits of the query
+   */
+  public void save(String key, List<SalesforceSplit> splits) {
+    Path path = getPath(key);
+    List<Entry> entries = splits.stream()
+      .map(Entry::new)
+      .collect(Collectors.toList());
+    try {
+      FileSystem fs = path.getFileSystem(conf);
+      try (FSDataOutputStream out = fs.create(path, true);
+           Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+        GSON.toJson(entries, ENTRIES_TYPE, writer);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to write Salesforce job registry file '{}'", path, e);
+    }
+  }
+
+  /**
+   * Removes splits recorded for the key.
+   *
+   * @param key query key
+   */
+  public void remove(String key) {
+    Path path = getPath(key);
+    try {
+      path.getFileSystem(conf).delete(path, false);
+    } catch (IOException e) {
+      LOG.warn("Failed to delete Salesforce job registry file '{}'", path, e);
+    }
+  }
+
+  /**
+   * Removes splits recorded for queries of a successful run, if the registry is enabled.
+   *
+   * @param inputFormatConf input format configuration of the run
+   */
+  public static void removeQueries(Map<String, String> inputFormatConf) {
+    Configuration conf = new Configuration();
+    inputFormatConf.forEach(conf::set);
+    removeQueries(conf);
+  }
+
+  /**
+   * Removes splits recorded for queries of a successful run, if the registry is enabled.
+   *
+   * @param conf input format configuration of the run
+   */
+  public static void removeQueries(Configuration conf) {
+    String registryPath = conf.get(SalesforceSourceConstants.CONFIG_JOB_REGISTRY_PATH);
+    if (registryPath == null) {
+      return;
+    }
+    SalesforceJobRegistry registry = new SalesforceJobRegistry(registryPath, conf);
+    List<String> queries = GSON.fromJson(conf.get(SalesforceSourceConstants.CONFIG_QUERIES), QUERIES_TYPE);
+    for (String query : queries) {
+      registry.remove(getKey(query, conf));
+    }
+  }
+
+  private Path getPath(String key) {
+    return new Path(directory, key + ".json");
+  }
+
+  @Nullable
+  private static List<SalesforceSplit> getBulkV2Splits(List<Entry> entries, SalesforceSession session)
+    throws AsyncApiException {
+    List<SalesforceSplit> splits = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      BulkV2Connection.JobInfo job = session.callBulkV2(connection -> connection.getQueryJob(entry.jobId));
+      if (SalesforceBulkV2Util.FAILED.equals(job.getState()) || SalesforceBulkV2Util.ABORTED.equals(job.getState())) {
+        return null;
+      }
+      splits.add(SalesforceSplit.forBulkV2Job(entry.jobId, entry.query));
+    }
+    return splits;
+  }
+
+  @Nullable
+  private static List<SalesforceSplit> getBatchSplits(List<Entry> entries, SalesforceSession session)
+    throws AsyncApiException {
+    Map<String, BatchInfo> batches = new HashMap<>();
+    for (String jobId : entries.stream().map(entry -> entry.jobId).distinct().collect(Collectors.toList())) {
+      for (BatchInfo info : session.callBulk(connection -> connection.getBatchInfoList(jobId)).getBatchInfo()) {
+        batches.put(info.getId(), info);
+      }
+    }
+
+    Map<String, Long> resultCounts = entries.stream()
+      .collect(Collectors.groupingBy(entry -> entry.batchId, Collectors.counting()));
+    List<SalesforceSplit> splits = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      if (entry.columnGroupBatchIds != null && !entry.columnGroupBatchIds.isEmpty()) {
+        BatchInfo[] groups = new BatchInfo[entry.columnGroupBatchIds.size()];
+        for (int i = 0; i < groups.length; i++) {
+          groups[i] = batches.get(entry.columnGroupBatchIds.get(i));
+          if (!isReusable(groups[i])) {
+            return null;
+          }
+        }
+        splits.add(SalesforceSplit.forColumnGroups(groups, entry.query));
+        continue;
+      }
+      BatchInfo info = batches.get(entry.batchId);
+      if (!isReusable(info)) {
+        return null;
+      }
+      splits.add(entry.resultId == null
+                   ? SalesforceSplit.forBatch(info, entry.query)
+                   : SalesforceSplit.forResult(entry.jobId, entry.batchId, entry.resultId, entry.query,
+                                               info.getNumberRecordsProcessed() / resultCounts.get(entry.batchId)));
+    }
+    return splits;
+  }
+
+  private static boolean isReusable(@Nullable BatchInfo info) {
+    return info != null && info.getState() != BatchStateEnum.Failed && info.getState() != BatchStateEnum.NotProcessed;
+  }
+
+  /**
+   * Recorded split.
+   */
+  private static final class Entry {
+    private final String jobId;
+    private final String batchId;
+    private final String resultId;
+    private final String query;
+    private final boolean bulkV2;
+    private final List<String> columnGroupBatchIds;
+
+    private Entry(SalesforceSplit split) {
+      this.jobId = split.getJobId();
+      this.batchId = split.getBatchId();
+      this.resultId = split.getResultId();
+      this.query = split.getQuery();
+      this.bulkV2 = split.isBulkV2();
+      this.columnGroupBatchIds = split.getColumnGroupBatchIds();
+    }
+  }
+}
@@ -27,7 +27,9 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.plugin.salesforce.SObjectDescriptor;
 import io.cdap.plugin.salesforce.SObjectsDescribeResult;
 import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
+import io.cdap.plugin.salesforce.SalesforceExecutor;
 import io.cdap.plugin.salesforce.SalesforceSchemaUtil;
+import io.cdap.plugin.salesforce.SalesforceSession;
 import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -113,11 +115,11 @@ public class SalesforceMultiSourceConfig extends SalesforceBaseSourceConfig {
    * @return map of SObjects schemas
    */
   public Map<String, Schema> getSObjectsSchemas(List<String> queries) throws ConnectionException {
-    List<SObjectDescriptor> sObjectDescriptors = queries.parallelStream()
+    List<SObjectDescriptor> sObjectDescriptors = queries.stream()
       .map(SObjectDescriptor::fromQuery)
       .collect(Collectors.toList());
 
-    PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(getAuthenticatorCredentials());
+    SalesforceSession session = SalesforceConnectionUtil.getSession(getAuthenticatorCredentials());
 
     Set<String> sObjectsToDescribe = sObjectDescriptors.stream()
       .map(SObjectDescriptor::getAllParentObjects)
@@ -125,7 +127,7 @@ public class SalesforceMultiSourceConfig extends SalesforceBaseSourceConfig {
       .collect(Collectors.toSet());
 
     // generate one describe result for all SObjects in one request to Salesforce
-    SObjectsDescribeResult describeResult = new SObjectsDescribeResult(partnerConnection, sObjectsToDescribe);
+    SObjectsDescribeResult describeResult = new SObjectsDescribeResult(session, sObjectsToDescribe);
 
     return sObjectDescriptors.stream()
       .collect(Collectors.toMap(
@@ -142,9 +144,8 @@ public class SalesforceMultiSourceConfig extends SalesforceBaseSourceConfig {
    * @return list of SObject queries
    */
   public List<String> getQueries(long logicalStartTime) {
-    List<String> queries = getSObjects().parallelStream()
-      .map(sObject -> getSObjectQuery(sObject, null, logicalStartTime))
-      .collect(Collectors.toList());
+    List<String> queries = SalesforceExecutor.map(getSObjects(),
+                                                  sObject -> getSObjectQuery(sObject, null, logicalStartTime));
 
     if (queries.isEmpty()) {
       throw new IllegalArgumentException("No SObject queries are generated");
@@ -162,9 +163,8 @@ public class SalesforceMultiSourceConfig extends SalesforceBaseSourceConfig {
   private List<String> getSObjects() {
     DescribeGlobalResult describeGlobalResult;
     try {
-      PartnerConnection partnerConnection =
-        SalesforceConnectionUtil.getPartnerConnection(getAuthenticatorCredentials());
-      describeGlobalResult = partnerConnection.describeGlobal();
+      SalesforceSession session = SalesforceConnectionUtil.getSession(getAuthenticatorCredentials());
+      describeGlobalResult = session.callSoap(PartnerConnection::describeGlobal);
     } catch (ConnectionException e) {
       throw new IllegalArgumentException("Unable to connect to Salesforce", e);
     }
@@ -17,16 +17,14 @@ package io.cdap.plugin.salesforce.plugin.source.batch;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.sforce.async.AsyncApiException;
-import com.sforce.async.BulkConnection;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.salesforce.SalesforceApiBudget;
 import io.cdap.plugin.salesforce.SalesforceBulkUtil;
+import io.cdap.plugin.salesforce.SalesforceBulkV2Util;
 import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
-import io.cdap.plugin.salesforce.authenticator.Authenticator;
-import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.csv.QuoteMode;
+import io.cdap.plugin.salesforce.SalesforceReadMetrics;
+import io.cdap.plugin.salesforce.SalesforceSession;
+import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
@@ -36,24 +34,33 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Collections;
+import javax.annotation.Nullable;
 
 /**
  * RecordReader implementation, which reads a single Salesforce batch from bulk job
- * provided in InputSplit
+ * provided in InputSplit. Results are parsed by {@link BulkCsvParser}, only columns of the schema are parsed.
  */
-public class SalesforceRecordReader extends RecordReader<Schema, Map<String, String>> {
+public class SalesforceRecordReader extends RecordReader<Schema, SalesforceRow> {
 
   private static final Logger LOG = LoggerFactory.getLogger(SalesforceRecordReader.class);
 
   private final Schema schema;
+  private final SalesforceReadMetrics metrics = new SalesforceReadMetrics();
 
-  private CSVParser csvParser;
-  private Iterator<CSVRecord> parserIterator;
+  private TaskAttemptContext context;
+  private SalesforceApiBudget budget;
+  private SalesforceSession session;
+  private String batchId;
+  private BulkCsvParser csvParser;
 
-  private Map<String, String> value;
+  private SalesforceRow value;
+  private long rowsParsed;
+  /**
+   * Number of records of the split, 0 if not known
+   */
+  private long totalRecords;
+  private long parseNanos;
 
   public SalesforceRecordReader(Schema schema) {
     this.schema = schema;
@@ -73,33 +80,95 @@ public class SalesforceRecordReader extends RecordReader<Schema, Map<String, Str
 
     SalesforceSplit salesforceSplit = (SalesforceSplit) inputSplit;
     String jobId = salesforceSplit.getJobId();
-    String batchId = salesforceSplit.getBatchId();
+    batchId = salesforceSplit.getBatchId();
+    context = taskAttemptContext;
     LOG.debug("Executing Salesforce Batch Id: '{}' for Job Id: '{}'", batchId, jobId);
+    budget = new SalesforceApiBudget(salesforceSplit.getApiCallBudget());
+
+    totalRecords = salesforceSplit.getLength();
 
     Configuration conf = taskAttemptContext.getConfiguration();
+    SalesforceResultCache cache = SalesforceResultCache.fromConfiguration(conf);
+    if (salesforceSplit.isCached()) {
+      if (cache == null) {
+        throw new IllegalStateException(String.format("Result cache is not available to read cached results of "
+                                                        + "query '%s'", salesforceSplit.getQuery()));
+      }
+      LOG.debug("Reading cached results of part '{}' of query '{}'",
+                salesforceSplit.getCachePart(), salesforceSplit.getQuery());
+      setupParser(cache.open(salesforceSplit.getCacheKey(), salesforceSplit.getCachePart()));
+      return;
+    }
     try {
-      AuthenticatorCredentials credentials = SalesforceConnectionUtil.getAuthenticatorCredentials(conf);
-      BulkConnection bulkConnection = new BulkConnection(Authenticator.createConnectorConfig(credentials));
-      InputStream queryResponseStream = SalesforceBulkUtil.waitForBatchResults(bulkConnection, jobId, batchId);
+      InputStream queryResponseStream = openResults(salesforceSplit, getSession(conf), conf);
+      if (salesforceSplit.getCacheKey() != null && cache != null) {
+        queryResponseStream = cache.record(salesforceSplit.getCacheKey(), salesforceSplit.getCachePart(),
+                                           queryResponseStream);
+      }
       setupParser(queryResponseStream);
     } catch (AsyncApiException e) {
       throw new RuntimeException("There was issue communicating with Salesforce", e);
     }
   }
 
+  /**
+   * Returns session, calls made through which are charged to the API call budget of the split.
+   *
+   * @param conf input format configuration
+   * @return Salesforce session
+   */
+  protected SalesforceSession getSession(Configuration conf) {
+    if (session == null) {
+      session = SalesforceConnectionUtil.getSession(conf).withBudget(budget);
+    }
+    return session;
+  }
+
+  /**
+   * Opens results of the split, waiting for its batch or job to complete if necessary.
+   *
+   * @param split split
+   * @param session Salesforce session
+   * @param conf input format configuration
+   * @return stream of results in csv format
+   * @throws AsyncApiException if there is an issue reading results
+   * @throws InterruptedException interrupted sleep while waiting for batch results
+   */
+  protected InputStream openResults(SalesforceSplit split, SalesforceSession session, Configuration conf)
+    throws AsyncApiException, InterruptedException {
+    String jobId = split.getJobId();
+    if (split.isBulkV2()) {
+      totalRecords = SalesforceBulkV2Util.waitForJob(session, jobId, metrics).getNumberRecordsProcessed();
+      return SalesforceBulkV2Util.getJobResults(session, jobId, getMaxRecordsPerPage(conf), metrics);
+    }
+    if (split.getResultId() != null) {
+      return SalesforceBulkUtil.getBatchResult(session, jobId, batchId, split.getResultId(), metrics);
+    }
+    if (!split.isCompleted()) {
+      totalRecords = SalesforceBulkUtil.waitForBatches(session, jobId, Collections.singletonList(batchId), metrics)
+        .get(0).getNumberRecordsProcessed();
+    }
+    return SalesforceBulkUtil.getBatchResults(session, jobId, batchId, metrics);
+  }
+
   /**
    * Reads single record from csv.
    *
    * @return returns false if no more data to read
    */
   @Override
-  public boolean nextKeyValue() {
-    if (!parserIterator.hasNext()) {
-      return false;
-    }
+  public boolean nextKeyValue() throws IOException {
+    long start = System.nanoTime();
+    try {
+      if (!csvParser.next()) {
+        return false;
+      }
 
-    value = parserIterator.next().toMap();
-    return true;
+      rowsParsed++;
+      return true;
+    } finally {
+      parseNanos += System.nanoTime() - start;
+    }
   }
 
   @Override
@@ -108,13 +177,17 @@ public class SalesforceRecordReader extends RecordReader<Schema, Map<String, Str
   }
 
   @Override
-  public Map<String, String> getCurrentValue() {
+  public SalesforceRow getCurrentValue() {
     return value;
   }
 
+  /**
+   * Returns progress as the number of parsed records over the number of records Salesforce reported for the batch
+   * or job. Size of results in bytes is not known before they are downloaded.
+   */
   @Override
   public float getProgress() {
-    return 0.0f;
+    return totalRecords <= 0 ? 0.0f : Math.min(1.0f, (float) rowsParsed / totalRecords);
   }
 
   @Override
@@ -123,21 +196,66 @@ public class SalesforceRecordReader extends RecordReader<Schema, Map<String, Str
       // this also closes the inputStream
       csvParser.close();
     }
+    if (context != null) {
+      metrics.increment(SalesforceReadMetrics.ROWS_PARSED, rowsParsed);
+      metrics.addTime(SalesforceReadMetrics.PARSE_TIME_MS, parseNanos);
+      metrics.publish(context);
+      metrics.addToReaders(context.getConfiguration().get(SalesforceSourceConstants.CONFIG_RUN_ID));
+      LOG.debug("Read metrics of Salesforce batch '{}': {}", batchId, metrics.toJson());
+      context = null;
+    }
+  }
+
+  /**
+   * @return metrics of reading the batch, published as Hadoop counters and stage metrics when reader is closed
+   */
+  protected SalesforceReadMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return number of records of the split, 0 if not known
+   */
+  protected long getTotalRecords() {
+    return totalRecords;
+  }
+
+  @Nullable
+  private static Integer getMaxRecordsPerPage(Configuration conf) {
+    String maxRecords = conf.get(SalesforceSourceConstants.CONFIG_MAX_RECORDS_PER_PAGE);
+    return maxRecords == null ? null : Integer.parseInt(maxRecords);
+  }
+
+  /**
+   * Returns true if values of the column are parsed, by default if the column is a field of the schema.
+   *
+   * @param column name of a column of results
+   * @return true if values of the column are parsed
+   */
+  protected boolean isProjected(String column) {
+    return schema.getField(column, true) != null;
   }
 
   @VisibleForTesting
   void setupParser(InputStream queryResponseStream) throws IOException {
-    CSVFormat csvFormat = CSVFormat.DEFAULT.
-      withHeader().
-      withQuoteMode(QuoteMode.ALL).
-      withAllowMissingColumnNames(false);
-
-    csvParser = CSVParser.parse(queryResponseStream, StandardCharsets.UTF_8, csvFormat);
+    csvParser = createParser(queryResponseStream);
+    // parser reuses the values array for all records
+    value = new SalesforceRow(new SalesforceRow.Header(csvParser.getHeader()), csvParser.getRow());
+  }
 
-    if (csvParser.getHeaderMap().isEmpty()) {
+  /**
+   * Creates parser of results in csv format with a header, which parses projected columns.
+   *
+   * @param queryResponseStream stream of results
+   * @return parser
+   * @throws IOException if header cannot be read
+   */
+  BulkCsvParser createParser(InputStream queryResponseStream) throws IOException {
+    BulkCsvParser parser = new BulkCsvParser(queryResponseStream, this::isProjected);
+    if (parser.getHeader().isEmpty()) {
+      parser.close();
       throw new IllegalStateException("Empty response was received from Salesforce, but csv header was expected.");
     }
-
-    parserIterator = csvParser.iterator();
+    return parser;
   }
 }
@@ -21,25 +21,26 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
  * Record reader which delegates all reader work to the input record reader.
  * For each current key returns current SObject schema,
  * for each current value adds new field with SObject name to which value belongs to
- * if {@link #sObjectNameField} is set.
+ * if {@link #sObjectNameField} is set. The field is a constant column of the row header, which is created once
+ * per header of the delegate, so values are not copied.
  */
-public class SalesforceRecordReaderWrapper extends RecordReader<Schema, Map<String, String>> {
+public class SalesforceRecordReaderWrapper extends RecordReader<Schema, SalesforceRow> {
 
   private final String sObjectName;
   private final String sObjectNameField;
-  private final RecordReader<Schema, Map<String, String>> delegate;
+  private final RecordReader<Schema, SalesforceRow> delegate;
+  private SalesforceRow.Header delegateHeader;
+  private SalesforceRow value;
 
   public SalesforceRecordReaderWrapper(String sObjectName,
                                        @Nullable String sObjectNameField,
-                                       RecordReader<Schema, Map<String, String>> delegate) {
+                                       RecordReader<Schema, SalesforceRow> delegate) {
     this.sObjectName = sObjectName;
     this.sObjectNameField = sObjectNameField;
     this.delegate = delegate;
@@ -61,14 +62,18 @@ public class SalesforceRecordReaderWrapper extends RecordReader<Schema, Map<Stri
   }
 
   @Override
-  public Map<String, String> getCurrentValue() throws IOException, InterruptedException {
-    Map<String, String> currentValue = delegate.getCurrentValue();
+  public SalesforceRow getCurrentValue() throws IOException, InterruptedException {
+    SalesforceRow currentValue = delegate.getCurrentValue();
     if (sObjectNameField == null) {
       return currentValue;
     }
-    Map<String, String> updatedCurrentValue = new HashMap<>(currentValue);
-    updatedCurrentValue.put(sObjectNameField, sObjectName);
-    return updatedCurrentValue;
+    if (currentValue.getHeader() != delegateHeader) {
+      delegateHeader = currentValue.getHeader();
+      value = new SalesforceRow(delegateHeader.withConstant(sObjectNameField, sObjectName), currentValue.getValues());
+    } else {
+      value.setValues(currentValue.getValues());
+    }
+    return value;
   }
 
   @Override
@@ -0,0 +1,347 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingOutputStream;
+import io.cdap.plugin.salesforce.SalesforceConstants;
+import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of downloaded query results on local disk, used to make repeated preview runs return without submitting
+ * Bulk API jobs. Each cached query is a directory holding a manifest and a gzip-compressed CSV file per split,
+ * which is written while the split is read for the first time. Preview runs stop reading once they reach their
+ * record limit, so results the reader did not read are downloaded to the file when the reader is closed.
+ * <p/>
+ * The manifest is looked up by the driver, while files of splits are written by the readers, so the cache is used
+ * only by preview runs, which read all splits in the JVM of the driver. Splits of other runs may be read on other
+ * machines, which do not share the local disk of the driver.
+ * <p/>
+ * Queries are keyed by a hash of the query text, which contains its resolved filter window, and the credentials.
+ * A cached query is used only if all of its files were written within the time to live. Once the cache exceeds
+ * its size limit, queries which were least recently used are evicted.
+ */
+public class SalesforceResultCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SalesforceResultCache.class);
+
+  public static final int DEFAULT_TTL_MINUTES = 60;
+  public static final int DEFAULT_SIZE_MB = 1024;
+  private static final String MANIFEST = "manifest";
+  private static final String PART_SUFFIX = ".csv.gz";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  /**
+   * Guards eviction, so that readers of the same JVM do not evict concurrently
+   */
+  private static final Object EVICTION_LOCK = new Object();
+
+  private final File directory;
+  private final long ttlMs;
+  private final long maxBytes;
+
+  /**
+   * @param directory local directory of cached results
+   * @param ttlMinutes time to live of cached results in minutes
+   * @param sizeMb maximum size of the cache in megabytes
+   */
+  public SalesforceResultCache(String directory, int ttlMinutes, int sizeMb) {
+    this.directory = new File(directory);
+    this.ttlMs = TimeUnit.MINUTES.toMillis(ttlMinutes);
+    this.maxBytes = sizeMb * 1024L * 1024L;
+  }
+
+  /**
+   * Creates cache configured for the input format. Results are cached only by preview runs.
+   *
+   * @param conf input format configuration
+   * @return cache, or {@code null} if results are not cached
+   */
+  @Nullable
+  public static SalesforceResultCache fromConfiguration(Configuration conf) {
+    String directory = conf.get(SalesforceSourceConstants.CONFIG_RESULT_CACHE_DIRECTORY);
+    if (directory == null || !conf.getBoolean(SalesforceSourceConstants.CONFIG_PREVIEW, false)) {
+      return null;
+    }
+    return new SalesforceResultCache(directory,
+                                     conf.getInt(SalesforceSourceConstants.CONFIG_RESULT_CACHE_TTL,
+                                                 DEFAULT_TTL_MINUTES),
+                                     conf.getInt(SalesforceSourceConstants.CONFIG_RESULT_CACHE_SIZE, DEFAULT_SIZE_MB));
+  }
+
+  /**
+   * Returns the key of the query in the cache.
+   *
+   * @param query SOQL query
+   * @param conf input format configuration
+   * @return hex-encoded SHA-256 hash
+   */
+  public static String getKey(String query, Configuration conf) {
+    return Hashing.sha256().newHasher()
+      .putString(query, StandardCharsets.UTF_8)
+      .putChar('\n').putString(String.valueOf(conf.get(SalesforceConstants.CONFIG_USERNAME)), StandardCharsets.UTF_8)
+      .putChar('\n').putString(String.valueOf(conf.get(SalesforceConstants.CONFIG_LOGIN_URL)), StandardCharsets.UTF_8)
+      .hash().toString();
+  }
+
+  /**
+   * Returns splits reading cached results of the query.
+   *
+   * @param key query key
+   * @param query SOQL query
+   * @return splits, or {@code null} if results of the query are not cached or expired
+   */
+  @Nullable
+  public List<SalesforceSplit> getSplits(String key, String query) {
+    File entry = new File(directory, key);
+    File manifest = new File(entry, MANIFEST);
+    int parts;
+    long created;
+    try {
+      if (!manifest.isFile()) {
+        return null;
+      }
+      String[] values = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8).trim().split(",");
+      parts = Integer.parseInt(values[0]);
+      created = Long.parseLong(values[1]);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to read Salesforce result cache manifest '{}', results are not used", manifest, e);
+      return null;
+    }
+    if (System.currentTimeMillis() - created > ttlMs) {
+      LOG.debug("Cached results of query '{}' are expired", query);
+      delete(entry);
+      return null;
+    }
+    List<SalesforceSplit> splits = new ArrayList<>(parts);
+    for (int part = 0; part < parts; part++) {
+      if (!getPartFile(key, part).isFile()) {
+        return null;
+      }
+      splits.add(SalesforceSplit.forCachedResult(key, part, query));
+    }
+    // last modification time of the manifest tracks the last use of the results
+    if (!manifest.setLastModified(System.currentTimeMillis())) {
+      LOG.debug("Failed to update last use time of cached results '{}'", entry);
+    }
+    LOG.info("Reading results of query '{}' from cache '{}'", query, entry);
+    return splits;
+  }
+
+  /**
+   * Starts caching results of the query read by the splits. Results of each split are written to the cache
+   * while the split is read.
+   *
+   * @param key query key
+   * @param splits splits of the query
+   */
+  public void prepare(String key, List<SalesforceSplit> splits) {
+    File entry = new File(directory, key);
+    delete(entry);
+    try {
+      Files.createDirectories(entry.toPath());
+      String manifest = splits.size() + "," + System.currentTimeMillis();
+      Files.write(new File(entry, MANIFEST).toPath(), manifest.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      LOG.warn("Failed to create Salesforce result cache entry '{}', results are not cached", entry, e);
+      return;
+    }
+    for (int part = 0; part < splits.size(); part++) {
+      splits.get(part).setCachePart(key, part);
+    }
+  }
+
+  /**
+   * Opens cached results read by a split.
+   *
+   * @param key query key
+   * @param part index of the split within the query
+   * @return stream of CSV results
+   * @throws IOException if cached results cannot be read
+   */
+  public InputStream open(String key, int part) throws IOException {
+    return new GZIPInputStream(new FileInputStream(getPartFile(key, part)), BUFFER_SIZE);
+  }
+
+  /**
+   * Wraps the stream of results read by a split, so that the results are written to the cache as they are read.
+   * If the stream is closed before it is read to the end, the rest of the results is downloaded to the cache,
+   * unless it exceeds the cache size limit. Results are added to the cache only once the stream is read to the end.
+   *
+   * @param key query key
+   * @param part index of the split within the query
+   * @param in stream of CSV results
+   * @return stream of the same results
+   */
+  public InputStream record(String key, int part, InputStream in) {
+    File file = getPartFile(key, part);
+    File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+    CountingOutputStream written;
+    OutputStream out;
+    try {
+      written = new CountingOutputStream(new FileOutputStream(temp));
+      out = new GZIPOutputStream(new BufferedOutputStream(written, BUFFER_SIZE));
+    } catch (IOException e) {
+      LOG.warn("Failed to create Salesforce result cache file '{}', results are not cached", temp, e);
+      return in;
+    }
+    return new FilterInputStream(in) {
+      private OutputStream cache = out;
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) throws IOException {
+        int read = super.read(bytes, off, len);
+        if (cache == null) {
+          return read;
+        }
+        try {
+          if (read == -1) {
+            cache.close();
+            cache = null;
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            evict();
+          } else if (read > 0) {
+            cache.write(bytes, off, read);
+          }
+        } catch (IOException e) {
+          LOG.warn("Failed to write Salesforce result cache file '{}', results are not cached", temp, e);
+          discard();
+        }
+        return read;
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          drain();
+        } finally {
+          discard();
+          super.close();
+        }
+      }
+
+      /**
+       * Downloads results, which were not read, to the cache.
+       */
+      private void drain() {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+          while (cache != null && read(buffer, 0, buffer.length) != -1) {
+            if (written.getCount() > maxBytes) {
+              LOG.debug("Results of Salesforce result cache file '{}' exceed the cache size, results are not cached",
+                        temp);
+              discard();
+            }
+          }
+        } catch (IOException e) {
+          LOG.warn("Failed to download results to Salesforce result cache file '{}', results are not cached", temp, e);
+        }
+      }
+
+      /**
+       * Stops caching results, which were not read to the end.
+       */
+      private void discard() {
+        if (cache == null) {
+          return;
+        }
+        try {
+          cache.close();
+        } catch (IOException e) {
+          // file is deleted anyway
+        }
+        cache = null;
+        if (!temp.delete()) {
+          temp.deleteOnExit();
+        }
+      }
+    };
+  }
+
+  /**
+   * Deletes queries least recently used, until the cache fits its size limit. Expired queries are deleted
+   * once they are looked up.
+   */
+  private void evict() {
+    synchronized (EVICTION_LOCK) {
+      File[] entries = directory.listFiles(File::isDirectory);
+      if (entries == null) {
+        return;
+      }
+      long size = Arrays.stream(entries).mapToLong(SalesforceResultCache::getSize).sum();
+      Arrays.sort(entries, Comparator.comparingLong(entry -> new File(entry, MANIFEST).lastModified()));
+      for (File entry : entries) {
+        if (size <= maxBytes) {
+          break;
+        }
+        LOG.debug("Evicting cached Salesforce results '{}'", entry);
+        size -= getSize(entry);
+        delete(entry);
+      }
+    }
+  }
+
+  private File getPartFile(String key, int part) {
+    return new File(new File(directory, key), part + PART_SUFFIX);
+  }
+
+  private static long getSize(File entry) {
+    File[] files = entry.listFiles();
+    return files == null ? 0 : Arrays.stream(files).mapToLong(File::length).sum();
+  }
+
+  private static void delete(File entry) {
+    File[] files = entry.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!file.delete()) {
+          LOG.debug("Failed to delete cached Salesforce results file '{}'", file);
+        }
+      }
+    }
+    if (entry.exists() && !entry.delete()) {
+      LOG.debug("Failed to delete cached Salesforce results '{}'", entry);
+    }
+  }
+}
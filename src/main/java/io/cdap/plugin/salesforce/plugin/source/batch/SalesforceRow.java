@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Record read by Salesforce record readers: values of columns indexed by position, along with a {@link Header}
+ * of column names, which is created once per split and shared by all of its rows.
+ * <p/>
+ * Readers reuse the row and its values array for the next record, so a row is valid until the next call
+ * of {@link org.apache.hadoop.mapreduce.RecordReader#nextKeyValue()}, same as values of other Hadoop readers.
+ * Values are strings as received from Salesforce, {@code null} for columns which were not read.
+ */
+public final class SalesforceRow {
+
+  private final Header header;
+  private String[] values;
+
+  /**
+   * @param header header of the row
+   * @param values values of the row in the order of header columns, columns added by
+   *               {@link Header#withConstant} excluded
+   */
+  public SalesforceRow(Header header, String[] values) {
+    this.header = header;
+    this.values = values;
+  }
+
+  public Header getHeader() {
+    return header;
+  }
+
+  /**
+   * @param column position of the column in the header
+   * @return value of the column
+   */
+  @Nullable
+  public String get(int column) {
+    return column < values.length ? values[column] : header.constants[column - values.length];
+  }
+
+  /**
+   * Returns value by column name. Prefer {@link #get(int)} with a position resolved by {@link Header#indexOf},
+   * when many rows are read.
+   *
+   * @param column column name
+   * @return value of the column, {@code null} if there is no such column
+   */
+  @Nullable
+  public String get(String column) {
+    int index = header.indexOf(column);
+    return index < 0 ? null : get(index);
+  }
+
+  /**
+   * @return values of the row without constant columns, the array is reused for the next record
+   */
+  String[] getValues() {
+    return values;
+  }
+
+  /**
+   * Points the row to values of the next record.
+   */
+  void setValues(String[] values) {
+    this.values = values;
+  }
+
+  /**
+   * Copies values to a map keyed by column names, values which are {@code null} are omitted.
+   * Intended for tests and debugging, since it allocates the map.
+   *
+   * @return map of column names to values
+   */
+  public Map<String, String> toMap() {
+    Map<String, String> map = new LinkedHashMap<>();
+    List<String> columns = header.getColumns();
+    for (int column = 0; column < columns.size(); column++) {
+      String value = get(column);
+      // a repeated name is mapped to the column found by the name
+      if (value != null && header.indexOf(columns.get(column)) == column) {
+        map.put(columns.get(column), value);
+      }
+    }
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return toMap().toString();
+  }
+
+  /**
+   * Column names of rows and their positions. Constant columns, values of which are the same for all rows,
+   * follow the columns which have values in rows.
+   */
+  public static final class Header {
+    private final List<String> columns;
+    private final String[] constants;
+    private final Map<String, Integer> positions = new HashMap<>();
+    /**
+     * Same positions keyed by lower case names, since schema field names are matched case insensitively
+     */
+    private final Map<String, Integer> lowerCasePositions = new HashMap<>();
+
+    /**
+     * @param columns column names, if a name repeats, the first column is found by name unless the last one
+     *                is a constant column
+     */
+    public Header(List<String> columns) {
+      this(columns, new String[0]);
+    }
+
+    private Header(List<String> columns, String[] constants) {
+      this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+      this.constants = constants;
+      int firstConstant = columns.size() - constants.length;
+      for (int column = 0; column < columns.size(); column++) {
+        String name = columns.get(column);
+        // constant column replaces a column of the same name
+        if (column >= firstConstant) {
+          positions.put(name, column);
+          lowerCasePositions.put(name.toLowerCase(Locale.ROOT), column);
+        } else {
+          positions.putIfAbsent(name, column);
+          lowerCasePositions.putIfAbsent(name.toLowerCase(Locale.ROOT), column);
+        }
+      }
+    }
+
+    /**
+     * @return names of all columns, constant columns included
+     */
+    public List<String> getColumns() {
+      return columns;
+    }
+
+    /**
+     * @param column column name, matched case insensitively if there is no column with exactly the same name
+     * @return position of the column, -1 if there is no such column
+     */
+    public int indexOf(String column) {
+      Integer position = positions.get(column);
+      if (position == null) {
+        position = lowerCasePositions.get(column.toLowerCase(Locale.ROOT));
+      }
+      return position == null ? -1 : position;
+    }
+
+    /**
+     * Creates a header with an additional column, which has the same value in all rows.
+     *
+     * @param column name of the column
+     * @param value value of the column
+     * @return new header
+     */
+    public Header withConstant(String column, String value) {
+      List<String> newColumns = new ArrayList<>(columns);
+      newColumns.add(column);
+      String[] newConstants = Arrays.copyOf(constants, constants.length + 1);
+      newConstants[constants.length] = value;
+      return new Header(newColumns, newConstants);
+    }
+  }
+}
@@ -16,12 +16,21 @@
 
 package io.cdap.plugin.salesforce.plugin.source.batch;
 
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchStateEnum;
+import io.cdap.plugin.salesforce.SalesforceApiBudget;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.InputSplit;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /**
  * A split used for mapreduce
@@ -30,6 +39,15 @@ public class SalesforceSplit extends InputSplit implements Writable {
   private String jobId;
   private String batchId;
   private String query;
+  private boolean bulkV2;
+  private boolean completed;
+  private String resultId;
+  private String cacheKey;
+  private int cachePart;
+  private boolean cached;
+  private long recordCount;
+  private List<String> columnGroupBatchIds = Collections.emptyList();
+  private long apiCallBudget = SalesforceApiBudget.UNLIMITED;
 
   @SuppressWarnings("unused")
   public SalesforceSplit() {
@@ -42,11 +60,106 @@ public class SalesforceSplit extends InputSplit implements Writable {
     this.query = query;
   }
 
+  /**
+   * Creates split which reads results of a Bulk API v1 batch. If the batch is already completed,
+   * reader downloads its results without polling its state, and split length is the number of its records.
+   *
+   * @param batch batch
+   * @param query SOQL query
+   * @return split
+   */
+  public static SalesforceSplit forBatch(BatchInfo batch, String query) {
+    SalesforceSplit split = new SalesforceSplit(batch.getJobId(), batch.getId(), query);
+    split.completed = batch.getState() == BatchStateEnum.Completed;
+    split.recordCount = batch.getNumberRecordsProcessed();
+    return split;
+  }
+
+  /**
+   * Creates split which reads a single result file of a completed Bulk API v1 batch.
+   *
+   * @param jobId job id
+   * @param batchId batch id
+   * @param resultId result id
+   * @param query SOQL query
+   * @param recordCount estimated number of records in the result file
+   * @return split
+   */
+  public static SalesforceSplit forResult(String jobId, String batchId, String resultId, String query,
+                                          long recordCount) {
+    SalesforceSplit split = new SalesforceSplit(jobId, batchId, query);
+    split.completed = true;
+    split.resultId = resultId;
+    split.recordCount = recordCount;
+    return split;
+  }
+
+  /**
+   * Creates split which reads results of a Bulk API 2.0 query job. Such jobs have no batches,
+   * so job id is used as batch id.
+   *
+   * @param jobId Bulk API 2.0 job id
+   * @param query SOQL query
+   * @return split
+   */
+  public static SalesforceSplit forBulkV2Job(String jobId, String query) {
+    SalesforceSplit split = new SalesforceSplit(jobId, jobId, query);
+    split.bulkV2 = true;
+    return split;
+  }
+
+  /**
+   * Creates split which reads results of a wide object query split into column groups, each queried
+   * by a batch of the same job. Results of the first batch are read as results of the split, the rest are
+   * joined to them by record Id.
+   *
+   * @param batches batches of the column groups
+   * @param query SOQL query
+   * @return split
+   */
+  public static SalesforceSplit forColumnGroups(BatchInfo[] batches, String query) {
+    SalesforceSplit split = forBatch(batches[0], query);
+    split.completed = Arrays.stream(batches).allMatch(batch -> batch.getState() == BatchStateEnum.Completed);
+    split.columnGroupBatchIds = Arrays.stream(batches)
+      .map(BatchInfo::getId)
+      .collect(Collectors.toList());
+    return split;
+  }
+
+  /**
+   * Creates split which reads results of a query cached on local disk, without calling Salesforce.
+   * Cache key and index of the split within the query are used as job id and batch id.
+   *
+   * @param cacheKey key of the query in the cache
+   * @param part index of the split within the query
+   * @param query SOQL query
+   * @return split
+   */
+  public static SalesforceSplit forCachedResult(String cacheKey, int part, String query) {
+    SalesforceSplit split = new SalesforceSplit(cacheKey, String.valueOf(part), query);
+    split.setCachePart(cacheKey, part);
+    split.cached = true;
+    return split;
+  }
+
   @Override
   public void readFields(DataInput dataInput) throws IOException {
     jobId = dataInput.readUTF();
     batchId = dataInput.readUTF();
     query = dataInput.readUTF();
+    bulkV2 = dataInput.readBoolean();
+    completed = dataInput.readBoolean();
+    resultId = dataInput.readBoolean() ? dataInput.readUTF() : null;
+    cacheKey = dataInput.readBoolean() ? dataInput.readUTF() : null;
+    cachePart = dataInput.readInt();
+    cached = dataInput.readBoolean();
+    recordCount = dataInput.readLong();
+    int columnGroups = dataInput.readInt();
+    columnGroupBatchIds = new ArrayList<>(columnGroups);
+    for (int i = 0; i < columnGroups; i++) {
+      columnGroupBatchIds.add(dataInput.readUTF());
+    }
+    apiCallBudget = dataInput.readLong();
   }
 
   @Override
@@ -54,11 +167,35 @@ public class SalesforceSplit extends InputSplit implements Writable {
     dataOutput.writeUTF(jobId);
     dataOutput.writeUTF(batchId);
     dataOutput.writeUTF(query);
+    dataOutput.writeBoolean(bulkV2);
+    dataOutput.writeBoolean(completed);
+    dataOutput.writeBoolean(resultId != null);
+    if (resultId != null) {
+      dataOutput.writeUTF(resultId);
+    }
+    dataOutput.writeBoolean(cacheKey != null);
+    if (cacheKey != null) {
+      dataOutput.writeUTF(cacheKey);
+    }
+    dataOutput.writeInt(cachePart);
+    dataOutput.writeBoolean(cached);
+    dataOutput.writeLong(recordCount);
+    dataOutput.writeInt(columnGroupBatchIds.size());
+    for (String columnGroupBatchId : columnGroupBatchIds) {
+      dataOutput.writeUTF(columnGroupBatchId);
+    }
+    dataOutput.writeLong(apiCallBudget);
   }
 
+  /**
+   * Returns number of records read by the split, which is used as its size, since size of results is not known
+   * before they are downloaded.
+   *
+   * @return number of records, or 0 if it is not known when the split is created
+   */
   @Override
   public long getLength() {
-    return 0;
+    return recordCount;
   }
 
   @Override
@@ -77,4 +214,79 @@ public class SalesforceSplit extends InputSplit implements Writable {
   public String getQuery() {
     return query;
   }
+
+  /**
+   * @return true if split reads results of a Bulk API 2.0 query job, false if of a Bulk API v1 batch
+   */
+  public boolean isBulkV2() {
+    return bulkV2;
+  }
+
+  /**
+   * @return true if the batch was completed when the split was created, false if its state is unknown
+   */
+  public boolean isCompleted() {
+    return completed;
+  }
+
+  /**
+   * @return id of the result file read by the split, {@code null} if split reads all result files of the batch
+   */
+  @Nullable
+  public String getResultId() {
+    return resultId;
+  }
+
+  /**
+   * @return ids of batches querying column groups of a wide object query, empty if query is not split into groups
+   */
+  public List<String> getColumnGroupBatchIds() {
+    return columnGroupBatchIds;
+  }
+
+  /**
+   * @return key of the query in the result cache, {@code null} if results of the split are not cached
+   */
+  @Nullable
+  public String getCacheKey() {
+    return cacheKey;
+  }
+
+  /**
+   * @return index of the split within the query in the result cache
+   */
+  public int getCachePart() {
+    return cachePart;
+  }
+
+  /**
+   * Makes split write its results to the result cache.
+   *
+   * @param cacheKey key of the query in the cache
+   * @param cachePart index of the split within the query
+   */
+  public void setCachePart(String cacheKey, int cachePart) {
+    this.cacheKey = cacheKey;
+    this.cachePart = cachePart;
+  }
+
+  /**
+   * @return true if split reads results from the result cache, false if from Salesforce
+   */
+  public boolean isCached() {
+    return cached;
+  }
+
+  /**
+   * Returns share of the run API call budget, which can be used to read this split.
+   *
+   * @return number of calls or {@link SalesforceApiBudget#UNLIMITED}
+   */
+  public long getApiCallBudget() {
+    return apiCallBudget;
+  }
+
+  public void setApiCallBudget(long apiCallBudget) {
+    this.apiCallBudget = apiCallBudget;
+  }
 }
@@ -16,16 +16,14 @@
 package io.cdap.plugin.salesforce.plugin.source.batch;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
-import com.sforce.soap.partner.PartnerConnection;
-import com.sforce.soap.partner.sobject.SObject;
 import com.sforce.ws.ConnectionException;
-import com.sforce.ws.bind.XmlObject;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.plugin.salesforce.SObjectDescriptor;
-import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
-import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
+import io.cdap.plugin.salesforce.SalesforceExecutor;
+import io.cdap.plugin.salesforce.SalesforceSession;
 import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import io.cdap.plugin.salesforce.transport.RetrieveConnection;
+import io.cdap.plugin.salesforce.transport.RetrievedRows;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -33,28 +31,59 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * RecordReader implementation for wide SOQL queries. Reads a single Salesforce batch of SObject Id's from bulk job
  * provided in InputSplit, creates subpartitions and makes parallel SOAP calls to retrieve all values.
+ * <p/>
+ * Records are streamed: Id's are read from the batch results as retrieve calls are submitted, at most
+ * {@link SalesforceSourceConstants#WIDE_QUERY_MAX_RETRIEVES_IN_FLIGHT} calls per reader are in flight on
+ * {@link SalesforceExecutor}, and records are returned in the order of Id's as their calls complete. Memory used
+ * by the reader is therefore bounded regardless of the batch size.
+ * <p/>
+ * Number of Id's requested by each call is adjusted by {@link RetrieveBatchSizer} to keep responses close
+ * to the configured payload size. A call which times out is retried in smaller calls.
+ * <p/>
+ * Records are retrieved by {@link RetrieveConnection}, which parses responses into reusable {@link RetrievedRows}
+ * as they are received. Each row is returned as is, with a header of the queried fields.
  */
 public class SalesforceWideRecordReader extends SalesforceRecordReader {
 
   private static final Logger LOG = LoggerFactory.getLogger(SalesforceWideRecordReader.class);
-
   private final String query;
+  /**
+   * Retrieve calls in flight in the order of Id's
+   */
+  private final Deque<Future<RetrievedRows>> retrievals = new ArrayDeque<>();
+  /**
+   * Rows of completed retrieve calls, which were read and can be reused
+   */
+  private final Deque<RetrievedRows> freeRows = new ArrayDeque<>();
 
-  private List<Map<String, String>> results;
-  private Map<String, String> value;
+  private SalesforceSession session;
+  private SObjectDescriptor sObjectDescriptor;
+  private String fields;
+  private RetrieveBatchSizer sizer;
+  private boolean idsRead;
+  private RetrievedRows partition;
   private int index;
+  private long retrieved;
+  private SalesforceRow value;
 
+  /**
+   * @param schema schema of records
+   * @param query wide SOQL query
+   */
   public SalesforceWideRecordReader(Schema schema, String query) {
     super(schema);
     this.query = query;
@@ -63,115 +92,159 @@ public class SalesforceWideRecordReader extends SalesforceRecordReader {
   @Override
   public void initialize(InputSplit inputSplit, TaskAttemptContext taskAttemptContext) throws IOException,
     InterruptedException {
-    List<Map<String, String>> fetchedIdList = fetchBulkQueryIds(inputSplit, taskAttemptContext);
-    LOG.debug("Number of records received from batch job for wide object: '{}'", fetchedIdList.size());
+    super.initialize(inputSplit, taskAttemptContext);
 
     Configuration conf = taskAttemptContext.getConfiguration();
-    try {
-      AuthenticatorCredentials credentials = SalesforceConnectionUtil.getAuthenticatorCredentials(conf);
-      PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(credentials);
-
-      SObjectDescriptor sObjectDescriptor = SObjectDescriptor.fromQuery(query);
-      List<String> fieldsNames = sObjectDescriptor.getFieldsNames();
-      String fields = String.join(",", fieldsNames);
-      String sObjectName = sObjectDescriptor.getName();
-
-      List<List<Map<String, String>>> partitions =
-        Lists.partition(fetchedIdList, SalesforceSourceConstants.WIDE_QUERY_MAX_BATCH_COUNT);
-      LOG.debug("Number of partitions to be fetched for wide object: '{}'", partitions.size());
-
-      results = partitions.parallelStream()
-        .map(this::getSObjectIds)
-        .map(sObjectIds -> fetchPartition(partnerConnection, fields, sObjectName, sObjectIds))
-        .flatMap(Arrays::stream)
-        .map(sObject -> transformToMap(sObject, sObjectDescriptor.getFields()))
-        .collect(Collectors.toList());
-    } catch (ConnectionException e) {
-      throw new RuntimeException("Cannot create Salesforce SOAP connection", e);
-    }
+    session = getSession(conf);
+
+    sObjectDescriptor = SObjectDescriptor.fromQuery(query);
+    fields = String.join(",", sObjectDescriptor.getFieldsNames());
+    value = new SalesforceRow(new SalesforceRow.Header(sObjectDescriptor.getFieldsNames()), new String[0]);
+    int payloadSizeMb = conf.getInt(SalesforceSourceConstants.CONFIG_RETRIEVE_PAYLOAD_SIZE,
+                                    RetrieveBatchSizer.DEFAULT_PAYLOAD_SIZE_MB);
+    sizer = new RetrieveBatchSizer(sObjectDescriptor.getFields().size(), payloadSizeMb * 1024L * 1024L);
+    submitRetrievals();
   }
 
   @Override
-  public boolean nextKeyValue() {
-    if (results.size() == index) {
-      return false;
+  public boolean nextKeyValue() throws IOException {
+    while (true) {
+      while (partition == null || index == partition.size()) {
+        if (partition != null) {
+          freeRows.add(partition);
+          partition = null;
+        }
+        Future<RetrievedRows> next = retrievals.poll();
+        if (next == null) {
+          LOG.debug("Number of records retrieved for wide object: '{}'", retrieved);
+          return false;
+        }
+        partition = await(next);
+        index = 0;
+        submitRetrievals();
+      }
+      String[] row = partition.get(index++);
+      retrieved++;
+      // retrieve returns no record for Id's deleted after the batch was processed
+      if (row != null) {
+        value.setValues(row);
+        return true;
+      }
     }
-    value = results.get(index++);
-    return true;
   }
 
   @Override
-  public Map<String, String> getCurrentValue() {
+  public SalesforceRow getCurrentValue() {
     return value;
   }
 
+  /**
+   * Returns progress as the number of retrieved Id's over the number of Id's in the batch.
+   */
   @Override
   public float getProgress() {
-    return results == null || results.isEmpty() ? 0.0f : (float) index / results.size();
+    long total = getTotalRecords();
+    return total <= 0 ? 0.0f : Math.min(1.0f, (float) retrieved / total);
   }
 
-  @VisibleForTesting
-  Map<String, String> transformToMap(SObject sObject, List<SObjectDescriptor.FieldDescriptor> fieldsNames) {
-    Map<String, String> result = new HashMap<>(fieldsNames.size());
-    for (SObjectDescriptor.FieldDescriptor fieldDescriptor : fieldsNames) {
-      Object fieldValue = extractValue(sObject, fieldDescriptor.getName(), fieldDescriptor.getParents());
-
-      result.put(fieldDescriptor.getFullName(), fieldValue == null ? null : String.valueOf(fieldValue));
+  @Override
+  public void close() throws IOException {
+    for (Future<RetrievedRows> retrieval : retrievals) {
+      retrieval.cancel(true);
     }
-    return result;
+    retrievals.clear();
+    freeRows.clear();
+    partition = null;
+    super.close();
   }
 
   /**
-   * Fetches single entry map (Id -> SObjectId_value) values received from Bulk API.
-   *
-   * @param inputSplit         specifies batch details
-   * @param taskAttemptContext task context
-   * @return list of single entry Map
-   * @throws IOException          can be due error during reading query
-   * @throws InterruptedException interrupted sleep while waiting for batch results
+   * Parses all columns of Bulk API results, which are Id's of records, regardless of the schema.
    */
-  private List<Map<String, String>> fetchBulkQueryIds(InputSplit inputSplit, TaskAttemptContext taskAttemptContext)
-    throws IOException, InterruptedException {
-    super.initialize(inputSplit, taskAttemptContext);
-    List<Map<String, String>> fetchedIdList = new ArrayList<>();
-    while (super.nextKeyValue()) {
-      fetchedIdList.add(super.getCurrentValue());
+  @Override
+  protected boolean isProjected(String column) {
+    return true;
+  }
+
+  /**
+   * Reads Id's received from Bulk API and submits retrieve calls for them, until the maximum number of calls
+   * is in flight or all Id's are read.
+   */
+  private void submitRetrievals() throws IOException {
+    String sObjectName = sObjectDescriptor.getName();
+    while (!idsRead && retrievals.size() < SalesforceSourceConstants.WIDE_QUERY_MAX_RETRIEVES_IN_FLIGHT) {
+      int batchSize = sizer.getBatchSize();
+      String[] sObjectIds = readSObjectIds(batchSize);
+      if (sObjectIds.length < batchSize) {
+        idsRead = true;
+      }
+      if (sObjectIds.length > 0) {
+        RetrievedRows rows = freeRows.isEmpty() ? new RetrievedRows(sObjectDescriptor.getFieldsNames())
+          : freeRows.poll();
+        rows.clear();
+        retrievals.add(SalesforceExecutor.submit(() -> fetchPartition(fields, sObjectName, sObjectIds, rows)));
+      }
     }
-    return fetchedIdList;
   }
 
   /**
-   * Transforms list of single entry map to array of SObject ids.
-   * <p/>
-   * Example:
-   * <ul>
-   *  <li>Expected list of map format: `List(Map(Id -> SObject_id1), Map(Id -> SObject_id2), ...)`</li>
-   *  <li>Result array: `[SObject_id1, SObject_id2, ...]`</li>
-   * </ul>
-   * @param subIds list of single entry Map
-   * @return array of SObject ids
+   * Reads next Id's from single column rows received from Bulk API.
+   *
+   * @param maxIds maximum number of Id's to read
+   * @return array of SObject ids, shorter than maximum if all Id's are read
    */
-  private String[] getSObjectIds(List<Map<String, String>> subIds) {
-    return subIds.stream()
-      .map(Map::values)
-      .flatMap(Collection::stream)
-      .toArray(String[]::new);
+  private String[] readSObjectIds(int maxIds) throws IOException {
+    List<String> sObjectIds = new ArrayList<>();
+    while (sObjectIds.size() < maxIds && super.nextKeyValue()) {
+      sObjectIds.add(super.getCurrentValue().get(0));
+    }
+    return sObjectIds.toArray(new String[0]);
+  }
+
+  private static RetrievedRows await(Future<RetrievedRows> retrieval) {
+    try {
+      return retrieval.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while retrieving wide object records", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
   }
 
   /**
-   * Fetches wide object records through SOAP API.
+   * Fetches wide object records through SOAP API. If the call times out, records are fetched again
+   * by smaller calls.
    *
-   * @param partnerConnection SOAP connection
    * @param fields            SObject fields to be fetched
    * @param sObjectName       SObject name
    * @param sObjectIds        SObject ids to be fetched
-   * @return fetched SObject array
+   * @param rows              rows to add fetched records to
+   * @return the rows
    */
-  private SObject[] fetchPartition(PartnerConnection partnerConnection, String fields, String sObjectName,
-                                   String[] sObjectIds) {
+  private RetrievedRows fetchPartition(String fields, String sObjectName, String[] sObjectIds, RetrievedRows rows) {
+    long start = System.nanoTime();
+    long bytes = rows.getBytes();
     try {
-      return partnerConnection.retrieve(fields, sObjectName, sObjectIds);
+      session.callRetrieve(retrieveConnection -> retrieveConnection.retrieve(fields, sObjectName, sObjectIds, rows));
+      getMetrics().recordRetrieve(start);
+      sizer.onResponse(sObjectIds.length, rows.getBytes() - bytes,
+                       TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      return rows;
     } catch (ConnectionException e) {
+      if (sObjectIds.length > 1 && isTimeout(e)) {
+        int batchSize = sizer.onTimeout(sObjectIds.length);
+        LOG.warn("Retrieve of '{}' records of SObject '{}' timed out, retrying by '{}' records",
+                 sObjectIds.length, sObjectName, batchSize);
+        for (int from = 0; from < sObjectIds.length; from += batchSize) {
+          String[] ids = Arrays.copyOfRange(sObjectIds, from, Math.min(from + batchSize, sObjectIds.length));
+          fetchPartition(fields, sObjectName, ids, rows);
+        }
+        return rows;
+      }
       LOG.trace("Fetched SObject name: '{}', fields: '{}', Ids: '{}'", sObjectName, fields,
                 String.join(",", sObjectIds));
       throw new RuntimeException(String.format("Cannot retrieve data for SObject '%s'", sObjectName), e);
@@ -179,46 +252,19 @@ public class SalesforceWideRecordReader extends SalesforceRecordReader {
   }
 
   /**
-   * Extracts value from XmlObject field. Reference type fields extracted recursively.
-   * <p/>
-   * Example: `SELECT Id, Name, Campaign.Id FROM Opportunity LIMIT 1`
-   * <p/>
-   * Response:
-   * <pre>
-   * XmlObject{name=Opportunity, value=null,
-   *   children=[
-   *     XmlObject{name=Id, value=oid-1, children=[]},
-   *     XmlObject{name=Name, value=value1, children=[]},
-   *     XmlObject{name=Campaign, value=null, children=[XmlObject{name=Id, value=cid-1, children=[]}]}
-   *   ]
-   * }
-   * </pre>
-   * <ul>
-   *  <li>Extract simple field  `Id` from SObject Opportunity:
-   *  name=`Id`, children=`empty List()` -> `oid-1`</li>
-   *  <li>Extract simple field  `Name` from SObject Opportunity:
-   *  name=`Name`, children=`empty List()` -> `value1`</li>
-   *  <li>Extract reference field  `Campaign.Id` from SObject Opportunity:
-   *  name=`Id`, children=`List(Campaign)` -> `cid-1`</li>
-   * </ul>
+   * Checks if the call failed because of a timeout, either while waiting for the response or while reading its
+   * content. The latter is reported by the HTTP client as an {@link IOException} caused by {@link TimeoutException}.
    *
-   * @param xmlObject field value holder
-   * @param name      field name
-   * @param children  field's children names
-   * @return field value
+   * @param e exception thrown by the call
+   * @return true if the call timed out, false otherwise
    */
-  private Object extractValue(XmlObject xmlObject, String name, List<String> children) {
-    if (children.isEmpty()) {
-      return xmlObject.getField(name);
-    }
-    String childName = children.get(0);
-    XmlObject child = xmlObject.getChild(childName);
-    if (child == null) {
-      throw new IllegalStateException(
-        String.format("SObject reference field with name '%s' not found in parent '%s'",
-                      childName, xmlObject.getName().getLocalPart()));
+  @VisibleForTesting
+  static boolean isTimeout(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+        return true;
+      }
     }
-    // remove higher level child from list and check remaining
-    return extractValue(child, name, children.subList(1, children.size()));
+    return false;
   }
 }
@@ -33,10 +33,46 @@ public class SalesforceSourceConstants {
   public static final String PROPERTY_BLACK_LIST = "blackList";
   public static final String PROPERTY_SOBJECT_NAME_FIELD = "sObjectNameField";
 
+  public static final String PROPERTY_API_CALL_BUDGET = "apiCallBudget";
+  public static final String PROPERTY_ENABLE_PK_CHUNKING = "enablePKChunking";
+  public static final String PROPERTY_CHUNK_SIZE = "chunkSize";
+  public static final String PROPERTY_CHUNK_PARENT = "chunkParent";
+  public static final String PROPERTY_RANGE_SPLITS = "rangeSplits";
+  public static final String PROPERTY_RANGE_SPLIT_FIELD = "rangeSplitField";
+  public static final String PROPERTY_BULK_API_VERSION = "bulkApiVersion";
+  public static final String PROPERTY_MAX_RECORDS_PER_PAGE = "maxRecordsPerPage";
+  public static final String PROPERTY_SPLIT_BY_RESULT_FILE = "splitByResultFile";
+  public static final String PROPERTY_JOB_REGISTRY_PATH = "jobRegistryPath";
+  public static final String PROPERTY_RESULT_CACHE_DIRECTORY = "resultCacheDirectory";
+  public static final String PROPERTY_RESULT_CACHE_TTL = "resultCacheTtl";
+  public static final String PROPERTY_RESULT_CACHE_SIZE = "resultCacheSize";
+  public static final String PROPERTY_WIDE_OBJECT_COLUMN_GROUPS = "wideObjectColumnGroups";
+  public static final String PROPERTY_RETRIEVE_PAYLOAD_SIZE = "retrievePayloadSize";
+
   public static final String CONFIG_QUERIES = "mapred.salesforce.input.queries";
   public static final String CONFIG_SCHEMAS = "mapred.salesforce.input.schemas";
   public static final String CONFIG_SOBJECT_NAME_FIELD = "mapred.salesforce.input.sObjectNameField";
+  public static final String CONFIG_RUN_ID = "mapred.salesforce.input.runId";
+  public static final String CONFIG_PREVIEW = "mapred.salesforce.input.preview";
+  public static final String CONFIG_API_CALL_BUDGET = "mapred.salesforce.input.apiCallBudget";
+  public static final String CONFIG_PK_CHUNK_SIZE = "mapred.salesforce.input.pkChunkSize";
+  public static final String CONFIG_PK_CHUNK_PARENT = "mapred.salesforce.input.pkChunkParent";
+  public static final String CONFIG_RANGE_SPLITS = "mapred.salesforce.input.rangeSplits";
+  public static final String CONFIG_RANGE_SPLIT_FIELD = "mapred.salesforce.input.rangeSplitField";
+  public static final String CONFIG_BULK_API_VERSION = "mapred.salesforce.input.bulkApiVersion";
+  public static final String CONFIG_MAX_RECORDS_PER_PAGE = "mapred.salesforce.input.maxRecordsPerPage";
+  public static final String CONFIG_SPLIT_BY_RESULT_FILE = "mapred.salesforce.input.splitByResultFile";
+  public static final String CONFIG_JOB_REGISTRY_PATH = "mapred.salesforce.input.jobRegistryPath";
+  public static final String CONFIG_RESULT_CACHE_DIRECTORY = "mapred.salesforce.input.resultCacheDirectory";
+  public static final String CONFIG_RESULT_CACHE_TTL = "mapred.salesforce.input.resultCacheTtl";
+  public static final String CONFIG_RESULT_CACHE_SIZE = "mapred.salesforce.input.resultCacheSize";
+  public static final String CONFIG_WIDE_OBJECT_COLUMN_GROUPS = "mapred.salesforce.input.wideObjectColumnGroups";
+  public static final String CONFIG_RETRIEVE_PAYLOAD_SIZE = "mapred.salesforce.input.retrievePayloadSize";
+
+  public static final String BULK_API_V1 = "1.0";
+  public static final String BULK_API_V2 = "2.0";
 
   public static final int WIDE_QUERY_MAX_BATCH_COUNT = 2000;
+  public static final int WIDE_QUERY_MAX_RETRIEVES_IN_FLIGHT = 4;
 
 }
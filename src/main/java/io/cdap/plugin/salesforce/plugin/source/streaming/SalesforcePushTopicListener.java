@@ -16,9 +16,9 @@
 
 package io.cdap.plugin.salesforce.plugin.source.streaming;
 
+import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
 import io.cdap.plugin.salesforce.SalesforceConstants;
-import io.cdap.plugin.salesforce.authenticator.AuthResponse;
-import io.cdap.plugin.salesforce.authenticator.Authenticator;
+import io.cdap.plugin.salesforce.SalesforceSession;
 import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
 import org.awaitility.Awaitility;
 import org.awaitility.core.ConditionTimeoutException;
@@ -102,9 +102,8 @@ public class SalesforcePushTopicListener {
   }
 
   private BayeuxClient getClient(AuthenticatorCredentials credentials) throws Exception {
-    AuthResponse authResponse = Authenticator.oauthLogin(credentials);
-    String acessToken = authResponse.getAccessToken();
-    String instanceUrl = authResponse.getInstanceUrl();
+    // session is shared with other Salesforce calls in this JVM and refreshed before it expires
+    SalesforceSession session = SalesforceConnectionUtil.getSession(credentials);
 
     SslContextFactory sslContextFactory = new SslContextFactory();
 
@@ -125,12 +124,12 @@ public class SalesforcePushTopicListener {
       @Override
       protected void customize(Request exchange) {
         super.customize(exchange);
-        exchange.header("Authorization", "OAuth " + acessToken);
+        exchange.header("Authorization", "OAuth " + session.getSessionId());
       }
     };
 
     // Now set up the Bayeux client itself
-    BayeuxClient client = new BayeuxClient(instanceUrl + DEFAULT_PUSH_ENDPOINT, transport);
+    BayeuxClient client = new BayeuxClient(session.getInstanceUrl() + DEFAULT_PUSH_ENDPOINT, transport);
     client.handshake();
 
     return client;
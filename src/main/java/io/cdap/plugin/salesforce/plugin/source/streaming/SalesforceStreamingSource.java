@@ -34,8 +34,8 @@ import io.cdap.cdap.etl.api.validation.InvalidStageException;
 import io.cdap.plugin.common.Constants;
 import io.cdap.plugin.common.IdUtils;
 import io.cdap.plugin.salesforce.SObjectDescriptor;
+import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
 import io.cdap.plugin.salesforce.SalesforceSchemaUtil;
-import io.cdap.plugin.salesforce.authenticator.Authenticator;
 import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.streaming.api.java.JavaDStream;
@@ -192,8 +192,7 @@ public class SalesforceStreamingSource extends StreamingSource<StructuredRecord>
   @Path("outputSchema")
   public Schema outputSchema(SalesforceStreamingSourceConfig config) throws Exception {
     AuthenticatorCredentials authenticatorCredentials = config.getAuthenticatorCredentials();
-    PartnerConnection partnerConnection = new PartnerConnection(
-      Authenticator.createConnectorConfig(authenticatorCredentials));
+    PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(authenticatorCredentials);
     SObject pushTopic =
       SalesforceStreamingSourceConfig.fetchPushTopicByName(partnerConnection, config.getPushTopicName());
 
@@ -29,9 +29,9 @@ import io.cdap.cdap.etl.api.validation.InvalidConfigPropertyException;
 import io.cdap.cdap.etl.api.validation.InvalidStageException;
 import io.cdap.plugin.salesforce.SObjectDescriptor;
 import io.cdap.plugin.salesforce.SObjectFilterDescriptor;
+import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
 import io.cdap.plugin.salesforce.SalesforceConstants;
 import io.cdap.plugin.salesforce.SalesforceQueryUtil;
-import io.cdap.plugin.salesforce.authenticator.Authenticator;
 import io.cdap.plugin.salesforce.plugin.BaseSalesforceConfig;
 import io.cdap.plugin.salesforce.soap.SObjectBuilder;
 import io.cdap.plugin.salesforce.soap.SObjectUtil;
@@ -167,8 +167,8 @@ public class SalesforceStreamingSourceConfig extends BaseSalesforceConfig implem
     }
 
     try {
-      PartnerConnection partnerConnection = new PartnerConnection(
-        Authenticator.createConnectorConfig(this.getAuthenticatorCredentials()));
+      PartnerConnection partnerConnection =
+        SalesforceConnectionUtil.getPartnerConnection(this.getAuthenticatorCredentials());
 
       SObject pushTopic = fetchPushTopicByName(partnerConnection, pushTopicName);
       String query = getQuery();
@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
+import com.sforce.ws.ConnectorConfig;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Client of Bulk API 2.0 query jobs, which sends requests through the pooled keep-alive
+ * {@link SalesforceHttpClient}. Salesforce splits query jobs into chunks itself, results are read
+ * in pages, each of which points to the next one with a locator.
+ * <p/>
+ * Errors are reported as {@link AsyncApiException}, so that session refresh and API limits handling
+ * of Bulk API v1 apply as well.
+ */
+public class BulkV2Connection {
+
+  /**
+   * Bulk API 2.0 query jobs are available since API version 47.0
+   */
+  public static final String API_VERSION = "47.0";
+
+  private static final Gson GSON = new Gson();
+  private static final String JSON = "application/json";
+  private static final String CSV = "text/csv";
+  private static final String LOCATOR_HEADER = "Sforce-Locator";
+  private static final String NUMBER_OF_RECORDS_HEADER = "Sforce-NumberOfRecords";
+  /**
+   * Value of locator header of the last page
+   */
+  private static final String LAST_LOCATOR = "null";
+  private static final Map<String, AsyncExceptionCode> ERROR_CODES = new HashMap<>();
+
+  static {
+    ERROR_CODES.put("INVALID_SESSION_ID", AsyncExceptionCode.InvalidSessionId);
+    ERROR_CODES.put("REQUEST_LIMIT_EXCEEDED", AsyncExceptionCode.ExceededQuota);
+    ERROR_CODES.put("NOT_FOUND", AsyncExceptionCode.InvalidUrl);
+    ERROR_CODES.put("API_DISABLED_FOR_ORG", AsyncExceptionCode.FeatureNotEnabled);
+    ERROR_CODES.put("FEATURENOTENABLED", AsyncExceptionCode.FeatureNotEnabled);
+    ERROR_CODES.put("INVALIDENTITY", AsyncExceptionCode.InvalidEntity);
+    ERROR_CODES.put("INVALIDJOB", AsyncExceptionCode.InvalidJob);
+  }
+
+  private final ConnectorConfig config;
+
+  public BulkV2Connection(ConnectorConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Creates query job. Salesforce starts processing the job once it is created.
+   *
+   * @param query SOQL query
+   * @return created job
+   * @throws AsyncApiException if job cannot be created
+   */
+  public JobInfo createQueryJob(String query) throws AsyncApiException {
+    Map<String, String> body = new HashMap<>();
+    body.put("operation", "query");
+    body.put("query", query);
+    body.put("contentType", "CSV");
+    Request request = newRequest(getJobsUrl(), HttpMethod.POST, JSON)
+      .content(new StringContentProvider(JSON, GSON.toJson(body), StandardCharsets.UTF_8));
+    return readJson(send(request), JobInfo.class);
+  }
+
+  /**
+   * @param jobId job id
+   * @return current job state
+   * @throws AsyncApiException if job cannot be read
+   */
+  public JobInfo getQueryJob(String jobId) throws AsyncApiException {
+    return readJson(send(newRequest(getJobsUrl() + "/" + jobId, HttpMethod.GET, JSON)), JobInfo.class);
+  }
+
+  /**
+   * Requests a page of results of a completed job.
+   *
+   * @param jobId job id
+   * @param locator locator of the page, {@code null} for the first page
+   * @param maxRecords maximum number of records in the page, if {@code null} Salesforce chooses the page size
+   * @return page with CSV content, which has to be closed by the caller
+   * @throws AsyncApiException if results cannot be read
+   */
+  public ResultPage getQueryResults(String jobId, @Nullable String locator, @Nullable Integer maxRecords)
+    throws AsyncApiException {
+    Request request = newRequest(getJobsUrl() + "/" + jobId + "/results", HttpMethod.GET, CSV);
+    if (locator != null) {
+      request.param("locator", locator);
+    }
+    if (maxRecords != null) {
+      request.param("maxRecords", String.valueOf(maxRecords));
+    }
+    HttpResponse response = send(request);
+    String nextLocator = response.getHeaders().get(LOCATOR_HEADER);
+    String records = response.getHeaders().get(NUMBER_OF_RECORDS_HEADER);
+    return new ResultPage(response.getContent(),
+                          nextLocator == null || LAST_LOCATOR.equals(nextLocator) ? null : nextLocator,
+                          records == null ? -1 : Long.parseLong(records));
+  }
+
+  /**
+   * @return URL of query jobs resource on the instance of REST endpoint
+   */
+  private String getJobsUrl() {
+    URI endpoint = URI.create(config.getRestEndpoint());
+    return String.format("%s://%s/services/data/v%s/jobs/query", endpoint.getScheme(), endpoint.getRawAuthority(),
+                         API_VERSION);
+  }
+
+  private Request newRequest(String url, HttpMethod method, String accept) {
+    Request request = SalesforceHttpClient.get().newRequest(url)
+      .method(method)
+      .header(HttpHeader.AUTHORIZATION, "Bearer " + config.getSessionId())
+      .header(HttpHeader.ACCEPT, accept);
+    if (config.isCompression()) {
+      request.header(HttpHeader.ACCEPT_ENCODING, HttpResponse.GZIP);
+    }
+    return request;
+  }
+
+  private HttpResponse send(Request request) throws AsyncApiException {
+    HttpResponse response;
+    try {
+      response = HttpResponse.send(request, config);
+    } catch (IOException e) {
+      throw new AsyncApiException("Failed to send request to " + request.getURI(),
+                                  AsyncExceptionCode.ClientInputError, e);
+    }
+    if (response.getStatus() >= 400) {
+      throw parseError(response);
+    }
+    return response;
+  }
+
+  private static <T> T readJson(HttpResponse response, Class<T> type) throws AsyncApiException {
+    try (Reader reader = new InputStreamReader(response.getContent(), StandardCharsets.UTF_8)) {
+      return GSON.fromJson(reader, type);
+    } catch (IOException | JsonParseException e) {
+      throw new AsyncApiException("Failed to parse Bulk API 2.0 response", AsyncExceptionCode.ClientInputError, e);
+    }
+  }
+
+  /**
+   * Parses Bulk API 2.0 error response, which has the following format:
+   * <pre>
+   * [{"errorCode": "INVALID_SESSION_ID", "message": "Session expired or invalid"}]
+   * </pre>
+   */
+  private static AsyncApiException parseError(HttpResponse response) {
+    Error[] errors;
+    try (Reader reader = new InputStreamReader(response.getContent(), StandardCharsets.UTF_8)) {
+      errors = GSON.fromJson(reader, Error[].class);
+    } catch (IOException | JsonParseException e) {
+      errors = null;
+    }
+    if (errors == null || errors.length == 0) {
+      return new AsyncApiException(String.format("Bulk API 2.0 request failed with HTTP status '%d'",
+                                                 response.getStatus()),
+                                   response.getStatus() == 404 ? AsyncExceptionCode.InvalidUrl
+                                     : AsyncExceptionCode.Unknown);
+    }
+    AsyncExceptionCode code = ERROR_CODES.getOrDefault(errors[0].errorCode, AsyncExceptionCode.Unknown);
+    return new AsyncApiException(errors[0].errorCode + " : " + errors[0].message, code);
+  }
+
+  /**
+   * Bulk API 2.0 query job.
+   */
+  public static final class JobInfo {
+    private String id;
+    private String object;
+    private String state;
+    private long numberRecordsProcessed;
+    private String errorMessage;
+
+    public String getId() {
+      return id;
+    }
+
+    public String getObject() {
+      return object;
+    }
+
+    /**
+     * @return job state: UploadComplete, InProgress, JobComplete, Failed or Aborted
+     */
+    public String getState() {
+      return state;
+    }
+
+    public long getNumberRecordsProcessed() {
+      return numberRecordsProcessed;
+    }
+
+    @Nullable
+    public String getErrorMessage() {
+      return errorMessage;
+    }
+
+    @Override
+    public String toString() {
+      return "JobInfo{" +
+        "id='" + id + '\'' +
+        ", object='" + object + '\'' +
+        ", state='" + state + '\'' +
+        ", numberRecordsProcessed=" + numberRecordsProcessed +
+        ", errorMessage='" + errorMessage + '\'' +
+        '}';
+    }
+  }
+
+  /**
+   * Page of query job results.
+   */
+  public static final class ResultPage {
+    private final InputStream content;
+    private final String nextLocator;
+    private final long records;
+
+    private ResultPage(InputStream content, @Nullable String nextLocator, long records) {
+      this.content = content;
+      this.nextLocator = nextLocator;
+      this.records = records;
+    }
+
+    /**
+     * @return CSV content of the page, starting with header
+     */
+    public InputStream getContent() {
+      return content;
+    }
+
+    /**
+     * @return locator of the next page, {@code null} if this page is the last one
+     */
+    @Nullable
+    public String getNextLocator() {
+      return nextLocator;
+    }
+
+    /**
+     * @return number of records in the page, -1 if unknown
+     */
+    public long getRecords() {
+      return records;
+    }
+  }
+
+  /**
+   * Bulk API 2.0 error.
+   */
+  private static final class Error {
+    private String errorCode;
+    private String message;
+  }
+}
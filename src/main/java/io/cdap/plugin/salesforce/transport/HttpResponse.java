@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.common.io.ByteStreams;
+import com.sforce.ws.ConnectorConfig;
+import io.cdap.plugin.salesforce.SalesforceApiGovernor;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response received through {@link SalesforceHttpClient}. Content is streamed,
+ * connection returns to the pool once the content is fully read.
+ */
+class HttpResponse {
+
+  static final String GZIP = "gzip";
+  static final String LIMIT_INFO_HEADER = "Sforce-Limit-Info";
+
+  /**
+   * Connection can be reused only after response content is fully read. If less than this is left unread
+   * when content stream is closed, it is read to keep the connection, otherwise connection is dropped.
+   */
+  private static final long MAX_DRAIN_BYTES = 64 * 1024;
+
+  private final int status;
+  private final HttpFields headers;
+  private final InputStream content;
+
+  private HttpResponse(int status, HttpFields headers, InputStream content) {
+    this.status = status;
+    this.headers = headers;
+    this.content = content;
+  }
+
+  /**
+   * Sends request and waits for response headers, at most for the read timeout of the connector config,
+   * or of {@link SalesforceHttpClient} if the config does not set it.
+   *
+   * @param request HTTP request
+   * @param config connector config of the connection sending the request
+   * @return HTTP response
+   * @throws IOException if request failed or timed out
+   */
+  static HttpResponse send(Request request, ConnectorConfig config) throws IOException {
+    long readTimeoutMs = config.getReadTimeout() > 0
+      ? config.getReadTimeout() : SalesforceHttpClient.getReadTimeoutMs();
+    request.idleTimeout(readTimeoutMs, TimeUnit.MILLISECONDS);
+
+    InputStreamResponseListener listener = new InputStreamResponseListener();
+    request.send(listener);
+    Response response;
+    try {
+      response = listener.get(readTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      request.abort(e);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for response from " + request.getURI());
+    } catch (TimeoutException e) {
+      request.abort(e);
+      throw new SocketTimeoutException("Timed out waiting for response from " + request.getURI());
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to send request to " + request.getURI(), e.getCause());
+    }
+
+    String limitInfo = response.getHeaders().get(LIMIT_INFO_HEADER);
+    if (limitInfo != null) {
+      SalesforceApiGovernor.forHost(request.getHost()).recordApiUsage(limitInfo);
+    }
+
+    InputStream content = new DrainingInputStream(listener.getInputStream());
+    if (GZIP.equalsIgnoreCase(response.getHeaders().get(HttpHeader.CONTENT_ENCODING))) {
+      content = new GZIPInputStream(content);
+    }
+    return new HttpResponse(response.getStatus(), response.getHeaders(), content);
+  }
+
+  int getStatus() {
+    return status;
+  }
+
+  HttpFields getHeaders() {
+    return headers;
+  }
+
+  InputStream getContent() {
+    return content;
+  }
+
+  /**
+   * Reads the rest of response content on close, so that callers which stop reading at the end
+   * of the parsed document do not prevent connection reuse.
+   */
+  private static final class DrainingInputStream extends FilterInputStream {
+
+    DrainingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        ByteStreams.exhaust(ByteStreams.limit(in, MAX_DRAIN_BYTES));
+      } finally {
+        super.close();
+      }
+    }
+  }
+}
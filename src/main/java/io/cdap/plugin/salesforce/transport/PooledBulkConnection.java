@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.common.io.ByteStreams;
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchInfoList;
+import com.sforce.async.BulkConnection;
+import com.sforce.async.JobInfo;
+import com.sforce.async.QueryResultList;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.bind.TypeMapper;
+import com.sforce.ws.parser.XmlInputStream;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * {@link BulkConnection} which sends Bulk API GET requests used for job and batch polling and result download
+ * through the pooled keep-alive {@link SalesforceHttpClient}. POST requests are sent through
+ * {@link PooledHttpTransport} set in connector config. All requests thus share its connections and timeouts,
+ * and API usage reported in their responses is recorded by {@link HttpResponse#send}.
+ */
+public class PooledBulkConnection extends BulkConnection {
+
+  private static final String SESSION_HEADER = "X-SFDC-Session";
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  private final ConnectorConfig config;
+  private final TypeMapper typeMapper = new TypeMapper();
+
+  public PooledBulkConnection(ConnectorConfig config) throws AsyncApiException {
+    super(config);
+    this.config = config;
+  }
+
+  @Override
+  public JobInfo getJobStatus(String jobId) throws AsyncApiException {
+    JobInfo jobInfo = new JobInfo();
+    load(getJobUrl(jobId), xin -> jobInfo.load(xin, typeMapper));
+    return jobInfo;
+  }
+
+  @Override
+  public BatchInfoList getBatchInfoList(String jobId) throws AsyncApiException {
+    BatchInfoList batchInfoList = new BatchInfoList();
+    load(getJobUrl(jobId) + "/batch", xin -> batchInfoList.load(xin, typeMapper));
+    return batchInfoList;
+  }
+
+  @Override
+  public BatchInfo getBatchInfo(String jobId, String batchId) throws AsyncApiException {
+    BatchInfo batchInfo = new BatchInfo();
+    load(getBatchUrl(jobId, batchId), xin -> batchInfo.load(xin, typeMapper));
+    return batchInfo;
+  }
+
+  @Override
+  public QueryResultList getQueryResultList(String jobId, String batchId) throws AsyncApiException {
+    QueryResultList resultList = new QueryResultList();
+    load(getBatchUrl(jobId, batchId) + "/result", xin -> resultList.load(xin, typeMapper));
+    return resultList;
+  }
+
+  @Override
+  public InputStream getQueryResultStream(String jobId, String batchId, String resultId) throws AsyncApiException {
+    return doGet(getBatchUrl(jobId, batchId) + "/result/" + resultId);
+  }
+
+  /**
+   * Opens batch result at a position, so that reading of a result interrupted by a connection reset can be
+   * resumed. Uncompressed range of the result is requested, since positions are counted in uncompressed bytes.
+   * If Salesforce ignores the range, the whole result is downloaded and bytes before the position are skipped.
+   *
+   * @param jobId job id
+   * @param batchId batch id
+   * @param resultId result id
+   * @param position number of bytes to skip from the beginning of the result
+   * @return stream of the result starting at the position
+   * @throws AsyncApiException if result cannot be requested or skipped to the position
+   */
+  public InputStream getQueryResultStream(String jobId, String batchId, String resultId, long position)
+    throws AsyncApiException {
+    String url = getBatchUrl(jobId, batchId) + "/result/" + resultId;
+    if (position == 0) {
+      return doGet(url);
+    }
+    Request request = newGetRequest(url)
+      .header(HttpHeader.RANGE, "bytes=" + position + "-");
+    HttpResponse response = send(request);
+    InputStream content = response.getContent();
+    if (response.getStatus() != HttpStatus.PARTIAL_CONTENT_206) {
+      try {
+        ByteStreams.skipFully(content, position);
+      } catch (IOException e) {
+        throw new AsyncApiException(String.format("Failed to skip %d bytes of %s", position, url),
+                                    AsyncExceptionCode.ClientInputError, e);
+      }
+    }
+    return content;
+  }
+
+  private String getJobUrl(String jobId) {
+    String endpoint = config.getRestEndpoint();
+    return (endpoint.endsWith("/") ? endpoint : endpoint + "/") + "job/" + jobId;
+  }
+
+  private String getBatchUrl(String jobId, String batchId) {
+    return getJobUrl(jobId) + "/batch/" + batchId;
+  }
+
+  private void load(String url, XmlLoader loader) throws AsyncApiException {
+    try (InputStream stream = doGet(url)) {
+      XmlInputStream xin = new XmlInputStream();
+      xin.setInput(stream, StandardCharsets.UTF_8.name());
+      loader.load(xin);
+    } catch (IOException | ConnectionException e) {
+      throw new AsyncApiException("Failed to parse response from " + url, AsyncExceptionCode.ClientInputError, e);
+    }
+  }
+
+  private InputStream doGet(String url) throws AsyncApiException {
+    Request request = newGetRequest(url);
+    if (config.isCompression()) {
+      request.header(HttpHeader.ACCEPT_ENCODING, HttpResponse.GZIP);
+    }
+    return send(request).getContent();
+  }
+
+  private Request newGetRequest(String url) {
+    return SalesforceHttpClient.get().newRequest(url)
+      .method(HttpMethod.GET)
+      .header(SESSION_HEADER, config.getSessionId());
+  }
+
+  private HttpResponse send(Request request) throws AsyncApiException {
+    HttpResponse response;
+    try {
+      response = HttpResponse.send(request, config);
+    } catch (IOException e) {
+      throw new AsyncApiException("Failed to send request to " + request.getURI(),
+                                  AsyncExceptionCode.ClientInputError, e);
+    }
+    if (response.getStatus() >= 400) {
+      throw parseError(response);
+    }
+    return response;
+  }
+
+  /**
+   * Parses Bulk API error response, which has the following format:
+   * <pre>
+   * &lt;error&gt;
+   *   &lt;exceptionCode&gt;InvalidSessionId&lt;/exceptionCode&gt;
+   *   &lt;exceptionMessage&gt;Invalid session id&lt;/exceptionMessage&gt;
+   * &lt;/error&gt;
+   * </pre>
+   */
+  private AsyncApiException parseError(HttpResponse response) {
+    String code = null;
+    String message = null;
+    try (InputStream content = response.getContent()) {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(content);
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamReader.START_ELEMENT) {
+          continue;
+        }
+        if ("exceptionCode".equals(reader.getLocalName())) {
+          code = reader.getElementText();
+        } else if ("exceptionMessage".equals(reader.getLocalName())) {
+          message = reader.getElementText();
+        }
+      }
+    } catch (IOException | XMLStreamException e) {
+      return new AsyncApiException(String.format("Bulk API request failed with HTTP status '%d'",
+                                                 response.getStatus()), AsyncExceptionCode.Unknown, e);
+    }
+    return new AsyncApiException(message, getExceptionCode(code));
+  }
+
+  private static AsyncExceptionCode getExceptionCode(String code) {
+    try {
+      return code == null ? AsyncExceptionCode.Unknown : AsyncExceptionCode.valueOf(code);
+    } catch (IllegalArgumentException e) {
+      return AsyncExceptionCode.Unknown;
+    }
+  }
+
+  /**
+   * Loads WSC object from XML response.
+   */
+  @FunctionalInterface
+  private interface XmlLoader {
+    void load(XmlInputStream xin) throws IOException, ConnectionException;
+  }
+}
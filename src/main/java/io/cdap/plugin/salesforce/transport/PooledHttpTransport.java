@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.common.io.ByteStreams;
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.transport.Transport;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * WSC {@link Transport} which sends requests through the pooled keep-alive {@link SalesforceHttpClient}.
+ * Used for SOAP API calls and Bulk API POST requests.
+ */
+public class PooledHttpTransport implements Transport {
+
+  private ConnectorConfig config;
+  private String url;
+  private Map<String, String> headers;
+  private ByteArrayOutputStream requestBody;
+  private OutputStream requestStream;
+  private boolean requestClosed;
+  private boolean successful;
+
+  @Override
+  public void setConfig(ConnectorConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public OutputStream connect(String url, String soapAction) throws IOException {
+    HashMap<String, String> headers = new HashMap<>();
+    headers.put("SOAPAction", "\"" + (soapAction == null ? "" : soapAction) + "\"");
+    headers.put("Content-Type", "text/xml; charset=" + StandardCharsets.UTF_8.name());
+    headers.put("Accept", "text/xml");
+    return connect(url, headers);
+  }
+
+  @Override
+  public OutputStream connect(String endpoint, HashMap<String, String> httpHeaders) throws IOException {
+    return connect(endpoint, httpHeaders, true);
+  }
+
+  @Override
+  public OutputStream connect(String endpoint, HashMap<String, String> httpHeaders, boolean enableCompression)
+    throws IOException {
+    this.url = endpoint;
+    this.headers = new HashMap<>(httpHeaders);
+    this.requestBody = new ByteArrayOutputStream();
+    this.requestClosed = false;
+
+    OutputStream stream = requestBody;
+    if (enableCompression && config.isCompression()) {
+      headers.put(HttpHeader.CONTENT_ENCODING.asString(), HttpResponse.GZIP);
+      headers.put(HttpHeader.ACCEPT_ENCODING.asString(), HttpResponse.GZIP);
+      stream = new GZIPOutputStream(stream);
+    }
+    this.requestStream = stream;
+
+    return new FilterOutputStream(stream) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        closeRequest();
+      }
+    };
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    closeRequest();
+
+    Request request = SalesforceHttpClient.get().newRequest(url)
+      .method(HttpMethod.POST)
+      .content(new BytesContentProvider(requestBody.toByteArray()));
+    headers.forEach(request::header);
+
+    HttpResponse response = HttpResponse.send(request, config);
+    successful = response.getStatus() < 400;
+    // WSC does not always close response streams, so content is read at once to release the connection
+    try (InputStream content = response.getContent()) {
+      return new ByteArrayInputStream(ByteStreams.toByteArray(content));
+    }
+  }
+
+  @Override
+  public boolean isSuccessful() {
+    return successful;
+  }
+
+  private void closeRequest() throws IOException {
+    if (!requestClosed) {
+      requestClosed = true;
+      requestStream.close();
+    }
+  }
+}
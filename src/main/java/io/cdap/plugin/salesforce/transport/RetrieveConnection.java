@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.sforce.soap.partner.fault.ExceptionCode;
+import com.sforce.soap.partner.fault.UnexpectedErrorFault;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Client of SOAP API retrieve call, which sends requests through the pooled keep-alive {@link SalesforceHttpClient}
+ * and parses responses with a streaming pull parser. Field values are written straight into {@link RetrievedRows}
+ * by position of the field, so that no object tree of the response is built, unlike
+ * {@link com.sforce.soap.partner.PartnerConnection#retrieve}.
+ * <p/>
+ * Errors are reported as {@link ConnectionException}, SOAP faults as {@link UnexpectedErrorFault}, so that session
+ * refresh and API limits handling of other SOAP API calls apply as well.
+ */
+public class RetrieveConnection {
+
+  private static final String SOAP_ENV_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+  private static final String SCHEMA_INSTANCE_NS = "http://www.w3.org/2001/XMLSchema-instance";
+  private static final String PARTNER_NS = "urn:partner.soap.sforce.com";
+  private static final String CONTENT_TYPE = "text/xml; charset=UTF-8";
+  private static final String RESULT = "result";
+  private static final String FAULT = "Fault";
+  // SObject type element, which is not a field. Field names are returned in their own case, e.g. 'Type'.
+  private static final String SOBJECT_TYPE = "type";
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  static {
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+  }
+
+  private final ConnectorConfig config;
+
+  public RetrieveConnection(ConnectorConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Retrieves records by Id's and adds them to the rows in the order of Id's. If the call fails,
+   * rows added by it are dropped.
+   *
+   * @param fieldList comma separated names of retrieved fields, in the order of positions of the rows
+   * @param sObjectType SObject name
+   * @param ids Id's of records
+   * @param rows rows to add records to
+   * @return the rows
+   * @throws ConnectionException if call failed
+   */
+  public RetrievedRows retrieve(String fieldList, String sObjectType, String[] ids, RetrievedRows rows)
+    throws ConnectionException {
+    Request request = SalesforceHttpClient.get().newRequest(config.getServiceEndpoint())
+      .method(HttpMethod.POST)
+      .header("SOAPAction", "\"\"")
+      .header(HttpHeader.ACCEPT, "text/xml")
+      .content(new StringContentProvider(CONTENT_TYPE, createRequest(fieldList, sObjectType, ids),
+                                         StandardCharsets.UTF_8));
+    if (config.isCompression()) {
+      request.header(HttpHeader.ACCEPT_ENCODING, HttpResponse.GZIP);
+    }
+
+    int start = rows.size();
+    try {
+      HttpResponse response = HttpResponse.send(request, config);
+      try (InputStream content = response.getContent()) {
+        readResponse(countBytes(content, rows), rows);
+      }
+      if (response.getStatus() >= 400) {
+        throw new ConnectionException(String.format("SOAP retrieve call failed with HTTP status '%d'",
+                                                     response.getStatus()));
+      }
+      return rows;
+    } catch (IOException e) {
+      rows.truncate(start);
+      throw new ConnectionException("Failed to send request to " + request.getURI(), e);
+    } catch (ConnectionException | RuntimeException e) {
+      rows.truncate(start);
+      throw e;
+    }
+  }
+
+  private String createRequest(String fieldList, String sObjectType, String[] ids) {
+    StringBuilder body = new StringBuilder(256 + ids.length * 32)
+      .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+      .append("<env:Envelope xmlns:env=\"").append(SOAP_ENV_NS)
+      .append("\" xmlns=\"").append(PARTNER_NS).append("\">")
+      .append("<env:Header><SessionHeader><sessionId>");
+    escape(body, config.getSessionId()).append("</sessionId></SessionHeader></env:Header>")
+      .append("<env:Body><retrieve><fieldList>");
+    escape(body, fieldList).append("</fieldList><sObjectType>");
+    escape(body, sObjectType).append("</sObjectType>");
+    for (String id : ids) {
+      escape(body.append("<ids>"), id).append("</ids>");
+    }
+    return body.append("</retrieve></env:Body></env:Envelope>").toString();
+  }
+
+  /**
+   * Reads result records of the retrieve response, or a SOAP fault.
+   * <p/>
+   * Response has the following format, result of an Id which is not found is nil:
+   * <pre>
+   * &lt;retrieveResponse&gt;
+   *   &lt;result xsi:type="sf:sObject"&gt;
+   *     &lt;sf:type&gt;Opportunity&lt;/sf:type&gt;
+   *     &lt;sf:Id&gt;oid-1&lt;/sf:Id&gt;
+   *     &lt;sf:Name&gt;value1&lt;/sf:Name&gt;
+   *     &lt;sf:Campaign xsi:type="sf:sObject"&gt;&lt;sf:Id&gt;cid-1&lt;/sf:Id&gt;&lt;/sf:Campaign&gt;
+   *   &lt;/result&gt;
+   *   &lt;result xsi:nil="true"/&gt;
+   * &lt;/retrieveResponse&gt;
+   * </pre>
+   *
+   * @throws ConnectionException if the response cannot be parsed or is a SOAP fault
+   * @throws IOException if the response cannot be read, e.g. the server stops sending it and the read times out
+   */
+  @VisibleForTesting
+  static void readResponse(InputStream in, RetrievedRows rows) throws ConnectionException, IOException {
+    XMLStreamReader reader = null;
+    try {
+      reader = XML_INPUT_FACTORY.createXMLStreamReader(in, StandardCharsets.UTF_8.name());
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        String name = reader.getLocalName();
+        if (RESULT.equals(name)) {
+          if (isNil(reader)) {
+            rows.addMissing();
+          } else {
+            readFields(reader, rows.getFields(), rows.add());
+          }
+        } else if (FAULT.equals(name) && SOAP_ENV_NS.equals(reader.getNamespaceURI())) {
+          throw readFault(reader);
+        }
+      }
+    } catch (XMLStreamException e) {
+      // parser does not keep the failure to read the stream as the cause
+      if (e.getNestedException() instanceof IOException) {
+        throw (IOException) e.getNestedException();
+      }
+      throw new ConnectionException("Failed to parse SOAP retrieve response", e);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // content stream is closed by the caller
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads fields of an SObject element into the row, until the end of the element.
+   */
+  private static void readFields(XMLStreamReader reader, RetrievedRows.Node fields, String[] row)
+    throws XMLStreamException {
+    while (true) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT) {
+        continue;
+      }
+      String name = reader.getLocalName();
+      if (SOBJECT_TYPE.equals(name)) {
+        skipElement(reader);
+        continue;
+      }
+      RetrievedRows.Node parent = fields.getChild(name);
+      Integer position = parent == null ? fields.getPosition(name) : null;
+      if (parent != null && !isNil(reader)) {
+        readFields(reader, parent, row);
+      } else if (position != null) {
+        boolean nil = isNil(reader);
+        String value = reader.getElementText();
+        row[position] = nil ? null : value;
+      } else {
+        skipElement(reader);
+      }
+    }
+  }
+
+  private static UnexpectedErrorFault readFault(XMLStreamReader reader) throws XMLStreamException {
+    String faultString = null;
+    String exceptionCode = null;
+    String exceptionMessage = null;
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      } else if (event == XMLStreamConstants.START_ELEMENT) {
+        switch (reader.getLocalName()) {
+          case "faultstring":
+            faultString = reader.getElementText();
+            break;
+          case "exceptionCode":
+            exceptionCode = reader.getElementText();
+            break;
+          case "exceptionMessage":
+            exceptionMessage = reader.getElementText();
+            break;
+          default:
+            depth++;
+        }
+      }
+    }
+    UnexpectedErrorFault fault = new UnexpectedErrorFault();
+    fault.setExceptionCode(getExceptionCode(exceptionCode));
+    fault.setExceptionMessage(exceptionMessage == null ? faultString : exceptionMessage);
+    return fault;
+  }
+
+  private static ExceptionCode getExceptionCode(String exceptionCode) {
+    if (exceptionCode != null) {
+      try {
+        return ExceptionCode.valueOf(exceptionCode);
+      } catch (IllegalArgumentException e) {
+        // code is not known to the client
+      }
+    }
+    return ExceptionCode.UNKNOWN_EXCEPTION;
+  }
+
+  private static boolean isNil(XMLStreamReader reader) {
+    return "true".equals(reader.getAttributeValue(SCHEMA_INSTANCE_NS, "nil"));
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static StringBuilder escape(StringBuilder builder, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          builder.append("&amp;");
+          break;
+        case '<':
+          builder.append("&lt;");
+          break;
+        case '>':
+          builder.append("&gt;");
+          break;
+        default:
+          builder.append(c);
+      }
+    }
+    return builder;
+  }
+
+  /**
+   * Wraps the response content, so that bytes read from it are added to the rows.
+   */
+  private static InputStream countBytes(InputStream in, RetrievedRows rows) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int read = super.read();
+        if (read != -1) {
+          rows.addBytes(1);
+        }
+        return read;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) throws IOException {
+        int read = super.read(bytes, off, len);
+        if (read > 0) {
+          rows.addBytes(read);
+        }
+        return read;
+      }
+    };
+  }
+}
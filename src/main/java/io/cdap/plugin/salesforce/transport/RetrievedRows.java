@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import io.cdap.plugin.salesforce.SalesforceConstants;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Rows of records received by {@link RetrieveConnection}. Each row is an array of field values, indexed by
+ * position of the field in the list of retrieved fields, values of reference fields such as `Campaign.Name`
+ * included. Values are kept as received, a {@code null} value stands for an empty field or reference.
+ * <p/>
+ * Row arrays are reused by subsequent responses once the rows are cleared, so that retrieving a batch of records
+ * does not allocate anything besides the values themselves.
+ */
+public final class RetrievedRows {
+
+  private final Node fields = new Node();
+  private final int width;
+  private String[][] rows = new String[0][];
+  private boolean[] missing = new boolean[0];
+  private int size;
+  private long bytes;
+
+  /**
+   * @param fieldNames names of retrieved fields, names of reference fields are prefixed with their parents
+   *                   joined by dots
+   */
+  public RetrievedRows(List<String> fieldNames) {
+    this.width = fieldNames.size();
+    for (int position = 0; position < fieldNames.size(); position++) {
+      String[] path = fieldNames.get(position).split("\\" + SalesforceConstants.REFERENCE_NAME_DELIMITER);
+      Node node = fields;
+      for (int i = 0; i < path.length - 1; i++) {
+        node = node.addChild(path[i]);
+      }
+      node.addPosition(path[path.length - 1], position);
+    }
+  }
+
+  /**
+   * @return number of rows, missing records included
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns row at the index. The array is reused once rows are cleared.
+   *
+   * @param index index of the row
+   * @return field values, or {@code null} if the record was not found
+   */
+  @Nullable
+  public String[] get(int index) {
+    return missing[index] ? null : rows[index];
+  }
+
+  /**
+   * @return number of response bytes read into the rows since they were cleared
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Removes all rows, keeping their arrays for reuse.
+   */
+  public void clear() {
+    truncate(0);
+    bytes = 0;
+  }
+
+  /**
+   * Adds a row, reusing a previously allocated array if there is one.
+   *
+   * @return row with all values set to {@code null}
+   */
+  String[] add() {
+    if (size == rows.length) {
+      int capacity = Math.max(16, size * 2);
+      rows = Arrays.copyOf(rows, capacity);
+      missing = Arrays.copyOf(missing, capacity);
+    }
+    String[] row = rows[size];
+    if (row == null) {
+      row = new String[width];
+      rows[size] = row;
+    } else {
+      Arrays.fill(row, null);
+    }
+    missing[size++] = false;
+    return row;
+  }
+
+  /**
+   * Adds a row of a record, which was not found.
+   */
+  void addMissing() {
+    add();
+    missing[size - 1] = true;
+  }
+
+  /**
+   * Drops rows added after the given number of rows, used when a response fails half-way.
+   */
+  void truncate(int size) {
+    this.size = Math.min(this.size, size);
+  }
+
+  void addBytes(long bytes) {
+    this.bytes += bytes;
+  }
+
+  Node getFields() {
+    return fields;
+  }
+
+  /**
+   * Fields of an SObject or of a parent SObject, referenced by a retrieved field.
+   */
+  static final class Node {
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Map<String, Node> children = new HashMap<>();
+    /**
+     * Same fields keyed by lower case names, used when a name is received in other case than requested
+     */
+    private final Map<String, Integer> lowerCasePositions = new HashMap<>();
+    private final Map<String, Node> lowerCaseChildren = new HashMap<>();
+
+    /**
+     * @return position of the field, or {@code null} if the field was not requested
+     */
+    @Nullable
+    Integer getPosition(String name) {
+      Integer position = positions.get(name);
+      return position == null ? lowerCasePositions.get(name.toLowerCase(Locale.ROOT)) : position;
+    }
+
+    /**
+     * @return fields of the parent SObject, or {@code null} if no fields of the parent were requested
+     */
+    @Nullable
+    Node getChild(String name) {
+      Node child = children.get(name);
+      return child == null ? lowerCaseChildren.get(name.toLowerCase(Locale.ROOT)) : child;
+    }
+
+    private Node addChild(String name) {
+      Node child = children.computeIfAbsent(name, key -> new Node());
+      lowerCaseChildren.putIfAbsent(name.toLowerCase(Locale.ROOT), child);
+      return child;
+    }
+
+    private void addPosition(String name, int position) {
+      positions.put(name, position);
+      lowerCasePositions.putIfAbsent(name.toLowerCase(Locale.ROOT), position);
+    }
+  }
+}
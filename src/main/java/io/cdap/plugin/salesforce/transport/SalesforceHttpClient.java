@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import io.cdap.plugin.salesforce.SalesforceConstants;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+
+/**
+ * Holds HTTP client shared by all Salesforce calls within JVM. Client keeps connections alive
+ * and pools them per Salesforce host, so that TLS handshake is not performed for every call.
+ * <p/>
+ * Pool size and timeouts are shared by all sources running in the JVM, so they are set by system properties
+ * {@link SalesforceConstants#SYSTEM_PROPERTY_HTTP_MAX_CONNECTIONS},
+ * {@link SalesforceConstants#SYSTEM_PROPERTY_HTTP_CONNECT_TIMEOUT} and
+ * {@link SalesforceConstants#SYSTEM_PROPERTY_HTTP_READ_TIMEOUT}. Read timeout set in the connector config of
+ * a connection takes precedence over the shared one.
+ */
+public final class SalesforceHttpClient {
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 16;
+  public static final int DEFAULT_CONNECT_TIMEOUT_MS = 30000;
+  public static final int DEFAULT_READ_TIMEOUT_MS = 300000;
+
+  /**
+   * Pooled connections which are not used for this time are closed.
+   */
+  private static final long IDLE_CONNECTION_TIMEOUT_MS = 60000;
+
+  private static HttpClient httpClient;
+  private static final int MAX_CONNECTIONS = Math.max(
+    1, Integer.getInteger(SalesforceConstants.SYSTEM_PROPERTY_HTTP_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+  private static final int CONNECT_TIMEOUT_MS = Math.max(
+    1, Integer.getInteger(SalesforceConstants.SYSTEM_PROPERTY_HTTP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT_MS));
+  private static final int READ_TIMEOUT_MS = Math.max(
+    1, Integer.getInteger(SalesforceConstants.SYSTEM_PROPERTY_HTTP_READ_TIMEOUT, DEFAULT_READ_TIMEOUT_MS));
+
+  private SalesforceHttpClient() {
+  }
+
+  public static int getConnectTimeoutMs() {
+    return CONNECT_TIMEOUT_MS;
+  }
+
+  public static int getReadTimeoutMs() {
+    return READ_TIMEOUT_MS;
+  }
+
+  /**
+   * Returns shared HTTP client, starts it on first call.
+   *
+   * @return started HTTP client
+   */
+  public static synchronized HttpClient get() {
+    if (httpClient == null) {
+      HttpClient client = new HttpClient(new SslContextFactory());
+      // client is used until JVM exits, so its threads must not prevent JVM shutdown
+      QueuedThreadPool threadPool = new QueuedThreadPool();
+      threadPool.setName("salesforce-http");
+      threadPool.setDaemon(true);
+      client.setExecutor(threadPool);
+      client.setScheduler(new ScheduledExecutorScheduler("salesforce-http-scheduler", true));
+      client.setMaxConnectionsPerDestination(MAX_CONNECTIONS);
+      client.setConnectTimeout(CONNECT_TIMEOUT_MS);
+      client.setIdleTimeout(IDLE_CONNECTION_TIMEOUT_MS);
+      // Salesforce clients decide themselves whether to request compressed responses and decompress them
+      client.getContentDecoderFactories().clear();
+      try {
+        client.start();
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to start HTTP client", e);
+      }
+      httpClient = client;
+    }
+    return httpClient;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for {@link RangeSplitDescriptor}.
+ */
+public class RangeSplitDescriptorTest {
+
+  @Test
+  public void testDatetimeBoundaries() {
+    RangeSplitDescriptor rangeSplit = new RangeSplitDescriptor(RangeSplitDescriptor.FIELD_SYSTEM_MODSTAMP, 4);
+
+    Assert.assertEquals(Arrays.asList("2019-01-02T00:00:00Z", "2019-01-03T00:00:00Z", "2019-01-04T00:00:00Z"),
+                        rangeSplit.getBoundaries("2019-01-01T00:00:00.000Z", "2019-01-05T00:00:00.000Z"));
+    Assert.assertEquals(Collections.emptyList(),
+                        rangeSplit.getBoundaries("2019-01-01T00:00:00.000Z", "2019-01-01T00:00:00.000Z"));
+  }
+
+  @Test
+  public void testIdBoundaries() {
+    RangeSplitDescriptor rangeSplit = new RangeSplitDescriptor(RangeSplitDescriptor.FIELD_ID, 2);
+
+    Assert.assertEquals(Collections.singletonList("'00600000000000V'"),
+                        rangeSplit.getBoundaries("006000000000000AAA", "006000000000010AAA"));
+    Assert.assertEquals(Collections.singletonList("'006000000000z00'"),
+                        rangeSplit.getBoundaries("006000000000000", "006000000001y00"));
+  }
+
+  @Test
+  public void testBoundariesAreDistinct() {
+    RangeSplitDescriptor rangeSplit = new RangeSplitDescriptor(RangeSplitDescriptor.FIELD_ID, 10);
+
+    Assert.assertEquals(Arrays.asList("'006000000000001'", "'006000000000002'"),
+                        rangeSplit.getBoundaries("006000000000000", "006000000000003"));
+  }
+}
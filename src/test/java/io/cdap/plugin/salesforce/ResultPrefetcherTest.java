@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests for {@link ResultPrefetcher}.
+ */
+public class ResultPrefetcherTest {
+
+  @Test
+  public void testResultsAreConcatenated() throws Exception {
+    SalesforceReadMetrics metrics = new SalesforceReadMetrics();
+    String content = read(Arrays.asList("Id,Name\n1,a\n", "Id,Name\n2,b\n", "Id,Name\n3,c\n"),
+                          ResultPrefetcher.DEFAULT_BUFFER_SIZE_MB, metrics);
+
+    Assert.assertEquals("Id,Name\n1,a\n2,b\n3,c\n", content);
+    Assert.assertEquals(0, metrics.get(SalesforceReadMetrics.BYTES_SPILLED));
+  }
+
+  @Test
+  public void testLargeResultIsSpilled() throws Exception {
+    String rows = Strings.repeat("0123456789abcdef,0123456789abcdef\n", 100000);
+    SalesforceReadMetrics metrics = new SalesforceReadMetrics();
+    String content = read(Arrays.asList("Id,Name\n", "Id,Name\n" + rows), 1, metrics);
+
+    Assert.assertEquals("Id,Name\n" + rows, content);
+    Assert.assertEquals(rows.length() + 8 - 1024 * 1024, metrics.get(SalesforceReadMetrics.BYTES_SPILLED));
+  }
+
+  @Test
+  public void testPrefetchingDisabled() throws Exception {
+    CsvResultsInputStream.ResultSource source = () -> null;
+
+    Assert.assertSame(source, ResultPrefetcher.wrap(source, 0, new SalesforceReadMetrics()));
+  }
+
+  private static String read(List<String> results, int bufferSizeMb, SalesforceReadMetrics metrics)
+    throws Exception {
+    Iterator<String> iterator = results.iterator();
+    CsvResultsInputStream.ResultSource source = () -> iterator.hasNext()
+      ? new ByteArrayInputStream(iterator.next().getBytes(StandardCharsets.UTF_8)) : null;
+    try (InputStream in = new CsvResultsInputStream(
+      ResultPrefetcher.wrap(source, bufferSizeMb * 1024L * 1024L, metrics))) {
+      return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link ResumableInputStream}.
+ */
+public class ResumableInputStreamTest {
+
+  private static final byte[] CONTENT = "Id,Name\n1,a\n2,b\n3,c\n".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testReadingIsResumedAtPosition() throws Exception {
+    List<Long> positions = new ArrayList<>();
+    SalesforceReadMetrics metrics = new SalesforceReadMetrics();
+    InputStream in = new ResumableInputStream("result", failingAfter(10), position -> {
+      positions.add(position);
+      InputStream reopened = new ByteArrayInputStream(CONTENT);
+      ByteStreams.skipFully(reopened, position);
+      return reopened;
+    }, metrics);
+
+    Assert.assertArrayEquals(CONTENT, ByteStreams.toByteArray(in));
+    Assert.assertEquals(1, positions.size());
+    Assert.assertEquals(10, (long) positions.get(0));
+    Assert.assertEquals(1, metrics.get(SalesforceReadMetrics.RESULT_RESUMES));
+  }
+
+  /**
+   * @return stream of the content, which fails after given number of bytes
+   */
+  private static InputStream failingAfter(int bytes) {
+    return new InputStream() {
+      private int position;
+
+      @Override
+      public int read() throws IOException {
+        if (position == bytes) {
+          throw new IOException("Connection reset");
+        }
+        return CONTENT[position++];
+      }
+    };
+  }
+}
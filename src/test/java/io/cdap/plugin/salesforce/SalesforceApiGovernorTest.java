@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SalesforceApiGovernor}.
+ */
+public class SalesforceApiGovernorTest {
+
+  @Test
+  public void testThrottledByApiUsage() {
+    SalesforceApiGovernor governor = new SalesforceApiGovernor("test.my.salesforce.com");
+
+    governor.recordApiUsage("api-usage=100/15000");
+    Assert.assertEquals(100, governor.getApiUsage());
+    Assert.assertEquals(15000, governor.getApiLimit());
+    Assert.assertEquals(SalesforceApiGovernor.DEFAULT_MAX_CONCURRENT_CALLS, governor.getLimit());
+
+    governor.recordApiUsage("api-usage=14000/15000");
+    Assert.assertEquals(1, governor.getLimit());
+
+    governor.recordApiUsage("per-app-api-usage=1/100(appName=app),api-usage=200/30000");
+    Assert.assertEquals(SalesforceApiGovernor.DEFAULT_MAX_CONCURRENT_CALLS, governor.getLimit());
+  }
+
+  @Test
+  public void testBackoff() {
+    Assert.assertEquals(1000, SalesforceApiGovernor.getBackoffMs(0));
+    Assert.assertEquals(2000, SalesforceApiGovernor.getBackoffMs(1));
+    Assert.assertEquals(60000, SalesforceApiGovernor.getBackoffMs(10));
+  }
+
+  @Test
+  public void testRetryOnExceededLimit() throws Exception {
+    SalesforceApiGovernor governor = new SalesforceApiGovernor("test.my.salesforce.com");
+    int initialLimit = governor.getLimit();
+    int[] attempts = new int[1];
+
+    String result = governor.call(() -> {
+      if (attempts[0]++ == 0) {
+        throw new IllegalStateException("limit exceeded");
+      }
+      return "result";
+    }, e -> e instanceof IllegalStateException);
+
+    Assert.assertEquals("result", result);
+    Assert.assertEquals(2, attempts[0]);
+    int reducedLimit = initialLimit / 2;
+    Assert.assertEquals(reducedLimit, governor.getLimit());
+
+    // limit grows by one once number of successful calls reaches the limit, retried call was the first of them
+    for (int i = 1; i < reducedLimit; i++) {
+      governor.call(() -> null, e -> false);
+    }
+    Assert.assertEquals(reducedLimit + 1, governor.getLimit());
+  }
+
+  @Test
+  public void testNotRetriedOnOtherErrors() {
+    SalesforceApiGovernor governor = new SalesforceApiGovernor("test.my.salesforce.com");
+    int[] attempts = new int[1];
+    try {
+      governor.call(() -> {
+        attempts[0]++;
+        throw new IllegalArgumentException("invalid query");
+      }, e -> e instanceof IllegalStateException);
+      Assert.fail("Call must fail");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(1, attempts[0]);
+    }
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    SalesforceApiGovernor governor = new SalesforceApiGovernor("test.my.salesforce.com");
+    SalesforceApiBudget budget = new SalesforceApiBudget(2);
+    governor.call(() -> null, e -> false, budget);
+
+    Assert.assertEquals(1, budget.reserve());
+    SalesforceApiBudget share = new SalesforceApiBudget(1);
+    governor.call(() -> null, e -> false, share);
+
+    try {
+      governor.call(() -> null, e -> false, share);
+      Assert.fail("Call must fail once budget is exhausted");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    // calls made for other runs are not charged
+    governor.call(() -> null, e -> false);
+    governor.call(() -> null, e -> false, new SalesforceApiBudget(SalesforceApiBudget.UNLIMITED));
+  }
+
+  @Test
+  public void testBudgetChargesRetries() throws Exception {
+    SalesforceApiGovernor governor = new SalesforceApiGovernor("test.my.salesforce.com");
+    SalesforceApiBudget budget = new SalesforceApiBudget(3);
+    int[] attempts = new int[1];
+
+    governor.call(() -> {
+      if (attempts[0]++ == 0) {
+        throw new IllegalStateException("limit exceeded");
+      }
+      return null;
+    }, e -> e instanceof IllegalStateException, budget);
+
+    Assert.assertEquals(1, budget.reserve());
+  }
+}
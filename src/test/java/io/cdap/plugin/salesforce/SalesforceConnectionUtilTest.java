@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.AsyncExceptionCode;
+import com.sforce.ws.ConnectorConfig;
+import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link SalesforceConnectionUtil}.
+ */
+public class SalesforceConnectionUtilTest {
+
+  @Test
+  public void testSessionFromDriver() {
+    Configuration conf = new Configuration(false);
+    // login url is not reachable, so test would fail if login was attempted
+    conf.set(SalesforceConstants.CONFIG_LOGIN_URL, "http://localhost:1/services/oauth2/token");
+    conf.set(SalesforceConstants.CONFIG_USERNAME, "driver-session-user");
+    conf.set(SalesforceConstants.CONFIG_SESSION_ID, "session-id");
+    conf.set(SalesforceConstants.CONFIG_INSTANCE_URL, "https://example.my.salesforce.com");
+
+    SalesforceSession session = SalesforceConnectionUtil.getSession(conf);
+    ConnectorConfig connectorConfig = session.getConnectorConfig();
+
+    Assert.assertEquals("session-id", connectorConfig.getSessionId());
+    Assert.assertEquals("https://example.my.salesforce.com/services/async/" + SalesforceConstants.API_VERSION,
+                        connectorConfig.getRestEndpoint());
+    Assert.assertEquals("https://example.my.salesforce.com/services/Soap/u/" + SalesforceConstants.API_VERSION,
+                        connectorConfig.getServiceEndpoint());
+  }
+
+  @Test
+  public void testSessionIsSharedForSameCredentials() {
+    Configuration conf = new Configuration(false);
+    conf.set(SalesforceConstants.CONFIG_LOGIN_URL, "http://localhost:1/services/oauth2/token");
+    conf.set(SalesforceConstants.CONFIG_USERNAME, "shared-session-user");
+    conf.set(SalesforceConstants.CONFIG_SESSION_ID, "session-id");
+    conf.set(SalesforceConstants.CONFIG_INSTANCE_URL, "https://example.my.salesforce.com");
+
+    SalesforceSession session = SalesforceConnectionUtil.getSession(conf);
+
+    conf.set(SalesforceConstants.CONFIG_SESSION_ID, "other-session-id");
+    Assert.assertSame(session, SalesforceConnectionUtil.getSession(conf));
+    AuthenticatorCredentials credentials = SalesforceConnectionUtil.getAuthenticatorCredentials(conf);
+    Assert.assertSame(session, SalesforceConnectionUtil.getSession(credentials));
+    Assert.assertEquals("session-id", session.getSessionId());
+  }
+
+  @Test
+  public void testSessionFromDriverIsRefreshedWhenExpiring() {
+    Configuration conf = new Configuration(false);
+    conf.set(SalesforceConstants.CONFIG_LOGIN_URL, "http://localhost:1/services/oauth2/token");
+    conf.set(SalesforceConstants.CONFIG_USERNAME, "expiring-session-user");
+    conf.set(SalesforceConstants.CONFIG_SESSION_ID, "session-id");
+    conf.set(SalesforceConstants.CONFIG_INSTANCE_URL, "https://example.my.salesforce.com");
+    conf.setLong(SalesforceConstants.CONFIG_SESSION_ISSUED_AT,
+                 System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(29));
+
+    SalesforceSession session = SalesforceConnectionUtil.getSession(conf);
+
+    try {
+      session.getSessionId();
+      Assert.fail("Session issued by the driver long ago must be refreshed");
+    } catch (RuntimeException e) {
+      // login url is not reachable, so refresh fails
+      Assert.assertEquals("Connection to salesforce with plugin configurations failed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testIsInvalidSession() {
+    Assert.assertTrue(SalesforceConnectionUtil.isInvalidSession(
+      new AsyncApiException("Invalid session id", AsyncExceptionCode.InvalidSessionId)));
+    Assert.assertFalse(SalesforceConnectionUtil.isInvalidSession(
+      new AsyncApiException("Invalid job", AsyncExceptionCode.InvalidJob)));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link SalesforceExecutor}.
+ */
+public class SalesforceExecutorTest {
+
+  @Test
+  public void testMapKeepsOrder() {
+    List<Integer> results = SalesforceExecutor.map(Arrays.asList(3, 1, 2), value -> {
+      sleep(value * 10);
+      return value * 2;
+    });
+
+    Assert.assertEquals(Arrays.asList(6, 2, 4), results);
+  }
+
+  @Test
+  public void testMapRunsInParallel() {
+    long start = System.nanoTime();
+    SalesforceExecutor.map(Collections.nCopies(8, 200), value -> {
+      sleep(value);
+      return value;
+    });
+
+    // eight blocking calls take far less than their total time
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+  }
+
+  @Test
+  public void testNestedMapWithSingleThread() {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      List<List<Integer>> results = SalesforceExecutor.map(
+        executor, Arrays.asList(1, 2),
+        value -> SalesforceExecutor.map(executor, Arrays.asList(value, value), nested -> nested + 1));
+
+      Assert.assertEquals(Arrays.asList(Arrays.asList(2, 2), Arrays.asList(3, 3)), results);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testMapPropagatesException() {
+    try {
+      SalesforceExecutor.map(Arrays.asList("a", "b"), value -> {
+        if ("b".equals(value)) {
+          throw new IllegalArgumentException("Invalid value " + value);
+        }
+        return value;
+      });
+      Assert.fail("Exception is expected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals("Invalid value b", e.getMessage());
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+}
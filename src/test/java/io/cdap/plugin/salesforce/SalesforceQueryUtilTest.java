@@ -23,6 +23,7 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -227,4 +228,54 @@ public class SalesforceQueryUtilTest {
 
     Assert.assertEquals("SELECT Id " + fromClause, sObjectIdQuery);
   }
+
+  @Test
+  public void testCreateBoundaryQuery() {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'S_%' ORDER BY Name";
+
+    Assert.assertEquals("SELECT SystemModstamp FROM Opportunity WHERE Name LIKE 'S_%' "
+                          + "ORDER BY SystemModstamp ASC LIMIT 1",
+                        SalesforceQueryUtil.createBoundaryQuery(query, "SystemModstamp", true));
+    Assert.assertEquals("SELECT Id FROM Opportunity WHERE Name LIKE 'S_%' ORDER BY Id DESC LIMIT 1",
+                        SalesforceQueryUtil.createBoundaryQuery(query, "Id", false));
+  }
+
+  @Test
+  public void testCreateRangeQueries() {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'S_%'";
+
+    List<String> queries = SalesforceQueryUtil.createRangeQueries(
+      query, "SystemModstamp", Arrays.asList("2019-01-01T00:00:00Z", "2019-02-01T00:00:00Z"));
+
+    Assert.assertEquals(Arrays.asList(
+      "SELECT Id, Name FROM Opportunity WHERE (Name LIKE 'S_%') AND (SystemModstamp < 2019-01-01T00:00:00Z)",
+      "SELECT Id, Name FROM Opportunity WHERE (Name LIKE 'S_%') "
+        + "AND (SystemModstamp >= 2019-01-01T00:00:00Z AND SystemModstamp < 2019-02-01T00:00:00Z)",
+      "SELECT Id, Name FROM Opportunity WHERE (Name LIKE 'S_%') AND (SystemModstamp >= 2019-02-01T00:00:00Z)"),
+                        queries);
+    Assert.assertEquals(Collections.singletonList(query),
+                        SalesforceQueryUtil.createRangeQueries(query, "Id", Collections.emptyList()));
+  }
+
+  @Test
+  public void testCreateColumnGroupQueries() {
+    List<String> fields = IntStream.range(0, SalesforceConstants.SOQL_MAX_LENGTH / 5)
+      .mapToObj(i -> "field_" + i)
+      .collect(Collectors.toList());
+    String query = String.format("SELECT Id, %s FROM Wide__c WHERE Name LIKE 'S_%%' ORDER BY Name",
+                                 String.join(", ", fields));
+
+    List<String> queries = SalesforceQueryUtil.createColumnGroupQueries(query);
+
+    Assert.assertEquals(3, queries.size());
+    List<String> groupFields = new ArrayList<>();
+    for (String groupQuery : queries) {
+      Assert.assertTrue(SalesforceQueryUtil.isQueryUnderLengthLimit(groupQuery));
+      Assert.assertTrue(groupQuery.startsWith("SELECT Id,field_"));
+      Assert.assertTrue(groupQuery.endsWith(" FROM Wide__c WHERE Name LIKE 'S_%' ORDER BY Id"));
+      List<String> selected = SObjectDescriptor.fromQuery(groupQuery).getFieldsNames();
+      groupFields.addAll(selected.subList(1, selected.size()));
+    }
+    Assert.assertEquals(fields, groupFields);
+  }
 }
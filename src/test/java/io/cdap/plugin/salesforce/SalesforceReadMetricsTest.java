@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link SalesforceReadMetrics}.
+ */
+public class SalesforceReadMetricsTest {
+
+  @Test
+  public void testCountDownloaded() throws Exception {
+    SalesforceReadMetrics metrics = new SalesforceReadMetrics();
+    InputStream in = metrics.countDownloaded(new ByteArrayInputStream(new byte[1000]));
+
+    Assert.assertEquals(0, in.read());
+    ByteStreams.toByteArray(in);
+
+    Assert.assertEquals(1000, metrics.get(SalesforceReadMetrics.BYTES_DOWNLOADED));
+  }
+
+  @Test
+  public void testRetrievePercentiles() {
+    SalesforceReadMetrics metrics = new SalesforceReadMetrics();
+    for (int latency = 1; latency <= 100; latency++) {
+      metrics.recordRetrieve(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(latency));
+    }
+
+    Map<String, Long> summary = metrics.getSummary();
+    Assert.assertEquals(100, (long) summary.get(SalesforceReadMetrics.RETRIEVE_CALLS));
+    Assert.assertEquals(50, summary.get("retrieve.latency.p50.ms"), 1);
+    Assert.assertEquals(95, summary.get("retrieve.latency.p95.ms"), 1);
+    Assert.assertEquals(99, summary.get("retrieve.latency.p99.ms"), 1);
+  }
+
+  @Test
+  public void testRunMetrics() {
+    SalesforceReadMetrics.startRun("run").increment(SalesforceReadMetrics.SPLITS, 3);
+    SalesforceReadMetrics.forRun("run").increment(SalesforceReadMetrics.SPLITS, 2);
+    SalesforceReadMetrics.forRun(null).increment(SalesforceReadMetrics.SPLITS, 1);
+    // run which was not started in this JVM is not registered
+    SalesforceReadMetrics.forRun("other").increment(SalesforceReadMetrics.SPLITS, 1);
+
+    Assert.assertEquals("{\"splits\":5}", SalesforceReadMetrics.finishRun("run").toJson());
+    Assert.assertEquals("{}", SalesforceReadMetrics.finishRun("run").toJson());
+    Assert.assertEquals("{}", SalesforceReadMetrics.finishRun("other").toJson());
+  }
+
+  @Test
+  public void testReaderMetricsAreDrainedOnce() {
+    SalesforceReadMetrics first = new SalesforceReadMetrics();
+    first.increment(SalesforceReadMetrics.BATCH_POLLS, 2);
+    first.increment(SalesforceReadMetrics.ROWS_PARSED, 100);
+    first.addToReaders("readers-run");
+    SalesforceReadMetrics second = new SalesforceReadMetrics();
+    second.increment(SalesforceReadMetrics.ROWS_PARSED, 50);
+    second.addToReaders("readers-run");
+    // metrics of readers are not added to metrics of the driver
+    second.addToReaders(null);
+
+    Assert.assertEquals(ImmutableMap.of(SalesforceReadMetrics.BATCH_POLLS, 2L, SalesforceReadMetrics.ROWS_PARSED, 150L),
+                        SalesforceReadMetrics.drainReaders("readers-run"));
+    Assert.assertEquals(Collections.emptyMap(), SalesforceReadMetrics.drainReaders("readers-run"));
+    Assert.assertEquals("{}", SalesforceReadMetrics.finishRun("readers-run").toJson());
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchInfoList;
+import com.sforce.async.BatchStateEnum;
+import com.sforce.async.JobInfo;
+import com.sforce.async.JobStateEnum;
+import com.sforce.async.QueryResultList;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.bind.TypeMapper;
+import com.sforce.ws.bind.XMLizable;
+import com.sforce.ws.parser.XmlInputStream;
+import com.sforce.ws.parser.XmlOutputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
+
+/**
+ * Bulk API v1 of {@link FakeSalesforceServer}. Supports query jobs with CSV results and PK chunking.
+ * Batch is queued, in progress and completed as configured batch processing time passes.
+ */
+class FakeBulkApi implements HttpHandler {
+
+  private static final String NAMESPACE = "http://www.force.com/2009/06/asyncapi/dataload";
+  private static final String SCHEMA_INSTANCE_NS = "http://www.w3.org/2001/XMLSchema-instance";
+  private static final String PK_CHUNKING_HEADER = "Sforce-Enable-PKChunking";
+  private static final Pattern CHUNK_SIZE_PATTERN = Pattern.compile("chunkSize=(\\d+)");
+  private static final int DEFAULT_CHUNK_SIZE = 100000;
+  private static final Pattern PATH_PATTERN = Pattern.compile(
+    "/services/async/[^/]+/job(?:/(\\w+)(?:/batch(?:/(\\w+)(?:/result(?:/(\\w+))?)?)?)?)?/?");
+  private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-");
+  private static final TypeMapper TYPE_MAPPER = new TypeMapper();
+
+  private final FakeSalesforceServer server;
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+  private final AtomicInteger ids = new AtomicInteger();
+  /**
+   * Results, which connection was reset while sending
+   */
+  private final Set<String> resetResults = ConcurrentHashMap.newKeySet();
+
+  FakeBulkApi(FakeSalesforceServer server) {
+    this.server = server;
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    server.recordApiRequest();
+    if (!server.isValidSession(exchange.getRequestHeaders().getFirst("X-SFDC-Session"))) {
+      sendError(exchange, 400, "InvalidSessionId", "Invalid session id");
+      return;
+    }
+
+    Matcher matcher = PATH_PATTERN.matcher(exchange.getRequestURI().getPath());
+    if (!matcher.matches()) {
+      sendError(exchange, 404, "InvalidUrl", "Destination URL not reset");
+      return;
+    }
+    boolean post = "POST".equals(exchange.getRequestMethod());
+    String jobId = matcher.group(1);
+    String batchId = matcher.group(2);
+    String resultId = matcher.group(3);
+    String path = exchange.getRequestURI().getPath();
+
+    if (jobId == null) {
+      createJob(exchange);
+      return;
+    }
+    Job job = jobs.get(jobId);
+    if (job == null) {
+      sendError(exchange, 400, "InvalidJob", String.format("Unable to find job '%s'", jobId));
+      return;
+    }
+    if (batchId == null) {
+      if (path.contains("/batch")) {
+        if (post) {
+          createBatch(exchange, job);
+        } else {
+          BatchInfoList list = new BatchInfoList();
+          list.setBatchInfo(job.batches.stream().map(Batch::getBatchInfo).toArray(BatchInfo[]::new));
+          sendXml(exchange, 200, "batchInfoList", list);
+        }
+      } else if (post) {
+        updateJob(exchange, job);
+      } else {
+        sendXml(exchange, 200, "jobInfo", job.info);
+      }
+      return;
+    }
+
+    Batch batch = job.batches.stream().filter(b -> b.id.equals(batchId)).findFirst().orElse(null);
+    if (batch == null) {
+      sendError(exchange, 400, "InvalidBatch", String.format("Unable to find batch '%s'", batchId));
+    } else if (!path.contains("/result")) {
+      sendXml(exchange, 200, "batchInfo", batch.getBatchInfo());
+    } else if (batch.getState() != BatchStateEnum.Completed) {
+      sendError(exchange, 400, "InvalidBatch", "Batch not completed");
+    } else if (resultId == null) {
+      QueryResultList list = new QueryResultList();
+      list.setResult(batch.getResultIds());
+      sendXml(exchange, 200, "result-list", list);
+    } else {
+      sendResult(exchange, batch, resultId);
+    }
+  }
+
+  private void createJob(HttpExchange exchange) throws IOException {
+    JobInfo request = load(exchange, new JobInfo());
+    if (server.getSObject(request.getObject()) == null) {
+      sendError(exchange, 400, "InvalidJob",
+                String.format("InvalidEntity : Entity '%s' is not supported by the Bulk API.", request.getObject()));
+      return;
+    }
+    JobInfo info = new JobInfo();
+    info.setId(String.format("750%015d", ids.incrementAndGet()));
+    info.setObject(request.getObject());
+    info.setOperation(request.getOperation());
+    info.setConcurrencyMode(request.getConcurrencyMode());
+    info.setContentType(request.getContentType());
+    info.setState(JobStateEnum.Open);
+    info.setCreatedById("005000000000001AAA");
+    info.setCreatedDate(Calendar.getInstance());
+    info.setSystemModstamp(Calendar.getInstance());
+    jobs.put(info.getId(), new Job(info, getChunkSize(exchange)));
+    sendXml(exchange, 201, "jobInfo", info);
+  }
+
+  private void updateJob(HttpExchange exchange, Job job) throws IOException {
+    JobInfo request = load(exchange, new JobInfo());
+    if (request.getState() != null) {
+      job.info.setState(request.getState());
+    }
+    sendXml(exchange, 200, "jobInfo", job.info);
+  }
+
+  private void createBatch(HttpExchange exchange, Job job) throws IOException {
+    String soql = FakeSalesforceServer.readRequestBody(exchange);
+    FakeQuery query = null;
+    FakeSObject sObject = null;
+    String failure = null;
+    try {
+      query = FakeQuery.parse(soql);
+      sObject = server.getSObject(query.getSObjectName());
+      if (sObject == null) {
+        failure = String.format("InvalidBatch : sObject type '%s' is not supported.", query.getSObjectName());
+      }
+    } catch (IllegalArgumentException e) {
+      failure = "InvalidBatch : " + e.getMessage();
+    }
+    int[] indexes = failure == null ? query.execute(sObject) : new int[0];
+
+    if (job.chunkSize == 0 || failure != null) {
+      Batch batch = new Batch(newBatchId(), job.info.getId(), query, sObject, indexes, failure, true);
+      job.batches.add(batch);
+      sendXml(exchange, 201, "batchInfo", batch.getBatchInfo());
+      return;
+    }
+
+    // original batch of PK chunking job is not processed, records are read from a batch per chunk
+    Batch original = new Batch(newBatchId(), job.info.getId(), query, sObject, new int[0], null, false);
+    job.batches.add(original);
+    for (int from = 0; from < indexes.length; from += job.chunkSize) {
+      int[] chunk = Arrays.copyOfRange(indexes, from, Math.min(indexes.length, from + job.chunkSize));
+      job.batches.add(new Batch(newBatchId(), job.info.getId(), query, sObject, chunk, null, true));
+    }
+    sendXml(exchange, 201, "batchInfo", original.getBatchInfo());
+  }
+
+  private String newBatchId() {
+    return String.format("751%015d", ids.incrementAndGet());
+  }
+
+  /**
+   * @return chunk size requested with PK chunking header, or 0 if PK chunking is not enabled
+   */
+  private static int getChunkSize(HttpExchange exchange) {
+    String pkChunking = exchange.getRequestHeaders().getFirst(PK_CHUNKING_HEADER);
+    if (pkChunking == null || "false".equalsIgnoreCase(pkChunking)) {
+      return 0;
+    }
+    Matcher matcher = CHUNK_SIZE_PATTERN.matcher(pkChunking);
+    return matcher.find() ? Integer.parseInt(matcher.group(1)) : DEFAULT_CHUNK_SIZE;
+  }
+
+  private void sendResult(HttpExchange exchange, Batch batch, String resultId) throws IOException {
+    List<String> resultIds = Arrays.asList(batch.getResultIds());
+    int file = resultIds.indexOf(resultId);
+    if (file < 0) {
+      sendError(exchange, 400, "InvalidBatch", String.format("Unable to find result '%s'", resultId));
+      return;
+    }
+    int from = file * server.getRecordsPerResultFile();
+    int to = Math.min(batch.indexes.length, from + server.getRecordsPerResultFile());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    writeCsvRow(writer, batch.query.getFields());
+    for (int i = from; i < to; i++) {
+      writeCsvRow(writer, batch.query.project(batch.sObject.getRecord(batch.indexes[i])));
+    }
+    writer.flush();
+    byte[] content = out.toByteArray();
+
+    long resetBytes = server.getResultResetBytes();
+    if (resetBytes > 0 && resetBytes < content.length && resetResults.add(batch.id + "/" + resultId)) {
+      // promise the whole result, but send only a part of it and drop the connection
+      exchange.getResponseHeaders().set("Content-Type", "text/csv");
+      exchange.sendResponseHeaders(200, content.length);
+      exchange.getResponseBody().write(content, 0, (int) resetBytes);
+      exchange.getResponseBody().flush();
+      exchange.close();
+      return;
+    }
+
+    Matcher range = RANGE_PATTERN.matcher(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+    if (range.matches() && exchange.getRequestHeaders().getFirst("Accept-Encoding") == null) {
+      int start = Math.min(content.length, Integer.parseInt(range.group(1)));
+      exchange.getResponseHeaders().set("Content-Type", "text/csv");
+      exchange.getResponseHeaders().set("Content-Range",
+                                        String.format("bytes %d-%d/%d", start, content.length - 1, content.length));
+      exchange.sendResponseHeaders(206, content.length - start);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(content, start, content.length - start);
+      }
+      return;
+    }
+    server.respond(exchange, 200, "text/csv", body -> body.write(content));
+  }
+
+  static void writeCsvRow(Writer writer, List<String> values) throws IOException {
+    writer.write(values.stream()
+                   .map(value -> value == null ? "\"\"" : "\"" + value.replace("\"", "\"\"") + "\"")
+                   .collect(Collectors.joining(",")));
+    writer.write('\n');
+  }
+
+  private static <T extends XMLizable> T load(HttpExchange exchange, T value) throws IOException {
+    XmlInputStream in = new XmlInputStream();
+    in.setInput(FakeSalesforceServer.getRequestBody(exchange), StandardCharsets.UTF_8.name());
+    try {
+      value.load(in, TYPE_MAPPER);
+    } catch (ConnectionException e) {
+      throw new IOException("Failed to parse request", e);
+    }
+    return value;
+  }
+
+  private void sendXml(HttpExchange exchange, int status, String element, XMLizable value) throws IOException {
+    server.respond(exchange, status, "application/xml", out -> {
+      XmlOutputStream xml = new XmlOutputStream(out, false);
+      xml.startDocument();
+      xml.setPrefix("", NAMESPACE);
+      xml.setPrefix("xsi", SCHEMA_INSTANCE_NS);
+      value.write(new QName(NAMESPACE, element), xml, TYPE_MAPPER);
+      xml.endDocument();
+      xml.close();
+    });
+  }
+
+  private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+    String error = String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?><error xmlns=\"%s\">"
+                                   + "<exceptionCode>%s</exceptionCode><exceptionMessage>%s</exceptionMessage>"
+                                   + "</error>", NAMESPACE, code, message);
+    server.respond(exchange, status, "application/xml", out -> out.write(error.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Bulk API job.
+   */
+  private static final class Job {
+    private final JobInfo info;
+    private final int chunkSize;
+    private final List<Batch> batches = new CopyOnWriteArrayList<>();
+
+    private Job(JobInfo info, int chunkSize) {
+      this.info = info;
+      this.chunkSize = chunkSize;
+    }
+  }
+
+  /**
+   * Bulk API batch, matching records are found when batch is created.
+   */
+  private final class Batch {
+    private final String id;
+    private final String jobId;
+    private final long createdAt = System.currentTimeMillis();
+    private final FakeQuery query;
+    private final FakeSObject sObject;
+    private final int[] indexes;
+    private final String failure;
+    private final boolean processed;
+
+    private Batch(String id, String jobId, FakeQuery query, FakeSObject sObject, int[] indexes, String failure,
+                  boolean processed) {
+      this.id = id;
+      this.jobId = jobId;
+      this.query = query;
+      this.sObject = sObject;
+      this.indexes = indexes;
+      this.failure = failure;
+      this.processed = processed;
+    }
+
+    private BatchStateEnum getState() {
+      if (failure != null) {
+        return BatchStateEnum.Failed;
+      }
+      if (!processed) {
+        return BatchStateEnum.NotProcessed;
+      }
+      long elapsed = System.currentTimeMillis() - createdAt;
+      if (elapsed >= server.getBatchProcessingMs()) {
+        return BatchStateEnum.Completed;
+      }
+      return elapsed * 2 < server.getBatchProcessingMs() ? BatchStateEnum.Queued : BatchStateEnum.InProgress;
+    }
+
+    private String[] getResultIds() {
+      int files = Math.max(1, (indexes.length + server.getRecordsPerResultFile() - 1)
+        / server.getRecordsPerResultFile());
+      String[] resultIds = new String[files];
+      for (int i = 0; i < files; i++) {
+        resultIds[i] = String.format("752%015d", i);
+      }
+      return resultIds;
+    }
+
+    private BatchInfo getBatchInfo() {
+      BatchStateEnum state = getState();
+      Calendar createdDate = Calendar.getInstance();
+      createdDate.setTimeInMillis(createdAt);
+      BatchInfo info = new BatchInfo();
+      info.setId(id);
+      info.setJobId(jobId);
+      info.setState(state);
+      if (failure != null) {
+        info.setStateMessage(failure);
+      }
+      info.setCreatedDate(createdDate);
+      info.setSystemModstamp(Calendar.getInstance());
+      info.setNumberRecordsProcessed(state == BatchStateEnum.Completed ? indexes.length : 0);
+      info.setNumberRecordsFailed(0);
+      info.setTotalProcessingTime(0);
+      info.setApiActiveProcessingTime(0);
+      info.setApexProcessingTime(0);
+      return info;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bulk API 2.0 of {@link FakeSalesforceServer}. Supports query jobs with CSV results, which are paged
+ * by locator. Job is in progress and completed as configured batch processing time passes, results are split
+ * into pages of configured number of records per result file, unless client requests smaller pages.
+ */
+class FakeBulkV2Api implements HttpHandler {
+
+  private static final Gson GSON = new Gson();
+  private static final Pattern PATH_PATTERN = Pattern.compile(
+    "/services/data/v[^/]+/jobs/query(?:/(\\w+)(/results)?)?/?");
+  private static final String BEARER = "Bearer ";
+  private static final String JOB_COMPLETE = "JobComplete";
+
+  private final FakeSalesforceServer server;
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+  private final AtomicInteger ids = new AtomicInteger();
+
+  FakeBulkV2Api(FakeSalesforceServer server) {
+    this.server = server;
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    server.recordApiRequest();
+    String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+    if (authorization == null || !authorization.startsWith(BEARER)
+      || !server.isValidSession(authorization.substring(BEARER.length()))) {
+      sendError(exchange, 401, "INVALID_SESSION_ID", "Session expired or invalid");
+      return;
+    }
+
+    Matcher matcher = PATH_PATTERN.matcher(exchange.getRequestURI().getPath());
+    if (!matcher.matches()) {
+      sendError(exchange, 404, "NOT_FOUND", "The requested resource does not exist");
+      return;
+    }
+    String jobId = matcher.group(1);
+    if (jobId == null) {
+      createJob(exchange);
+      return;
+    }
+    Job job = jobs.get(jobId);
+    if (job == null) {
+      sendError(exchange, 404, "NOT_FOUND", String.format("Unable to find job '%s'", jobId));
+    } else if (matcher.group(2) == null) {
+      server.respondJson(exchange, 200, job.getJobInfo());
+    } else if (!JOB_COMPLETE.equals(job.getState())) {
+      sendError(exchange, 400, "INVALIDJOB", "Job not completed");
+    } else {
+      sendResults(exchange, job);
+    }
+  }
+
+  private void createJob(HttpExchange exchange) throws IOException {
+    Map<?, ?> request = GSON.fromJson(FakeSalesforceServer.readRequestBody(exchange), Map.class);
+    FakeQuery query;
+    try {
+      query = FakeQuery.parse(String.valueOf(request.get("query")));
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400, "MALFORMED_QUERY", e.getMessage());
+      return;
+    }
+    FakeSObject sObject = server.getSObject(query.getSObjectName());
+    if (sObject == null) {
+      sendError(exchange, 400, "INVALIDENTITY",
+                String.format("Entity '%s' is not supported by the Bulk API.", query.getSObjectName()));
+      return;
+    }
+    Job job = new Job(String.format("750%015d", ids.incrementAndGet()), query, sObject, query.execute(sObject));
+    jobs.put(job.id, job);
+    server.respondJson(exchange, 200, job.getJobInfo());
+  }
+
+  private void sendResults(HttpExchange exchange, Job job) throws IOException {
+    Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+    int from = params.containsKey("locator") ? Integer.parseInt(params.get("locator")) : 0;
+    int pageSize = params.containsKey("maxRecords")
+      ? Integer.parseInt(params.get("maxRecords")) : server.getRecordsPerResultFile();
+    int to = Math.min(job.indexes.length, from + pageSize);
+
+    exchange.getResponseHeaders().set("Sforce-Locator", to < job.indexes.length ? String.valueOf(to) : "null");
+    exchange.getResponseHeaders().set("Sforce-NumberOfRecords", String.valueOf(to - from));
+    server.respond(exchange, 200, "text/csv", out -> {
+      Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+      FakeBulkApi.writeCsvRow(writer, job.query.getFields());
+      for (int i = from; i < to; i++) {
+        FakeBulkApi.writeCsvRow(writer, job.query.project(job.sObject.getRecord(job.indexes[i])));
+      }
+      writer.flush();
+    });
+  }
+
+  private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+    server.respondJson(exchange, status, Collections.singletonList(ImmutableMap.of("errorCode", code,
+                                                                                   "message", message)));
+  }
+
+  private static Map<String, String> parseParams(String query) throws IOException {
+    Map<String, String> params = new HashMap<>();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        String[] keyValue = param.split("=", 2);
+        params.put(URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8.name()),
+                   keyValue.length > 1 ? URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8.name()) : "");
+      }
+    }
+    return params;
+  }
+
+  /**
+   * Bulk API 2.0 query job, matching records are found when job is created.
+   */
+  private final class Job {
+    private final String id;
+    private final long createdAt = System.currentTimeMillis();
+    private final FakeQuery query;
+    private final FakeSObject sObject;
+    private final int[] indexes;
+
+    private Job(String id, FakeQuery query, FakeSObject sObject, int[] indexes) {
+      this.id = id;
+      this.query = query;
+      this.sObject = sObject;
+      this.indexes = indexes;
+    }
+
+    private String getState() {
+      long elapsed = System.currentTimeMillis() - createdAt;
+      if (elapsed >= server.getBatchProcessingMs()) {
+        return JOB_COMPLETE;
+      }
+      return elapsed * 2 < server.getBatchProcessingMs() ? "UploadComplete" : "InProgress";
+    }
+
+    private Map<String, Object> getJobInfo() {
+      String state = getState();
+      return ImmutableMap.of("id", id,
+                             "operation", "query",
+                             "object", sObject.getName(),
+                             "state", state,
+                             "numberRecordsProcessed",
+                             JOB_COMPLETE.equals(state) ? indexes.length : 0);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * SOQL query understood by {@link FakeSalesforceServer}. Supports a list of fields, sObject name,
+ * conditions joined by {@code AND} which compare a field with a literal, ordering by a single field
+ * and {@code LIMIT}. Strings match {@code LIKE} patterns, datetime values are compared as instants,
+ * other values as strings. Parentheses are ignored and other conditions match all records.
+ */
+class FakeQuery {
+
+  private static final Pattern QUERY_PATTERN = Pattern.compile(
+    "\\s*SELECT\\s+(.+?)\\s+FROM\\s+(\\w+)(?:\\s+WHERE\\s+(.+?))?"
+      + "(?:\\s+ORDER\\s+BY\\s+(\\w+)(?:\\s+(ASC|DESC))?.*?)?(?:\\s+LIMIT\\s+(\\d+))?\\s*",
+    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  private static final Pattern AND_PATTERN = Pattern.compile("\\s+AND\\s+", Pattern.CASE_INSENSITIVE);
+  private static final Pattern CONDITION_PATTERN = Pattern.compile(
+    "\\s*(\\w+)\\s*(=|!=|<=|>=|<|>|LIKE)\\s*('[^']*'|[^\\s']+)\\s*", Pattern.CASE_INSENSITIVE);
+
+  private final List<String> fields;
+  private final String sObjectName;
+  private final List<Condition> conditions;
+  private final String orderBy;
+  private final boolean descending;
+  private final int limit;
+
+  private FakeQuery(List<String> fields, String sObjectName, List<Condition> conditions, String orderBy,
+                    boolean descending, int limit) {
+    this.fields = fields;
+    this.sObjectName = sObjectName;
+    this.conditions = conditions;
+    this.orderBy = orderBy;
+    this.descending = descending;
+    this.limit = limit;
+  }
+
+  /**
+   * Parses SOQL query.
+   *
+   * @param query SOQL query
+   * @return parsed query
+   * @throws IllegalArgumentException if query is malformed
+   */
+  static FakeQuery parse(String query) {
+    Matcher matcher = QUERY_PATTERN.matcher(query);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException(String.format("Malformed query '%s'", query));
+    }
+    List<String> fields = Arrays.stream(matcher.group(1).split(","))
+      .map(String::trim)
+      .collect(Collectors.toList());
+
+    List<Condition> conditions = new ArrayList<>();
+    if (matcher.group(3) != null) {
+      for (String condition : AND_PATTERN.split(matcher.group(3).replaceAll("[()]", " "))) {
+        Matcher conditionMatcher = CONDITION_PATTERN.matcher(condition);
+        if (conditionMatcher.matches()) {
+          conditions.add(new Condition(conditionMatcher.group(1), conditionMatcher.group(2).toUpperCase(),
+                                       conditionMatcher.group(3).replace("'", "")));
+        }
+      }
+    }
+    boolean descending = "DESC".equalsIgnoreCase(matcher.group(5));
+    int limit = matcher.group(6) == null ? Integer.MAX_VALUE : Integer.parseInt(matcher.group(6));
+    return new FakeQuery(fields, matcher.group(2), conditions, matcher.group(4), descending, limit);
+  }
+
+  List<String> getFields() {
+    return fields;
+  }
+
+  String getSObjectName() {
+    return sObjectName;
+  }
+
+  /**
+   * Finds records of given sObject which match the query.
+   *
+   * @param sObject sObject the query selects from
+   * @return indexes of matching records
+   */
+  int[] execute(FakeSObject sObject) {
+    IntStream indexes = IntStream.range(0, sObject.size())
+      .filter(index -> conditions.stream().allMatch(condition -> condition.matches(sObject.getRecord(index))));
+    if (orderBy != null) {
+      Comparator<String> comparator = Comparator.nullsFirst(FakeQuery::compare);
+      Comparator<Integer> order = Comparator.comparing(index -> sObject.getRecord(index).get(orderBy), comparator);
+      indexes = indexes.boxed()
+        .sorted(descending ? order.reversed() : order)
+        .mapToInt(Integer::intValue);
+    }
+    return indexes.limit(limit).toArray();
+  }
+
+  /**
+   * Returns values of selected fields of the record in the order of selection.
+   * Fields which are not set, including relationship fields, have {@code null} value.
+   *
+   * @param record record values by field name
+   * @return selected values
+   */
+  List<String> project(Map<String, String> record) {
+    return fields.stream()
+      .map(field -> record.containsKey(field) ? record.get(field) : getIgnoreCase(record, field))
+      .collect(Collectors.toList());
+  }
+
+  private static int compare(String value, String other) {
+    try {
+      return Instant.parse(value).compareTo(Instant.parse(other));
+    } catch (DateTimeParseException e) {
+      return value.compareTo(other);
+    }
+  }
+
+  private static String getIgnoreCase(Map<String, String> record, String field) {
+    return record.entrySet().stream()
+      .filter(entry -> entry.getKey().equalsIgnoreCase(field))
+      .map(Map.Entry::getValue)
+      .findFirst()
+      .orElse(null);
+  }
+
+  /**
+   * Comparison of a field with a literal.
+   */
+  private static final class Condition {
+    private final String field;
+    private final String operator;
+    private final String value;
+    private final Pattern pattern;
+
+    private Condition(String field, String operator, String value) {
+      this.field = field;
+      this.operator = operator;
+      this.value = value;
+      this.pattern = Pattern.compile(Pattern.quote(value).replace("%", "\\E.*\\Q").replace("_", "\\E.\\Q"));
+    }
+
+    private boolean matches(Map<String, String> record) {
+      String recordValue = record.get(field);
+      if (recordValue == null) {
+        return false;
+      }
+      if ("LIKE".equals(operator)) {
+        return pattern.matcher(recordValue).matches();
+      }
+      int comparison = compare(recordValue, value);
+      switch (operator) {
+        case "=":
+          return comparison == 0;
+        case "!=":
+          return comparison != 0;
+        case "<":
+          return comparison < 0;
+        case "<=":
+          return comparison <= 0;
+        case ">":
+          return comparison > 0;
+        default:
+          return comparison >= 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import com.sforce.soap.partner.FieldType;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * sObject served by {@link FakeSalesforceServer}. Holds a number of synthetic records, which are generated
+ * on demand from their index, so that large data sets do not need to be kept in memory,
+ * and records created through SOAP API.
+ */
+public class FakeSObject {
+
+  static final String ID_FIELD = "Id";
+
+  private static final DateTimeFormatter DATETIME_FORMATTER =
+    DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+  private static final DateTimeFormatter TIME_FORMATTER =
+    DateTimeFormatter.ofPattern("HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+  private static final LocalDate START_DATE = LocalDate.of(2019, 1, 1);
+  private static final Instant START_INSTANT = START_DATE.atStartOfDay(ZoneOffset.UTC).toInstant();
+
+  private final String name;
+  private final String keyPrefix;
+  private final Map<String, FieldType> fields;
+  private final int syntheticRecords;
+  private final List<Map<String, String>> createdRecords = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger createdRecordsCount = new AtomicInteger();
+
+  private FakeSObject(String name, String keyPrefix, Map<String, FieldType> fields, int syntheticRecords) {
+    this.name = name;
+    this.keyPrefix = keyPrefix;
+    this.fields = Collections.unmodifiableMap(fields);
+    this.syntheticRecords = syntheticRecords;
+  }
+
+  public static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getKeyPrefix() {
+    return keyPrefix;
+  }
+
+  public Map<String, FieldType> getFields() {
+    return fields;
+  }
+
+  public boolean isCustom() {
+    return name.endsWith("__c");
+  }
+
+  /**
+   * @return number of records, both synthetic and created
+   */
+  public int size() {
+    return syntheticRecords + createdRecords.size();
+  }
+
+  /**
+   * Returns record with given index. Synthetic records go first, then created ones.
+   *
+   * @param index record index
+   * @return record values by field name, absent values are omitted
+   */
+  public Map<String, String> getRecord(int index) {
+    if (index >= syntheticRecords) {
+      return createdRecords.get(index - syntheticRecords);
+    }
+    Map<String, String> record = new LinkedHashMap<>();
+    fields.forEach((field, type) -> record.put(field, generateValue(field, type, index)));
+    return record;
+  }
+
+  /**
+   * Returns index of the record with given id.
+   *
+   * @param id record id
+   * @return record index or -1 if there is no such record
+   */
+  public int indexOf(String id) {
+    if (id.startsWith(keyPrefix)) {
+      try {
+        int index = Integer.parseInt(id.substring(keyPrefix.length()));
+        if (index < syntheticRecords) {
+          return index;
+        }
+      } catch (NumberFormatException e) {
+        // not a synthetic record id
+      }
+    }
+    synchronized (createdRecords) {
+      for (int i = 0; i < createdRecords.size(); i++) {
+        if (id.equals(createdRecords.get(i).get(ID_FIELD))) {
+          return syntheticRecords + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Stores new record and assigns an id to it.
+   *
+   * @param values record values by field name
+   * @return id of created record
+   */
+  public String create(Map<String, String> values) {
+    Map<String, String> record = new LinkedHashMap<>(values);
+    String id = getId(syntheticRecords + createdRecordsCount.getAndIncrement());
+    record.put(ID_FIELD, id);
+    createdRecords.add(record);
+    return id;
+  }
+
+  /**
+   * Deletes created record with given id. Synthetic records cannot be deleted.
+   *
+   * @param id record id
+   * @return true if record was deleted
+   */
+  public boolean delete(String id) {
+    return createdRecords.removeIf(record -> id.equals(record.get(ID_FIELD)));
+  }
+
+  private String getId(int index) {
+    return String.format("%s%015d", keyPrefix, index);
+  }
+
+  private String generateValue(String field, FieldType type, int index) {
+    if (ID_FIELD.equals(field)) {
+      return getId(index);
+    }
+    switch (type) {
+      case _boolean:
+        return String.valueOf(index % 2 == 0);
+      case _int:
+        return String.valueOf(index);
+      case _double:
+      case currency:
+      case percent:
+        return String.valueOf(index + 0.5);
+      case date:
+        return START_DATE.plusDays(index % 3650).toString();
+      case datetime:
+        return DATETIME_FORMATTER.format(START_INSTANT.plus(index, ChronoUnit.MINUTES));
+      case time:
+        return TIME_FORMATTER.format(START_INSTANT.plus(index, ChronoUnit.SECONDS));
+      case reference:
+        return String.format("001%015d", index);
+      default:
+        return String.format("%s %d", field, index);
+    }
+  }
+
+  /**
+   * Builder for {@link FakeSObject}.
+   */
+  public static class Builder {
+
+    /**
+     * Next key prefix in base 36, starts with the smallest two digit number.
+     */
+    private static final AtomicInteger KEY_PREFIXES = new AtomicInteger(36);
+
+    private final String name;
+    private final Map<String, FieldType> fields = new LinkedHashMap<>();
+    private int records;
+
+    private Builder(String name) {
+      this.name = name;
+      fields.put(ID_FIELD, FieldType.id);
+    }
+
+    public Builder addField(String name, FieldType type) {
+      fields.put(name, type);
+      return this;
+    }
+
+    /**
+     * Adds fields named by given prefix and field number, for example to describe a wide sObject.
+     *
+     * @param prefix field name prefix
+     * @param count number of fields
+     * @param type fields type
+     * @return this builder
+     */
+    public Builder addFields(String prefix, int count, FieldType type) {
+      for (int i = 0; i < count; i++) {
+        fields.put(prefix + i, type);
+      }
+      return this;
+    }
+
+    public Builder setRecords(int records) {
+      this.records = records;
+      return this;
+    }
+
+    public FakeSObject build() {
+      // key prefixes of fake sObjects start with 'a', like custom objects do, and differ per sObject
+      String keyPrefix = "a" + Integer.toString(KEY_PREFIXES.getAndIncrement(), 36);
+      return new FakeSObject(name, keyPrefix, new LinkedHashMap<>(fields), records);
+    }
+  }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.sforce.soap.partner.FieldType;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
+import io.cdap.plugin.salesforce.authenticator.AuthenticatorCredentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for Salesforce, which allows to run source plugins end to end and measure their throughput
+ * without a Salesforce org. Serves synthetic records of configured {@link FakeSObject}s through:
+ * <ul>
+ *   <li>OAuth username-password token endpoint</li>
+ *   <li>Bulk API v1 job, batch and result endpoints, in CSV</li>
+ *   <li>Bulk API 2.0 query job and locator-paged result endpoints, in CSV</li>
+ *   <li>SOAP API describeGlobal, describeSObject(s), retrieve, query, queryMore, create and delete calls</li>
+ *   <li>Streaming API CometD long polling endpoint, which publishes records created for a PushTopic</li>
+ * </ul>
+ * Each response is delayed by configured latency to imitate network round trip.
+ * <p/>
+ * Server can be started standalone, so that ETL tests and manual runs can be pointed to it:
+ * {@code -Dsalesforce.test.loginUrl=http://localhost:<port>/services/oauth2/token} with username, password,
+ * consumer key and consumer secret from this class constants.
+ */
+public class FakeSalesforceServer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FakeSalesforceServer.class);
+
+  public static final String USERNAME = "fake-user";
+  public static final String PASSWORD = "fake-password";
+  public static final String CONSUMER_KEY = "fake-consumer-key";
+  public static final String CONSUMER_SECRET = "fake-consumer-secret";
+
+  static final String PUSH_TOPIC = "PushTopic";
+  static final String LIMIT_INFO_HEADER = "Sforce-Limit-Info";
+
+  private static final String LOGIN_PATH = "/services/oauth2/token";
+  private static final Gson GSON = new Gson();
+
+  private final int port;
+  private final long latencyMs;
+  private final long batchProcessingMs;
+  private volatile long resultResetBytes;
+  private final int recordsPerResultFile;
+  private final long dailyApiLimit;
+  private final Map<String, FakeSObject> sObjects = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+  private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+  private final AtomicLong apiRequests = new AtomicLong();
+  private final AtomicInteger logins = new AtomicInteger();
+  private final FakeBulkApi bulkApi = new FakeBulkApi(this);
+  private final FakeBulkV2Api bulkV2Api = new FakeBulkV2Api(this);
+  private final FakeSoapApi soapApi = new FakeSoapApi(this);
+  private final FakeStreamingApi streamingApi = new FakeStreamingApi(this);
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  private FakeSalesforceServer(Builder builder) {
+    this.port = builder.port;
+    this.latencyMs = builder.latencyMs;
+    this.batchProcessingMs = builder.batchProcessingMs;
+    this.recordsPerResultFile = builder.recordsPerResultFile;
+    this.dailyApiLimit = builder.dailyApiLimit;
+    builder.sObjects.forEach(sObject -> sObjects.put(sObject.getName(), sObject));
+    sObjects.putIfAbsent(PUSH_TOPIC, FakeSObject.builder(PUSH_TOPIC)
+      .addField("Name", FieldType.string)
+      .addField("Query", FieldType.string)
+      .addField("ApiVersion", FieldType._double)
+      .addField("NotifyForOperationCreate", FieldType._boolean)
+      .addField("NotifyForOperationUpdate", FieldType._boolean)
+      .addField("NotifyForOperationDelete", FieldType._boolean)
+      .addField("NotifyForOperationUndelete", FieldType._boolean)
+      .addField("NotifyForFields", FieldType.picklist)
+      .build());
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Starts server with a few sObjects and waits until the process is killed.
+   *
+   * @param args optional port, otherwise a free port is chosen
+   */
+  public static void main(String[] args) throws IOException {
+    FakeSalesforceServer server = builder()
+      .setPort(args.length > 0 ? Integer.parseInt(args[0]) : 0)
+      .setLatencyMs(20)
+      .addSObject(FakeSObject.builder("Account")
+                    .addField("Name", FieldType.string)
+                    .addField("AnnualRevenue", FieldType.currency)
+                    .addField("CreatedDate", FieldType.datetime)
+                    .setRecords(100_000)
+                    .build())
+      .addSObject(FakeSObject.builder("Opportunity")
+                    .addField("Name", FieldType.string)
+                    .addField("IsClosed", FieldType._boolean)
+                    .addField("Probability", FieldType.percent)
+                    .addField("CloseDate", FieldType.date)
+                    .setRecords(1_000_000)
+                    .build())
+      .addSObject(FakeSObject.builder("Wide__c")
+                    .addFields("Field", 800, FieldType.string)
+                    .setRecords(10_000)
+                    .build())
+      .build();
+    server.start();
+    System.out.println(String.format("Fake Salesforce is listening, login url '%s', username '%s', password '%s', "
+                                       + "consumer key '%s', consumer secret '%s'", server.getLoginUrl(),
+                                     USERNAME, PASSWORD, CONSUMER_KEY, CONSUMER_SECRET));
+  }
+
+  public void start() throws IOException {
+    executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "fake-salesforce");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    server.createContext(LOGIN_PATH, exchange -> handle(exchange, this::login));
+    server.createContext("/services/async/", exchange -> handle(exchange, bulkApi));
+    server.createContext("/services/data/", exchange -> handle(exchange, bulkV2Api));
+    server.createContext("/services/Soap/u/", exchange -> handle(exchange, soapApi));
+    server.createContext("/cometd/", exchange -> handle(exchange, streamingApi));
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public void stop() {
+    streamingApi.close();
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  public String getUrl() {
+    return String.format("http://localhost:%d", server.getAddress().getPort());
+  }
+
+  public String getLoginUrl() {
+    return getUrl() + LOGIN_PATH;
+  }
+
+  /**
+   * @return credentials accepted by the server
+   */
+  public AuthenticatorCredentials getCredentials() {
+    return SalesforceConnectionUtil.getAuthenticatorCredentials(USERNAME, PASSWORD, CONSUMER_KEY, CONSUMER_SECRET,
+                                                                getLoginUrl());
+  }
+
+  /**
+   * Invalidates all issued sessions, so that clients have to log in again.
+   */
+  public void expireSessions() {
+    sessions.clear();
+  }
+
+  /**
+   * Makes the server reset connection once for each Bulk API v1 result file, after sending given number of bytes
+   * of the result, so that clients have to resume reading the result.
+   *
+   * @param bytes number of bytes sent before connection is reset, 0 to never reset connections
+   */
+  public void resetResultsAfter(long bytes) {
+    resultResetBytes = bytes;
+  }
+
+  /**
+   * @return number of Bulk and SOAP API requests served
+   */
+  public long getApiRequests() {
+    return apiRequests.get();
+  }
+
+  /**
+   * @return number of successful logins
+   */
+  public int getLogins() {
+    return logins.get();
+  }
+
+  public FakeSObject getSObject(String name) {
+    return sObjects.get(name);
+  }
+
+  Collection<FakeSObject> getSObjects() {
+    return sObjects.values();
+  }
+
+  long getBatchProcessingMs() {
+    return batchProcessingMs;
+  }
+
+  long getResultResetBytes() {
+    return resultResetBytes;
+  }
+
+  int getRecordsPerResultFile() {
+    return recordsPerResultFile;
+  }
+
+  boolean isValidSession(String sessionId) {
+    return sessionId != null && sessions.contains(sessionId);
+  }
+
+  void recordApiRequest() {
+    apiRequests.incrementAndGet();
+  }
+
+  /**
+   * Publishes record created for the sObject to PushTopics which listen to its creation.
+   *
+   * @param sObjectName sObject name
+   * @param record created record
+   */
+  void onCreated(String sObjectName, Map<String, String> record) {
+    FakeSObject pushTopics = sObjects.get(PUSH_TOPIC);
+    for (int i = 0; i < pushTopics.size(); i++) {
+      Map<String, String> pushTopic = pushTopics.getRecord(i);
+      if ("false".equalsIgnoreCase(pushTopic.get("NotifyForOperationCreate"))) {
+        continue;
+      }
+      FakeQuery query = FakeQuery.parse(pushTopic.get("Query"));
+      if (!query.getSObjectName().equalsIgnoreCase(sObjectName)) {
+        continue;
+      }
+      Map<String, Object> sObject = new LinkedHashMap<>();
+      List<String> values = query.project(record);
+      for (int field = 0; field < values.size(); field++) {
+        sObject.put(query.getFields().get(field), values.get(field));
+      }
+      streamingApi.publish(pushTopic.get("Name"), "created", sObject);
+    }
+  }
+
+  /**
+   * Reads request body, decompressing it if needed.
+   *
+   * @param exchange HTTP exchange
+   * @return request body stream
+   */
+  static InputStream getRequestBody(HttpExchange exchange) throws IOException {
+    InputStream body = exchange.getRequestBody();
+    return "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+      ? new GZIPInputStream(body) : body;
+  }
+
+  static String readRequestBody(HttpExchange exchange) throws IOException {
+    return new String(ByteStreams.toByteArray(getRequestBody(exchange)), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Sends response with API usage header, compressed if client accepts compressed responses.
+   *
+   * @param exchange HTTP exchange
+   * @param status HTTP status
+   * @param contentType response content type
+   * @param writer writes response content
+   */
+  void respond(HttpExchange exchange, int status, String contentType, ContentWriter writer) throws IOException {
+    Headers headers = exchange.getResponseHeaders();
+    headers.set("Content-Type", contentType);
+    headers.set(LIMIT_INFO_HEADER, String.format("api-usage=%d/%d", apiRequests.get(), dailyApiLimit));
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    boolean compress = acceptEncoding != null && acceptEncoding.contains("gzip");
+    if (compress) {
+      headers.set("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(status, 0);
+    OutputStream body = compress ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+    try (OutputStream out = new BufferedOutputStream(body, 64 * 1024)) {
+      writer.write(out);
+    }
+  }
+
+  private void handle(HttpExchange exchange, HttpHandler handler) throws IOException {
+    try {
+      if (latencyMs > 0) {
+        TimeUnit.MILLISECONDS.sleep(latencyMs);
+      }
+      handler.handle(exchange);
+    } catch (Exception e) {
+      LOG.error("Failed to serve '{} {}'", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+      byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(500, message.length);
+      exchange.getResponseBody().write(message);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void login(HttpExchange exchange) throws IOException {
+    Map<String, String> params = new HashMap<>();
+    parseParams(exchange.getRequestURI().getRawQuery(), params);
+    parseParams(readRequestBody(exchange), params);
+
+    if (!"password".equals(params.get("grant_type")) || !USERNAME.equals(params.get("username"))
+      || !PASSWORD.equals(params.get("password")) || !CONSUMER_KEY.equals(params.get("client_id"))
+      || !CONSUMER_SECRET.equals(params.get("client_secret"))) {
+      Map<String, String> error = ImmutableMap.of("error", "invalid_grant",
+                                                  "error_description", "authentication failure");
+      respondJson(exchange, 400, error);
+      return;
+    }
+
+    String sessionId = "00D" + UUID.randomUUID().toString().replace("-", "");
+    sessions.add(sessionId);
+    logins.incrementAndGet();
+    Map<String, String> token = ImmutableMap.<String, String>builder()
+      .put("access_token", sessionId)
+      .put("instance_url", getUrl())
+      .put("id", getUrl() + "/id/00D000000000001/005000000000001")
+      .put("token_type", "Bearer")
+      .put("issued_at", String.valueOf(System.currentTimeMillis()))
+      .put("signature", "fake")
+      .build();
+    respondJson(exchange, 200, token);
+  }
+
+  void respondJson(HttpExchange exchange, int status, Object content) throws IOException {
+    respond(exchange, status, "application/json;charset=UTF-8",
+            out -> out.write(GSON.toJson(content).getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static void parseParams(String encoded, Map<String, String> params) throws UnsupportedEncodingException {
+    if (encoded == null || encoded.isEmpty()) {
+      return;
+    }
+    for (String param : encoded.split("&")) {
+      String[] pair = param.split("=", 2);
+      params.put(URLDecoder.decode(pair[0], "UTF-8"), pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+    }
+  }
+
+  /**
+   * Writes response content.
+   */
+  @FunctionalInterface
+  interface ContentWriter {
+    void write(OutputStream out) throws IOException;
+  }
+
+  /**
+   * Builder for {@link FakeSalesforceServer}.
+   */
+  public static class Builder {
+
+    private final List<FakeSObject> sObjects = new ArrayList<>();
+    private int port;
+    private long latencyMs;
+    private long batchProcessingMs;
+    private int recordsPerResultFile = 100_000;
+    private long dailyApiLimit = 15_000;
+
+    private Builder() {
+    }
+
+    /**
+     * @param port port to listen on, 0 to choose a free port
+     */
+    public Builder setPort(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * @param latencyMs delay of every response
+     */
+    public Builder setLatencyMs(long latencyMs) {
+      this.latencyMs = latencyMs;
+      return this;
+    }
+
+    /**
+     * @param batchProcessingMs time before a Bulk API batch completes
+     */
+    public Builder setBatchProcessingMs(long batchProcessingMs) {
+      this.batchProcessingMs = batchProcessingMs;
+      return this;
+    }
+
+    /**
+     * @param recordsPerResultFile maximum number of records in a Bulk API batch result file
+     */
+    public Builder setRecordsPerResultFile(int recordsPerResultFile) {
+      this.recordsPerResultFile = recordsPerResultFile;
+      return this;
+    }
+
+    /**
+     * @param dailyApiLimit org API limit reported in {@code Sforce-Limit-Info} header
+     */
+    public Builder setDailyApiLimit(long dailyApiLimit) {
+      this.dailyApiLimit = dailyApiLimit;
+      return this;
+    }
+
+    public Builder addSObject(FakeSObject sObject) {
+      sObjects.add(sObject);
+      return this;
+    }
+
+    public FakeSalesforceServer build() {
+      return new FakeSalesforceServer(this);
+    }
+  }
+}
@@ -0,0 +1,577 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchStateEnum;
+import com.sforce.async.OperationEnum;
+import com.sforce.soap.partner.DescribeGlobalSObjectResult;
+import com.sforce.soap.partner.FieldType;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.sobject.SObject;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.salesforce.BulkJobPoller;
+import io.cdap.plugin.salesforce.RangeSplitDescriptor;
+import io.cdap.plugin.salesforce.SObjectDescriptor;
+import io.cdap.plugin.salesforce.SalesforceApiGovernor;
+import io.cdap.plugin.salesforce.SalesforceBulkUtil;
+import io.cdap.plugin.salesforce.SalesforceConnectionUtil;
+import io.cdap.plugin.salesforce.SalesforceConstants;
+import io.cdap.plugin.salesforce.SalesforceQueryUtil;
+import io.cdap.plugin.salesforce.SalesforceReadMetrics;
+import io.cdap.plugin.salesforce.SalesforceSchemaUtil;
+import io.cdap.plugin.salesforce.SalesforceSession;
+import io.cdap.plugin.salesforce.plugin.source.batch.SalesforceInputFormat;
+import io.cdap.plugin.salesforce.plugin.source.batch.SalesforceJobRegistry;
+import io.cdap.plugin.salesforce.plugin.source.batch.SalesforceRow;
+import io.cdap.plugin.salesforce.plugin.source.batch.SalesforceSplit;
+import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import io.cdap.plugin.salesforce.plugin.source.streaming.SalesforcePushTopicListener;
+import io.cdap.plugin.salesforce.soap.SObjectUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.awaitility.Awaitility;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Tests for {@link FakeSalesforceServer}, which run plugin code against it.
+ */
+public class FakeSalesforceServerTest {
+
+  private static final Gson GSON = new Gson();
+  private static final String OPPORTUNITY = "Opportunity";
+  private static final String WIDE = "Wide__c";
+  /**
+   * Number of fields of the wide sObject, a query selecting all of them exceeds SOQL length limit
+   */
+  private static final int WIDE_FIELDS = 2500;
+  private static final String LEAD = "Lead";
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static FakeSalesforceServer server;
+
+  @BeforeClass
+  public static void startServer() throws Exception {
+    server = FakeSalesforceServer.builder()
+      .setBatchProcessingMs(1000)
+      .setRecordsPerResultFile(1000)
+      .addSObject(FakeSObject.builder(OPPORTUNITY)
+                    .addField("Name", FieldType.string)
+                    .addField("Amount", FieldType.currency)
+                    .addField("IsClosed", FieldType._boolean)
+                    .addField("CloseDate", FieldType.date)
+                    .addField("LastModifiedDate", FieldType.datetime)
+                    .setRecords(2500)
+                    .build())
+      .addSObject(FakeSObject.builder(LEAD)
+                    .addField("Name", FieldType.string)
+                    .build())
+      .addSObject(FakeSObject.builder(WIDE)
+                    .addFields("Field", WIDE_FIELDS, FieldType.string)
+                    .setRecords(10)
+                    .build())
+      .build();
+    server.start();
+  }
+
+  @AfterClass
+  public static void stopServer() {
+    server.stop();
+  }
+
+  @Test
+  public void testBulkQuery() throws Exception {
+    String query = "SELECT Id, Name, Amount, IsClosed, CloseDate, LastModifiedDate FROM Opportunity";
+    List<Map<String, String>> records = readBulkQuery(query);
+
+    Assert.assertEquals(2500, records.size());
+    Assert.assertEquals(ImmutableMap.<String, String>builder()
+                          .put("Id", records.get(7).get("Id"))
+                          .put("Name", "Name 7")
+                          .put("Amount", "7.5")
+                          .put("IsClosed", "false")
+                          .put("CloseDate", "2019-01-08")
+                          .put("LastModifiedDate", "2019-01-01T00:07:00.000Z")
+                          .build(), records.get(7));
+  }
+
+  @Test
+  public void testBulkQueryResumesResetResults() throws Exception {
+    server.resetResultsAfter(10000);
+    List<Map<String, String>> records;
+    try {
+      records = readBulkQuery("SELECT Id, Name FROM Opportunity");
+    } finally {
+      server.resetResultsAfter(0);
+    }
+
+    Assert.assertEquals(2500, records.size());
+    Assert.assertEquals(2500, records.stream().map(record -> record.get("Id")).distinct().count());
+    Assert.assertEquals("Name 2499", records.get(2499).get("Name"));
+  }
+
+  @Test
+  public void testBulkQueryWithCondition() throws Exception {
+    List<Map<String, String>> records = readBulkQuery("SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 12%'");
+
+    Assert.assertEquals(Arrays.asList("Name 12", "Name 120", "Name 121"),
+                        records.stream().map(record -> record.get("Name")).limit(3).collect(Collectors.toList()));
+    Assert.assertEquals(111, records.size());
+  }
+
+  @Test
+  public void testBulkQueryWithPKChunking() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity";
+    Configuration conf = createConfiguration(query);
+    conf.set(SalesforceSourceConstants.CONFIG_PK_CHUNK_SIZE, "1000");
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<Map<String, String>> records = read(conf, splits);
+
+    Assert.assertEquals(3, splits.size());
+    Assert.assertEquals(2500, records.size());
+    Assert.assertEquals("Name 2499", records.get(2499).get("Name"));
+  }
+
+  @Test
+  public void testBulkQueryProgress() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 1%'";
+    Configuration conf = createConfiguration(query);
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    RecordReader<Schema, SalesforceRow> reader =
+      new SalesforceInputFormat().createRecordReader(splits.get(0), context);
+    reader.initialize(splits.get(0), context);
+    for (int i = 0; i < 555; i++) {
+      Assert.assertTrue(reader.nextKeyValue());
+    }
+    Assert.assertEquals(0.5f, reader.getProgress(), 0.01f);
+    while (reader.nextKeyValue()) {
+      // read the rest of the records
+    }
+    Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+    reader.close();
+  }
+
+  @Test
+  public void testBulkQueryWithRangeSplits() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 1%'";
+    Configuration conf = createConfiguration(query);
+    conf.set(SalesforceSourceConstants.CONFIG_RANGE_SPLITS, "4");
+    conf.set(SalesforceSourceConstants.CONFIG_RANGE_SPLIT_FIELD, RangeSplitDescriptor.FIELD_LAST_MODIFIED_DATE);
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<Map<String, String>> records = read(conf, splits);
+
+    Assert.assertEquals(4, splits.size());
+    Assert.assertEquals(1111, records.size());
+    Assert.assertEquals(1111, records.stream().map(record -> record.get("Id")).distinct().count());
+    Assert.assertEquals("Name 1", records.get(0).get("Name"));
+    Assert.assertEquals("Name 1999", records.get(1110).get("Name"));
+  }
+
+  @Test
+  public void testBulkQueryWithResultFileSplits() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity";
+    Configuration conf = createConfiguration(query);
+    conf.setBoolean(SalesforceSourceConstants.CONFIG_SPLIT_BY_RESULT_FILE, true);
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<Map<String, String>> records = read(conf, splits);
+
+    Assert.assertEquals(3, splits.size());
+    Assert.assertEquals(2500, records.size());
+    Assert.assertEquals("Name 1000", records.get(1000).get("Name"));
+    Assert.assertEquals("Name 2499", records.get(2499).get("Name"));
+  }
+
+  @Test
+  public void testRegisteredJobsAreReused() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 2%'";
+    Configuration conf = createConfiguration(query);
+    conf.set(SalesforceSourceConstants.CONFIG_JOB_REGISTRY_PATH, TEMP_FOLDER.newFolder().getAbsolutePath());
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<InputSplit> rerunSplits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+
+    Assert.assertEquals(1, rerunSplits.size());
+    Assert.assertEquals(((SalesforceSplit) splits.get(0)).getJobId(),
+                        ((SalesforceSplit) rerunSplits.get(0)).getJobId());
+    Assert.assertEquals(611, read(conf, rerunSplits).size());
+  }
+
+  @Test
+  public void testJobsOfSuccessfulRunAreNotReused() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 2%'";
+    Configuration conf = createConfiguration(query);
+    conf.set(SalesforceSourceConstants.CONFIG_JOB_REGISTRY_PATH, TEMP_FOLDER.newFolder().getAbsolutePath());
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    Assert.assertEquals(611, read(conf, splits).size());
+    SalesforceJobRegistry.removeQueries(conf);
+    List<InputSplit> nextRunSplits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+
+    Assert.assertNotEquals(((SalesforceSplit) splits.get(0)).getJobId(),
+                           ((SalesforceSplit) nextRunSplits.get(0)).getJobId());
+    Assert.assertEquals(611, read(conf, nextRunSplits).size());
+  }
+
+  @Test
+  public void testApiCallBudgetIsPerRun() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 4%'";
+    Configuration limitedConf = createConfiguration(query);
+    limitedConf.set(SalesforceSourceConstants.CONFIG_API_CALL_BUDGET, "1");
+    try {
+      new SalesforceInputFormat().getSplits(new JobContextImpl(limitedConf, new JobID()));
+      Assert.fail("Splits must not be prepared once budget is exhausted");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    // exhausted budget of the other run does not limit calls of this one
+    Configuration conf = createConfiguration(query);
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    Assert.assertEquals(111, read(conf, splits).size());
+  }
+
+  @Test
+  public void testResultsAreCached() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 3%'";
+    Configuration conf = createConfiguration(query);
+    conf.setBoolean(SalesforceSourceConstants.CONFIG_PREVIEW, true);
+    conf.set(SalesforceSourceConstants.CONFIG_RESULT_CACHE_DIRECTORY, TEMP_FOLDER.newFolder().getAbsolutePath());
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<Map<String, String>> records = read(conf, splits);
+    long apiRequests = server.getApiRequests();
+    int logins = server.getLogins();
+
+    List<InputSplit> cachedSplits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    Assert.assertTrue(((SalesforceSplit) cachedSplits.get(0)).isCached());
+    Assert.assertEquals(records, read(conf, cachedSplits));
+    Assert.assertEquals(apiRequests, server.getApiRequests());
+    Assert.assertEquals(logins, server.getLogins());
+  }
+
+  @Test
+  public void testResultsNotReadByPreviewAreCached() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 4%'";
+    Configuration conf = createConfiguration(query);
+    List<Map<String, String>> records =
+      read(conf, new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID())));
+    conf.setBoolean(SalesforceSourceConstants.CONFIG_PREVIEW, true);
+    conf.set(SalesforceSourceConstants.CONFIG_RESULT_CACHE_DIRECTORY, TEMP_FOLDER.newFolder().getAbsolutePath());
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    // preview stops reading once it reaches its record limit
+    for (InputSplit split : splits) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+      RecordReader<Schema, SalesforceRow> reader = new SalesforceInputFormat().createRecordReader(split, context);
+      reader.initialize(split, context);
+      Assert.assertTrue(reader.nextKeyValue());
+      reader.close();
+    }
+    long apiRequests = server.getApiRequests();
+
+    List<InputSplit> cachedSplits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    Assert.assertTrue(((SalesforceSplit) cachedSplits.get(0)).isCached());
+    Assert.assertEquals(records, read(conf, cachedSplits));
+    Assert.assertEquals(apiRequests, server.getApiRequests());
+  }
+
+  @Test
+  public void testResultsAreNotCachedOutsideOfPreview() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 5%'";
+    // splits may be read on other machines than the driver, which do not share its local disk
+    File driverDirectory = TEMP_FOLDER.newFolder();
+    File readerDirectory = TEMP_FOLDER.newFolder();
+    Configuration driverConf = createConfiguration(query);
+    driverConf.set(SalesforceSourceConstants.CONFIG_RESULT_CACHE_DIRECTORY, driverDirectory.getAbsolutePath());
+    Configuration readerConf = createConfiguration(query);
+    readerConf.set(SalesforceSourceConstants.CONFIG_RESULT_CACHE_DIRECTORY, readerDirectory.getAbsolutePath());
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(driverConf, new JobID()));
+    List<Map<String, String>> records = read(readerConf, splits);
+    List<InputSplit> nextRunSplits =
+      new SalesforceInputFormat().getSplits(new JobContextImpl(driverConf, new JobID()));
+
+    Assert.assertFalse(((SalesforceSplit) nextRunSplits.get(0)).isCached());
+    Assert.assertEquals(records, read(readerConf, nextRunSplits));
+    Assert.assertArrayEquals(new String[0], driverDirectory.list());
+    Assert.assertArrayEquals(new String[0], readerDirectory.list());
+  }
+
+  @Test
+  public void testBatchPollsAreShared() throws Exception {
+    SalesforceSession session = SalesforceConnectionUtil.getSession(server.getCredentials());
+    List<String> queries = Arrays.asList("SELECT Id FROM Opportunity WHERE Name LIKE 'Name 1%'",
+                                         "SELECT Id FROM Opportunity WHERE Name LIKE 'Name 2%'",
+                                         "SELECT Id FROM Opportunity WHERE Name LIKE 'Name 3%'");
+    BatchInfo[] batches = SalesforceBulkUtil.runBulkQueries(session, queries, new SalesforceReadMetrics());
+
+    SalesforceReadMetrics metrics = new SalesforceReadMetrics();
+    ExecutorService executor = Executors.newFixedThreadPool(batches.length);
+    try {
+      List<Future<BatchInfo>> results = new ArrayList<>();
+      for (BatchInfo batch : batches) {
+        results.add(executor.submit(() -> BulkJobPoller.awaitBatch(session, batch.getJobId(), batch.getId(),
+                                                                   TimeUnit.MINUTES.toMillis(1), metrics)));
+      }
+      for (Future<BatchInfo> result : results) {
+        Assert.assertEquals(BatchStateEnum.Completed, result.get().getState());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    // batches are processed in a second, which takes a few polls of the whole job rather than a few per batch
+    Assert.assertTrue(metrics.get(SalesforceReadMetrics.BATCH_POLLS) <= 4);
+  }
+
+  @Test
+  public void testApiUsageIsRecordedFromBatchPolls() throws Exception {
+    SalesforceSession session = SalesforceConnectionUtil.getSession(server.getCredentials());
+    BatchInfo batch = SalesforceBulkUtil.runBulkQueries(
+      session, Collections.singletonList("SELECT Id FROM Opportunity WHERE Name LIKE 'Name 5%'"),
+      new SalesforceReadMetrics())[0];
+    BulkJobPoller.awaitBatch(session, batch.getJobId(), batch.getId(), TimeUnit.MINUTES.toMillis(1),
+                             new SalesforceReadMetrics());
+
+    // the last request was a poll, its response reports all requests served so far
+    SalesforceApiGovernor governor = SalesforceApiGovernor.forHost(URI.create(server.getUrl()).getHost());
+    Assert.assertEquals(server.getApiRequests(), governor.getApiUsage());
+  }
+
+  @Test
+  public void testBulkV2Query() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity";
+    Configuration conf = createConfiguration(query);
+    conf.set(SalesforceSourceConstants.CONFIG_BULK_API_VERSION, SalesforceSourceConstants.BULK_API_V2);
+    conf.set(SalesforceSourceConstants.CONFIG_MAX_RECORDS_PER_PAGE, "700");
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<Map<String, String>> records = read(conf, splits);
+
+    Assert.assertEquals(1, splits.size());
+    Assert.assertEquals(2500, records.size());
+    Assert.assertEquals("Name 0", records.get(0).get("Name"));
+    Assert.assertEquals("Name 2499", records.get(2499).get("Name"));
+  }
+
+  @Test
+  public void testBulkV2QueryWithRangeSplits() throws Exception {
+    String query = "SELECT Id, Name FROM Opportunity WHERE Name LIKE 'Name 1%'";
+    Configuration conf = createConfiguration(query);
+    conf.set(SalesforceSourceConstants.CONFIG_BULK_API_VERSION, SalesforceSourceConstants.BULK_API_V2);
+    conf.set(SalesforceSourceConstants.CONFIG_RANGE_SPLITS, "4");
+    conf.set(SalesforceSourceConstants.CONFIG_RANGE_SPLIT_FIELD, RangeSplitDescriptor.FIELD_LAST_MODIFIED_DATE);
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<Map<String, String>> records = read(conf, splits);
+
+    Assert.assertEquals(4, splits.size());
+    Assert.assertEquals(1111, records.size());
+    Assert.assertEquals(1111, records.stream().map(record -> record.get("Id")).distinct().count());
+  }
+
+  @Test
+  public void testDescribe() throws Exception {
+    SObjectDescriptor sObjectDescriptor = SObjectDescriptor.fromName(OPPORTUNITY, server.getCredentials());
+    Schema schema = SalesforceSchemaUtil.getSchema(server.getCredentials(), sObjectDescriptor);
+
+    Assert.assertEquals(Arrays.asList("Id", "Name", "Amount", "IsClosed", "CloseDate", "LastModifiedDate"),
+                        sObjectDescriptor.getFieldsNames());
+    Assert.assertEquals(Schema.Type.BOOLEAN, schema.getField("IsClosed").getSchema().getNonNullable().getType());
+    Assert.assertEquals(Schema.LogicalType.DATE, schema.getField("CloseDate").getSchema().getNonNullable()
+      .getLogicalType());
+
+    PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(server.getCredentials());
+    List<String> sObjects = Arrays.stream(partnerConnection.describeGlobal().getSobjects())
+      .map(DescribeGlobalSObjectResult::getName)
+      .collect(Collectors.toList());
+    Assert.assertTrue(sObjects.containsAll(Arrays.asList(OPPORTUNITY, WIDE)));
+  }
+
+  @Test
+  public void testQueryMore() throws Exception {
+    PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(server.getCredentials());
+    QueryResult result = partnerConnection.query("SELECT Id, Name FROM Opportunity");
+    int records = result.getRecords().length;
+    while (!result.isDone()) {
+      result = partnerConnection.queryMore(result.getQueryLocator());
+      records += result.getRecords().length;
+    }
+
+    Assert.assertEquals(2500, result.getSize());
+    Assert.assertEquals(2500, records);
+  }
+
+  @Test
+  public void testRetrieve() throws Exception {
+    SalesforceSession session = SalesforceConnectionUtil.getSession(server.getCredentials());
+    FakeSObject wide = server.getSObject(WIDE);
+    String[] ids = {wide.getRecord(3).get("Id"), wide.getRecord(5).get("Id")};
+
+    SObject[] records = session.callSoap(connection -> connection.retrieve("Id, Field0, Field99", WIDE, ids));
+
+    Assert.assertEquals(2, records.length);
+    Assert.assertEquals(ids[1], records[1].getId());
+    Assert.assertEquals("Field99 5", records[1].getField("Field99"));
+  }
+
+  @Test
+  public void testWideQuery() throws Exception {
+    List<Map<String, String>> records = readBulkQuery(createWideQuery());
+
+    Assert.assertEquals(10, records.size());
+    Assert.assertEquals(server.getSObject(WIDE).getRecord(7).get("Id"), records.get(7).get("Id"));
+    Assert.assertEquals("Field0 0", records.get(0).get("Field0"));
+    Assert.assertEquals("Field2499 9", records.get(9).get("Field2499"));
+  }
+
+  @Test
+  public void testWideQueryWithColumnGroups() throws Exception {
+    Configuration conf = createConfiguration(createWideQuery());
+    conf.setBoolean(SalesforceSourceConstants.CONFIG_WIDE_OBJECT_COLUMN_GROUPS, true);
+
+    List<InputSplit> splits = new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID()));
+    List<Map<String, String>> records = read(conf, splits);
+
+    Assert.assertEquals(1, splits.size());
+    Assert.assertEquals(2, ((SalesforceSplit) splits.get(0)).getColumnGroupBatchIds().size());
+    Assert.assertEquals(10, records.size());
+    Assert.assertEquals(WIDE_FIELDS + 1, records.get(0).size());
+    Assert.assertEquals(server.getSObject(WIDE).getRecord(7).get("Id"), records.get(7).get("Id"));
+    Assert.assertEquals("Field0 0", records.get(0).get("Field0"));
+    Assert.assertEquals("Field2499 9", records.get(9).get("Field2499"));
+  }
+
+  @Test
+  public void testSessionIsRefreshed() throws Exception {
+    SalesforceSession session = SalesforceConnectionUtil.getSession(server.getCredentials());
+    int logins = server.getLogins();
+    server.expireSessions();
+
+    session.callSoap(connection -> connection.describeSObjects(new String[] {OPPORTUNITY}));
+    Assert.assertEquals(logins + 1, server.getLogins());
+
+    server.expireSessions();
+    session.callBulk(connection -> connection.createJob(OPPORTUNITY, OperationEnum.query));
+    Assert.assertEquals(logins + 2, server.getLogins());
+  }
+
+  @Test
+  public void testPushTopicEvents() throws Exception {
+    PartnerConnection partnerConnection = SalesforceConnectionUtil.getPartnerConnection(server.getCredentials());
+    SObject pushTopic = new SObject(FakeSalesforceServer.PUSH_TOPIC);
+    pushTopic.setField("Name", "LeadTopic");
+    pushTopic.setField("Query", "SELECT Id, Name FROM Lead");
+    pushTopic.setField("NotifyForOperationCreate", "true");
+    SObjectUtil.createSObjects(partnerConnection, new SObject[] {pushTopic});
+
+    SalesforcePushTopicListener listener = new SalesforcePushTopicListener(server.getCredentials(), "LeadTopic");
+    listener.start();
+
+    // subscription is completed asynchronously, so records are created until one of them is delivered
+    AtomicReference<String> message = new AtomicReference<>();
+    Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> {
+      SObject lead = new SObject(LEAD);
+      lead.setField("Name", "Streamed");
+      SObjectUtil.createSObjects(partnerConnection, new SObject[] {lead});
+      message.set(listener.getMessage(1, TimeUnit.SECONDS));
+      return message.get() != null;
+    });
+
+    Map<?, ?> event = GSON.fromJson(message.get(), Map.class);
+    Assert.assertEquals("Streamed", ((Map<?, ?>) event.get("sobject")).get("Name"));
+    Assert.assertEquals("created", ((Map<?, ?>) event.get("event")).get("type"));
+  }
+
+  private static String createWideQuery() {
+    String query = IntStream.range(0, WIDE_FIELDS)
+      .mapToObj(i -> "Field" + i)
+      .collect(Collectors.joining(", ", "SELECT Id, ", " FROM " + WIDE));
+    Assert.assertFalse(SalesforceQueryUtil.isQueryUnderLengthLimit(query));
+    return query;
+  }
+
+  private static List<Map<String, String>> readBulkQuery(String query) throws Exception {
+    Configuration conf = createConfiguration(query);
+    return read(conf, new SalesforceInputFormat().getSplits(new JobContextImpl(conf, new JobID())));
+  }
+
+  private static Configuration createConfiguration(String query) throws Exception {
+    SObjectDescriptor sObjectDescriptor = SObjectDescriptor.fromQuery(query);
+    Schema schema = SalesforceSchemaUtil.getSchema(server.getCredentials(), sObjectDescriptor);
+
+    Configuration conf = new Configuration();
+    conf.set(SalesforceConstants.CONFIG_USERNAME, FakeSalesforceServer.USERNAME);
+    conf.set(SalesforceConstants.CONFIG_PASSWORD, FakeSalesforceServer.PASSWORD);
+    conf.set(SalesforceConstants.CONFIG_CONSUMER_KEY, FakeSalesforceServer.CONSUMER_KEY);
+    conf.set(SalesforceConstants.CONFIG_CONSUMER_SECRET, FakeSalesforceServer.CONSUMER_SECRET);
+    conf.set(SalesforceConstants.CONFIG_LOGIN_URL, server.getLoginUrl());
+    conf.set(SalesforceSourceConstants.CONFIG_QUERIES, GSON.toJson(Collections.singletonList(query)));
+    conf.set(SalesforceSourceConstants.CONFIG_SCHEMAS,
+             GSON.toJson(Collections.singletonMap(sObjectDescriptor.getName(), schema.toString())));
+    return conf;
+  }
+
+  private static List<Map<String, String>> read(Configuration conf, List<InputSplit> splits) throws Exception {
+    SalesforceInputFormat inputFormat = new SalesforceInputFormat();
+    List<Map<String, String>> records = new ArrayList<>();
+    for (InputSplit split : splits) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+      RecordReader<Schema, SalesforceRow> reader = inputFormat.createRecordReader(split, context);
+      reader.initialize(split, context);
+      while (reader.nextKeyValue()) {
+        records.add(reader.getCurrentValue().toMap());
+      }
+      reader.close();
+    }
+    return records;
+  }
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import com.sforce.soap.partner.CreateResponse_element;
+import com.sforce.soap.partner.DeleteResponse_element;
+import com.sforce.soap.partner.DeleteResult;
+import com.sforce.soap.partner.DescribeGlobalResponse_element;
+import com.sforce.soap.partner.DescribeGlobalResult;
+import com.sforce.soap.partner.DescribeGlobalSObjectResult;
+import com.sforce.soap.partner.DescribeSObjectResponse_element;
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.DescribeSObjectsResponse_element;
+import com.sforce.soap.partner.Field;
+import com.sforce.soap.partner.FieldType;
+import com.sforce.soap.partner.QueryMoreResponse_element;
+import com.sforce.soap.partner.QueryResponse_element;
+import com.sforce.soap.partner.QueryResult;
+import com.sforce.soap.partner.RetrieveResponse_element;
+import com.sforce.soap.partner.SaveResult;
+import com.sforce.soap.partner.SoapType;
+import com.sforce.soap.partner.fault.ExceptionCode;
+import com.sforce.soap.partner.fault.UnexpectedErrorFault;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.bind.TypeMapper;
+import com.sforce.ws.bind.XMLizable;
+import com.sforce.ws.parser.XmlOutputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * SOAP API of {@link FakeSalesforceServer}. Supports calls which are made by the plugins and the tests.
+ */
+class FakeSoapApi implements HttpHandler {
+
+  private static final String SOAP_ENV_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+  private static final String SCHEMA_NS = "http://www.w3.org/2001/XMLSchema";
+  private static final String SCHEMA_INSTANCE_NS = "http://www.w3.org/2001/XMLSchema-instance";
+  private static final String PARTNER_NS = "urn:partner.soap.sforce.com";
+  private static final String SOBJECT_NS = "urn:sobject.partner.soap.sforce.com";
+  private static final String FAULT_NS = "urn:fault.partner.soap.sforce.com";
+  private static final String CONTENT_TYPE = "text/xml;charset=UTF-8";
+  private static final int QUERY_BATCH_SIZE = 2000;
+  private static final TypeMapper TYPE_MAPPER = new TypeMapper();
+
+  private final FakeSalesforceServer server;
+  private final Map<String, QueryCursor> cursors = new ConcurrentHashMap<>();
+  private final AtomicInteger cursorIds = new AtomicInteger();
+
+  FakeSoapApi(FakeSalesforceServer server) {
+    this.server = server;
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    server.recordApiRequest();
+    Document envelope = parse(exchange);
+    Element body = getChild(envelope.getDocumentElement(), "Body");
+    Element header = getChild(envelope.getDocumentElement(), "Header");
+    Element sessionHeader = header == null ? null : getChild(header, "SessionHeader");
+    String sessionId = sessionHeader == null ? null : getChildText(sessionHeader, "sessionId");
+    if (!server.isValidSession(sessionId)) {
+      sendFault(exchange, ExceptionCode.INVALID_SESSION_ID, "Invalid Session ID found in SessionHeader: "
+        + "Illegal Session. Session not found, missing session hash");
+      return;
+    }
+
+    Element request = getFirstChild(body);
+    String operation = request.getLocalName();
+    switch (operation) {
+      case "describeGlobal":
+        DescribeGlobalResponse_element describeGlobal = new DescribeGlobalResponse_element();
+        describeGlobal.setResult(describeGlobal());
+        send(exchange, operation, describeGlobal);
+        break;
+      case "describeSObject":
+      case "describeSObjects":
+        List<DescribeSObjectResult> results = new ArrayList<>();
+        for (String name : getChildrenText(request, "sObjectType")) {
+          FakeSObject sObject = server.getSObject(name);
+          if (sObject == null) {
+            sendInvalidType(exchange, name);
+            return;
+          }
+          results.add(describeSObject(sObject));
+        }
+        if ("describeSObject".equals(operation)) {
+          DescribeSObjectResponse_element describeSObject = new DescribeSObjectResponse_element();
+          describeSObject.setResult(results.get(0));
+          send(exchange, operation, describeSObject);
+        } else {
+          DescribeSObjectsResponse_element describeSObjects = new DescribeSObjectsResponse_element();
+          describeSObjects.setResult(results.toArray(new DescribeSObjectResult[0]));
+          send(exchange, operation, describeSObjects);
+        }
+        break;
+      case "retrieve":
+        retrieve(exchange, request);
+        break;
+      case "query":
+        query(exchange, request);
+        break;
+      case "queryMore":
+        queryMore(exchange, request);
+        break;
+      case "create":
+        create(exchange, request);
+        break;
+      case "delete":
+        delete(exchange, request);
+        break;
+      default:
+        sendFault(exchange, ExceptionCode.UNKNOWN_EXCEPTION,
+                  String.format("Operation '%s' is not supported by fake Salesforce", operation));
+    }
+  }
+
+  private void retrieve(HttpExchange exchange, Element request) throws IOException {
+    String sObjectName = getChildText(request, "sObjectType");
+    FakeSObject sObject = server.getSObject(sObjectName);
+    if (sObject == null) {
+      sendInvalidType(exchange, sObjectName);
+      return;
+    }
+    FakeQuery query = FakeQuery.parse(String.format("SELECT %s FROM %s", getChildText(request, "fieldList"),
+                                                    sObjectName));
+    List<SObject> records = new ArrayList<>();
+    for (String id : getChildrenText(request, "ids")) {
+      int index = sObject.indexOf(id);
+      if (index >= 0) {
+        records.add(toSObject(sObject, query, sObject.getRecord(index)));
+      }
+    }
+    RetrieveResponse_element response = new RetrieveResponse_element();
+    response.setResult(records.toArray(new SObject[0]));
+    send(exchange, "retrieve", response);
+  }
+
+  private void query(HttpExchange exchange, Element request) throws IOException {
+    FakeQuery query;
+    try {
+      query = FakeQuery.parse(getChildText(request, "queryString"));
+    } catch (IllegalArgumentException e) {
+      sendFault(exchange, ExceptionCode.MALFORMED_QUERY, e.getMessage());
+      return;
+    }
+    FakeSObject sObject = server.getSObject(query.getSObjectName());
+    if (sObject == null) {
+      sendInvalidType(exchange, query.getSObjectName());
+      return;
+    }
+    QueryCursor cursor = new QueryCursor(String.format("01g%015d", cursorIds.incrementAndGet()),
+                                         query, sObject, query.execute(sObject));
+    QueryResponse_element response = new QueryResponse_element();
+    response.setResult(nextPage(cursor));
+    send(exchange, "query", response);
+  }
+
+  private void queryMore(HttpExchange exchange, Element request) throws IOException {
+    String locator = getChildText(request, "queryLocator");
+    QueryCursor cursor = locator == null ? null : cursors.get(locator);
+    if (cursor == null) {
+      sendFault(exchange, ExceptionCode.INVALID_QUERY_LOCATOR, "invalid query locator");
+      return;
+    }
+    QueryMoreResponse_element response = new QueryMoreResponse_element();
+    response.setResult(nextPage(cursor));
+    send(exchange, "queryMore", response);
+  }
+
+  private QueryResult nextPage(QueryCursor cursor) {
+    int to = Math.min(cursor.indexes.length, cursor.offset + QUERY_BATCH_SIZE);
+    SObject[] records = new SObject[to - cursor.offset];
+    for (int i = cursor.offset; i < to; i++) {
+      Map<String, String> record = cursor.sObject.getRecord(cursor.indexes[i]);
+      records[i - cursor.offset] = toSObject(cursor.sObject, cursor.query, record);
+    }
+    cursor.offset = to;
+
+    QueryResult result = new QueryResult();
+    result.setRecords(records);
+    result.setSize(cursor.indexes.length);
+    result.setDone(to == cursor.indexes.length);
+    if (to == cursor.indexes.length) {
+      cursors.remove(cursor.id);
+    } else {
+      cursors.put(cursor.id, cursor);
+      result.setQueryLocator(cursor.id);
+    }
+    return result;
+  }
+
+  private void create(HttpExchange exchange, Element request) throws IOException {
+    List<SaveResult> results = new ArrayList<>();
+    for (Element element : getChildren(request, "sObjects")) {
+      String sObjectName = getChildText(element, "type");
+      FakeSObject sObject = server.getSObject(sObjectName);
+      if (sObject == null) {
+        sendInvalidType(exchange, sObjectName);
+        return;
+      }
+      Map<String, String> record = new LinkedHashMap<>();
+      for (Element field : getChildren(element, null)) {
+        String name = field.getLocalName();
+        if (!"type".equals(name) && !"fieldsToNull".equals(name)) {
+          record.put(name, field.getTextContent());
+        }
+      }
+      SaveResult result = new SaveResult();
+      result.setId(sObject.create(record));
+      result.setSuccess(true);
+      results.add(result);
+      server.onCreated(sObject.getName(), sObject.getRecord(sObject.indexOf(result.getId())));
+    }
+    CreateResponse_element response = new CreateResponse_element();
+    response.setResult(results.toArray(new SaveResult[0]));
+    send(exchange, "create", response);
+  }
+
+  private void delete(HttpExchange exchange, Element request) throws IOException {
+    List<DeleteResult> results = new ArrayList<>();
+    for (String id : getChildrenText(request, "ids")) {
+      DeleteResult result = new DeleteResult();
+      result.setId(id);
+      result.setSuccess(server.getSObjects().stream()
+                          .filter(sObject -> id.startsWith(sObject.getKeyPrefix()))
+                          .anyMatch(sObject -> sObject.delete(id)));
+      results.add(result);
+    }
+    DeleteResponse_element response = new DeleteResponse_element();
+    response.setResult(results.toArray(new DeleteResult[0]));
+    send(exchange, "delete", response);
+  }
+
+  private static SObject toSObject(FakeSObject sObject, FakeQuery query, Map<String, String> record) {
+    SObject result = new SObject();
+    result.setType(sObject.getName());
+    result.setId(record.get(FakeSObject.ID_FIELD));
+    List<String> values = query.project(record);
+    for (int i = 0; i < values.size(); i++) {
+      result.setField(query.getFields().get(i), values.get(i));
+    }
+    return result;
+  }
+
+  private DescribeGlobalResult describeGlobal() {
+    List<DescribeGlobalSObjectResult> sObjects = new ArrayList<>();
+    for (FakeSObject sObject : server.getSObjects()) {
+      DescribeGlobalSObjectResult result = withDefaults(new DescribeGlobalSObjectResult());
+      result.setName(sObject.getName());
+      result.setLabel(sObject.getName());
+      result.setLabelPlural(sObject.getName());
+      result.setKeyPrefix(sObject.getKeyPrefix());
+      result.setCustom(sObject.isCustom());
+      result.setQueryable(true);
+      result.setRetrieveable(true);
+      result.setCreateable(true);
+      result.setDeletable(true);
+      result.setReplicateable(true);
+      sObjects.add(result);
+    }
+    DescribeGlobalResult result = new DescribeGlobalResult();
+    result.setEncoding("UTF-8");
+    result.setMaxBatchSize(200);
+    result.setSobjects(sObjects.toArray(new DescribeGlobalSObjectResult[0]));
+    return result;
+  }
+
+  private static DescribeSObjectResult describeSObject(FakeSObject sObject) {
+    List<Field> fields = new ArrayList<>();
+    sObject.getFields().forEach((name, type) -> {
+      Field field = withDefaults(new Field());
+      field.setName(name);
+      field.setLabel(name);
+      field.setType(type);
+      field.setSoapType(getSoapType(type));
+      field.setNillable(!FakeSObject.ID_FIELD.equals(name));
+      field.setCreateable(!FakeSObject.ID_FIELD.equals(name));
+      field.setUpdateable(!FakeSObject.ID_FIELD.equals(name));
+      field.setFilterable(true);
+      field.setSortable(true);
+      field.setIdLookup(FakeSObject.ID_FIELD.equals(name));
+      field.setLength(getSoapType(type) == SoapType.xsd_string ? 255 : 0);
+      fields.add(field);
+    });
+
+    DescribeSObjectResult result = withDefaults(new DescribeSObjectResult());
+    result.setName(sObject.getName());
+    result.setLabel(sObject.getName());
+    result.setLabelPlural(sObject.getName());
+    result.setKeyPrefix(sObject.getKeyPrefix());
+    result.setCustom(sObject.isCustom());
+    result.setQueryable(true);
+    result.setRetrieveable(true);
+    result.setCreateable(true);
+    result.setDeletable(true);
+    result.setReplicateable(true);
+    result.setFields(fields.toArray(new Field[0]));
+    return result;
+  }
+
+  private static SoapType getSoapType(FieldType type) {
+    switch (type) {
+      case id:
+      case reference:
+        return SoapType.ID;
+      case _boolean:
+        return SoapType.xsd_boolean;
+      case _int:
+        return SoapType.xsd_int;
+      case _double:
+      case currency:
+      case percent:
+        return SoapType.xsd_double;
+      case date:
+        return SoapType.xsd_date;
+      case datetime:
+        return SoapType.xsd_dateTime;
+      case time:
+        return SoapType.xsd_time;
+      default:
+        return SoapType.xsd_string;
+    }
+  }
+
+  /**
+   * Sets all boolean and int properties of the describe result, since SOAP client requires them to be present.
+   */
+  private static <T> T withDefaults(T bean) {
+    for (Method method : bean.getClass().getMethods()) {
+      if (!method.getName().startsWith("set") || method.getParameterCount() != 1) {
+        continue;
+      }
+      Class<?> type = method.getParameterTypes()[0];
+      try {
+        if (type == boolean.class) {
+          method.invoke(bean, false);
+        } else if (type == int.class) {
+          method.invoke(bean, 0);
+        }
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        throw new IllegalStateException("Failed to initialize " + bean.getClass().getSimpleName(), e);
+      }
+    }
+    return bean;
+  }
+
+  private void sendInvalidType(HttpExchange exchange, String sObjectName) throws IOException {
+    sendFault(exchange, ExceptionCode.INVALID_TYPE, String.format("sObject type '%s' is not supported.",
+                                                                  sObjectName));
+  }
+
+  private void send(HttpExchange exchange, String operation, XMLizable response) throws IOException {
+    server.respond(exchange, 200, CONTENT_TYPE, out -> writeEnvelope(out, SOBJECT_NS, xml ->
+      response.write(new QName(PARTNER_NS, operation + "Response"), xml, TYPE_MAPPER)));
+  }
+
+  private void sendFault(HttpExchange exchange, ExceptionCode code, String message) throws IOException {
+    UnexpectedErrorFault fault = new UnexpectedErrorFault();
+    fault.setExceptionCode(code);
+    fault.setExceptionMessage(message);
+    server.respond(exchange, 500, CONTENT_TYPE, out -> writeEnvelope(out, FAULT_NS, xml -> {
+      xml.writeStartTag(SOAP_ENV_NS, "Fault");
+      writeElement(xml, "faultcode", "sf:" + code.name());
+      writeElement(xml, "faultstring", code.name() + ": " + message);
+      xml.writeStartTag("", "detail");
+      fault.write(new QName(FAULT_NS, "UnexpectedErrorFault"), xml, TYPE_MAPPER);
+      xml.writeEndTag("", "detail");
+      xml.writeEndTag(SOAP_ENV_NS, "Fault");
+    }));
+  }
+
+  private static void writeElement(XmlOutputStream xml, String name, String text) throws IOException {
+    xml.writeStartTag("", name);
+    xml.writeText(text);
+    xml.writeEndTag("", name);
+  }
+
+  /**
+   * Writes SOAP envelope, prefix {@code sf} is bound to given namespace like Salesforce does.
+   */
+  private static void writeEnvelope(OutputStream out, String sfNamespace, BodyWriter body) throws IOException {
+    XmlOutputStream xml = new XmlOutputStream(out, false);
+    xml.startDocument();
+    xml.setPrefix("soapenv", SOAP_ENV_NS);
+    xml.setPrefix("xsd", SCHEMA_NS);
+    xml.setPrefix("xsi", SCHEMA_INSTANCE_NS);
+    xml.setPrefix("", PARTNER_NS);
+    xml.setPrefix("sf", sfNamespace);
+    xml.writeStartTag(SOAP_ENV_NS, "Envelope");
+    xml.writeStartTag(SOAP_ENV_NS, "Body");
+    body.write(xml);
+    xml.writeEndTag(SOAP_ENV_NS, "Body");
+    xml.writeEndTag(SOAP_ENV_NS, "Envelope");
+    xml.endDocument();
+    xml.close();
+  }
+
+  private static Document parse(HttpExchange exchange) throws IOException {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    try {
+      return factory.newDocumentBuilder().parse(FakeSalesforceServer.getRequestBody(exchange));
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Failed to parse SOAP request", e);
+    }
+  }
+
+  /**
+   * Returns child elements with given local name, or all child elements if name is {@code null}.
+   */
+  private static List<Element> getChildren(Element parent, String localName) {
+    List<Element> children = new ArrayList<>();
+    NodeList nodes = parent.getChildNodes();
+    for (int i = 0; i < nodes.getLength(); i++) {
+      Node node = nodes.item(i);
+      if (node.getNodeType() == Node.ELEMENT_NODE && (localName == null || localName.equals(node.getLocalName()))) {
+        children.add((Element) node);
+      }
+    }
+    return children;
+  }
+
+  private static Element getChild(Element parent, String localName) {
+    List<Element> children = getChildren(parent, localName);
+    return children.isEmpty() ? null : children.get(0);
+  }
+
+  private static Element getFirstChild(Element parent) {
+    return getChild(parent, null);
+  }
+
+  private static String getChildText(Element parent, String localName) {
+    Element child = getChild(parent, localName);
+    return child == null ? null : child.getTextContent();
+  }
+
+  private static List<String> getChildrenText(Element parent, String localName) {
+    List<String> texts = new ArrayList<>();
+    getChildren(parent, localName).forEach(child -> texts.add(child.getTextContent()));
+    return texts;
+  }
+
+  /**
+   * Writes SOAP body content.
+   */
+  @FunctionalInterface
+  private interface BodyWriter {
+    void write(XmlOutputStream xml) throws IOException;
+  }
+
+  /**
+   * Position of a query which results are fetched with queryMore calls.
+   */
+  private static final class QueryCursor {
+    private final String id;
+    private final FakeQuery query;
+    private final FakeSObject sObject;
+    private final int[] indexes;
+    private int offset;
+
+    private QueryCursor(String id, FakeQuery query, FakeSObject sObject, int[] indexes) {
+      this.id = id;
+      this.query = query;
+      this.sObject = sObject;
+      this.indexes = indexes;
+    }
+  }
+}
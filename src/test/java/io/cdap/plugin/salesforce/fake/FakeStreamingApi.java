@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.fake;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming API of {@link FakeSalesforceServer}. Implements Bayeux protocol long polling transport,
+ * which is used by CometD client to subscribe to PushTopic channels.
+ */
+class FakeStreamingApi implements HttpHandler {
+
+  private static final Gson GSON = new Gson();
+  private static final Type MESSAGES_TYPE = new TypeToken<List<Map<String, Object>>>() { }.getType();
+  private static final Type MESSAGE_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+  /**
+   * Time a connect request is held when there are no events, Salesforce holds it for 110 seconds.
+   */
+  private static final long POLL_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+  private static final String TOPIC_PREFIX = "/topic/";
+
+  private final FakeSalesforceServer server;
+  private final Map<String, Client> clients = new ConcurrentHashMap<>();
+  private final AtomicLong replayIds = new AtomicLong();
+
+  FakeStreamingApi(FakeSalesforceServer server) {
+    this.server = server;
+  }
+
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+    if (authorization == null || !server.isValidSession(authorization.replaceFirst("^(OAuth|Bearer) ", ""))) {
+      server.respond(exchange, 401, "text/plain", out -> out.write("401::Authentication invalid"
+                                                                     .getBytes(StandardCharsets.UTF_8)));
+      return;
+    }
+
+    String body = FakeSalesforceServer.readRequestBody(exchange);
+    JsonElement json = GSON.fromJson(body, JsonElement.class);
+    List<Map<String, Object>> messages = json.isJsonArray()
+      ? GSON.fromJson(json, MESSAGES_TYPE) : Collections.singletonList(GSON.fromJson(json, MESSAGE_TYPE));
+
+    List<Map<String, Object>> replies = new ArrayList<>();
+    for (Map<String, Object> message : messages) {
+      handle(message, replies);
+    }
+    server.respondJson(exchange, 200, replies);
+  }
+
+  /**
+   * Delivers PushTopic event to subscribed clients.
+   *
+   * @param topic PushTopic name
+   * @param type event type, for example {@code created}
+   * @param sObject fields of the record selected by the PushTopic query
+   */
+  void publish(String topic, String type, Map<String, Object> sObject) {
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("type", type);
+    event.put("createdDate", Instant.now().toString());
+    event.put("replayId", replayIds.incrementAndGet());
+
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put("event", event);
+    data.put("sobject", sObject);
+
+    Map<String, Object> message = new LinkedHashMap<>();
+    message.put("channel", TOPIC_PREFIX + topic);
+    message.put("data", data);
+    clients.values().stream()
+      .filter(client -> client.subscriptions.contains(TOPIC_PREFIX + topic))
+      .forEach(client -> client.events.add(message));
+  }
+
+  void close() {
+    clients.clear();
+  }
+
+  private void handle(Map<String, Object> message, List<Map<String, Object>> replies) {
+    String channel = (String) message.get("channel");
+    Map<String, Object> reply = new LinkedHashMap<>();
+    reply.put("channel", channel);
+    if (message.containsKey("id")) {
+      reply.put("id", message.get("id"));
+    }
+
+    if ("/meta/handshake".equals(channel)) {
+      String clientId = UUID.randomUUID().toString();
+      clients.put(clientId, new Client());
+      reply.put("clientId", clientId);
+      reply.put("version", "1.0");
+      reply.put("minimumVersion", "1.0");
+      reply.put("supportedConnectionTypes", Collections.singletonList("long-polling"));
+      reply.put("advice", getAdvice("retry"));
+      reply.put("successful", true);
+      replies.add(reply);
+      return;
+    }
+
+    String clientId = (String) message.get("clientId");
+    Client client = clientId == null ? null : clients.get(clientId);
+    reply.put("clientId", clientId);
+    if (client == null) {
+      reply.put("successful", false);
+      reply.put("error", "403::Unknown client");
+      reply.put("advice", getAdvice("handshake"));
+      replies.add(reply);
+      return;
+    }
+
+    switch (channel) {
+      case "/meta/connect":
+        replies.addAll(client.poll());
+        reply.put("advice", getAdvice("retry"));
+        reply.put("successful", true);
+        break;
+      case "/meta/subscribe":
+        client.subscriptions.add((String) message.get("subscription"));
+        reply.put("subscription", message.get("subscription"));
+        reply.put("successful", true);
+        break;
+      case "/meta/unsubscribe":
+        client.subscriptions.remove((String) message.get("subscription"));
+        reply.put("subscription", message.get("subscription"));
+        reply.put("successful", true);
+        break;
+      case "/meta/disconnect":
+        clients.remove(clientId);
+        reply.put("successful", true);
+        break;
+      default:
+        reply.put("successful", false);
+        reply.put("error", "403::Publish denied");
+    }
+    replies.add(reply);
+  }
+
+  private static Map<String, Object> getAdvice(String reconnect) {
+    Map<String, Object> advice = new LinkedHashMap<>();
+    advice.put("reconnect", reconnect);
+    advice.put("interval", 0);
+    advice.put("timeout", POLL_TIMEOUT_MS);
+    return advice;
+  }
+
+  /**
+   * Bayeux client with its subscriptions and undelivered events.
+   */
+  private static final class Client {
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Map<String, Object>> events = new LinkedBlockingQueue<>();
+
+    /**
+     * Waits for events up to poll timeout.
+     *
+     * @return undelivered events
+     */
+    private List<Map<String, Object>> poll() {
+      List<Map<String, Object>> delivered = new ArrayList<>();
+      try {
+        Map<String, Object> event = events.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (event != null) {
+          delivered.add(event);
+          events.drainTo(delivered);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return delivered;
+    }
+  }
+}
@@ -135,4 +135,37 @@ public class SalesforceQueryParserTest {
     Assert.assertEquals(fromStatement, result);
   }
 
+  @Test
+  public void testFilterStatement() {
+    Assert.assertEquals("FROM Account WHERE Industry = 'media'", SalesforceQueryParser.getFilterStatement(
+      "SELECT Name FROM Account WHERE Industry = 'media' ORDER BY BillingPostalCode ASC NULLS LAST LIMIT 125"));
+    Assert.assertEquals("FROM Account USING SCOPE Mine",
+                        SalesforceQueryParser.getFilterStatement("SELECT Name FROM Account USING SCOPE Mine LIMIT 5"));
+  }
+
+  @Test
+  public void testAddCondition() {
+    String condition = "Id >= '0060000000AbcDE'";
+
+    Assert.assertEquals("SELECT Id, Name FROM Opportunity WHERE Id >= '0060000000AbcDE'",
+                        SalesforceQueryParser.addCondition("SELECT Id, Name FROM Opportunity", condition));
+    Assert.assertEquals("SELECT Id FROM Account USING SCOPE Mine WHERE Id >= '0060000000AbcDE' ORDER BY Name",
+                        SalesforceQueryParser.addCondition("SELECT Id FROM Account USING SCOPE Mine ORDER BY Name",
+                                                           condition));
+    Assert.assertEquals("SELECT Id FROM Contact WHERE (Name LIKE 'A%' OR MailingCity = 'California') "
+                          + "AND (Id >= '0060000000AbcDE') ORDER BY Name",
+                        SalesforceQueryParser.addCondition("SELECT Id FROM Contact WHERE Name LIKE 'A%' "
+                                                             + "OR MailingCity = 'California' ORDER BY Name",
+                                                           condition));
+  }
+
+  @Test
+  public void testIsRangeSplittable() {
+    Assert.assertTrue(SalesforceQueryParser.isRangeSplittable(
+      "SELECT Name FROM Account WHERE Industry = 'media' ORDER BY Name"));
+    Assert.assertFalse(SalesforceQueryParser.isRangeSplittable(
+      "SELECT Name FROM Account WHERE Industry = 'media' LIMIT 125"));
+    Assert.assertFalse(SalesforceQueryParser.isRangeSplittable("SELECT Name, Id FROM Merchandise__c OFFSET 100"));
+  }
+
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link BulkCsvParser}.
+ */
+public class BulkCsvParserTest {
+
+  private static final String CSV = "\"Id\",\"Name\",\"Description\"\r\n"
+    + "\"001\",\"Name \"\"quoted\"\", with comma\",\"Line 1\nLine 2\"\r\n"
+    + "\"002\",\"Zürich 日本 😀\",\"\"\n"
+    + "\n"
+    + "003,unquoted,\n"
+    + "\"004\"\n";
+
+  @Test
+  public void testParse() throws IOException {
+    try (BulkCsvParser parser = new BulkCsvParser(toStream(CSV), column -> true)) {
+      Assert.assertEquals(Arrays.asList("Id", "Name", "Description"), parser.getHeader());
+      assertNext(parser, "001", "Name \"quoted\", with comma", "Line 1\nLine 2");
+      assertNext(parser, "002", "Zürich 日本 😀", "");
+      assertNext(parser, "003", "unquoted", "");
+      // values missing in a short record are null
+      assertNext(parser, "004", null, null);
+      Assert.assertFalse(parser.next());
+    }
+  }
+
+  @Test
+  public void testParseByteByByte() throws IOException {
+    // values and multi-byte characters span buffer refills
+    InputStream in = new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)) {
+      @Override
+      public synchronized int read(byte[] bytes, int off, int len) {
+        return super.read(bytes, off, Math.min(1, len));
+      }
+    };
+    try (BulkCsvParser parser = new BulkCsvParser(in, column -> true)) {
+      assertNext(parser, "001", "Name \"quoted\", with comma", "Line 1\nLine 2");
+      assertNext(parser, "002", "Zürich 日本 😀", "");
+    }
+  }
+
+  @Test
+  public void testProjection() throws IOException {
+    try (BulkCsvParser parser = new BulkCsvParser(toStream(CSV), column -> !"Name".equals(column))) {
+      Assert.assertTrue(parser.isProjected(0));
+      Assert.assertFalse(parser.isProjected(1));
+      Assert.assertEquals(2, parser.getColumn("Description"));
+      assertNext(parser, "001", null, "Line 1\nLine 2");
+      assertNext(parser, "002", null, "");
+    }
+  }
+
+  @Test
+  public void testMalformedUtf8() throws IOException {
+    byte[] csv = {'"', 'a', '"', '\n', '"', (byte) 0xC3, '"', '\n'};
+    try (BulkCsvParser parser = new BulkCsvParser(new ByteArrayInputStream(csv), column -> true)) {
+      assertNext(parser, "\uFFFD");
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    try (BulkCsvParser parser = new BulkCsvParser(toStream(""), column -> true)) {
+      Assert.assertTrue(parser.getHeader().isEmpty());
+      Assert.assertFalse(parser.next());
+    }
+  }
+
+  @Test
+  public void testUnterminatedQuote() throws IOException {
+    try (BulkCsvParser parser = new BulkCsvParser(toStream("\"Id\"\n\"001"), column -> true)) {
+      parser.next();
+      Assert.fail("IOException is expected");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("EOF reached before encapsulated token finished"));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateHeader() throws IOException {
+    new BulkCsvParser(toStream("\"Id\",\"Id\"\n"), column -> true);
+  }
+
+  private static void assertNext(BulkCsvParser parser, String... values) throws IOException {
+    Assert.assertTrue(parser.next());
+    Assert.assertArrayEquals(values, parser.getRow());
+  }
+
+  private static InputStream toStream(String csv) {
+    return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import io.cdap.plugin.salesforce.plugin.source.batch.util.SalesforceSourceConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RetrieveBatchSizer}.
+ */
+public class RetrieveBatchSizerTest {
+
+  private static final long TARGET_BYTES = 8 * 1024 * 1024;
+
+  @Test
+  public void testInitialBatchSize() {
+    Assert.assertEquals(52, new RetrieveBatchSizer(2500, TARGET_BYTES).getBatchSize());
+    Assert.assertEquals(SalesforceSourceConstants.WIDE_QUERY_MAX_BATCH_COUNT,
+                        new RetrieveBatchSizer(10, TARGET_BYTES).getBatchSize());
+    Assert.assertEquals(1, new RetrieveBatchSizer(100_000, 1024).getBatchSize());
+  }
+
+  @Test
+  public void testGrowsOnSmallResponses() {
+    RetrieveBatchSizer sizer = new RetrieveBatchSizer(2500, TARGET_BYTES);
+    // records are smaller than estimated, but size grows at most twice per response
+    sizer.onResponse(52, 52 * 10_000, 100);
+    Assert.assertEquals(104, sizer.getBatchSize());
+    for (int i = 0; i < 10; i++) {
+      sizer.onResponse(sizer.getBatchSize(), sizer.getBatchSize() * 10_000L, 100);
+    }
+    Assert.assertEquals(TARGET_BYTES / 10_000, sizer.getBatchSize());
+  }
+
+  @Test
+  public void testShrinksOnOversizedResponse() {
+    RetrieveBatchSizer sizer = new RetrieveBatchSizer(10, TARGET_BYTES);
+    sizer.onResponse(2000, 2000 * 100_000L, 100);
+    Assert.assertEquals(TARGET_BYTES / 100_000, sizer.getBatchSize());
+  }
+
+  @Test
+  public void testShrinksOnSlowResponse() {
+    RetrieveBatchSizer sizer = new RetrieveBatchSizer(10, TARGET_BYTES);
+    sizer.onResponse(2000, 2000 * 100, RetrieveBatchSizer.TARGET_LATENCY_MS * 2);
+    Assert.assertEquals(1000, sizer.getBatchSize());
+  }
+
+  @Test
+  public void testShrinksOnTimeout() {
+    RetrieveBatchSizer sizer = new RetrieveBatchSizer(10, TARGET_BYTES);
+    Assert.assertEquals(1000, sizer.onTimeout(2000));
+    Assert.assertEquals(1000, sizer.getBatchSize());
+    Assert.assertEquals(1, sizer.onTimeout(1));
+    Assert.assertEquals(1, sizer.getBatchSize());
+  }
+}
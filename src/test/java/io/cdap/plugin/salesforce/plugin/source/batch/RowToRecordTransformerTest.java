@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+public class RowToRecordTransformerTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "output",
+    Schema.Field.of("Id", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("Name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("Amount", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+    Schema.Field.of("IsClosed", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+    Schema.Field.of("CloseDate", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+    Schema.Field.of("LastModifiedDate", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS))),
+    Schema.Field.of("Campaign.Id", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("Campaign.Name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  private final RowToRecordTransformer transformer = new RowToRecordTransformer();
+
+  @Test
+  public void testTransform() {
+    SalesforceRow.Header header = new SalesforceRow.Header(
+      Arrays.asList("Name", "ID", "Campaign.Name", "Campaign.Id", "Other"));
+    StructuredRecord record = transformer.transform(SCHEMA, new SalesforceRow(
+      header, new String[] {"testOpportunity-1", "testOpportunityId", "TestCampaign-1", "testCampaignId", "other"}));
+
+    Assert.assertEquals("testOpportunity-1", record.get("Name"));
+    // columns are matched to schema fields case insensitively
+    Assert.assertEquals("testOpportunityId", record.get("Id"));
+    Assert.assertEquals("TestCampaign-1", record.get("Campaign.Name"));
+    Assert.assertEquals("testCampaignId", record.get("Campaign.Id"));
+    Assert.assertNull(record.get("Amount"));
+  }
+
+  @Test
+  public void testTransformTypedValues() {
+    SalesforceRow.Header header = new SalesforceRow.Header(
+      Arrays.asList("Id", "Name", "Amount", "IsClosed", "CloseDate", "LastModifiedDate"));
+    StructuredRecord record = transformer.transform(SCHEMA, new SalesforceRow(
+      header, new String[] {"testOpportunityId", "", "25000", "true", "2019-01-01", "2019-01-01T00:00:00.123Z"}));
+
+    Assert.assertNull(record.get("Name"));
+    Assert.assertEquals(25000.0d, (double) record.get("Amount"), 0.0d);
+    Assert.assertEquals(Boolean.TRUE, record.get("IsClosed"));
+    Assert.assertEquals(LocalDate.of(2019, 1, 1), record.getDate("CloseDate"));
+    Assert.assertEquals(1546300800123000L, (long) record.get("LastModifiedDate"));
+  }
+
+  @Test
+  public void testTransformReusedRow() {
+    SalesforceRow.Header header = new SalesforceRow.Header(Arrays.asList("Id", "Name"));
+    String[] values = {"testOpportunityId-1", "testOpportunity-1"};
+    SalesforceRow row = new SalesforceRow(header, values);
+    StructuredRecord first = transformer.transform(SCHEMA, row);
+    values[0] = "testOpportunityId-2";
+    values[1] = null;
+    StructuredRecord second = transformer.transform(SCHEMA, row);
+
+    Assert.assertEquals("testOpportunityId-1", first.get("Id"));
+    Assert.assertEquals("testOpportunity-1", first.get("Name"));
+    Assert.assertEquals("testOpportunityId-2", second.get("Id"));
+    Assert.assertNull(second.get("Name"));
+  }
+
+  @Test
+  public void testTransformConstantColumn() {
+    Schema schema = Schema.recordOf("output",
+                                    Schema.Field.of("Id", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("SObjectName", Schema.of(Schema.Type.STRING)));
+    SalesforceRow.Header header = new SalesforceRow.Header(Arrays.asList("Id", "SObjectName"))
+      .withConstant("SObjectName", "Opportunity");
+    StructuredRecord record = transformer.transform(schema, new SalesforceRow(
+      header, new String[] {"testOpportunityId", "Other"}));
+
+    Assert.assertEquals("testOpportunityId", record.get("Id"));
+    // constant column replaces a column of the same name
+    Assert.assertEquals("Opportunity", record.get("SObjectName"));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.plugin.source.batch;
+
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchStateEnum;
+import io.cdap.plugin.salesforce.SalesforceApiBudget;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for {@link SalesforceInputFormat}.
+ */
+public class SalesforceInputFormatTest {
+
+  private static final String QUERY = "SELECT Id FROM Account";
+
+  @Test
+  public void testCompletedSplitsAreSortedLargestFirst() {
+    List<SalesforceSplit> splits = new ArrayList<>(Arrays.asList(
+      SalesforceSplit.forBatch(createBatch("b1", BatchStateEnum.Completed, 10), QUERY),
+      SalesforceSplit.forBatch(createBatch("b2", BatchStateEnum.Completed, 30), QUERY),
+      SalesforceSplit.forBatch(createBatch("b3", BatchStateEnum.Completed, 20), QUERY)));
+
+    SalesforceInputFormat.sortLargestFirst(splits);
+
+    Assert.assertEquals(Arrays.asList("b2", "b3", "b1"), getBatchIds(splits));
+  }
+
+  @Test
+  public void testSplitsOfBatchesInProgressAreNotSorted() {
+    List<SalesforceSplit> splits = new ArrayList<>(Arrays.asList(
+      SalesforceSplit.forBatch(createBatch("b1", BatchStateEnum.InProgress, 0), QUERY),
+      SalesforceSplit.forBatch(createBatch("b2", BatchStateEnum.Completed, 30), QUERY),
+      SalesforceSplit.forBatch(createBatch("b3", BatchStateEnum.Queued, 0), QUERY)));
+
+    SalesforceInputFormat.sortLargestFirst(splits);
+
+    Assert.assertEquals(Arrays.asList("b1", "b2", "b3"), getBatchIds(splits));
+  }
+
+  @Test
+  public void testApiCallBudgetIsDistributedEvenly() {
+    List<SalesforceSplit> splits = Arrays.asList(new SalesforceSplit("job", "b1", QUERY),
+                                                 new SalesforceSplit("job", "b2", QUERY),
+                                                 new SalesforceSplit("job", "b3", QUERY));
+
+    SalesforceInputFormat.distributeApiCallBudget(splits, new SalesforceApiBudget(8));
+
+    Assert.assertEquals(3, splits.get(0).getApiCallBudget());
+    Assert.assertEquals(3, splits.get(1).getApiCallBudget());
+    Assert.assertEquals(2, splits.get(2).getApiCallBudget());
+  }
+
+  @Test
+  public void testCachedSplitsGetNoApiCalls() {
+    List<SalesforceSplit> splits = Arrays.asList(SalesforceSplit.forCachedResult("key", 0, QUERY),
+                                                 new SalesforceSplit("job", "b1", QUERY));
+
+    SalesforceInputFormat.distributeApiCallBudget(splits, new SalesforceApiBudget(1));
+
+    Assert.assertEquals(0, splits.get(0).getApiCallBudget());
+    Assert.assertEquals(1, splits.get(1).getApiCallBudget());
+  }
+
+  @Test
+  public void testUnlimitedApiCallBudget() {
+    SalesforceSplit split = new SalesforceSplit("job", "b1", QUERY);
+
+    SalesforceInputFormat.distributeApiCallBudget(Arrays.asList(split),
+                                                  new SalesforceApiBudget(SalesforceApiBudget.UNLIMITED));
+
+    Assert.assertEquals(SalesforceApiBudget.UNLIMITED, split.getApiCallBudget());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testApiCallBudgetSmallerThanSplits() {
+    List<SalesforceSplit> splits = Arrays.asList(new SalesforceSplit("job", "b1", QUERY),
+                                                 new SalesforceSplit("job", "b2", QUERY));
+
+    SalesforceInputFormat.distributeApiCallBudget(splits, new SalesforceApiBudget(1));
+  }
+
+  private static BatchInfo createBatch(String id, BatchStateEnum state, int records) {
+    BatchInfo batch = new BatchInfo();
+    batch.setId(id);
+    batch.setJobId("job");
+    batch.setState(state);
+    batch.setNumberRecordsProcessed(records);
+    return batch;
+  }
+
+  private static List<String> getBatchIds(List<SalesforceSplit> splits) {
+    return splits.stream().map(SalesforceSplit::getBatchId).collect(Collectors.toList());
+  }
+}
@@ -218,7 +218,7 @@ public class SalesforceRecordReaderTest {
 
   private void assertRecordReaderOutputRecords(String csvString, Schema schema,
                                                List<Map<String, Object>> expectedRecords) throws Exception {
-    MapToRecordTransformer transformer = new MapToRecordTransformer();
+    RowToRecordTransformer transformer = new RowToRecordTransformer();
     SalesforceRecordReader reader = new SalesforceRecordReader(schema);
     reader.setupParser(new ByteArrayInputStream(csvString.getBytes(StandardCharsets.UTF_8)));
 
@@ -227,7 +227,7 @@ public class SalesforceRecordReaderTest {
 
     List<StructuredRecord> records = new ArrayList<>();
     while (reader.nextKeyValue()) {
-      Map<String, String> value = reader.getCurrentValue();
+      SalesforceRow value = reader.getCurrentValue();
       StructuredRecord record = transformer.transform(schema, value);
       records.add(record);
     }
@@ -15,78 +15,78 @@
  */
 package io.cdap.plugin.salesforce.plugin.source.batch;
 
-import com.sforce.soap.partner.sobject.SObject;
-import io.cdap.plugin.salesforce.SObjectDescriptor;
-import io.cdap.plugin.salesforce.SalesforceConstants;
-import io.cdap.plugin.salesforce.etl.SObjectBuilder;
+import com.google.common.io.ByteStreams;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.sun.net.httpserver.HttpServer;
+import io.cdap.plugin.salesforce.transport.RetrieveConnection;
+import io.cdap.plugin.salesforce.transport.RetrievedRows;
 import org.junit.Assert;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.ExpectedException;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Tests for {@link SalesforceWideRecordReader}.
+ */
 public class SalesforceWideRecordReaderTest {
 
-  @Rule
-  public ExpectedException thrown = ExpectedException.none();
+  private static final String RESPONSE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+    + "xmlns=\"urn:partner.soap.sforce.com\" xmlns:sf=\"urn:sobject.partner.soap.sforce.com\">"
+    + "<soapenv:Body><retrieveResponse><result><sf:Id>oid-1</sf:Id>";
 
   @Test
-  public void testTransformToMap() {
-    SalesforceWideRecordReader recordReader = new SalesforceWideRecordReader(null, null);
-    SObject campaign = new SObjectBuilder()
-      .setType("Campaign")
-      .put("Id", "testCampaignId")
-      .put("Name", "TestCampaign-1")
-      .build();
-
-    SObject opportunity = new SObjectBuilder()
-      .setType("Opportunity")
-      .put("Id", "testOpportunityId")
-      .put("Name", "testOpportunity-1")
-      .put("Amount", "25000")
-      .put(campaign.getType(), campaign)
-      .build();
-
-    List<SObjectDescriptor.FieldDescriptor> fieldDescriptors =
-      getFieldDescriptors("Name", "Id", "Campaign.Name", "Campaign.Id");
-    Map<String, String> resultMap = recordReader.transformToMap(opportunity, fieldDescriptors);
-
-    Assert.assertNotNull(resultMap);
-    Assert.assertEquals(fieldDescriptors.size(), resultMap.size());
-
-    Assert.assertEquals(opportunity.getField("Name"), resultMap.get("Name"));
-    Assert.assertEquals(opportunity.getField("Id"), resultMap.get("Id"));
-    Assert.assertEquals(campaign.getField("Name"), resultMap.get("Campaign.Name"));
-    Assert.assertEquals(campaign.getField("Id"), resultMap.get("Campaign.Id"));
+  public void testTimeoutWaitingForResponse() {
+    Assert.assertTrue(SalesforceWideRecordReader.isTimeout(
+      new ConnectionException("Failed to send request", new SocketTimeoutException("Timed out"))));
+    Assert.assertFalse(SalesforceWideRecordReader.isTimeout(
+      new ConnectionException("Failed to send request", new IOException("Connection reset"))));
   }
 
   @Test
-  public void testTransformToMapIncorrectReferenceField() {
-    SalesforceWideRecordReader recordReader = new SalesforceWideRecordReader(null, null);
-    SObject opportunity = new SObjectBuilder()
-      .setType("Opportunity")
-      .put("Id", "testOpportunityId")
-      .put("Name", "testOpportunity-1")
-      .put("Amount", "25000")
-      .build();
-
-    List<SObjectDescriptor.FieldDescriptor> fieldDescriptors =
-      getFieldDescriptors("Name", "Id", "Campaign.Name", "Campaign.Id");
-    thrown.expect(IllegalStateException.class);
-
-    recordReader.transformToMap(opportunity, fieldDescriptors);
-  }
+  public void testTimeoutReadingResponse() throws Exception {
+    CountDownLatch stalled = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/services/Soap/u/45.0", exchange -> {
+      ByteStreams.exhaust(exchange.getRequestBody());
+      byte[] start = RESPONSE_START.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+      // promise a longer response, send its start and stop sending
+      exchange.sendResponseHeaders(200, start.length * 2);
+      OutputStream out = exchange.getResponseBody();
+      out.write(start);
+      out.flush();
+      try {
+        stalled.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.close();
+    });
+    server.start();
 
-  private List<SObjectDescriptor.FieldDescriptor> getFieldDescriptors(String... fields) {
-    return Stream.of(fields)
-      .map(name -> name.split("\\" + SalesforceConstants.REFERENCE_NAME_DELIMITER))
-      .map(Arrays::asList)
-      .map(SObjectDescriptor.FieldDescriptor::new)
-      .collect(Collectors.toList());
+    try {
+      ConnectorConfig config = new ConnectorConfig();
+      config.setSessionId("session-id");
+      config.setReadTimeout(200);
+      config.setServiceEndpoint(String.format("http://localhost:%d/services/Soap/u/45.0",
+                                              server.getAddress().getPort()));
+      new RetrieveConnection(config).retrieve("Id", "Opportunity", new String[] {"oid-1", "oid-2"},
+                                              new RetrievedRows(Collections.singletonList("Id")));
+      Assert.fail("Retrieve must time out while reading the response");
+    } catch (ConnectionException e) {
+      Assert.assertTrue(SalesforceWideRecordReader.isTimeout(e));
+    } finally {
+      stalled.countDown();
+      server.stop(0);
+    }
   }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.common.io.ByteStreams;
+import com.sforce.async.AsyncApiException;
+import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchStateEnum;
+import com.sforce.async.JobStateEnum;
+import com.sforce.ws.ConnectorConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tests for {@link PooledBulkConnection}.
+ */
+public class PooledBulkConnectionTest {
+
+  private static final String NAMESPACE = "http://www.force.com/2009/06/asyncapi/dataload";
+  private static final String JOB_ID = "750D00000004SkVIAU";
+  private static final String BATCH_ID = "751D00000004YGZIA2";
+  private static final String JOB_INFO = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<jobInfo xmlns=\"" + NAMESPACE + "\"><id>" + JOB_ID + "</id><state>Open</state></jobInfo>";
+  private static final String BATCH_INFO_LIST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<batchInfoList xmlns=\"" + NAMESPACE + "\"><batchInfo><id>" + BATCH_ID + "</id><jobId>" + JOB_ID
+    + "</jobId><state>Completed</state></batchInfo></batchInfoList>";
+
+  /**
+   * User agents of received requests
+   */
+  private static final List<String> USER_AGENTS = new CopyOnWriteArrayList<>();
+
+  private static HttpServer server;
+  private static String url;
+
+  @BeforeClass
+  public static void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/services/async/45.0/job/" + JOB_ID, exchange -> {
+      USER_AGENTS.add(exchange.getRequestHeaders().getFirst("User-Agent"));
+      respond(exchange, exchange.getRequestURI().getPath().endsWith("/batch") ? BATCH_INFO_LIST : JOB_INFO);
+    });
+    server.start();
+    url = String.format("http://localhost:%d", server.getAddress().getPort());
+  }
+
+  @AfterClass
+  public static void stopServer() {
+    server.stop(0);
+  }
+
+  @Before
+  public void clearRequests() {
+    USER_AGENTS.clear();
+  }
+
+  @Test
+  public void testBatchInfoListIsPolledThroughPooledClient() throws AsyncApiException {
+    BatchInfo[] batches = createConnection().getBatchInfoList(JOB_ID).getBatchInfo();
+
+    Assert.assertEquals(1, batches.length);
+    Assert.assertEquals(BATCH_ID, batches[0].getId());
+    Assert.assertEquals(BatchStateEnum.Completed, batches[0].getState());
+    assertSentThroughPooledClient();
+  }
+
+  @Test
+  public void testJobStatusIsPolledThroughPooledClient() throws AsyncApiException {
+    Assert.assertEquals(JobStateEnum.Open, createConnection().getJobStatus(JOB_ID).getState());
+    assertSentThroughPooledClient();
+  }
+
+  /**
+   * Default WSC connection sends GET requests with JDK user agent, while pooled client identifies as Jetty.
+   */
+  private static void assertSentThroughPooledClient() {
+    Assert.assertEquals(1, USER_AGENTS.size());
+    Assert.assertTrue(USER_AGENTS.get(0), USER_AGENTS.get(0).startsWith("Jetty"));
+  }
+
+  private static PooledBulkConnection createConnection() throws AsyncApiException {
+    ConnectorConfig config = new ConnectorConfig();
+    config.setSessionId("session-id");
+    config.setRestEndpoint(url + "/services/async/45.0");
+    return new PooledBulkConnection(config);
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    ByteStreams.exhaust(exchange.getRequestBody());
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/xml");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.common.io.ByteStreams;
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.transport.Transport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tests for {@link PooledHttpTransport}.
+ */
+public class PooledHttpTransportTest {
+
+  private static final Set<Integer> CLIENT_PORTS = ConcurrentHashMap.newKeySet();
+
+  private static HttpServer server;
+  private static String url;
+
+  @BeforeClass
+  public static void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/echo", exchange -> respond(exchange, 200));
+    server.createContext("/fault", exchange -> respond(exchange, 500));
+    server.start();
+    url = String.format("http://localhost:%d", server.getAddress().getPort());
+  }
+
+  @AfterClass
+  public static void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testCompressedRoundTrip() throws IOException {
+    Assert.assertEquals("request body", send(url + "/echo", "request body", true));
+  }
+
+  @Test
+  public void testUncompressedRoundTrip() throws IOException {
+    Assert.assertEquals("request body", send(url + "/echo", "request body", false));
+  }
+
+  @Test
+  public void testConnectionIsReused() throws IOException {
+    CLIENT_PORTS.clear();
+    for (int i = 0; i < 20; i++) {
+      send(url + "/echo", "call " + i, true);
+    }
+    Assert.assertEquals(1, CLIENT_PORTS.size());
+  }
+
+  @Test
+  public void testUnsuccessfulResponse() throws IOException {
+    Transport transport = createTransport(true);
+    try (OutputStream out = transport.connect(url + "/fault", "")) {
+      out.write("fault".getBytes(StandardCharsets.UTF_8));
+    }
+    try (InputStream in = transport.getContent()) {
+      Assert.assertEquals("fault", new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+    }
+    Assert.assertFalse(transport.isSuccessful());
+  }
+
+  private static String send(String endpoint, String body, boolean compression) throws IOException {
+    Transport transport = createTransport(compression);
+    try (OutputStream out = transport.connect(endpoint, "")) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    try (InputStream in = transport.getContent()) {
+      String response = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+      Assert.assertTrue(transport.isSuccessful());
+      return response;
+    }
+  }
+
+  private static Transport createTransport(boolean compression) {
+    ConnectorConfig config = new ConnectorConfig();
+    config.setCompression(compression);
+    Transport transport = new PooledHttpTransport();
+    transport.setConfig(config);
+    return transport;
+  }
+
+  /**
+   * Echoes request body back, compressed if client accepts compressed responses.
+   */
+  private static void respond(HttpExchange exchange, int status) throws IOException {
+    CLIENT_PORTS.add(exchange.getRemoteAddress().getPort());
+    InputStream requestBody = exchange.getRequestBody();
+    if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+      requestBody = new GZIPInputStream(requestBody);
+    }
+    byte[] body = ByteStreams.toByteArray(requestBody);
+
+    boolean compress = "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    if (compress) {
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(status, 0);
+    try (OutputStream out = compress
+      ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
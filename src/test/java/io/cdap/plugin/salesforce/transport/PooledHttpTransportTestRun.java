@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.google.common.io.ByteStreams;
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.transport.JdkHttpTransport;
+import com.sforce.ws.transport.Transport;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Compares {@link PooledHttpTransport} with default WSC {@link JdkHttpTransport} against a local server
+ * which answers like Bulk API batch status poll. Reports time per call and number of opened connections.
+ * Local server speaks plain HTTP, so TLS handshake cost saved by connection reuse is not included in timings.
+ * <p/>
+ * Excluded from the regular build, run manually.
+ */
+public class PooledHttpTransportTestRun {
+
+  private static final int WARMUP_CALLS = 200;
+  private static final int CALLS = 2000;
+  private static final byte[] BATCH_INFO = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<batchInfo xmlns=\"http://www.force.com/2009/06/asyncapi/dataload\">"
+    + "<id>751D00000004YGZIA2</id><jobId>750D00000004SkVIAU</jobId><state>InProgress</state>"
+    + "<numberRecordsProcessed>0</numberRecordsProcessed></batchInfo>").getBytes(StandardCharsets.UTF_8);
+
+  private static final Set<Integer> CLIENT_PORTS = ConcurrentHashMap.newKeySet();
+
+  private static HttpServer server;
+  private static String url;
+
+  @BeforeClass
+  public static void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/services/async", exchange -> {
+      CLIENT_PORTS.add(exchange.getRemoteAddress().getPort());
+      ByteStreams.exhaust(exchange.getRequestBody());
+      exchange.sendResponseHeaders(200, BATCH_INFO.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(BATCH_INFO);
+      }
+    });
+    server.start();
+    url = String.format("http://localhost:%d/services/async/45.0/job/750D00000004SkVIAU/batch/751D00000004YGZIA2",
+                        server.getAddress().getPort());
+  }
+
+  @AfterClass
+  public static void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testCompareTransports() throws IOException {
+    measure("JdkHttpTransport", JdkHttpTransport::new);
+    measure("PooledHttpTransport", PooledHttpTransport::new);
+  }
+
+  private static void measure(String name, Supplier<Transport> transportSupplier) throws IOException {
+    ConnectorConfig config = new ConnectorConfig();
+    config.setCompression(false);
+
+    for (int i = 0; i < WARMUP_CALLS; i++) {
+      call(transportSupplier.get(), config);
+    }
+
+    CLIENT_PORTS.clear();
+    long start = System.nanoTime();
+    for (int i = 0; i < CALLS; i++) {
+      call(transportSupplier.get(), config);
+    }
+    long elapsedNanos = System.nanoTime() - start;
+
+    System.out.println(String.format("%s: %d calls, %.1f us per call, %d connections opened",
+                                     name, CALLS, elapsedNanos / 1000.0 / CALLS, CLIENT_PORTS.size()));
+  }
+
+  private static void call(Transport transport, ConnectorConfig config) throws IOException {
+    transport.setConfig(config);
+    try (OutputStream out = transport.connect(url, "")) {
+      out.write("<batchInfo/>".getBytes(StandardCharsets.UTF_8));
+    }
+    // Bulk API client parses the response without reading it till the end of stream
+    try (InputStream in = transport.getContent()) {
+      in.read(new byte[BATCH_INFO.length / 2]);
+    }
+  }
+}
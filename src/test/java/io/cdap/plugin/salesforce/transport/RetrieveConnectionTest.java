@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.salesforce.transport;
+
+import com.sforce.soap.partner.fault.ExceptionCode;
+import com.sforce.soap.partner.fault.UnexpectedErrorFault;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link RetrieveConnection}.
+ */
+public class RetrieveConnectionTest {
+
+  private static final String ENVELOPE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+    + "xmlns=\"urn:partner.soap.sforce.com\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+    + "xmlns:sf=\"urn:sobject.partner.soap.sforce.com\"><soapenv:Body>%s</soapenv:Body></soapenv:Envelope>";
+
+  @Test
+  public void testReadResponse() throws Exception {
+    String response = "<retrieveResponse>"
+      + "<result xsi:type=\"sf:sObject\"><sf:type>Opportunity</sf:type><sf:Id>oid-1</sf:Id><sf:Id>oid-1</sf:Id>"
+      + "<sf:Name>Name &amp; 1</sf:Name><sf:Amount xsi:nil=\"true\"/>"
+      + "<sf:Campaign xsi:type=\"sf:sObject\"><sf:type>Campaign</sf:type><sf:Id>cid-1</sf:Id>"
+      + "<sf:Name>Campaign 1</sf:Name></sf:Campaign><sf:Other>other</sf:Other></result>"
+      + "<result xsi:nil=\"true\"/>"
+      + "<result xsi:type=\"sf:sObject\"><sf:type>Opportunity</sf:type><sf:ID>oid-3</sf:ID>"
+      + "<sf:name>Name 3</sf:name><sf:Amount>10.5</sf:Amount><sf:Campaign xsi:nil=\"true\"/></result>"
+      + "</retrieveResponse>";
+    RetrievedRows rows = new RetrievedRows(Arrays.asList("Id", "Name", "Amount", "Campaign.Name"));
+
+    RetrieveConnection.readResponse(toStream(response), rows);
+
+    Assert.assertEquals(3, rows.size());
+    Assert.assertArrayEquals(new String[] {"oid-1", "Name & 1", null, "Campaign 1"}, rows.get(0));
+    Assert.assertNull(rows.get(1));
+    Assert.assertArrayEquals(new String[] {"oid-3", "Name 3", "10.5", null}, rows.get(2));
+  }
+
+  @Test
+  public void testSObjectTypeIsNotReadAsTypeField() throws Exception {
+    String response = "<retrieveResponse>"
+      + "<result xsi:type=\"sf:sObject\"><sf:type>Opportunity</sf:type><sf:Id>oid-1</sf:Id>"
+      + "<sf:Type>New Customer</sf:Type></result>"
+      + "<result xsi:type=\"sf:sObject\"><sf:type>Opportunity</sf:type><sf:Id>oid-2</sf:Id>"
+      + "<sf:Type xsi:nil=\"true\"/></result>"
+      + "<result xsi:type=\"sf:sObject\"><sf:Id>oid-3</sf:Id><sf:type>Opportunity</sf:type></result>"
+      + "</retrieveResponse>";
+    RetrievedRows rows = new RetrievedRows(Arrays.asList("Id", "Type"));
+
+    RetrieveConnection.readResponse(toStream(response), rows);
+
+    Assert.assertEquals(3, rows.size());
+    Assert.assertArrayEquals(new String[] {"oid-1", "New Customer"}, rows.get(0));
+    Assert.assertArrayEquals(new String[] {"oid-2", null}, rows.get(1));
+    Assert.assertArrayEquals(new String[] {"oid-3", null}, rows.get(2));
+  }
+
+  @Test
+  public void testRowsAreReused() throws Exception {
+    String response = "<retrieveResponse><result xsi:type=\"sf:sObject\"><sf:Id>oid-1</sf:Id>"
+      + "<sf:Name>Name 1</sf:Name></result></retrieveResponse>";
+    RetrievedRows rows = new RetrievedRows(Arrays.asList("Id", "Name"));
+    RetrieveConnection.readResponse(toStream(response), rows);
+    String[] row = rows.get(0);
+
+    rows.clear();
+    RetrieveConnection.readResponse(toStream("<retrieveResponse><result xsi:type=\"sf:sObject\">"
+                                               + "<sf:Id>oid-2</sf:Id></result></retrieveResponse>"), rows);
+
+    Assert.assertEquals(1, rows.size());
+    Assert.assertSame(row, rows.get(0));
+    Assert.assertArrayEquals(new String[] {"oid-2", null}, rows.get(0));
+  }
+
+  @Test
+  public void testReadFault() throws Exception {
+    String response = "<soapenv:Fault><faultcode>sf:INVALID_SESSION_ID</faultcode>"
+      + "<faultstring>INVALID_SESSION_ID: Invalid Session ID</faultstring><detail>"
+      + "<sf:UnexpectedErrorFault xmlns:sf=\"urn:fault.partner.soap.sforce.com\" "
+      + "xsi:type=\"sf:UnexpectedErrorFault\"><sf:exceptionCode>INVALID_SESSION_ID</sf:exceptionCode>"
+      + "<sf:exceptionMessage>Invalid Session ID</sf:exceptionMessage></sf:UnexpectedErrorFault>"
+      + "</detail></soapenv:Fault>";
+    RetrievedRows rows = new RetrievedRows(Arrays.asList("Id", "Name"));
+
+    try {
+      RetrieveConnection.readResponse(toStream(response), rows);
+      Assert.fail("Fault is expected");
+    } catch (UnexpectedErrorFault e) {
+      Assert.assertEquals(ExceptionCode.INVALID_SESSION_ID, e.getExceptionCode());
+      Assert.assertEquals("Invalid Session ID", e.getExceptionMessage());
+    }
+  }
+
+  private static InputStream toStream(String body) {
+    return new ByteArrayInputStream(String.format(ENVELOPE, body).getBytes(StandardCharsets.UTF_8));
+  }
+}